@@ -17,6 +17,7 @@
 package org.opencb.opencga.client.rest.analysis;
 
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import org.apache.commons.lang3.StringUtils;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.biodata.models.variant.metadata.VariantMetadata;
@@ -30,7 +31,11 @@ import org.opencb.opencga.core.models.Job;
 import org.opencb.opencga.core.results.VariantQueryResult;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Created by pfurio on 23/11/16.
@@ -38,6 +43,8 @@ import java.util.List;
 public class VariantClient extends AbstractParentClient {
 
     private static final String VARIANT_URL = "analysis/variant";
+    private static final int DEFAULT_PAGE_SIZE = 1000;
+    private static final String CURSOR = "cursor";
 
     public static class QueryResponseMixing<T> {
         @JsonDeserialize(contentAs = VariantQueryResult.class)
@@ -87,6 +94,58 @@ public class VariantClient extends AbstractParentClient {
         return executeVariantQuery(VARIANT_URL, "query", params, GET, Variant.class);
     }
 
+    /**
+     * Iterate over all the variants of a query, in pages of "limit" variants.
+     * Each page is resumed after the last variant of the previous one, using the cursor from the previous response,
+     * instead of skipping all the previous results.
+     *
+     * @param params  Query params
+     * @param options Query options. The limit defines the size of each page
+     * @return Variant iterator
+     */
+    public Iterator<Variant> iterator(ObjectMap params, QueryOptions options) {
+        ObjectMap pageParams = new ObjectMap(params);
+        if (options != null) {
+            pageParams.putAll(options);
+        }
+        pageParams.putIfAbsent(QueryOptions.LIMIT, DEFAULT_PAGE_SIZE);
+        pageParams.put(QueryOptions.SORT, true);
+        pageParams.put(QueryOptions.SKIP_COUNT, true);
+        pageParams.remove(QueryOptions.SKIP);
+
+        return new Iterator<Variant>() {
+            private Iterator<Variant> page = Collections.emptyIterator();
+            private boolean last = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && !last) {
+                    VariantQueryResult<Variant> result;
+                    try {
+                        result = (VariantQueryResult<Variant>) query(pageParams, null).getResponse().get(0);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    page = result.getResult().iterator();
+                    if (StringUtils.isEmpty(result.getCursor())) {
+                        last = true;
+                    } else {
+                        pageParams.put(CURSOR, result.getCursor());
+                    }
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Variant next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
 //    public VariantQueryResult<Variant> queryResult(ObjectMap params, QueryOptions options) throws CatalogException, IOException {
 //        return ((VariantQueryResult<Variant>) query(params, options).getResponse().get(0));
 //    }
@@ -16,6 +16,7 @@
 
 package org.opencb.opencga.core.results;
 
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.QueryResult;
 
 import java.util.List;
@@ -32,6 +33,8 @@ public class VariantQueryResult<T> extends QueryResult<T> {
     private String source;
     private Boolean approximateCount;
     private Integer approximateCountSamplingSize;
+    private ObjectMap explain;
+    private String cursor;
 
     public VariantQueryResult() {
         this.samples = null;
@@ -94,6 +97,27 @@ public class VariantQueryResult<T> extends QueryResult<T> {
         return this;
     }
 
+    public ObjectMap getExplain() {
+        return explain;
+    }
+
+    public VariantQueryResult<T> setExplain(ObjectMap explain) {
+        this.explain = explain;
+        return this;
+    }
+
+    /**
+     * @return Opaque token to fetch the next page of results, or null if there are no more results.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public VariantQueryResult<T> setCursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
     public String getSource() {
         return source;
     }
@@ -23,6 +23,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.VariantAnnotation;
 import org.opencb.biodata.models.variant.metadata.VariantMetadata;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResponse;
@@ -35,15 +36,20 @@ import org.opencb.opencga.core.models.Sample;
 import org.opencb.opencga.storage.core.manager.variant.VariantCatalogQueryUtils;
 import org.opencb.opencga.storage.core.manager.variant.VariantStorageManager;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryCursor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils;
 import org.opencb.opencga.storage.core.variant.analysis.VariantSampleFilter;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
+import org.opencb.opencga.storage.core.variant.search.solr.VariantSearchManager;
+import org.opencb.opencga.storage.core.variant.search.solr.VariantSearchManager.UseSearchIndex;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.*;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 import static org.opencb.opencga.storage.core.variant.VariantStorageEngine.Options.*;
@@ -58,6 +64,8 @@ import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam
 public class VariantAnalysisWSService extends AnalysisWSService {
 
     private static final String DEPRECATED = "(DEPRECATED) ";
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+    private static final int STREAM_BATCH_SIZE = 1000;
     private static final Map<String, org.opencb.commons.datastore.core.QueryParam> DEPRECATED_VARIANT_QUERY_PARAM;
 
     static {
@@ -195,6 +203,7 @@ public class VariantAnalysisWSService extends AnalysisWSService {
 
     @GET
     @Path("/query")
+    @Produces({MediaType.APPLICATION_JSON, NDJSON_MEDIA_TYPE})
     @ApiOperation(value = "Fetch variants from a VCF/gVCF file", position = 15, response = Variant[].class)
     @ApiImplicitParams({
             @ApiImplicitParam(name = QueryOptions.INCLUDE, value = "Fields included in the response, whole JSON path must be provided", example = "name,attributes", dataType = "string", paramType = "query"),
@@ -304,7 +313,9 @@ public class VariantAnalysisWSService extends AnalysisWSService {
     public Response getVariants(@ApiParam(value = "Group variants by: [ct, gene, ensemblGene]") @DefaultValue("") @QueryParam("groupBy") String groupBy,
                                 @ApiParam(value = "Calculate histogram. Requires one region.") @DefaultValue("false") @QueryParam("histogram") boolean histogram,
                                 @ApiParam(value = "Histogram interval size") @DefaultValue("2000") @QueryParam("interval") int interval,
-                                @ApiParam(value = "Ranks different entities with the most number of variants. Rank by: [ct, gene, ensemblGene]") @QueryParam("rank") String rank
+                                @ApiParam(value = "Ranks different entities with the most number of variants. Rank by: [ct, gene, ensemblGene]") @QueryParam("rank") String rank,
+                                @ApiParam(value = "Stream all the results as newline delimited JSON, without the result limit. A cursor is emitted after every batch of variants") @DefaultValue("false") @QueryParam("stream") boolean stream,
+                                @ApiParam(value = "Resume the query after the last variant of a previous response, using the cursor from that response") @QueryParam("cursor") String cursor
                                 // @ApiParam(value = "Merge results", required = false) @DefaultValue("false") @QueryParam("merge") boolean merge
                                 ) {
 
@@ -324,6 +335,8 @@ public class VariantAnalysisWSService extends AnalysisWSService {
                 queryResult = variantManager.groupBy(groupBy, query, queryOptions, sessionId);
             } else if (StringUtils.isNotEmpty(rank)) {
                 queryResult = variantManager.rank(query, rank,  limit, true, sessionId);
+            } else if (stream) {
+                return streamVariants(query, queryOptions, cursor);
             } else {
                 queryResult = variantManager.get(query, queryOptions, sessionId);
 //                System.out.println("queryResult = " + jsonObjectMapper.writeValueAsString(queryResult));
@@ -339,6 +352,83 @@ public class VariantAnalysisWSService extends AnalysisWSService {
         }
     }
 
+    /**
+     * Streams the variants as newline delimited JSON, one variant per line.
+     *
+     * Variants are written straight from the iterator, so the query is only advanced as fast as the client reads. After every
+     * batch of variants, and at the end, a line with a cursor is written. This cursor can be used to resume the query.
+     *
+     * @param query         Variant query
+     * @param queryOptions  Query options
+     * @param cursor        Cursor from a previous streamed query, if any
+     * @return Streaming response
+     * @throws Exception    if the query can not be executed
+     */
+    private Response streamVariants(Query query, QueryOptions queryOptions, String cursor) throws Exception {
+        queryOptions.remove("stream");
+        // Only sorted queries can be resumed
+        queryOptions.put(QueryOptions.SORT, true);
+        // Only the storage engine returns the variants in its natural order. Queries requiring the search engine can not be resumed
+        boolean resumable = VariantQueryCursor.isResumable(queryOptions)
+                && !UseSearchIndex.from(queryOptions).equals(UseSearchIndex.YES)
+                && !VariantQueryUtils.isValidParam(query, ANNOT_TRAIT);
+        if (resumable) {
+            queryOptions.put(VariantSearchManager.USE_SEARCH_INDEX, UseSearchIndex.NO);
+        }
+
+        // Open the iterator before starting the response, so any error can still be reported as usual
+        VariantDBIterator iterator = variantManager.iterator(query, queryOptions, sessionId);
+        // The cursors are bound to the query as seen by the storage engine, once resolved by the catalog
+        long limit = queryOptions.getLong(QueryOptions.LIMIT, 0) > 0 || StringUtils.isEmpty(cursor)
+                ? queryOptions.getLong(QueryOptions.LIMIT, 0)
+                : VariantQueryCursor.decode(cursor, query).getLimit();
+        StreamingOutput output = os -> {
+            long numVariants = 0;
+            String lastVariant = null;
+            try (VariantDBIterator it = iterator) {
+                while (it.hasNext()) {
+                    Variant variant = it.next();
+                    os.write(jsonObjectWriter.writeValueAsBytes(variant));
+                    os.write('\n');
+                    numVariants++;
+                    lastVariant = variant.toString();
+                    // Once the limit is reached, the only cursor to write is the end one
+                    if (resumable && numVariants % STREAM_BATCH_SIZE == 0 && (limit <= 0 || numVariants < limit)) {
+                        writeCursor(os, query, limit, numVariants, lastVariant, false, true);
+                        os.flush();
+                    }
+                }
+                writeCursor(os, query, limit, numVariants, lastVariant, true, resumable);
+                os.flush();
+            } catch (IOException e) {
+                // Client disconnected. It can resume from the last cursor
+                logger.warn("Streamed query interrupted after {} variants: {}", numVariants, e.getMessage());
+                throw e;
+            } catch (Exception e) {
+                logger.error("Error streaming variants", e);
+                os.write(jsonObjectWriter.writeValueAsBytes(new ObjectMap("error", e.getMessage())));
+                os.write('\n');
+                os.flush();
+            }
+        };
+        return buildResponse(Response.ok(output, NDJSON_MEDIA_TYPE));
+    }
+
+    private static void writeCursor(OutputStream os, Query query, long limit, long numVariants, String lastVariant, boolean end,
+                                    boolean resumable) throws IOException {
+        // A limit of 0 means no limit. Never encode it for a bounded query
+        long remaining = limit > 0 ? limit - numVariants : limit;
+        if (limit > 0 && remaining <= 0) {
+            end = true;
+        }
+        ObjectMap cursor = new ObjectMap("numResults", numVariants).append("end", end);
+        if (!end && resumable) {
+            cursor.put("cursor", new VariantQueryCursor(query, remaining, lastVariant).encode());
+        }
+        os.write(jsonObjectWriter.writeValueAsBytes(cursor));
+        os.write('\n');
+    }
+
     /**
      * Do not use native values (like boolean or int), so they are null by default.
      */
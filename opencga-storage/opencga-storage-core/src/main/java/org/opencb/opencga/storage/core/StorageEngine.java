@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * This class manages all the operations with storage and provides a DBAdaptor.
@@ -75,6 +76,11 @@ public abstract class StorageEngine<DBADAPTOR> implements AutoCloseable {
             testConnection();
         }
 
+        int overlappedTransforms = getIndexOverlappedTransforms();
+        if (doTransform && doLoad && overlappedTransforms > 0 && inputFiles.size() > 1) {
+            return indexOverlapped(inputFiles, outdirUri, doExtract, overlappedTransforms, results);
+        }
+
         for (URI inputFile : inputFiles) {
             //Provide a connected storagePipeline if load is required.
             StoragePipeline storagePipeline = newStoragePipeline(doLoad);
@@ -107,6 +113,83 @@ public abstract class StorageEngine<DBADAPTOR> implements AutoCloseable {
         return results;
     }
 
+    /**
+     * Index the given files transforming the next files while loading the current one.
+     *
+     * Transformations run in a pool of numTransforms threads, but files are always loaded one by one, in the given order.
+     * Stops at the first error, as the sequential index.
+     *
+     * @param inputFiles    Input files to index
+     * @param outdirUri     Output directory for possible intermediate files
+     * @param doExtract     Execute extract step
+     * @param numTransforms Max number of files transformed ahead of the file being loaded
+     * @param results       List to fill with the results of each file
+     * @return              List of {@link StoragePipelineResult}, one for each input file.
+     * @throws StorageEngineException If there is any problem related with the StorageEngine
+     */
+    protected List<StoragePipelineResult> indexOverlapped(List<URI> inputFiles, URI outdirUri, boolean doExtract, int numTransforms,
+                                                          List<StoragePipelineResult> results) throws StorageEngineException {
+        logger.info("Index {} files transforming up to {} files while loading", inputFiles.size(), numTransforms);
+        StoragePipeline[] storagePipelines = new StoragePipeline[inputFiles.size()];
+        List<Callable<URI>> transforms = new ArrayList<>(inputFiles.size());
+        for (int i = 0; i < inputFiles.size(); i++) {
+            URI inputFile = inputFiles.get(i);
+            StoragePipelineResult result = new StoragePipelineResult(inputFile);
+            result.setInput(inputFile);
+            results.add(result);
+
+            int idx = i;
+            transforms.add(() -> {
+                // Create the pipeline only when needed, to avoid holding one connection per file
+                StoragePipeline storagePipeline = newStoragePipeline(true);
+                storagePipelines[idx] = storagePipeline;
+                URI nextFileUri = inputFile;
+                if (doExtract) {
+                    logger.info("Extract '{}'", inputFile);
+                    nextFileUri = storagePipeline.extract(inputFile, outdirUri);
+                    result.setExtractResult(nextFileUri);
+                }
+                return transformFile(storagePipeline, result, results, nextFileUri, outdirUri);
+            });
+        }
+
+        try (TransformQueue transformQueue = new TransformQueue(transforms, numTransforms)) {
+            for (int i = 0; i < inputFiles.size(); i++) {
+                URI transformedFile = transformQueue.next();
+                StoragePipeline storagePipeline = storagePipelines[i];
+                loadFile(storagePipeline, results.get(i), results, transformedFile, outdirUri);
+                storagePipeline.close();
+                storagePipelines[i] = null;
+
+                MemoryUsageMonitor.logMemory(logger);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StoragePipelineException("Interrupted while waiting for transforms", e, results);
+        } finally {
+            // Close pipelines of files transformed but not loaded
+            for (StoragePipeline storagePipeline : storagePipelines) {
+                if (storagePipeline != null) {
+                    try {
+                        storagePipeline.close();
+                    } catch (StorageEngineException e) {
+                        logger.warn("Error closing storage pipeline", e);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Number of files to transform ahead while loading other files in {@link #index}.
+     *
+     * @return Max number of concurrent transforms. 0 to index each file after the other.
+     */
+    protected int getIndexOverlappedTransforms() {
+        return 0;
+    }
+
     protected void loadFile(StoragePipeline storagePipeline, StoragePipelineResult result, List<StoragePipelineResult> results,
                             URI inputFileUri, URI outdirUri) throws StoragePipelineException {
         result.setLoadExecuted(true);
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.opencga.storage.core;
+
+import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.*;
+
+/**
+ * Runs the transformation of a list of files in background, so they can be loaded while the next ones are being transformed.
+ *
+ * Transformations are started in the order of the list, and at most numThreads files are transformed, or waiting to be loaded,
+ * ahead of the file being loaded. Results are returned in the same order by {@link #next()}.
+ *
+ * Created on 17/10/26.
+ */
+public class TransformQueue implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final int numThreads;
+    private final Iterator<Callable<URI>> pending;
+    private final LinkedList<Future<URI>> submitted = new LinkedList<>();
+
+    /**
+     * @param transforms Transformation of each file, returning the transformed file
+     * @param numThreads Max number of files transformed at the same time
+     */
+    public TransformQueue(List<Callable<URI>> transforms, int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+        this.pending = transforms.iterator();
+        this.executor = Executors.newFixedThreadPool(this.numThreads, r -> {
+            Thread thread = new Thread(r, "transform-queue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        submit();
+    }
+
+    public boolean hasNext() {
+        return !submitted.isEmpty() || pending.hasNext();
+    }
+
+    /**
+     * Waits for the transformation of the next file.
+     *
+     * @return Transformed file
+     * @throws StorageEngineException if the transformation failed
+     */
+    public URI next() throws StorageEngineException {
+        submit();
+        Future<URI> future = submitted.poll();
+        if (future == null) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageEngineException("Interrupted while waiting for transform", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StorageEngineException) {
+                throw (StorageEngineException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new StorageEngineException("Error transforming file", e.getCause());
+            }
+        } finally {
+            // Keep transforming while the caller loads this file
+            submit();
+        }
+    }
+
+    private void submit() {
+        while (submitted.size() < numThreads && pending.hasNext()) {
+            submitted.add(executor.submit(pending.next()));
+        }
+    }
+
+    /**
+     * Stops starting new transformations, and waits for the running ones, so no file is left half transformed.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+    }
+}
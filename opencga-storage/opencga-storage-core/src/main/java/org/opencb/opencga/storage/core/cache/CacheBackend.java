@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.cache;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryResult;
+
+/**
+ * Storage of the query results cached by the {@link CacheManager}.
+ *
+ * Created on 17/10/26.
+ */
+public interface CacheBackend {
+
+    String HITS = "hits";
+    String MISSES = "misses";
+    String EVICTIONS = "evictions";
+    String SIZE = "size";
+
+    /**
+     * Get a cached result.
+     *
+     * @param key   Key generated with {@link CacheManager#createKey}
+     * @param <T>   Result type
+     * @return      The cached result, or null if missing
+     */
+    <T> QueryResult<T> get(String key);
+
+    void set(String key, Query query, QueryResult queryResult);
+
+    /**
+     * Remove all the entries matching the pattern.
+     *
+     * @param pattern Glob-style pattern, where '*' matches any sequence of characters
+     */
+    void clear(String pattern);
+
+    /**
+     * @return Hits, misses and evictions since the backend was created.
+     */
+    ObjectMap getStats();
+
+    void close();
+
+}
@@ -18,42 +18,51 @@ package org.opencb.opencga.storage.core.cache;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.opencga.storage.core.config.CacheConfiguration;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
-import org.redisson.Config;
-import org.redisson.Redisson;
-import org.redisson.RedissonClient;
-import org.redisson.client.RedisConnectionException;
-import org.redisson.codec.JsonJacksonCodec;
-import org.redisson.codec.KryoCodec;
-import org.redisson.core.RKeys;
-import org.redisson.core.RMap;
 
 import java.util.*;
+import java.util.function.ToLongFunction;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  * Created by wasim on 26/10/16.
  */
 public class CacheManager {
 
+    public static final String LOCAL = "local";
+    public static final String REDIS = "redis";
+    /**
+     * QueryOption to skip the cache. Enabled by default.
+     */
+    public static final String CACHE = "cache";
+
     private StorageConfiguration storageConfiguration;
 
-    private Config redissonConfig;
     private Set<String> allowedTypesSet;
-    private RedissonClient redissonClient;
-    private boolean redisState;
+    private CacheBackend cacheBackend;
 
 
     private static final String PREFIX_DATABASE_KEY = "ocga:";
+    private static final String STUDY_SEPARATOR = "_";
 
     public CacheManager() {
     }
 
     public CacheManager(StorageConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    /**
+     * @param configuration Storage configuration
+     * @param sizeEstimator Estimate the size in bytes of each cached element. Only used by the local cache.
+     */
+    public CacheManager(StorageConfiguration configuration, ToLongFunction<Object> sizeEstimator) {
 
         CacheConfiguration cache;
 
@@ -62,85 +71,56 @@ public class CacheManager {
             this.storageConfiguration = configuration;
 
             cache = configuration.getCache();
-            redissonConfig = new Config();
-
-            String host = (StringUtils.isNotEmpty(cache.getHost()))
-                    ? cache.getHost()
-                    : CacheConfiguration.DEFAULT_HOST;
-            redissonConfig.useSingleServer().setAddress(host);
-
-            String codec = (StringUtils.isNotEmpty(cache.getSerialization()))
-                    ? cache.getSerialization()
-                    : CacheConfiguration.DEFAULT_SERIALIZATION;
 
             this.allowedTypesSet = new HashSet<>(Arrays.asList(cache.getAllowedTypes().split(",")));
 
-
-            if (StringUtils.isNotEmpty(cache.getPassword())) {
-                redissonConfig.useSingleServer().setPassword(cache.getPassword());
-            }
-
-            if ("KRYO".equalsIgnoreCase(codec)) {
-                redissonConfig.setCodec(new KryoCodec());
+            String type = StringUtils.isNotEmpty(cache.getType()) ? cache.getType() : CacheConfiguration.DEFAULT_TYPE;
+            if (LOCAL.equalsIgnoreCase(type)) {
+                cacheBackend = new LocalCacheBackend(cache.getMaxHeapSize() * 1024L * 1024L, cache.getTtl(), sizeEstimator);
+            } else if (REDIS.equalsIgnoreCase(type)) {
+                cacheBackend = new RedisCacheBackend(cache);
             } else {
-                redissonConfig.setCodec(new JsonJacksonCodec());
+                throw new IllegalArgumentException("Unknown cache type '" + type + "'. Accepted values: " + LOCAL + ", " + REDIS);
             }
-
-            redisState = true;
-
-//            redissonClient = Redisson.create(redissonConfig);
-            redissonClient = null;
         }
     }
 
 
     public <T> QueryResult<T> get(String key) {
+        QueryResult<T> queryResult = getIfPresent(key);
+        if (queryResult == null) {
+            queryResult = new QueryResult<>();
+        }
+        return queryResult;
+    }
 
-        QueryResult<T> queryResult = new QueryResult<>();
+    /**
+     * Get a cached result.
+     *
+     * @param key   Key generated with {@link #createKey}
+     * @param <T>   Result type
+     * @return      The cached result, or null if missing or the cache is not active
+     */
+    public <T> QueryResult<T> getIfPresent(String key) {
         if (isActive()) {
-            long start = System.currentTimeMillis();
-            RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
-
-            try {
-                // We only retrieve the first field of the HASH, which is the only one that exist.
-                Map<Integer, Map<String, Object>> result = map.getAll(new HashSet<>(Collections.singletonList(0)));
-
-                if (result != null && !result.isEmpty()) {
-                    Object resultMap = result.get(0).get("result");
-                    queryResult = (QueryResult<T>) resultMap;
-                    queryResult.setDbTime((int) (System.currentTimeMillis() - start));
-                }
-            } catch (RedisConnectionException e) {
-                redisState = false;
-                queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
-                return queryResult;
-            }
+            return cacheBackend.get(key);
         }
-        return queryResult;
+        return null;
     }
 
     public void set(String key, Query query, QueryResult queryResult) {
 
         if (isActive()) {
             if (queryResult.getDbTime() >= storageConfiguration.getCache().getSlowThreshold()
-                    && queryResult.getResult().size() >= storageConfiguration.getCache().getMaxResultSize()) {
-                RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
-                Map<String, Object> record = new HashMap<>();
-                record.put("query", query);
-                record.put("result", queryResult);
-                try {
-                    map.fastPut(0, record);
-                } catch (RedisConnectionException e) {
-                    redisState = false;
-                    queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
-                }
+                    && queryResult.getResult().size() <= storageConfiguration.getCache().getMaxResultSize()) {
+                cacheBackend.set(key, query, queryResult);
             }
         }
     }
 
     public String createKey(String studyId, String allowedType, Query query, QueryOptions queryOptions) {
 
-        queryOptions.remove("cache");
+        queryOptions.remove(CACHE);
         queryOptions.remove("sId");
 
         StringBuilder key = new StringBuilder(PREFIX_DATABASE_KEY);
@@ -158,40 +138,71 @@ public class CacheManager {
         String sha1 = DigestUtils.sha1Hex(map.toString());
         key.append(":").append(sha1);
 
-        queryOptions.add("cache", "true");
+        queryOptions.add(CACHE, "true");
         return key.toString();
     }
 
+    /**
+     * Build the studyId component of the key for a query involving multiple studies.
+     * Entries created with this key can be removed with {@link #clear(int, String)} for any of the studies.
+     *
+     * @param studyIds  Studies involved in the query
+     * @return          Key component
+     */
+    public static String studiesKey(Collection<Integer> studyIds) {
+        return studyIds.stream()
+                .sorted()
+                .map(String::valueOf)
+                .collect(Collectors.joining(STUDY_SEPARATOR, STUDY_SEPARATOR, STUDY_SEPARATOR));
+    }
+
     public boolean isActive() {
-        return storageConfiguration.getCache().isActive() && redisState;
+        return storageConfiguration != null && cacheBackend != null && storageConfiguration.getCache().isActive()
+                && (!(cacheBackend instanceof RedisCacheBackend) || ((RedisCacheBackend) cacheBackend).isConnected());
     }
 
     public boolean isTypeAllowed(String type) {
-        return allowedTypesSet.contains(type);
+        return allowedTypesSet != null && allowedTypesSet.contains(type);
     }
 
     public void clear() {
-        RKeys redisKeys = getRedissonClient().getKeys();
-        redisKeys.deleteByPattern(PREFIX_DATABASE_KEY + "*");
+        if (cacheBackend != null) {
+            cacheBackend.clear(PREFIX_DATABASE_KEY + "*");
+        }
     }
 
     public void clear(Pattern pattern) {
-        RKeys redisKeys = getRedissonClient().getKeys();
-        redisKeys.deleteByPattern(pattern.toString());
+        if (cacheBackend != null) {
+            cacheBackend.clear(pattern.toString());
+        }
     }
 
-    public void close() {
-        if (redissonClient != null) {
-            redissonClient.shutdown();
-            redissonClient = null;
+    /**
+     * Remove all the entries of the given type involving the given study.
+     *
+     * @param studyId       Study
+     * @param allowedType   Type of the entries to remove
+     */
+    public void clear(int studyId, String allowedType) {
+        if (cacheBackend != null) {
+            cacheBackend.clear(PREFIX_DATABASE_KEY + "*" + STUDY_SEPARATOR + studyId + STUDY_SEPARATOR + "*:" + allowedType + ":*");
+        }
+    }
+
+    /**
+     * @return Hits, misses and evictions of the cache.
+     */
+    public ObjectMap getStats() {
+        if (cacheBackend == null) {
+            return new ObjectMap();
         }
+        return cacheBackend.getStats();
     }
 
-    private synchronized RedissonClient getRedissonClient() {
-        if (redissonClient == null) {
-            redissonClient = Redisson.create(redissonConfig);
+    public void close() {
+        if (cacheBackend != null) {
+            cacheBackend.close();
         }
-        return redissonClient;
     }
 
 }
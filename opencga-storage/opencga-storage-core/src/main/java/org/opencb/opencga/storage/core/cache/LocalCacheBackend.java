@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.core.results.VariantQueryResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-process cache backend. Keeps the results in the heap, bounded by the estimated size in bytes of the cached results.
+ *
+ * Least recently used entries are evicted first. Entries expire after the configured time to live.
+ * Results are returned as a shallow copy, so the cached elements must not be modified by the caller.
+ *
+ * Created on 17/10/26.
+ */
+public class LocalCacheBackend implements CacheBackend {
+
+    public static final long DEFAULT_ELEMENT_SIZE = 1024;
+
+    private final Cache<String, QueryResult> cache;
+    private final ToLongFunction<Object> sizeEstimator;
+
+    /**
+     * @param maxSize       Max size in bytes of all the cached results
+     * @param ttl           Time to live of the entries, in seconds
+     * @param sizeEstimator Estimate the size in bytes of each element of the result
+     */
+    public LocalCacheBackend(long maxSize, long ttl, ToLongFunction<Object> sizeEstimator) {
+        this.sizeEstimator = sizeEstimator == null ? o -> DEFAULT_ELEMENT_SIZE : sizeEstimator;
+        CacheBuilder<String, QueryResult> builder = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((String key, QueryResult value) -> weigh(key, value))
+                .recordStats();
+        if (ttl > 0) {
+            builder.expireAfterWrite(ttl, TimeUnit.SECONDS);
+        }
+        cache = builder.build();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> QueryResult<T> get(String key) {
+        QueryResult<T> queryResult = cache.getIfPresent(key);
+        if (queryResult == null) {
+            return null;
+        }
+        return copy(queryResult);
+    }
+
+    @Override
+    public void set(String key, Query query, QueryResult queryResult) {
+        cache.put(key, copy(queryResult));
+    }
+
+    @Override
+    public void clear(String pattern) {
+        Pattern regex = globToRegex(pattern);
+        cache.asMap().keySet().removeIf(key -> regex.matcher(key).matches());
+    }
+
+    @Override
+    public ObjectMap getStats() {
+        CacheStats stats = cache.stats();
+        return new ObjectMap(HITS, stats.hitCount())
+                .append(MISSES, stats.missCount())
+                .append(EVICTIONS, stats.evictionCount())
+                .append(SIZE, cache.size());
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    private int weigh(String key, QueryResult value) {
+        long size = key.length() * 2L + 128;
+        if (value.getResult() != null) {
+            for (Object o : value.getResult()) {
+                size += sizeEstimator.applyAsLong(o);
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> QueryResult<T> copy(QueryResult<T> queryResult) {
+        QueryResult<T> copy;
+        if (queryResult instanceof VariantQueryResult) {
+            VariantQueryResult<T> variantQueryResult = (VariantQueryResult<T>) queryResult;
+            copy = new VariantQueryResult<T>(queryResult.getId(), queryResult.getDbTime(), queryResult.getNumResults(),
+                    queryResult.getNumTotalResults(), queryResult.getWarningMsg(), queryResult.getErrorMsg(), null,
+                    variantQueryResult.getSamples(), variantQueryResult.getSource(), variantQueryResult.getApproximateCount(),
+                    variantQueryResult.getApproximateCountSamplingSize())
+                    .setExplain(variantQueryResult.getExplain());
+        } else {
+            copy = new QueryResult<>(queryResult.getId(), queryResult.getDbTime(), queryResult.getNumResults(),
+                    queryResult.getNumTotalResults(), queryResult.getWarningMsg(), queryResult.getErrorMsg(), null);
+        }
+        copy.setResultType(queryResult.getResultType());
+        copy.setResult(queryResult.getResult() == null ? null : new ArrayList<>(queryResult.getResult()));
+        return copy;
+    }
+
+    static Pattern globToRegex(String glob) {
+        return Pattern.compile(Arrays.stream(glob.split("\\*", -1))
+                .map(Pattern::quote)
+                .collect(Collectors.joining(".*")));
+    }
+}
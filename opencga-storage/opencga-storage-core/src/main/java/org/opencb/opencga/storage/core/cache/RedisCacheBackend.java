@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.cache;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.config.CacheConfiguration;
+import org.redisson.Config;
+import org.redisson.Redisson;
+import org.redisson.RedissonClient;
+import org.redisson.client.RedisConnectionException;
+import org.redisson.codec.JsonJacksonCodec;
+import org.redisson.codec.KryoCodec;
+import org.redisson.core.RKeys;
+import org.redisson.core.RMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache backend storing the results in a Redis server.
+ *
+ * Created by wasim on 26/10/16.
+ */
+public class RedisCacheBackend implements CacheBackend {
+
+    private final Config redissonConfig;
+    private RedissonClient redissonClient;
+    private boolean redisState;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Logger logger = LoggerFactory.getLogger(RedisCacheBackend.class);
+
+    public RedisCacheBackend(CacheConfiguration cache) {
+        redissonConfig = new Config();
+
+        String host = (StringUtils.isNotEmpty(cache.getHost()))
+                ? cache.getHost()
+                : CacheConfiguration.DEFAULT_HOST;
+        redissonConfig.useSingleServer().setAddress(host);
+
+        String codec = (StringUtils.isNotEmpty(cache.getSerialization()))
+                ? cache.getSerialization()
+                : CacheConfiguration.DEFAULT_SERIALIZATION;
+
+        if (StringUtils.isNotEmpty(cache.getPassword())) {
+            redissonConfig.useSingleServer().setPassword(cache.getPassword());
+        }
+
+        if ("KRYO".equalsIgnoreCase(codec)) {
+            redissonConfig.setCodec(new KryoCodec());
+        } else {
+            redissonConfig.setCodec(new JsonJacksonCodec());
+        }
+
+        redisState = true;
+        redissonClient = null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> QueryResult<T> get(String key) {
+        if (!redisState) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
+
+        try {
+            // We only retrieve the first field of the HASH, which is the only one that exist.
+            Map<Integer, Map<String, Object>> result = map.getAll(new HashSet<>(Collections.singletonList(0)));
+
+            if (result != null && !result.isEmpty()) {
+                Object resultMap = result.get(0).get("result");
+                QueryResult<T> queryResult = (QueryResult<T>) resultMap;
+                queryResult.setDbTime((int) (System.currentTimeMillis() - start));
+                hits.incrementAndGet();
+                return queryResult;
+            }
+        } catch (RedisConnectionException e) {
+            logger.warn("Unable to connect to Redis Cache. Falling back to Database", e);
+            redisState = false;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public void set(String key, Query query, QueryResult queryResult) {
+        if (!redisState) {
+            return;
+        }
+        RMap<Integer, Map<String, Object>> map = getRedissonClient().getMap(key);
+        Map<String, Object> record = new HashMap<>();
+        record.put("query", query);
+        record.put("result", queryResult);
+        try {
+            map.fastPut(0, record);
+        } catch (RedisConnectionException e) {
+            redisState = false;
+            queryResult.setWarningMsg("Unable to connect to Redis Cache, Please query WITHOUT Cache (Falling back to Database)");
+        }
+    }
+
+    @Override
+    public void clear(String pattern) {
+        RKeys redisKeys = getRedissonClient().getKeys();
+        redisKeys.deleteByPattern(pattern);
+    }
+
+    @Override
+    public ObjectMap getStats() {
+        return new ObjectMap(HITS, hits.get())
+                .append(MISSES, misses.get())
+                .append(EVICTIONS, 0);
+    }
+
+    public boolean isConnected() {
+        return redisState;
+    }
+
+    @Override
+    public void close() {
+        if (redissonClient != null) {
+            redissonClient.shutdown();
+            redissonClient = null;
+        }
+    }
+
+    private synchronized RedissonClient getRedissonClient() {
+        if (redissonClient == null) {
+            redissonClient = Redisson.create(redissonConfig);
+        }
+        return redissonClient;
+    }
+}
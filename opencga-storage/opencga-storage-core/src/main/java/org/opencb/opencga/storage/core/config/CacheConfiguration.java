@@ -21,6 +21,11 @@ package org.opencb.opencga.storage.core.config;
  */
 public class CacheConfiguration {
 
+    /**
+     * Accepted values are: local, redis.
+     */
+    private String type;
+
     /**
      * This field contain the host and port, ie. host[:port].
      */
@@ -40,12 +45,25 @@ public class CacheConfiguration {
      */
     private String allowedTypes;
 
-    public static final boolean DEFAULT_ACTVE = true;
+    /**
+     * Max size of the local cache, in MB.
+     */
+    private long maxHeapSize;
+
+    /**
+     * Time to live of the local cache entries, in seconds.
+     */
+    private long ttl;
+
+    public static final boolean DEFAULT_ACTVE = false;
+    public static final String DEFAULT_TYPE = "local";
     public static final String DEFAULT_SERIALIZATION = "json";
     public static final String DEFAULT_ALLOWED_TYPE = "aln,var";
     public static final String DEFAULT_HOST = "localhost:6379";
     public static final String DEFAULT_PASSWORD = "";
     public static final int DEFAULT_MAX_FILE_SIZE = 500;
+    public static final long DEFAULT_MAX_HEAP_SIZE = 256;
+    public static final long DEFAULT_TTL = 3600;
 
     public CacheConfiguration() {
         this(DEFAULT_HOST, DEFAULT_ACTVE, DEFAULT_SERIALIZATION, 50, DEFAULT_MAX_FILE_SIZE, DEFAULT_PASSWORD,
@@ -61,21 +79,36 @@ public class CacheConfiguration {
         this.maxResultSize = maxFileSize;
         this.password = password;
         this.allowedTypes = allowedTypes;
+        this.type = DEFAULT_TYPE;
+        this.maxHeapSize = DEFAULT_MAX_HEAP_SIZE;
+        this.ttl = DEFAULT_TTL;
     }
 
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("CacheConfiguration{"
-                + "host='" + host + '\''
+                + "type='" + type + '\''
+                + ", host='" + host + '\''
                 + ", active=" + active
                 + ", serialization='" + serialization + '\''
                 + ", slowThreshold=" + slowThreshold
                 + ", maxResultSize=" + maxResultSize
                 + ", allowedTypes='" + allowedTypes + '\''
+                + ", maxHeapSize=" + maxHeapSize
+                + ", ttl=" + ttl
                 + '}');
         return sb.toString();
     }
 
+    public String getType() {
+        return type;
+    }
+
+    public CacheConfiguration setType(String type) {
+        this.type = type;
+        return this;
+    }
+
     public String getHost() {
         return host;
     }
@@ -138,4 +171,22 @@ public class CacheConfiguration {
         this.allowedTypes = allowedTypes;
         return this;
     }
+
+    public long getMaxHeapSize() {
+        return maxHeapSize;
+    }
+
+    public CacheConfiguration setMaxHeapSize(long maxHeapSize) {
+        this.maxHeapSize = maxHeapSize;
+        return this;
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public CacheConfiguration setTtl(long ttl) {
+        this.ttl = ttl;
+        return this;
+    }
 }
@@ -0,0 +1,503 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.io.plain;
+
+import org.xerial.snappy.SnappyInputStream;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Drop-in replacement of the {@link StringDataReader} that decompresses and splits lines in a pool of threads.
+ *
+ * The input is read sequentially in chunks by the calling thread, and each chunk is decoded by one of the worker threads.
+ * Chunks are always consumed in the same order they were read, so the lines are returned in the same order as in the file.
+ * <ul>
+ *     <li>BGZF files (block gzip, like the ones generated by bgzip) are split at block boundaries.
+ *         Blocks are inflated in parallel.</li>
+ *     <li>Plain files are split at fixed byte offsets. Lines crossing two chunks are joined again when consumed.</li>
+ *     <li>Regular gzip and snappy files can not be split. Those are inflated by the calling thread,
+ *         and only the line splitting is done in parallel.</li>
+ * </ul>
+ *
+ * The buffers used to hold the raw chunks are taken from a fixed pool, and returned to the pool as soon as the chunk is split,
+ * so reading a file only allocates the resulting lines.
+ *
+ * Created on 17/10/26.
+ */
+public class ParallelStringDataReader extends StringDataReader {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final int GZIP_HEADER_LENGTH = 12;
+    private static final int GZIP_FOOTER_LENGTH = 8;
+    private static final int BGZF_MAX_BLOCK_SIZE = 64 * 1024;
+    private static final byte BGZF_SI1 = 'B';
+    private static final byte BGZF_SI2 = 'C';
+
+    private final int numThreads;
+    private final int chunkSize;
+    private final Charset charset = Charset.defaultCharset();
+    private final BlockingQueue<byte[]> bufferPool;
+
+    private ExecutorService executor;
+    private final Deque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+    private final Deque<String> readyLines = new ArrayDeque<>();
+    private ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private SizeInputStream fileInputStream;
+    private DataInputStream bgzfInputStream;
+    private InputStream inputStream;
+    private boolean bgzf;
+    private boolean eof;
+    private long reportedBytes;
+
+    public ParallelStringDataReader(Path path) {
+        this(path, 4);
+    }
+
+    public ParallelStringDataReader(Path path, int numThreads) {
+        this(path, numThreads, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelStringDataReader(Path path, int numThreads, int chunkSize) {
+        super(path);
+        if (numThreads <= 0) {
+            throw new IllegalArgumentException("Expected at least one thread. Got " + numThreads);
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Expected a positive chunk size. Got " + chunkSize);
+        }
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+        // One buffer per pending chunk, plus one being filled
+        this.bufferPool = new ArrayBlockingQueue<>(numThreads * 2 + 1);
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            String fileName = path.toFile().getName();
+            long fileSize = getFileSize();
+            fileInputStream = new SizeInputStream(new BufferedInputStream(new FileInputStream(path.toFile())), fileSize);
+            if (fileName.endsWith(".gz") || fileName.endsWith(".bgz")) {
+                bgzf = isBgzf(path);
+                if (bgzf) {
+                    logger.debug("BGZF input compress");
+                    bgzfInputStream = new DataInputStream(fileInputStream);
+                } else {
+                    logger.debug("Gzip input compress. Unable to split the input file, inflating in one thread");
+                    inputStream = new GZIPInputStream(fileInputStream);
+                }
+            } else if (fileName.endsWith(".snappy") || fileName.endsWith(".snz")) {
+                logger.info("Snappy input compress. Unable to split the input file, inflating in one thread");
+                inputStream = new SnappyInputStream(fileInputStream);
+            } else {
+                logger.debug("Plain input compress");
+                inputStream = fileInputStream;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread t = new Thread(r, "string-reader-" + path.getFileName());
+            t.setDaemon(true);
+            return t;
+        });
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        pendingChunks.clear();
+        readyLines.clear();
+        bufferPool.clear();
+        try {
+            if (bgzf) {
+                bgzfInputStream.close();
+            } else if (inputStream != null) {
+                inputStream.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public List<String> read() {
+        return read(1);
+    }
+
+    @Override
+    public List<String> read(int batchSize) {
+        List<String> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize) {
+            if (readyLines.isEmpty() && !nextChunk()) {
+                break;
+            }
+            while (batch.size() < batchSize && !readyLines.isEmpty()) {
+                batch.add(readyLines.poll());
+                onReadLine();
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Takes the next decoded chunk, and moves its lines to the ready lines queue.
+     *
+     * @return false if there are no more chunks to read.
+     */
+    private boolean nextChunk() {
+        while (readyLines.isEmpty()) {
+            fillPendingChunks();
+            Future<Chunk> future = pendingChunks.poll();
+            if (future == null) {
+                // End of the file. Flush the last line, if it was not terminated by a line break
+                if (partialLine.size() > 0) {
+                    readyLines.add(toLine(partialLine.toByteArray(), 0, partialLine.size()));
+                    partialLine.reset();
+                    return true;
+                }
+                return false;
+            }
+            Chunk chunk;
+            try {
+                chunk = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw new UncheckedIOException((IOException) e.getCause());
+                } else if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else {
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+
+            partialLine.write(chunk.head, 0, chunk.head.length);
+            if (chunk.lineBreak) {
+                readyLines.add(toLine(partialLine.toByteArray(), 0, partialLine.size()));
+                readyLines.addAll(chunk.lines);
+                partialLine = new ByteArrayOutputStream(Math.max(32, chunk.tail.length));
+                partialLine.write(chunk.tail, 0, chunk.tail.length);
+            }
+            onReadBytes(chunk.fileOffset);
+        }
+        return true;
+    }
+
+    /**
+     * Read raw chunks from the input and submit them to the executor, until the queue of pending chunks is full.
+     */
+    private void fillPendingChunks() {
+        try {
+            while (!eof && pendingChunks.size() < numThreads * 2) {
+                Callable<Chunk> task = bgzf ? readBgzfChunk() : readPlainChunk();
+                if (task == null) {
+                    eof = true;
+                } else {
+                    pendingChunks.add(executor.submit(task));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Callable<Chunk> readPlainChunk() throws IOException {
+        byte[] buffer = takeBuffer();
+        int length = 0;
+        while (length < chunkSize) {
+            int read = inputStream.read(buffer, length, chunkSize - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        if (length == 0) {
+            releaseBuffer(buffer);
+            return null;
+        }
+        final int chunkLength = length;
+        final long fileOffset = fileInputStream.size() - fileInputStream.availableLong();
+        return () -> {
+            try {
+                return splitLines(buffer, chunkLength, fileOffset);
+            } finally {
+                releaseBuffer(buffer);
+            }
+        };
+    }
+
+    private Callable<Chunk> readBgzfChunk() throws IOException {
+        List<byte[]> blocks = new ArrayList<>(chunkSize / BGZF_MAX_BLOCK_SIZE + 1);
+        int uncompressedSize = 0;
+        while (uncompressedSize < chunkSize) {
+            byte[] block = readBgzfBlock(bgzfInputStream);
+            if (block == null) {
+                break;
+            }
+            blocks.add(block);
+            uncompressedSize += readIntLE(block, block.length - 4);
+        }
+        if (blocks.isEmpty()) {
+            return null;
+        }
+        final long fileOffset = fileInputStream.size() - fileInputStream.availableLong();
+        return () -> {
+            // Buffers have room for an extra block, so the last block always fits
+            byte[] buffer = takeBuffer();
+            int offset = 0;
+            Inflater inflater = new Inflater(true);
+            try {
+                for (byte[] block : blocks) {
+                    offset += inflateBgzfBlock(block, inflater, buffer, offset);
+                }
+                return splitLines(buffer, offset, fileOffset);
+            } finally {
+                inflater.end();
+                releaseBuffer(buffer);
+            }
+        };
+    }
+
+    private byte[] takeBuffer() {
+        byte[] buffer = bufferPool.poll();
+        if (buffer == null) {
+            buffer = new byte[chunkSize + BGZF_MAX_BLOCK_SIZE];
+        }
+        return buffer;
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        // If the pool is full, let the GC collect the buffer
+        bufferPool.offer(buffer);
+    }
+
+    private Chunk splitLines(byte[] buffer, int length, long fileOffset) {
+        int firstLineBreak = indexOf(buffer, 0, length);
+        if (firstLineBreak < 0) {
+            return new Chunk(Arrays.copyOf(buffer, length), Collections.emptyList(), new byte[0], false, fileOffset);
+        }
+        byte[] head = Arrays.copyOf(buffer, firstLineBreak);
+        List<String> lines = new ArrayList<>();
+        int start = firstLineBreak + 1;
+        int end = indexOf(buffer, start, length);
+        while (end >= 0) {
+            lines.add(toLine(buffer, start, end));
+            start = end + 1;
+            end = indexOf(buffer, start, length);
+        }
+        byte[] tail = Arrays.copyOfRange(buffer, start, length);
+        return new Chunk(head, lines, tail, true, fileOffset);
+    }
+
+    private String toLine(byte[] buffer, int start, int end) {
+        int length = end - start;
+        if (length > 0 && buffer[end - 1] == '\r') {
+            length--;
+        }
+        return new String(buffer, start, length, charset);
+    }
+
+    private static int indexOf(byte[] buffer, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (buffer[i] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void onReadBytes(long fileOffset) {
+        long delta = fileOffset - reportedBytes;
+        reportedBytes = fileOffset;
+        if (readBytesListener != null && delta > 0) {
+            readBytesListener.accept(fileOffset, delta);
+        }
+    }
+
+    /**
+     * Check if the given file is BGZF compressed, looking for the "BC" extra subfield in the first gzip header.
+     *
+     * @param path File to check
+     * @return If the file is BGZF compressed
+     * @throws IOException on error reading the file
+     */
+    public static boolean isBgzf(Path path) throws IOException {
+        try (DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile())))) {
+            byte[] header = new byte[GZIP_HEADER_LENGTH];
+            try {
+                is.readFully(header);
+            } catch (EOFException e) {
+                return false;
+            }
+            if (!isGzipWithExtraField(header)) {
+                return false;
+            }
+            byte[] extra = new byte[readShortLE(header, 10)];
+            is.readFully(extra);
+            return getBgzfBlockSize(extra) > 0;
+        }
+    }
+
+    /**
+     * Read a full BGZF block from the input stream.
+     *
+     * @param is    Input stream, positioned at the beginning of a block
+     * @return      The complete block, including gzip header and footer, or null at the end of the stream
+     * @throws IOException on error reading the file, or if the input is not BGZF
+     */
+    static byte[] readBgzfBlock(DataInputStream is) throws IOException {
+        byte[] header = new byte[GZIP_HEADER_LENGTH];
+        int read = is.read(header);
+        if (read < 0) {
+            return null;
+        } else if (read < header.length) {
+            is.readFully(header, read, header.length - read);
+        }
+        if (!isGzipWithExtraField(header)) {
+            throw new IOException("Malformed BGZF block. Invalid gzip header");
+        }
+        int xlen = readShortLE(header, 10);
+        byte[] extra = new byte[xlen];
+        is.readFully(extra);
+        int blockSize = getBgzfBlockSize(extra);
+        if (blockSize <= 0) {
+            throw new IOException("Malformed BGZF block. Missing BC extra subfield");
+        }
+        byte[] block = new byte[blockSize];
+        System.arraycopy(header, 0, block, 0, header.length);
+        System.arraycopy(extra, 0, block, header.length, extra.length);
+        is.readFully(block, header.length + extra.length, blockSize - header.length - extra.length);
+        return block;
+    }
+
+    /**
+     * Inflate one BGZF block into the given buffer.
+     *
+     * @param block     Complete BGZF block
+     * @param inflater  Inflater to use. Must be created with "nowrap"
+     * @param buffer    Output buffer
+     * @param offset    Offset in the output buffer
+     * @return          Number of inflated bytes
+     * @throws IOException if the block is corrupted
+     */
+    static int inflateBgzfBlock(byte[] block, Inflater inflater, byte[] buffer, int offset) throws IOException {
+        int dataStart = GZIP_HEADER_LENGTH + readShortLE(block, 10);
+        int dataLength = block.length - dataStart - GZIP_FOOTER_LENGTH;
+        int expectedCrc = readIntLE(block, block.length - 8);
+        int uncompressedSize = readIntLE(block, block.length - 4);
+        if (uncompressedSize == 0) {
+            return 0;
+        } else if (uncompressedSize > BGZF_MAX_BLOCK_SIZE || offset + uncompressedSize > buffer.length) {
+            throw new IOException("Malformed BGZF block. Unexpected block size " + uncompressedSize);
+        }
+        inflater.reset();
+        inflater.setInput(block, dataStart, dataLength);
+        int inflated = 0;
+        try {
+            while (inflated < uncompressedSize) {
+                int n = inflater.inflate(buffer, offset + inflated, uncompressedSize - inflated);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                inflated += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed BGZF block", e);
+        }
+        if (inflated != uncompressedSize) {
+            throw new IOException("Malformed BGZF block. Expected " + uncompressedSize + " bytes, got " + inflated);
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(buffer, offset, inflated);
+        if ((int) crc32.getValue() != expectedCrc) {
+            throw new IOException("Malformed BGZF block. CRC mismatch");
+        }
+        return inflated;
+    }
+
+    private static boolean isGzipWithExtraField(byte[] header) {
+        return (header[0] & 0xFF) == 0x1f
+                && (header[1] & 0xFF) == 0x8b
+                && header[2] == 8 // Deflate
+                && (header[3] & 4) != 0; // FEXTRA
+    }
+
+    /**
+     * Find the "BC" subfield in the gzip extra field.
+     *
+     * @param extra gzip extra field
+     * @return      Total size of the block, or -1 if not found
+     */
+    private static int getBgzfBlockSize(byte[] extra) {
+        int i = 0;
+        while (i + 4 <= extra.length) {
+            int subfieldLength = readShortLE(extra, i + 2);
+            if (extra[i] == BGZF_SI1 && extra[i + 1] == BGZF_SI2 && subfieldLength == 2 && i + 6 <= extra.length) {
+                return readShortLE(extra, i + 4) + 1;
+            }
+            i += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    private static int readShortLE(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int readIntLE(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF)
+                | ((bytes[offset + 1] & 0xFF) << 8)
+                | ((bytes[offset + 2] & 0xFF) << 16)
+                | ((bytes[offset + 3] & 0xFF) << 24);
+    }
+
+    /**
+     * Decoded chunk of the input file.
+     * Contains the bytes before the first line break, the complete lines, and the bytes after the last line break.
+     */
+    private static class Chunk {
+        private final byte[] head;
+        private final List<String> lines;
+        private final byte[] tail;
+        private final boolean lineBreak;
+        private final long fileOffset;
+
+        Chunk(byte[] head, List<String> lines, byte[] tail, boolean lineBreak, long fileOffset) {
+            this.head = head;
+            this.lines = lines;
+            this.tail = tail;
+            this.lineBreak = lineBreak;
+            this.fileOffset = fileOffset;
+        }
+    }
+}
@@ -41,7 +41,7 @@ public class StringDataReader implements DataReader<String> {
     protected long readLines = 0L;
     protected long lastAvailable = 0;
     private SizeInputStream sizeInputStream;
-    private BiConsumer<Long, Long> readBytesListener;
+    protected BiConsumer<Long, Long> readBytesListener;
     private BiConsumer<Long, Long> readLinesListener;
 
     public StringDataReader(Path path) {
@@ -190,14 +190,18 @@ public class StringDataReader implements DataReader<String> {
         @Override
         public int read(byte[] b) throws IOException {
             int read = in.read(b);
-            bytesRead += read;
+            if (read > 0) {
+                bytesRead += read;
+            }
             return read;
         }
 
         @Override
         public int read(byte[] b, int off, int len) throws IOException {
             int read = in.read(b, off, len);
-            bytesRead += read;
+            if (read > 0) {
+                bytesRead += read;
+            }
             return read;
         }
 
@@ -360,7 +360,9 @@ public class VariantStorageManager extends StorageManager {
                 result.getSamples(),
                 result.getSource(),
                 result.getApproximateCount(),
-                result.getApproximateCountSamplingSize());
+                result.getApproximateCountSamplingSize())
+                .setExplain(result.getExplain())
+                .setCursor(result.getCursor());
 
     }
 
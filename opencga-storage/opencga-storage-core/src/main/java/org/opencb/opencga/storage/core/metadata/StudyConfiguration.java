@@ -21,6 +21,7 @@ import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
+import com.google.common.collect.Maps;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
@@ -75,6 +76,10 @@ public class StudyConfiguration {
 
     private Logger logger = LoggerFactory.getLogger(StudyConfiguration.class);
 
+    // Only for snapshots. See StudyConfigurationManager
+    private boolean snapshot;
+    private volatile BiMap<String, Integer> indexedSamplesPositionCache;
+
     protected StudyConfiguration() {
     }
 
@@ -113,6 +118,23 @@ public class StudyConfiguration {
         return new StudyConfiguration(this);
     }
 
+    /**
+     * Creates a copy of this StudyConfiguration to be shared between readers.
+     * Snapshots must never be modified. Derived values, like the position of the indexed samples, are computed only once.
+     * Any copy of a snapshot obtained with {@link #newInstance()} is a regular modifiable StudyConfiguration.
+     *
+     * @return Read only copy
+     */
+    StudyConfiguration newSnapshot() {
+        StudyConfiguration studyConfiguration = newInstance();
+        studyConfiguration.snapshot = true;
+        return studyConfiguration;
+    }
+
+    boolean isSnapshot() {
+        return snapshot;
+    }
+
     public StudyConfiguration(int studyId, String studyName) {
         this(studyId, studyName, null, null, null, null);
     }
@@ -411,6 +433,18 @@ public class StudyConfiguration {
      */
     public static BiMap<String, Integer> getIndexedSamplesPosition(StudyConfiguration studyConfiguration, int... fileIds) {
         Objects.requireNonNull(studyConfiguration, "StudyConfiguration is required");
+        if (studyConfiguration.snapshot && fileIds.length == 0) {
+            BiMap<String, Integer> samplesPosition = studyConfiguration.indexedSamplesPositionCache;
+            if (samplesPosition == null) {
+                samplesPosition = Maps.unmodifiableBiMap(buildIndexedSamplesPosition(studyConfiguration));
+                studyConfiguration.indexedSamplesPositionCache = samplesPosition;
+            }
+            return samplesPosition;
+        }
+        return buildIndexedSamplesPosition(studyConfiguration, fileIds);
+    }
+
+    private static BiMap<String, Integer> buildIndexedSamplesPosition(StudyConfiguration studyConfiguration, int... fileIds) {
         BiMap<String, Integer> samplesPosition = HashBiMap.create(studyConfiguration.getSampleIds().size());
         BiMap<Integer, String> idSamples = studyConfiguration.sampleIds.inverse();
         for (Integer indexedFileId : studyConfiguration.getIndexedFiles()) {
@@ -40,6 +40,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Predicate;
 
@@ -59,8 +61,9 @@ public class StudyConfigurationManager implements AutoCloseable {
     private final StudyConfigurationAdaptor studyDBAdaptor;
     private VariantFileMetadataDBAdaptor fileDBAdaptor;
 
-    private final Map<String, StudyConfiguration> stringStudyConfigurationMap = new HashMap<>();
-    private final Map<Integer, StudyConfiguration> intStudyConfigurationMap = new HashMap<>();
+    private final ConcurrentMap<String, StudyConfigurationSnapshot> stringStudyConfigurationMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, StudyConfigurationSnapshot> intStudyConfigurationMap = new ConcurrentHashMap<>();
+    private volatile long cacheCheckInterval = 0;
 
     public StudyConfigurationManager(ProjectMetadataAdaptor projectDBAdaptor, StudyConfigurationAdaptor studyDBAdaptor,
                                      VariantFileMetadataDBAdaptor fileDBAdaptor) {
@@ -134,75 +137,88 @@ public class StudyConfigurationManager implements AutoCloseable {
         QueryResult<StudyConfiguration> result;
         final boolean cached = options != null && options.getBoolean(CACHED, false);
         final boolean readOnly = options != null && options.getBoolean(READ_ONLY, false);
-        if (stringStudyConfigurationMap.containsKey(studyName)) {
-            if (cached) {
-                StudyConfiguration studyConfiguration = stringStudyConfigurationMap.get(studyName);
-                if (!readOnly) {
-                    studyConfiguration = studyConfiguration.newInstance();
-                }
-                return new QueryResult<>(studyConfiguration.getStudyName(), 0, 1, 1, "", "", Collections.singletonList(studyConfiguration));
+        StudyConfigurationSnapshot snapshot = stringStudyConfigurationMap.get(studyName);
+        if (snapshot != null) {
+            if (cached || readOnly && snapshot.isRecent(cacheCheckInterval)) {
+                return snapshot.toQueryResult(readOnly);
             }
-            result = studyDBAdaptor.getStudyConfiguration(studyName, stringStudyConfigurationMap.get(studyName).getTimeStamp(), options);
+            result = studyDBAdaptor.getStudyConfiguration(studyName, snapshot.getTimeStamp(), options);
             if (result.getNumTotalResults() == 0) { //No changes. Return old value
-                StudyConfiguration studyConfiguration = stringStudyConfigurationMap.get(studyName);
-                if (!readOnly) {
-                    studyConfiguration = studyConfiguration.newInstance();
-                }
-                return new QueryResult<>(studyName, 0, 1, 1, "", "", Collections.singletonList(studyConfiguration));
+                snapshot.checked();
+                return snapshot.toQueryResult(readOnly);
             }
         } else {
             result = studyDBAdaptor.getStudyConfiguration(studyName, null, options);
         }
 
-        StudyConfiguration studyConfiguration = result.first();
-        if (studyConfiguration != null) {
-            intStudyConfigurationMap.put(studyConfiguration.getStudyId(), studyConfiguration);
-            stringStudyConfigurationMap.put(studyConfiguration.getStudyName(), studyConfiguration);
-            if (studyName != null && !studyName.equals(studyConfiguration.getStudyName())) {
-                stringStudyConfigurationMap.put(studyName, studyConfiguration);
-            }
-            if (!readOnly) {
-                result.setResult(Collections.singletonList(studyConfiguration.newInstance()));
-            }
-        }
-        return result;
-
+        return putSnapshot(result, studyName, readOnly);
     }
 
     public final QueryResult<StudyConfiguration> getStudyConfiguration(int studyId, QueryOptions options) {
         QueryResult<StudyConfiguration> result;
         final boolean cached = options != null && options.getBoolean(CACHED, false);
         final boolean readOnly = options != null && options.getBoolean(READ_ONLY, false);
-        if (intStudyConfigurationMap.containsKey(studyId)) {
-            if (cached) {
-                StudyConfiguration studyConfiguration = intStudyConfigurationMap.get(studyId);
-                if (!readOnly) {
-                    studyConfiguration = studyConfiguration.newInstance();
-                }
-                return new QueryResult<>(studyConfiguration.getStudyName(), 0, 1, 1, "", "", Collections.singletonList(studyConfiguration));
+        StudyConfigurationSnapshot snapshot = intStudyConfigurationMap.get(studyId);
+        if (snapshot != null) {
+            if (cached || readOnly && snapshot.isRecent(cacheCheckInterval)) {
+                return snapshot.toQueryResult(readOnly);
             }
-            result = studyDBAdaptor.getStudyConfiguration(studyId, intStudyConfigurationMap.get(studyId).getTimeStamp(), options);
+            result = studyDBAdaptor.getStudyConfiguration(studyId, snapshot.getTimeStamp(), options);
             if (result.getNumTotalResults() == 0) { //No changes. Return old value
-                StudyConfiguration studyConfiguration = intStudyConfigurationMap.get(studyId);
-                if (!readOnly) {
-                    studyConfiguration = studyConfiguration.newInstance();
-                }
-                return new QueryResult<>(studyConfiguration.getStudyName(), 0, 1, 1, "", "", Collections.singletonList(studyConfiguration));
+                snapshot.checked();
+                return snapshot.toQueryResult(readOnly);
             }
         } else {
             result = studyDBAdaptor.getStudyConfiguration(studyId, null, options);
         }
 
+        return putSnapshot(result, null, readOnly);
+    }
+
+    private QueryResult<StudyConfiguration> putSnapshot(QueryResult<StudyConfiguration> result, String alias, boolean readOnly) {
         StudyConfiguration studyConfiguration = result.first();
         if (studyConfiguration != null) {
-            intStudyConfigurationMap.put(studyConfiguration.getStudyId(), studyConfiguration);
-            stringStudyConfigurationMap.put(studyConfiguration.getStudyName(), studyConfiguration);
-            if (!readOnly) {
-                result.setResult(Collections.singletonList(studyConfiguration.newInstance()));
+            StudyConfigurationSnapshot snapshot = putSnapshot(studyConfiguration.newSnapshot(), alias);
+            // The StudyConfiguration read from the database is not shared. Only return the snapshot to read only callers.
+            if (readOnly) {
+                result.setResult(Collections.singletonList(snapshot.getStudyConfiguration()));
             }
         }
         return result;
+    }
+
+    /**
+     * Store a new snapshot of a StudyConfiguration in the cache, unless there is already a newer one.
+     *
+     * @param studyConfiguration Snapshot to store
+     * @param alias              Optional alternative name to find the study
+     * @return                   Snapshot in the cache
+     */
+    private StudyConfigurationSnapshot putSnapshot(StudyConfiguration studyConfiguration, String alias) {
+        StudyConfigurationSnapshot snapshot = intStudyConfigurationMap.merge(studyConfiguration.getStudyId(),
+                new StudyConfigurationSnapshot(studyConfiguration), StudyConfigurationSnapshot::newest);
+        stringStudyConfigurationMap.merge(studyConfiguration.getStudyName(), snapshot, StudyConfigurationSnapshot::newest);
+        if (alias != null && !alias.equals(studyConfiguration.getStudyName())) {
+            stringStudyConfigurationMap.merge(alias, snapshot, StudyConfigurationSnapshot::newest);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Minimum time between two checks of the cached StudyConfiguration against the database for {@link #READ_ONLY} readers.
+     * Changes made from this StudyConfigurationManager are visible immediately. Changes from other processes may take
+     * this time to be visible. Use 0 to check always.
+     *
+     * @param cacheCheckInterval Interval in milliseconds
+     * @return this
+     */
+    public StudyConfigurationManager setCacheCheckInterval(long cacheCheckInterval) {
+        this.cacheCheckInterval = cacheCheckInterval;
+        return this;
+    }
 
+    public long getCacheCheckInterval() {
+        return cacheCheckInterval;
     }
 
     public Thread buildShutdownHook(String jobOperationName, int studyId, Integer... files) {
@@ -246,9 +262,8 @@ public class StudyConfigurationManager implements AutoCloseable {
         }
 
         // Store a copy of the StudyConfiguration.
-        StudyConfiguration copy = studyConfiguration.newInstance();
-        stringStudyConfigurationMap.put(copy.getStudyName(), copy);
-        intStudyConfigurationMap.put(copy.getStudyId(), copy);
+        StudyConfiguration copy = studyConfiguration.newSnapshot();
+        putSnapshot(copy, null);
         return studyDBAdaptor.updateStudyConfiguration(copy, options);
     }
 
@@ -1117,4 +1132,45 @@ public class StudyConfigurationManager implements AutoCloseable {
     public void close() throws IOException {
         studyDBAdaptor.close();
     }
+
+    /**
+     * Cached StudyConfiguration. The StudyConfiguration is shared between all the {@link #READ_ONLY} readers,
+     * and is never modified. Writers get a copy, and store a new snapshot with {@link #updateStudyConfiguration}.
+     */
+    private static final class StudyConfigurationSnapshot {
+        private final StudyConfiguration studyConfiguration;
+        private volatile long lastCheck;
+
+        private StudyConfigurationSnapshot(StudyConfiguration studyConfiguration) {
+            this.studyConfiguration = studyConfiguration;
+            this.lastCheck = System.currentTimeMillis();
+        }
+
+        private StudyConfiguration getStudyConfiguration() {
+            return studyConfiguration;
+        }
+
+        private Long getTimeStamp() {
+            return studyConfiguration.getTimeStamp();
+        }
+
+        private boolean isRecent(long interval) {
+            return interval > 0 && System.currentTimeMillis() - lastCheck < interval;
+        }
+
+        private void checked() {
+            lastCheck = System.currentTimeMillis();
+        }
+
+        private QueryResult<StudyConfiguration> toQueryResult(boolean readOnly) {
+            StudyConfiguration sc = readOnly ? studyConfiguration : studyConfiguration.newInstance();
+            return new QueryResult<>(sc.getStudyName(), 0, 1, 1, "", "", Collections.singletonList(sc));
+        }
+
+        private static StudyConfigurationSnapshot newest(StudyConfigurationSnapshot old, StudyConfigurationSnapshot snapshot) {
+            long oldTimeStamp = old.getTimeStamp() == null ? Long.MIN_VALUE : old.getTimeStamp();
+            long newTimeStamp = snapshot.getTimeStamp() == null ? Long.MIN_VALUE : snapshot.getTimeStamp();
+            return newTimeStamp >= oldTimeStamp ? snapshot : old;
+        }
+    }
 }
@@ -39,6 +39,7 @@ import org.opencb.opencga.core.common.TimeUtils;
 import org.opencb.opencga.core.results.VariantQueryResult;
 import org.opencb.opencga.storage.core.StorageEngine;
 import org.opencb.opencga.storage.core.StoragePipelineResult;
+import org.opencb.opencga.storage.core.cache.CacheManager;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.exceptions.StoragePipelineException;
@@ -56,6 +57,8 @@ import org.opencb.opencga.storage.core.variant.io.VariantExporter;
 import org.opencb.opencga.storage.core.variant.io.VariantImporter;
 import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
 import org.opencb.opencga.storage.core.variant.io.VariantWriterFactory.VariantOutputFormat;
+import org.opencb.opencga.storage.core.variant.search.VariantQueryPlan;
+import org.opencb.opencga.storage.core.variant.search.VariantQueryPlanner;
 import org.opencb.opencga.storage.core.variant.search.VariantSearchModel;
 import org.opencb.opencga.storage.core.variant.search.solr.VariantSearchManager;
 import org.opencb.opencga.storage.core.variant.search.solr.VariantSearchManager.UseSearchIndex;
@@ -85,7 +88,13 @@ import static org.opencb.opencga.storage.core.variant.search.solr.VariantSearchU
 public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdaptor> implements VariantIterable {
 
     public static final String REMOVE_OPERATION_NAME = BatchFileOperation.Type.REMOVE.name().toLowerCase();
+    public static final String CACHE_TYPE = "var";
+    private static final String SEARCH_INDEX_LAST_COMMITTED = "search.index.lastCommitted";
+    private static final String CACHE_OPERATION = "cacheOperation";
+    private static final String CACHE_STUDY_VERSIONS = "cacheStudyVersions";
     private final AtomicReference<VariantSearchManager> variantSearchManager = new AtomicReference<>();
+    private final AtomicReference<CacheManager> cacheManager = new AtomicReference<>();
+    private final AtomicReference<VariantQueryPlanner> queryPlanner = new AtomicReference<>();
     private Logger logger = LoggerFactory.getLogger(VariantStorageEngine.class);
     private CellBaseUtils cellBaseUtils;
 
@@ -131,11 +140,21 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
 
         TRANSFORM_BATCH_SIZE("transform.batch.size", 200),
         TRANSFORM_THREADS("transform.threads", 4),
+        TRANSFORM_READ_THREADS("transform.read.threads", 2), // Threads used to decompress and split the input file into lines
         TRANSFORM_FORMAT("transform.format", "avro"),
+        INDEX_OVERLAPPED_TRANSFORMS("index.overlapped.transforms", 0), // Files transformed while loading the previous ones. 0 to disable
         LOAD_BATCH_SIZE("load.batch.size", 100),
         LOAD_THREADS("load.threads", 6),
         LOAD_SPLIT_DATA("load.split-data", false),
 
+        ITERATOR_THREADS("iterator.threads", 1),          // Threads reading from the database in exports and search index loads
+        // Threads encoding and compressing VCF exports. Opt in to more than 1 for parallel compression. 0 for the single threaded writer
+        EXPORT_VCF_THREADS("export.vcf.threads", 1),
+        EXPORT_VCF_INDEX("export.vcf.index", false),      // Create a tabix index of vcf.gz exports. Requires sorted variants
+        EXPORT_PARQUET_THREADS("export.parquet.threads", 4),          // Threads encoding parquet row groups
+        EXPORT_PARQUET_BATCH_SIZE("export.parquet.batchSize", 10000),  // Max number of variants per row group
+        EXPORT_PARQUET_COMPRESSION("export.parquet.compression", "snappy"),
+
         POST_LOAD_CHECK_SKIP("postLoad.check.skip", false),
 
         RELEASE("release", 1),
@@ -145,17 +164,30 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         CALCULATE_STATS("calculateStats", false),          //Calculate stats on the postLoad step
         OVERWRITE_STATS("overwriteStats", false),          //Overwrite stats already present
         UPDATE_STATS("updateStats", false),                //Calculate missing stats
+        STATS_INCREMENTAL("stats.incremental", false),     //Add or subtract the contribution of new or removed samples
         ANNOTATE("annotate", false),
 
         RESUME("resume", false),
 
         DEFAULT_TIMEOUT("dbadaptor.default_timeout", 10000), // Default timeout for DBAdaptor operations. Only used if none is provided.
         MAX_TIMEOUT("dbadaptor.max_timeout", 30000),         // Max allowed timeout for DBAdaptor operations
+        // Min time in milliseconds between checks of the cached StudyConfigurations against the database for read only operations
+        STUDY_CONFIGURATION_CACHE_CHECK_INTERVAL("metadata.cache.checkInterval", 1000),
 
         // Intersect options
         INTERSECT_ACTIVE("search.intersect.active", true),                       // Allow intersect queries with the SearchEngine (Solr)
         INTERSECT_ALWAYS("search.intersect.always", false),                      // Force intersect queries
         INTERSECT_PARAMS_THRESHOLD("search.intersect.params.threshold", 3),      // Minimum number of QueryParams in the query to intersect
+        INTERSECT_PREFETCH("search.intersect.prefetch", 4),                      // Batches of variants to fetch in advance from storage
+        INTERSECT_PLANNER("search.intersect.planner", true),                     // Use the cost based planner instead of the threshold
+        // Cost of fetching one variant by id from the storage engine, relative to scanning one variant
+        INTERSECT_PLANNER_LOOKUP_COST("search.intersect.planner.lookupCost", 10.0),
+        INTERSECT_PLANNER_STATS_TTL("search.intersect.planner.statsTtl", 3600000), // Time in milliseconds to cache the planner histograms
+
+        // Search index load options
+        SEARCH_LOAD_THREADS("search.load.threads", 4),                   // Threads converting variants to the search model
+        SEARCH_LOAD_SENDERS("search.load.senders", 2),                   // Max number of concurrent update requests to the SearchEngine
+        SEARCH_LOAD_COMMIT_INTERVAL("search.load.commitInterval", 60000), // Min time in milliseconds between commits
 
         APPROXIMATE_COUNT_SAMPLING_SIZE("approximateCountSamplingSize", 1000),
         APPROXIMATE_COUNT("approximateCount", false);
@@ -294,7 +326,14 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
     @Override
     public List<StoragePipelineResult> index(List<URI> inputFiles, URI outdirUri, boolean doExtract, boolean doTransform, boolean doLoad)
             throws StorageEngineException {
-        List<StoragePipelineResult> results = super.index(inputFiles, outdirUri, doExtract, doTransform, doLoad);
+        List<StoragePipelineResult> results;
+        try {
+            results = super.index(inputFiles, outdirUri, doExtract, doTransform, doLoad);
+        } finally {
+            if (doLoad) {
+                clearCache(getOptions().getString(Options.STUDY_ID.key()));
+            }
+        }
         if (doLoad) {
             annotateLoadedFiles(outdirUri, inputFiles, results, getOptions());
             calculateStatsForLoadedFiles(outdirUri, inputFiles, results, getOptions());
@@ -302,6 +341,11 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         return results;
     }
 
+    @Override
+    protected int getIndexOverlappedTransforms() {
+        return getOptions().getInt(Options.INDEX_OVERLAPPED_TRANSFORMS.key(), Options.INDEX_OVERLAPPED_TRANSFORMS.defaultValue());
+    }
+
     @Override
     public abstract VariantStoragePipeline newStoragePipeline(boolean connected) throws StorageEngineException;
 
@@ -316,7 +360,12 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
      */
     public void annotate(Query query, ObjectMap params) throws VariantAnnotatorException, StorageEngineException, IOException {
         VariantAnnotationManager annotationManager = newVariantAnnotationManager(params);
-        annotationManager.annotate(query, params);
+        try {
+            annotationManager.annotate(query, params);
+        } finally {
+            // Annotations are shared by all the studies
+            clearCache();
+        }
     }
 
     /**
@@ -418,7 +467,11 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
      */
     public void calculateStats(String study, List<String> cohorts, QueryOptions options) throws StorageEngineException, IOException {
         VariantStatisticsManager statisticsManager = newVariantStatisticsManager();
-        statisticsManager.calculateStatistics(study, cohorts, options);
+        try {
+            statisticsManager.calculateStatistics(study, cohorts, options);
+        } finally {
+            clearCache(study);
+        }
     }
 
     /**
@@ -513,15 +566,57 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
             // then, load variants
             queryOptions = queryOptions == null ? new QueryOptions() : new QueryOptions(queryOptions);
             queryOptions.put(QueryOptions.EXCLUDE, Arrays.asList(VariantField.STUDIES_SAMPLES_DATA, VariantField.STUDIES_FILES));
-            VariantDBIterator iterator = dbAdaptor.iterator(query, queryOptions);
+            // Sorted, so the load can be resumed from the last committed variant
+            queryOptions.put(QueryOptions.SORT, true);
+            StudyConfigurationManager scm = dbAdaptor.getStudyConfigurationManager();
+            // The checkpoint is only valid for the same collection and query
+            String checkpointKey = SEARCH_INDEX_LAST_COMMITTED + '.' + dbName + '.'
+                    + Integer.toHexString(VariantQueryCursor.queryHash(query));
+            if (queryOptions.getBoolean(Options.RESUME.key(), Options.RESUME.defaultValue())) {
+                ProjectMetadata projectMetadata = scm.getProjectMetadata().first();
+                if (projectMetadata != null && projectMetadata.getAttributes() != null
+                        && projectMetadata.getAttributes().containsKey(checkpointKey)) {
+                    String lastCommitted = projectMetadata.getAttributes().getString(checkpointKey);
+                    logger.info("Resume search index load after variant {}", lastCommitted);
+                    queryOptions.put(VariantQueryCursor.RESUME_AFTER, lastCommitted);
+                }
+            }
+            ObjectMap loadOptions = new ObjectMap(getOptions());
+            loadOptions.putAll(queryOptions);
+            int numThreads = queryOptions.getInt(Options.ITERATOR_THREADS.key(), Options.ITERATOR_THREADS.defaultValue());
+            VariantDBIterator iterator = dbAdaptor.parallelIterator(query, queryOptions, numThreads);
             ProgressLogger progressLogger = new ProgressLogger("Variants loaded in Solr:", () -> dbAdaptor.count(query).first(), 200);
-            variantSearchManager.load(dbName, iterator, progressLogger);
+            variantSearchManager.load(dbName, iterator, progressLogger, loadOptions,
+                    variantId -> updateSearchIndexCheckpoint(scm, checkpointKey, variantId));
+            // Load finished. Remove checkpoint
+            updateSearchIndexCheckpoint(scm, checkpointKey, null);
+            if (queryPlanner.get() != null) {
+                queryPlanner.get().invalidateStats();
+            }
         } else {
             throw new StorageEngineException("Solr is not alive!");
         }
         dbAdaptor.close();
     }
 
+    private void updateSearchIndexCheckpoint(StudyConfigurationManager scm, String checkpointKey, String variantId) {
+        try {
+            scm.lockAndUpdateProject(projectMetadata -> {
+                if (projectMetadata.getAttributes() == null) {
+                    projectMetadata.setAttributes(new ObjectMap());
+                }
+                if (variantId == null) {
+                    projectMetadata.getAttributes().remove(checkpointKey);
+                } else {
+                    projectMetadata.getAttributes().put(checkpointKey, variantId);
+                }
+                return projectMetadata;
+            });
+        } catch (StorageEngineException e) {
+            logger.warn("Unable to update the search index checkpoint to variant " + variantId, e);
+        }
+    }
+
     /**
      * Removes a file from the Variant Storage.
      *
@@ -567,6 +662,18 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
 
             return studyConfiguration;
         });
+
+        if (getOptions().getBoolean(Options.STATS_INCREMENTAL.key(), Options.STATS_INCREMENTAL.defaultValue())) {
+            VariantStatisticsManager statisticsManager = newVariantStatisticsManager();
+            if (statisticsManager instanceof DefaultVariantStatisticsManager) {
+                try {
+                    ((DefaultVariantStatisticsManager) statisticsManager)
+                            .subtractFilesStatistics(study, fileIds, new QueryOptions(getOptions()));
+                } finally {
+                    clearCache(study);
+                }
+            }
+        }
         return fileIds;
     }
 
@@ -578,9 +685,10 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
      *    Removes the files from indexed files list
      *    Removes the samples removed from the default cohort {@link StudyEntry#DEFAULT_COHORT}
      *      * Be aware that some samples can be in multiple files.
-     *    Invalidates the cohorts with removed samples
+     *    Invalidates the cohorts with removed samples, unless their stats were already subtracted. See {@link Options#STATS_INCREMENTAL}
      * If error:
      *    Updates remove status with ERROR
+     *    Invalidates the cohorts with subtracted stats
      *
      * @param study    Study
      * @param fileIds  Removed file ids
@@ -591,6 +699,22 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         getStudyConfigurationManager().lockAndUpdate(study, studyConfiguration -> {
             if (error) {
                 StudyConfigurationManager.setStatus(studyConfiguration, BatchFileOperation.Status.ERROR, REMOVE_OPERATION_NAME, fileIds);
+                // Stats may have been already subtracted. Invalidate them, as the files were not removed
+                Set<Integer> removedSamples = new HashSet<>();
+                for (Integer fileId : fileIds) {
+                    removedSamples.addAll(studyConfiguration.getSamplesInFiles().get(fileId));
+                }
+                List<Integer> invalidCohorts = new ArrayList<>();
+                for (Integer cohortId : studyConfiguration.getCalculatedStats()) {
+                    Set<Integer> statsSamples = VariantStatisticsManager.getStatsSamples(studyConfiguration, cohortId);
+                    if (statsSamples != null && Collections.disjoint(statsSamples, removedSamples)
+                            && !Collections.disjoint(studyConfiguration.getCohorts().get(cohortId), removedSamples)) {
+                        invalidCohorts.add(cohortId);
+                        VariantStatisticsManager.setStatsSamples(studyConfiguration, cohortId, null);
+                    }
+                }
+                studyConfiguration.getCalculatedStats().removeAll(invalidCohorts);
+                studyConfiguration.getInvalidStats().addAll(invalidCohorts);
             } else {
                 for (Integer fileId : fileIds) {
                     getDBAdaptor().getStudyConfigurationManager().deleteVariantFileMetadata(studyConfiguration.getStudyId(), fileId);
@@ -605,6 +729,12 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
                 List<Integer> invalidCohorts = new ArrayList<>();
                 for (Integer cohortId : studyConfiguration.getCalculatedStats()) {
                     Set<Integer> cohort = studyConfiguration.getCohorts().get(cohortId);
+                    Set<Integer> statsSamples = VariantStatisticsManager.getStatsSamples(studyConfiguration, cohortId);
+                    if (statsSamples != null && Collections.disjoint(statsSamples, removedSamples)) {
+                        // Contribution of the removed samples already subtracted from the stats
+                        cohort.removeAll(removedSamples);
+                        continue;
+                    }
                     for (Integer removedSample : removedSamples) {
                         if (cohort.contains(removedSample)) {
                             logger.info("Invalidating statistics of cohort "
@@ -625,6 +755,7 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
             }
             return studyConfiguration;
         });
+        clearCache(study);
     }
 
     /**
@@ -692,6 +823,31 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         return variantSearchManager.get();
     }
 
+    public VariantQueryPlanner getQueryPlanner() throws StorageEngineException {
+        if (queryPlanner.get() == null) {
+            synchronized (queryPlanner) {
+                if (queryPlanner.get() == null) {
+                    double lookupCost = getOptions().getDouble(INTERSECT_PLANNER_LOOKUP_COST.key(),
+                            INTERSECT_PLANNER_LOOKUP_COST.defaultValue());
+                    int statsTtl = getOptions().getInt(INTERSECT_PLANNER_STATS_TTL.key(), INTERSECT_PLANNER_STATS_TTL.defaultValue());
+                    queryPlanner.set(new VariantQueryPlanner(getVariantSearchManager(), dbName, getEngineIndexedParams(),
+                            lookupCost, statsTtl));
+                }
+            }
+        }
+        return queryPlanner.get();
+    }
+
+    /**
+     * Params that the storage engine can resolve without scanning all the variants.
+     * Used by the {@link VariantQueryPlanner} to estimate the cost of a query.
+     *
+     * @return Indexed params
+     */
+    protected Set<VariantQueryParam> getEngineIndexedParams() {
+        return VariantQueryPlanner.DEFAULT_ENGINE_INDEXED_PARAMS;
+    }
+
     public VariantQueryResult<Variant> getPhased(String variant, String studyName, String sampleName, QueryOptions options, int windowsSize)
             throws StorageEngineException {
         setDefaultTimeout(options);
@@ -712,16 +868,60 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
 
     public VariantQueryResult<Variant> get(Query query, QueryOptions options) {
         try {
-            return (VariantQueryResult<Variant>) getOrIterator(query, options, false);
+            options = VariantQueryCursor.resolve(query, options);
+            String cacheKey = getCacheKey(query, options, "get");
+            if (cacheKey != null) {
+                QueryResult<Variant> cachedResult = getCacheManager().getIfPresent(cacheKey);
+                if (cachedResult != null) {
+                    return (VariantQueryResult<Variant>) cachedResult;
+                }
+            }
+            boolean resumable = VariantQueryCursor.isResumable(options);
+            int limit = options == null ? 0 : options.getInt(QueryOptions.LIMIT, 0);
+            VariantQueryResult<Variant> result = (VariantQueryResult<Variant>) getOrIterator(query, options, false);
+            // Only results from the storage engine sorted in ascending order can be resumed after the last variant.
+            // Pages from the search engine follow its own order
+            if (resumable && limit > 0 && result.getNumResults() >= limit && !result.getResult().isEmpty()
+                    && !isSearchEngineResult(result)) {
+                Variant last = result.getResult().get(result.getResult().size() - 1);
+                result.setCursor(new VariantQueryCursor(query, 0, last.toString()).encode());
+            }
+            if (cacheKey != null) {
+                getCacheManager().set(cacheKey, query, result);
+            }
+            return result;
         } catch (StorageEngineException e) {
             throw VariantQueryException.internalException(e);
         }
     }
 
+    private static boolean isSearchEngineResult(VariantQueryResult<?> result) {
+        return result.getSource() != null && result.getSource().startsWith(SEARCH_ENGINE_ID);
+    }
+
     @Override
     public VariantDBIterator iterator(Query query, QueryOptions options) {
         try {
-            return (VariantDBIterator) getOrIterator(query, options, true);
+            return (VariantDBIterator) getOrIterator(query, VariantQueryCursor.resolve(query, options), true);
+        } catch (StorageEngineException e) {
+            throw VariantQueryException.internalException(e);
+        }
+    }
+
+    @Override
+    public VariantDBIterator parallelIterator(Query query, QueryOptions options, int numThreads) {
+        try {
+            if (options == null) {
+                options = QueryOptions.empty();
+            }
+            options = VariantQueryCursor.resolve(query, options);
+            Query preProcessedQuery = preProcessQuery(query, getStudyConfigurationManager());
+            if (numThreads > 1 && !options.containsKey(VariantQueryCursor.RESUME_AFTER)
+                    && !doQuerySearchManager(preProcessedQuery, options) && !doIntersectWithSearch(preProcessedQuery, options)) {
+                return getDBAdaptor().parallelIterator(preProcessedQuery, options, numThreads);
+            } else {
+                return iterator(query, options);
+            }
         } catch (StorageEngineException e) {
             throw VariantQueryException.internalException(e);
         }
@@ -731,20 +931,25 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         if (options == null) {
             options = QueryOptions.empty();
         }
-        // TODO: Use CacheManager ?
         query = preProcessQuery(query, getStudyConfigurationManager());
+        boolean explain = options.getBoolean(VariantQueryPlanner.EXPLAIN, false);
         if (doQuerySearchManager(query, options)) {
             try {
                 if (iterator) {
                     return getVariantSearchManager().iterator(dbName, query, options);
                 } else {
-                    return getVariantSearchManager().query(dbName, query, options);
+                    VariantQueryResult<Variant> queryResult = getVariantSearchManager().query(dbName, query, options);
+                    if (explain) {
+                        explain(queryResult, new VariantQueryPlan(VariantQueryPlan.Strategy.SEARCH, "Query covered by the search engine"));
+                    }
+                    return queryResult;
                 }
             } catch (IOException | VariantSearchException e) {
                 throw new VariantQueryException("Error querying Solr", e);
             }
         } else {
-            if (doIntersectWithSearch(query, options)) {
+            VariantQueryPlan plan = planIntersectWithSearch(query, options);
+            if (plan.getStrategy().equals(VariantQueryPlan.Strategy.INTERSECT)) {
                 // Intersect Solr+Engine
 
                 int limit = options.getInt(QueryOptions.LIMIT, 0);
@@ -794,6 +999,12 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
                 }
                 Query engineQuery = getEngineQuery(query, options, getStudyConfigurationManager());
 
+                if (!options.containsKey(MultiVariantDBIterator.PREFETCH)) {
+                    options = new QueryOptions(options);
+                    options.put(MultiVariantDBIterator.PREFETCH,
+                            getOptions().getInt(INTERSECT_PREFETCH.key(), INTERSECT_PREFETCH.defaultValue()));
+                }
+
                 VariantDBAdaptor dbAdaptor = getDBAdaptor();
                 logger.debug("Intersect query " + engineQuery.toJson() + " options " + options.toJson());
                 if (iterator) {
@@ -807,14 +1018,27 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
                         queryResult.setNumTotalResults(numTotalResults.longValue());
                     }
                     queryResult.setSource(SEARCH_ENGINE_ID + '+' + getStorageEngineId());
+                    if (explain) {
+                        explain(queryResult, plan);
+                    }
                     return queryResult;
                 }
             } else {
-                return getOrIteratorNotSearchIndex(query, options, iterator);
+                Object result = getOrIteratorNotSearchIndex(query, options, iterator);
+                if (explain && result instanceof VariantQueryResult) {
+                    explain((VariantQueryResult<?>) result, plan);
+                }
+                return result;
             }
         }
     }
 
+    private static void explain(VariantQueryResult<?> queryResult, VariantQueryPlan plan) {
+        long actualRows = queryResult.getNumTotalResults() >= 0 ? queryResult.getNumTotalResults() : queryResult.getNumResults();
+        plan.setSource(queryResult.getSource()).setActualRows(actualRows);
+        queryResult.setExplain(plan.toObjectMap());
+    }
+
     /**
      * The query won't use the search index, either because is not available, not necessary, or forbidden.
      *
@@ -848,6 +1072,7 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
      */
     protected boolean doQuerySearchManager(Query query, QueryOptions options) throws StorageEngineException {
         return !UseSearchIndex.from(options).equals(UseSearchIndex.NO) // YES or AUTO
+                && !options.containsKey(VariantQueryCursor.RESUME_AFTER) // Keyset pagination only in the storage engine
                 && isQueryCovered(query)
                 && (options.getBoolean(QueryOptions.COUNT) || isIncludeCovered(options))
                 && searchActiveAndAlive();
@@ -862,30 +1087,54 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
      * @throws StorageEngineException StorageEngineException
      */
     protected boolean doIntersectWithSearch(Query query, QueryOptions options) throws StorageEngineException {
+        return planIntersectWithSearch(query, options).getStrategy().equals(VariantQueryPlan.Strategy.INTERSECT);
+    }
+
+    /**
+     * Decide if a query should be resolved intersecting with SearchManager or only with the storage engine.
+     *
+     * @param query       Query
+     * @param options     QueryOptions
+     * @return            Query plan. Either {@link VariantQueryPlan.Strategy#INTERSECT} or {@link VariantQueryPlan.Strategy#ENGINE}
+     * @throws StorageEngineException StorageEngineException
+     */
+    protected VariantQueryPlan planIntersectWithSearch(Query query, QueryOptions options) throws StorageEngineException {
         UseSearchIndex useSearchIndex = UseSearchIndex.from(options);
 
-        final boolean intersect;
+        final VariantQueryPlan plan;
         boolean active = searchActiveAndAlive();
 
         if (!getOptions().getBoolean(INTERSECT_ACTIVE.key(), INTERSECT_ACTIVE.defaultValue()) || useSearchIndex.equals(UseSearchIndex.NO)) {
             // If intersect is not active, do not intersect.
-            intersect = false;
+            plan = new VariantQueryPlan(VariantQueryPlan.Strategy.ENGINE, "Intersect not active");
+        } else if (options.containsKey(VariantQueryCursor.RESUME_AFTER)) {
+            if (useSearchIndex.equals(UseSearchIndex.YES) || VariantQueryUtils.isValidParam(query, VariantQueryParam.ANNOT_TRAIT)) {
+                throw new VariantQueryException("Unable to resume queries requiring the search engine").setQuery(query);
+            }
+            plan = new VariantQueryPlan(VariantQueryPlan.Strategy.ENGINE, "Resumed query");
         } else if (getOptions().getBoolean(INTERSECT_ALWAYS.key(), INTERSECT_ALWAYS.defaultValue())) {
             // If always intersect, intersect if available
-            intersect = active;
+            plan = active
+                    ? new VariantQueryPlan(VariantQueryPlan.Strategy.INTERSECT, "Intersect always")
+                    : new VariantQueryPlan(VariantQueryPlan.Strategy.ENGINE, "Search engine not available");
         } else if (!active) {
-            intersect = false;
+            plan = new VariantQueryPlan(VariantQueryPlan.Strategy.ENGINE, "Search engine not available");
         } else if (useSearchIndex.equals(UseSearchIndex.YES) || VariantQueryUtils.isValidParam(query, VariantQueryParam.ANNOT_TRAIT)) {
-            intersect = true;
+            plan = new VariantQueryPlan(VariantQueryPlan.Strategy.INTERSECT, "Search engine required");
+        } else if (getOptions().getBoolean(INTERSECT_PLANNER.key(), INTERSECT_PLANNER.defaultValue())) {
+            VariantQueryPlan estimatedPlan;
+            try {
+                estimatedPlan = getQueryPlanner().plan(query);
+            } catch (IOException | VariantSearchException e) {
+                logger.warn("Unable to estimate the cost of the query. Using covered params threshold", e);
+                estimatedPlan = planByCoveredParams(query);
+            }
+            plan = estimatedPlan;
         } else {
-            // TODO: Improve this heuristic
-            // Count only real params
-            Collection<VariantQueryParam> coveredParams = coveredParams(query);
-            int intersectParamsThreshold = getOptions().getInt(INTERSECT_PARAMS_THRESHOLD.key(), INTERSECT_PARAMS_THRESHOLD.defaultValue());
-            intersect = coveredParams.size() >= intersectParamsThreshold;
+            plan = planByCoveredParams(query);
         }
 
-        if (!intersect) {
+        if (!plan.getStrategy().equals(VariantQueryPlan.Strategy.INTERSECT)) {
             if (useSearchIndex.equals(UseSearchIndex.YES)) {
                 throw new VariantQueryException("Unable to use search index. SearchEngine is not available");
             } else if (VariantQueryUtils.isValidParam(query, VariantQueryParam.ANNOT_TRAIT)) {
@@ -893,7 +1142,18 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
                         "Search engine is required.");
             }
         }
-        return intersect;
+        return plan;
+    }
+
+    private VariantQueryPlan planByCoveredParams(Query query) {
+        // Count only real params
+        Collection<VariantQueryParam> coveredParams = coveredParams(query);
+        int intersectParamsThreshold = getOptions().getInt(INTERSECT_PARAMS_THRESHOLD.key(), INTERSECT_PARAMS_THRESHOLD.defaultValue());
+        if (coveredParams.size() >= intersectParamsThreshold) {
+            return new VariantQueryPlan(VariantQueryPlan.Strategy.INTERSECT, "Covered params threshold");
+        } else {
+            return new VariantQueryPlan(VariantQueryPlan.Strategy.ENGINE, "Covered params threshold");
+        }
     }
 
     public QueryResult distinct(Query query, String field) throws StorageEngineException {
@@ -917,6 +1177,21 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
     }
 
     public QueryResult<Long> count(Query query) throws StorageEngineException {
+        String cacheKey = getCacheKey(query, null, "count");
+        if (cacheKey != null) {
+            QueryResult<Long> cachedResult = getCacheManager().getIfPresent(cacheKey);
+            if (cachedResult != null) {
+                return cachedResult;
+            }
+        }
+        QueryResult<Long> result = countNoCache(query);
+        if (cacheKey != null) {
+            getCacheManager().set(cacheKey, query, result);
+        }
+        return result;
+    }
+
+    private QueryResult<Long> countNoCache(Query query) throws StorageEngineException {
         query = preProcessQuery(query, getStudyConfigurationManager());
         if (!doQuerySearchManager(query, new QueryOptions(QueryOptions.COUNT, true))) {
             return getDBAdaptor().count(query);
@@ -999,6 +1274,130 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
         return facetedQueryResult;
     }
 
+    /**
+     * Cache of query results. Results are cached by {@link #get} and {@link #count}.
+     * See {@link org.opencb.opencga.storage.core.config.CacheConfiguration}.
+     *
+     * @return CacheManager
+     */
+    public CacheManager getCacheManager() {
+        if (cacheManager.get() == null) {
+            synchronized (cacheManager) {
+                if (cacheManager.get() == null) {
+                    cacheManager.set(new CacheManager(configuration, VariantStorageEngine::estimateCachedSize));
+                }
+            }
+        }
+        return cacheManager.get();
+    }
+
+    /**
+     * Build the key for caching the result of a query, or null if the query should not be cached.
+     *
+     * The key contains the timestamp of the StudyConfiguration of each study involved in the query,
+     * so any modification of the studies in other process (e.g. loading or removing files) generates a different key.
+     *
+     * @param query     Query
+     * @param options   QueryOptions
+     * @param operation Operation to cache
+     * @return          Cache key, or null
+     * @throws StorageEngineException StorageEngineException
+     */
+    protected String getCacheKey(Query query, QueryOptions options, String operation) throws StorageEngineException {
+        CacheManager cacheManager = getCacheManager();
+        if (!cacheManager.isActive() || !cacheManager.isTypeAllowed(CACHE_TYPE)
+                || options != null && !options.getBoolean(CacheManager.CACHE, true)) {
+            return null;
+        }
+        query = query == null ? new Query() : query;
+        options = options == null ? new QueryOptions() : new QueryOptions(options);
+
+        StudyConfigurationManager scm = getStudyConfigurationManager();
+        Map<String, Integer> studies = scm.getStudies(null);
+        Set<Integer> studyIds = new HashSet<>();
+        if (VariantQueryUtils.isValidParam(query, VariantQueryParam.STUDY)) {
+            // Results only depend on the filtered (or negated) and included studies
+            String value = query.getString(VariantQueryParam.STUDY.key());
+            for (String study : VariantQueryUtils.splitValue(value, VariantQueryUtils.checkOperator(value))) {
+                studyIds.add(scm.getStudyId(study, false, studies));
+            }
+            studyIds.addAll(VariantQueryUtils.getIncludeStudies(query, options, scm));
+        } else {
+            studyIds.addAll(studies.values());
+        }
+
+        List<String> versions = new ArrayList<>(studyIds.size());
+        for (Integer studyId : studyIds) {
+            StudyConfiguration sc = scm.getStudyConfiguration(studyId, new QueryOptions(StudyConfigurationManager.READ_ONLY, true))
+                    .first();
+            versions.add(studyId + ":" + (sc == null ? 0 : sc.getTimeStamp()));
+        }
+        options.put(CACHE_OPERATION, operation);
+        options.put(CACHE_STUDY_VERSIONS, versions);
+        return cacheManager.createKey(dbName + ":" + CacheManager.studiesKey(studyIds), CACHE_TYPE, query, options);
+    }
+
+    /**
+     * Remove all the cached results.
+     */
+    protected void clearCache() {
+        if (cacheManager.get() != null && cacheManager.get().isActive()) {
+            cacheManager.get().clear();
+        }
+    }
+
+    /**
+     * Remove the cached results involving the given study.
+     *
+     * @param study Study name or id
+     */
+    protected void clearCache(String study) {
+        if (StringUtils.isEmpty(study)) {
+            clearCache();
+        } else if (cacheManager.get() != null && cacheManager.get().isActive()) {
+            try {
+                Integer studyId = getStudyConfigurationManager().getStudyId(study, null, false);
+                cacheManager.get().clear(studyId, CACHE_TYPE);
+            } catch (RuntimeException | StorageEngineException e) {
+                logger.warn("Unable to clear cache from study " + study + ". Clear all cache", e);
+                clearCache();
+            }
+        }
+    }
+
+    /**
+     * Estimate the size in bytes of a cached element.
+     *
+     * @param o Element
+     * @return  Size in bytes
+     */
+    protected static long estimateCachedSize(Object o) {
+        if (o instanceof Variant) {
+            Variant variant = (Variant) o;
+            long size = 256;
+            for (StudyEntry studyEntry : variant.getStudies()) {
+                size += 128 + studyEntry.getFiles().size() * 256;
+                size += studyEntry.getSamplesData().size() * (32 + studyEntry.getFormat().size() * 16L);
+                size += studyEntry.getStats().size() * 256;
+            }
+            VariantAnnotation annotation = variant.getAnnotation();
+            if (annotation != null) {
+                size += 1024;
+                if (annotation.getConsequenceTypes() != null) {
+                    size += annotation.getConsequenceTypes().size() * 512;
+                }
+                if (annotation.getPopulationFrequencies() != null) {
+                    size += annotation.getPopulationFrequencies().size() * 128;
+                }
+            }
+            return size;
+        } else if (o instanceof Number) {
+            return 16;
+        } else {
+            return 1024;
+        }
+    }
+
     protected boolean searchActiveAndAlive() throws StorageEngineException {
         return configuration.getSearch().getActive() && getVariantSearchManager() != null && getVariantSearchManager().isAlive(dbName);
     }
@@ -1042,6 +1441,10 @@ public abstract class VariantStorageEngine extends StorageEngine<VariantDBAdapto
     @Override
     public void close() throws IOException {
         cellBaseUtils = null;
+        if (cacheManager.get() != null) {
+            cacheManager.get().close();
+            cacheManager.set(null);
+        }
         if (variantSearchManager.get() != null) {
             try {
                 variantSearchManager.get().close();
@@ -45,6 +45,7 @@ import org.opencb.hpg.bigdata.core.io.avro.AvroFileWriter;
 import org.opencb.opencga.storage.core.StoragePipeline;
 import org.opencb.opencga.storage.core.config.StorageConfiguration;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.io.plain.ParallelStringDataReader;
 import org.opencb.opencga.storage.core.io.plain.StringDataReader;
 import org.opencb.opencga.storage.core.io.plain.StringDataWriter;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
@@ -312,7 +313,7 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         if ("avro".equals(format)) {
 
             //Reader
-            StringDataReader dataReader = new StringDataReader(input);
+            StringDataReader dataReader = newStringDataReader(input);
             long fileSize = 0;
             try {
                 fileSize = dataReader.getFileSize();
@@ -376,7 +377,7 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
             end = System.currentTimeMillis();
         } else if ("json".equals(format)) {
             //Reader
-            StringDataReader dataReader = new StringDataReader(input);
+            StringDataReader dataReader = newStringDataReader(input);
             long fileSize = 0;
             try {
                 fileSize = dataReader.getFileSize();
@@ -454,6 +455,23 @@ public abstract class VariantStoragePipeline implements StoragePipeline {
         return outputUri.resolve(outputVariantsFile.getFileName().toString());
     }
 
+    /**
+     * Creates the reader for the raw input file.
+     * Uses a {@link ParallelStringDataReader} if more than one thread is configured with {@link Options#TRANSFORM_READ_THREADS}.
+     *
+     * @param input Input file
+     * @return      Line reader
+     */
+    protected StringDataReader newStringDataReader(Path input) {
+        int readThreads = options.getInt(Options.TRANSFORM_READ_THREADS.key(), Options.TRANSFORM_READ_THREADS.defaultValue());
+        if (readThreads > 1) {
+            logger.info("Reading input file with {} threads", readThreads);
+            return new ParallelStringDataReader(input, readThreads);
+        } else {
+            return new StringDataReader(input);
+        }
+    }
+
     protected VariantVcfFactory createVariantVcfFactory(String fileName) throws StorageEngineException {
         VariantVcfFactory factory;
         if (fileName.endsWith(".vcf") || fileName.endsWith(".vcf.gz") || fileName.endsWith(".vcf.snappy")) {
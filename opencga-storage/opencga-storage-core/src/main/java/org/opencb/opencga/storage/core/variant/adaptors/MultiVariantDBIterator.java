@@ -24,6 +24,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 
 /**
@@ -46,6 +48,20 @@ public class MultiVariantDBIterator extends VariantDBIterator {
     private boolean pendingSkip;
     // Count of returned results.
     private int numResults;
+
+    // Prefetch. Number of queries to execute in advance. If 0, queries are executed on demand.
+    private final int prefetch;
+    private final Deque<Future<BufferedVariantDBIterator>> pending = new LinkedList<>();
+    private ExecutorService executor;
+    // Number of variants per query. Only adapted when the queries are built from a variants iterator.
+    private final AtomicInteger batchSize;
+    private final int minBatchSize;
+
+    public static final String PREFETCH = "prefetch";
+    public static final int MAX_BATCH_SIZE = 5000;
+    // Queries faster than this will double the batch size. Queries taking more than twice will halve it.
+    public static final long TARGET_QUERY_TIME_MS = 500;
+
     private Logger logger = LoggerFactory.getLogger(MultiVariantDBIterator.class);
 
     /**
@@ -61,7 +77,33 @@ public class MultiVariantDBIterator extends VariantDBIterator {
     public MultiVariantDBIterator(Iterator<?> variantsIterator, int batchSize,
                                   Query query, QueryOptions options,
                                   BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory) {
-        this(buildQueryIterator(variantsIterator, batchSize, query), options, iteratorFactory);
+        this(variantsIterator, batchSize, query, options, iteratorFactory, 0);
+    }
+
+    /**
+     * Creates a multi iterator given a iterator of variants. It will apply the query (if any) to all the variants in the iterator.
+     * The iterator will group the variants in batches to split the query.
+     *
+     * If prefetch is enabled, up to "prefetch" queries are executed in advance by a pool of threads, and handed off in order.
+     * The batch size is then adapted to the time taken by each query, from the given batch size up to {@link #MAX_BATCH_SIZE}.
+     *
+     * @param variantsIterator  Iterator with all the variants to filter.
+     * @param batchSize         Number of variants to use in each query
+     * @param query             Base query.
+     * @param options           Query options to be used with the iterator factory
+     * @param iteratorFactory   Iterator factory. See {@link VariantDBAdaptor#iterator()}
+     * @param prefetch          Number of queries to execute in advance. 0 to disable
+     */
+    public MultiVariantDBIterator(Iterator<?> variantsIterator, int batchSize,
+                                  Query query, QueryOptions options,
+                                  BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory, int prefetch) {
+        this(variantsIterator, new AtomicInteger(batchSize), query, options, iteratorFactory, prefetch);
+    }
+
+    private MultiVariantDBIterator(Iterator<?> variantsIterator, AtomicInteger batchSize,
+                                   Query query, QueryOptions options,
+                                   BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory, int prefetch) {
+        this(buildQueryIterator(variantsIterator, batchSize, query), batchSize, options, iteratorFactory, prefetch);
     }
 
     /**
@@ -71,9 +113,28 @@ public class MultiVariantDBIterator extends VariantDBIterator {
      */
     public MultiVariantDBIterator(Iterator<Query> queryIterator, QueryOptions options,
                                   BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory) {
+        this(queryIterator, options, iteratorFactory, 0);
+    }
+
+    /**
+     * @param queryIterator   Query iterator. Provides queries to execute
+     * @param options         Query options to be used with the iterator factory
+     * @param iteratorFactory Iterator factory. See {@link VariantDBAdaptor#iterator()}
+     * @param prefetch        Number of queries to execute in advance. 0 to disable
+     */
+    public MultiVariantDBIterator(Iterator<Query> queryIterator, QueryOptions options,
+                                  BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory, int prefetch) {
+        this(queryIterator, null, options, iteratorFactory, prefetch);
+    }
+
+    private MultiVariantDBIterator(Iterator<Query> queryIterator, AtomicInteger batchSize, QueryOptions options,
+                                   BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory, int prefetch) {
         this.queryIterator = Objects.requireNonNull(queryIterator);
         this.options = options == null ? new QueryOptions() : new QueryOptions(options);
         this.iteratorFactory = Objects.requireNonNull(iteratorFactory);
+        this.prefetch = Math.max(0, prefetch);
+        this.batchSize = batchSize;
+        this.minBatchSize = batchSize == null ? 0 : batchSize.get();
         variantDBIterator = emptyIterator();
 
         int limit = this.options.getInt(QueryOptions.LIMIT, 0);
@@ -111,17 +172,14 @@ public class MultiVariantDBIterator extends VariantDBIterator {
      * Get the next non-empty valid {@link #variantDBIterator}. If none, use {@link #emptyIterator()}
      */
     private void nextVariantIterator() {
+        if (prefetch > 0) {
+            nextPrefetchedVariantIterator();
+            return;
+        }
         while (!fetch(variantDBIterator::hasNext) && fetch(queryIterator::hasNext)) {
             terminateIterator();
             Query query = fetch(queryIterator::next);
-            QueryOptions options;
-            if (maxResults != Integer.MAX_VALUE) {
-                // We are expecting no more than maxResults - numResults
-                // Modify the limit in the query
-                options = new QueryOptions(this.options).append(QueryOptions.LIMIT, maxResults - numResults);
-            } else {
-                options = this.options;
-            }
+            QueryOptions options = getIteratorOptions();
             variantDBIterator = fetch(() -> iteratorFactory.apply(query, options));
         }
         if (!fetch(variantDBIterator::hasNext)) {
@@ -129,6 +187,83 @@ public class MultiVariantDBIterator extends VariantDBIterator {
         }
     }
 
+    private QueryOptions getIteratorOptions() {
+        if (maxResults != Integer.MAX_VALUE) {
+            // We are expecting no more than maxResults - numResults
+            // Modify the limit in the query
+            return new QueryOptions(this.options).append(QueryOptions.LIMIT, maxResults - numResults);
+        } else {
+            return this.options;
+        }
+    }
+
+    /**
+     * Get the next non-empty prefetched iterator. The time fetching and converting of each iterator is accounted
+     * by the thread executing the query, and accumulated when the iterator is terminated.
+     */
+    private void nextPrefetchedVariantIterator() {
+        fillPrefetchQueue();
+        while (!variantDBIterator.hasNext() && !pending.isEmpty()) {
+            terminateIterator();
+            BufferedVariantDBIterator iterator;
+            try {
+                iterator = pending.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+            adaptBatchSize(iterator.getQueryTime());
+            variantDBIterator = iterator;
+            fillPrefetchQueue();
+        }
+        if (!variantDBIterator.hasNext()) {
+            terminateIterator();
+        }
+    }
+
+    private void fillPrefetchQueue() {
+        while (pending.size() < prefetch && fetch(queryIterator::hasNext)) {
+            if (executor == null) {
+                executor = Executors.newFixedThreadPool(prefetch, r -> {
+                    Thread thread = new Thread(r, "multi-iterator-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            Query query = fetch(queryIterator::next);
+            QueryOptions options = getIteratorOptions();
+            pending.add(executor.submit(() -> {
+                long start = System.nanoTime();
+                try (VariantDBIterator iterator = iteratorFactory.apply(query, options)) {
+                    List<Variant> variants = new ArrayList<>();
+                    iterator.forEachRemaining(variants::add);
+                    return new BufferedVariantDBIterator(variants, iterator.getTimeFetching(), iterator.getTimeConverting(),
+                            System.nanoTime() - start);
+                }
+            }));
+        }
+    }
+
+    private void adaptBatchSize(long queryTime) {
+        if (batchSize == null) {
+            return;
+        }
+        long queryTimeMs = TimeUnit.NANOSECONDS.toMillis(queryTime);
+        int currentBatchSize = batchSize.get();
+        int newBatchSize = currentBatchSize;
+        if (queryTimeMs < TARGET_QUERY_TIME_MS) {
+            newBatchSize = Math.max(currentBatchSize, Math.min(MAX_BATCH_SIZE, currentBatchSize * 2));
+        } else if (queryTimeMs > TARGET_QUERY_TIME_MS * 2) {
+            newBatchSize = Math.max(minBatchSize, currentBatchSize / 2);
+        }
+        if (newBatchSize != currentBatchSize) {
+            logger.debug("Query took {}ms. Change batch size from {} to {}", queryTimeMs, currentBatchSize, newBatchSize);
+            batchSize.set(newBatchSize);
+        }
+    }
+
     private void terminateIterator() {
         // Accumulate statistics from previous iterator.
         timeFetching += variantDBIterator.getTimeFetching();
@@ -163,6 +298,19 @@ public class MultiVariantDBIterator extends VariantDBIterator {
         return timeFetching + variantDBIterator.getTimeFetching();
     }
 
+    @Override
+    public void close() throws Exception {
+        super.close();
+        terminateIterator();
+        for (Future<BufferedVariantDBIterator> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Client side skip.
      */
@@ -183,7 +331,7 @@ public class MultiVariantDBIterator extends VariantDBIterator {
         }
     }
 
-    private static Iterator<Query> buildQueryIterator(Iterator<?> variantsIterator, int batchSize, Query query) {
+    private static Iterator<Query> buildQueryIterator(Iterator<?> variantsIterator, AtomicInteger batchSize, Query query) {
         Objects.requireNonNull(variantsIterator);
         return new Iterator<Query>() {
             @Override
@@ -199,15 +347,45 @@ public class MultiVariantDBIterator extends VariantDBIterator {
                 } else {
                     newQuery = new Query(query);
                 }
-                List<Object> variants = new ArrayList<>(batchSize);
+                int size = batchSize.get();
+                List<Object> variants = new ArrayList<>(size);
                 do {
                     // Always execute "next" over variantsIterator, to fail if empty
                     variants.add(variantsIterator.next());
-                } while (variantsIterator.hasNext() && variants.size() < batchSize);
+                } while (variantsIterator.hasNext() && variants.size() < size);
                 newQuery.append(VariantQueryParam.ID.key(), variants);
                 return newQuery;
             }
         };
     }
 
+    /**
+     * Iterator over the variants of an already executed query.
+     */
+    private static class BufferedVariantDBIterator extends VariantDBIterator {
+        private final Iterator<Variant> iterator;
+        private final long queryTime;
+
+        BufferedVariantDBIterator(List<Variant> variants, long timeFetching, long timeConverting, long queryTime) {
+            this.iterator = variants.iterator();
+            this.timeFetching = timeFetching;
+            this.timeConverting = timeConverting;
+            this.queryTime = queryTime;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Variant next() {
+            return iterator.next();
+        }
+
+        long getQueryTime() {
+            return queryTime;
+        }
+    }
+
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.adaptors;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * Iterates a list of disjoint queries, each one on its own iterator and thread.
+ *
+ * If the queries are sorted, and are read in order (see {@link #ParallelVariantDBIterator(List, QueryOptions, BiFunction, int, boolean)}),
+ * the output order is the concatenation of the output of each query. Otherwise, variants are returned as soon as they are read.
+ *
+ * Created on 17/10/26.
+ */
+public class ParallelVariantDBIterator extends VariantDBIterator {
+
+    private static final int BATCH_SIZE = 100;
+    private static final int BUFFERED_BATCHES = 10;
+    // Marks the end of a partition. Compared by reference.
+    private static final List<Variant> END_OF_PARTITION = Collections.unmodifiableList(new ArrayList<>());
+
+    private final boolean ordered;
+    private final int numPartitions;
+    private final List<BlockingQueue<List<Variant>>> queues;
+    private final ExecutorService executor;
+    private final AtomicReference<RuntimeException> exception = new AtomicReference<>();
+    private volatile boolean closed = false;
+
+    private int currentQueue = 0;
+    private int finishedPartitions = 0;
+    private Iterator<Variant> batch = Collections.emptyIterator();
+    private final Logger logger = LoggerFactory.getLogger(ParallelVariantDBIterator.class);
+
+    /**
+     * @param queries         Disjoint queries. Each one is read by a different iterator
+     * @param options         Query options to be used with the iterator factory
+     * @param iteratorFactory Iterator factory. See {@link VariantDBAdaptor#iterator()}
+     * @param numThreads      Max number of queries to read at the same time
+     * @param ordered         Return the variants of each query in the given order. Otherwise, return as soon as they are read
+     */
+    public ParallelVariantDBIterator(List<Query> queries, QueryOptions options,
+                                     BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory,
+                                     int numThreads, boolean ordered) {
+        Objects.requireNonNull(queries);
+        Objects.requireNonNull(iteratorFactory);
+        this.ordered = ordered;
+        numPartitions = queries.size();
+        numThreads = Math.max(1, Math.min(numThreads, numPartitions));
+
+        if (ordered) {
+            queues = new ArrayList<>(numPartitions);
+            for (int i = 0; i < numPartitions; i++) {
+                queues.add(new ArrayBlockingQueue<>(BUFFERED_BATCHES));
+            }
+        } else {
+            queues = Collections.singletonList(new ArrayBlockingQueue<>(BUFFERED_BATCHES * numThreads));
+        }
+
+        executor = Executors.newFixedThreadPool(numThreads, r -> {
+            Thread thread = new Thread(r, "parallel-variant-iterator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Tasks are started in order, so the partition being consumed is always running or finished
+        for (int i = 0; i < numPartitions; i++) {
+            Query query = queries.get(i);
+            BlockingQueue<List<Variant>> queue = ordered ? queues.get(i) : queues.get(0);
+            QueryOptions partitionOptions = options == null ? new QueryOptions() : new QueryOptions(options);
+            executor.submit(() -> readPartition(query, partitionOptions, iteratorFactory, queue));
+        }
+        executor.shutdown();
+    }
+
+    private void readPartition(Query query, QueryOptions options, BiFunction<Query, QueryOptions, VariantDBIterator> iteratorFactory,
+                               BlockingQueue<List<Variant>> queue) {
+        try {
+            if (closed || exception.get() != null) {
+                return;
+            }
+            try (VariantDBIterator iterator = iteratorFactory.apply(query, options)) {
+                List<Variant> variants = new ArrayList<>(BATCH_SIZE);
+                while (!closed && iterator.hasNext()) {
+                    variants.add(iterator.next());
+                    if (variants.size() == BATCH_SIZE) {
+                        queue.put(variants);
+                        variants = new ArrayList<>(BATCH_SIZE);
+                    }
+                }
+                if (!variants.isEmpty()) {
+                    queue.put(variants);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error("Error reading partition " + query.toJson(), e);
+            exception.compareAndSet(null, e);
+        } catch (Exception e) {
+            logger.error("Error reading partition " + query.toJson(), e);
+            exception.compareAndSet(null, new RuntimeException(e));
+        } finally {
+            if (!closed) {
+                try {
+                    queue.put(END_OF_PARTITION);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!batch.hasNext()) {
+            if (finishedPartitions == numPartitions) {
+                return false;
+            }
+            List<Variant> variants = fetch(this::take);
+            if (variants == END_OF_PARTITION) {
+                finishedPartitions++;
+                if (ordered) {
+                    currentQueue++;
+                }
+                RuntimeException e = exception.get();
+                if (e != null) {
+                    throw e;
+                }
+            } else {
+                batch = variants.iterator();
+            }
+        }
+        return true;
+    }
+
+    private List<Variant> take() {
+        try {
+            return queues.get(currentQueue).take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public Variant next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.next();
+    }
+
+    @Override
+    public void close() throws Exception {
+        super.close();
+        closed = true;
+        executor.shutdownNow();
+        if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            logger.warn("Timeout waiting for the parallel iterator threads to finish");
+        }
+    }
+}
@@ -46,11 +46,25 @@ public interface VariantIterable extends Iterable<Variant> {
     }
 
     default VariantDBIterator iterator(Iterator<?> variants, Query query, QueryOptions options, int batchSize) {
-        return new MultiVariantDBIterator(variants, batchSize, query, options, this::iterator);
+        int prefetch = options == null ? 0 : options.getInt(MultiVariantDBIterator.PREFETCH, 0);
+        return new MultiVariantDBIterator(variants, batchSize, query, options, this::iterator, prefetch);
     }
 
     VariantDBIterator iterator(Query query, QueryOptions options);
 
+    /**
+     * Iterator reading the variants with multiple threads, if supported.
+     * The returned variants are sorted only if {@link QueryOptions#SORT} is requested.
+     *
+     * @param query      Query
+     * @param options    QueryOptions
+     * @param numThreads Max number of threads reading from the database
+     * @return           Variant iterator
+     */
+    default VariantDBIterator parallelIterator(Query query, QueryOptions options, int numThreads) {
+        return iterator(query, options);
+    }
+
     default Stream<Variant> stream() {
         return StreamSupport.stream(spliterator(), false);
     }
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.adaptors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Opaque token to resume a variant query after the last variant returned by a previous response.
+ *
+ * Queries are resumed with keyset pagination: the next call only reads variants strictly greater than the last one, in the
+ * natural order of the storage engine, instead of reading and discarding all the previous results.
+ *
+ * The token is bound to the query that generated it. Trying to resume a different query will fail.
+ *
+ * Created on 17/10/26.
+ */
+public final class VariantQueryCursor {
+
+    /**
+     * QueryOption with the cursor to resume the query from.
+     */
+    public static final String CURSOR = "cursor";
+    /**
+     * Internal QueryOption, with the variant to resume the query after. Read by the VariantDBAdaptors.
+     */
+    public static final String RESUME_AFTER = "resumeAfter";
+
+    private static final String VERSION = "2";
+    private static final String SEPARATOR = "|";
+
+    private final int queryHash;
+    private final long limit;
+    private final String lastVariant;
+
+    /**
+     * @param query       Query being iterated
+     * @param limit       Remaining number of results. Negative or zero if unlimited
+     * @param lastVariant Last variant returned
+     */
+    public VariantQueryCursor(Query query, long limit, String lastVariant) {
+        this(queryHash(query), limit, lastVariant);
+    }
+
+    private VariantQueryCursor(int queryHash, long limit, String lastVariant) {
+        this.queryHash = queryHash;
+        this.limit = limit;
+        this.lastVariant = lastVariant;
+    }
+
+    /**
+     * Decodes a token generated with {@link #encode()}.
+     *
+     * @param token Token to decode
+     * @param query Query to resume. Must be the same query that generated the token
+     * @return      The cursor
+     * @throws VariantQueryException if the token is malformed or belongs to a different query
+     */
+    public static VariantQueryCursor decode(String token, Query query) {
+        String[] split;
+        try {
+            split = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", 4);
+        } catch (IllegalArgumentException e) {
+            throw new VariantQueryException("Malformed cursor '" + token + "'", e);
+        }
+        if (split.length != 4 || !split[0].equals(VERSION) || split[3].isEmpty()) {
+            throw new VariantQueryException("Malformed cursor '" + token + "'");
+        }
+        VariantQueryCursor cursor;
+        try {
+            cursor = new VariantQueryCursor(Integer.parseUnsignedInt(split[1], 16), Long.parseLong(split[2]), split[3]);
+        } catch (NumberFormatException e) {
+            throw new VariantQueryException("Malformed cursor '" + token + "'", e);
+        }
+        if (cursor.queryHash != queryHash(query)) {
+            throw new VariantQueryException("Cursor '" + token + "' does not belong to the given query").setQuery(query);
+        }
+        return cursor;
+    }
+
+    public String encode() {
+        String value = VERSION + SEPARATOR + Integer.toHexString(queryHash) + SEPARATOR + limit + SEPARATOR + lastVariant;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Replaces the {@link #CURSOR}, if any, with the internal options to resume the query.
+     * Resumed queries are always sorted in ascending order, and ignore the skip.
+     *
+     * @param query   Query
+     * @param options QueryOptions
+     * @return        Same options if there is no cursor, or a modified copy
+     */
+    public static QueryOptions resolve(Query query, QueryOptions options) {
+        if (options == null || StringUtils.isEmpty(options.getString(CURSOR))) {
+            return options;
+        }
+        VariantQueryCursor cursor = decode(options.getString(CURSOR), query);
+        if (QueryOptions.DESCENDING.equals(options.getString(QueryOptions.ORDER))) {
+            throw new VariantQueryException("Unable to resume a query in " + QueryOptions.DESCENDING + " order").setQuery(query);
+        }
+        options = new QueryOptions(options);
+        options.remove(CURSOR);
+        options.remove(QueryOptions.SKIP);
+        options.put(QueryOptions.SORT, true);
+        options.put(RESUME_AFTER, cursor.getLastVariant());
+        if (cursor.getLimit() > 0 && options.getInt(QueryOptions.LIMIT, 0) <= 0) {
+            options.put(QueryOptions.LIMIT, cursor.getLimit());
+        }
+        return options;
+    }
+
+    /**
+     * Only queries sorted in ascending order can be resumed, as the queries are always resumed in ascending order.
+     *
+     * @param options QueryOptions
+     * @return        If the query can be resumed with a cursor
+     */
+    public static boolean isResumable(QueryOptions options) {
+        return options != null && options.getBoolean(QueryOptions.SORT, false)
+                && !QueryOptions.DESCENDING.equals(options.getString(QueryOptions.ORDER));
+    }
+
+    /**
+     * @param options QueryOptions
+     * @return        Variant to resume the query after, or null if none
+     */
+    public static Variant getResumeAfter(QueryOptions options) {
+        if (options == null || StringUtils.isEmpty(options.getString(RESUME_AFTER))) {
+            return null;
+        }
+        try {
+            return new Variant(options.getString(RESUME_AFTER));
+        } catch (RuntimeException e) {
+            throw new VariantQueryException("Malformed variant to resume the query after '"
+                    + options.getString(RESUME_AFTER) + "'", e);
+        }
+    }
+
+    /**
+     * Hash of the query independent of the order of the params. Empty params are ignored.
+     *
+     * @param query Query
+     * @return      Hash of the query
+     */
+    public static int queryHash(Query query) {
+        Map<String, String> params = new TreeMap<>();
+        if (query != null) {
+            for (Map.Entry<String, Object> entry : query.entrySet()) {
+                Object value = entry.getValue();
+                if (value != null && !(value instanceof String && ((String) value).isEmpty()
+                        || value instanceof Collection && ((Collection) value).isEmpty())) {
+                    params.put(entry.getKey(), String.valueOf(value));
+                }
+            }
+        }
+        return params.toString().hashCode();
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public String getLastVariant() {
+        return lastVariant;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -496,7 +496,8 @@ public final class VariantQueryUtils {
 
 
             if (studyIds.size() == 1) {
-                defaultStudyConfiguration = studyConfigurationManager.getStudyConfiguration(studyIds.get(0), null).first();
+                defaultStudyConfiguration = studyConfigurationManager.getStudyConfiguration(studyIds.get(0),
+                        new QueryOptions(StudyConfigurationManager.READ_ONLY, true)).first();
             } else {
                 defaultStudyConfiguration = null;
             }
@@ -710,7 +711,7 @@ public final class VariantQueryUtils {
     public static Map<String, List<String>> getSamplesMetadata(Query query, StudyConfigurationManager studyConfigurationManager) {
         List<Integer> includeStudies = getIncludeStudies(query, null, studyConfigurationManager);
         Function<Integer, StudyConfiguration> studyProvider = studyId ->
-                studyConfigurationManager.getStudyConfiguration(studyId, null).first();
+                studyConfigurationManager.getStudyConfiguration(studyId, new QueryOptions(StudyConfigurationManager.READ_ONLY, true)).first();
         return getIncludeSamples(query, null, includeStudies, studyProvider, (sc, s) -> s, StudyConfiguration::getStudyName);
     }
 
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.commons.ProgressLogger;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.opencga.storage.core.variant.annotation.annotators.VariantAnnotator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Annotation task that keeps multiple requests in flight.
+ *
+ * Each batch received from the {@link ParallelTaskRunner} is split in sub-batches, which are annotated concurrently,
+ * with up to {@link #IN_FLIGHT} requests at the same time. The size of the sub-batches is adapted to the observed
+ * latency, trying to keep each request close to {@link #TARGET_LATENCY}, and limited by the request payload.
+ *
+ * Failed sub-batches are split in two halves and retried. Single variants that can not be annotated are skipped,
+ * up to {@link #MAX_FAILED_VARIANTS}.
+ *
+ * Created on 17/10/26.
+ */
+public class AsyncVariantAnnotationTask
+        implements ParallelTaskRunner.TaskWithException<Variant, VariantAnnotation, VariantAnnotatorException> {
+
+    public static final String IN_FLIGHT = "annotation.async.in_flight";
+    public static final int DEFAULT_IN_FLIGHT = 4;
+    public static final String TARGET_LATENCY = "annotation.async.target_latency_ms";
+    public static final long DEFAULT_TARGET_LATENCY = 5000;
+    public static final String MIN_BATCH_SIZE = "annotation.async.min_batch_size";
+    public static final int DEFAULT_MIN_BATCH_SIZE = 10;
+    public static final String MAX_BATCH_SIZE = "annotation.async.max_batch_size";
+    public static final int DEFAULT_MAX_BATCH_SIZE = 2000;
+    // Estimated size of the request, in bytes
+    public static final String MAX_PAYLOAD = "annotation.async.max_payload";
+    public static final long DEFAULT_MAX_PAYLOAD = 1024 * 1024;
+    public static final String MAX_FAILED_VARIANTS = "annotation.async.max_failed_variants";
+    public static final int DEFAULT_MAX_FAILED_VARIANTS = 100;
+
+    private static final int VARIANT_PAYLOAD_OVERHEAD = 20;
+    private static Logger logger = LoggerFactory.getLogger(AsyncVariantAnnotationTask.class);
+
+    private final VariantAnnotator variantAnnotator;
+    private final int inFlight;
+    private final long targetLatency;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long maxPayload;
+    private final int maxFailedVariants;
+    private final AtomicInteger batchSize;
+    private final AtomicInteger failedVariants = new AtomicInteger();
+    private final AtomicLong numVariants = new AtomicLong();
+    private ProgressLogger progressLogger;
+    private ExecutorService executor;
+
+    public AsyncVariantAnnotationTask(VariantAnnotator variantAnnotator, int batchSize, ObjectMap params) {
+        this.variantAnnotator = variantAnnotator;
+        inFlight = Math.max(1, params.getInt(IN_FLIGHT, DEFAULT_IN_FLIGHT));
+        targetLatency = params.getLong(TARGET_LATENCY, DEFAULT_TARGET_LATENCY);
+        minBatchSize = Math.max(1, params.getInt(MIN_BATCH_SIZE, DEFAULT_MIN_BATCH_SIZE));
+        maxBatchSize = Math.max(minBatchSize, params.getInt(MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE));
+        maxPayload = params.getLong(MAX_PAYLOAD, DEFAULT_MAX_PAYLOAD);
+        maxFailedVariants = params.getInt(MAX_FAILED_VARIANTS, DEFAULT_MAX_FAILED_VARIANTS);
+        this.batchSize = new AtomicInteger(Math.min(maxBatchSize, Math.max(minBatchSize, batchSize)));
+    }
+
+    public AsyncVariantAnnotationTask setProgressLogger(ProgressLogger progressLogger) {
+        this.progressLogger = progressLogger;
+        return this;
+    }
+
+    @Override
+    public void pre() {
+        getExecutor();
+    }
+
+    @Override
+    public List<VariantAnnotation> apply(List<Variant> variants) throws VariantAnnotatorException {
+        List<Future<List<VariantAnnotation>>> futures = new ArrayList<>();
+        for (List<Variant> subBatch : split(variants)) {
+            futures.add(getExecutor().submit(() -> annotate(subBatch)));
+        }
+
+        List<VariantAnnotation> variantAnnotations = new ArrayList<>(variants.size());
+        try {
+            for (Future<List<VariantAnnotation>> future : futures) {
+                variantAnnotations.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new VariantAnnotatorException("Interrupted annotation", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            if (e.getCause() instanceof VariantAnnotatorException) {
+                throw (VariantAnnotatorException) e.getCause();
+            } else {
+                throw new VariantAnnotatorException("Error annotating variants", e.getCause());
+            }
+        }
+
+        numVariants.addAndGet(variants.size());
+        if (progressLogger != null && !variants.isEmpty()) {
+            progressLogger.increment(variants.size(), () -> ", up to position " + variants.get(variants.size() - 1).toString());
+        }
+        return variantAnnotations;
+    }
+
+    @Override
+    public void post() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        logger.debug("Final annotation batch size: {}. Failed variants: {}", batchSize.get(), failedVariants.get());
+    }
+
+    /**
+     * Split the variants in sub-batches, limited by the current batch size and the max payload.
+     *
+     * @param variants Variants to split
+     * @return List of sub-batches
+     */
+    protected List<List<Variant>> split(List<Variant> variants) {
+        List<List<Variant>> subBatches = new ArrayList<>();
+        int size = batchSize.get();
+        int from = 0;
+        long payload = 0;
+        for (int i = 0; i < variants.size(); i++) {
+            Variant variant = variants.get(i);
+            long variantPayload = variant.getChromosome().length() + variant.getReference().length()
+                    + variant.getAlternate().length() + VARIANT_PAYLOAD_OVERHEAD;
+            if (i > from && (i - from >= size || payload + variantPayload > maxPayload)) {
+                subBatches.add(variants.subList(from, i));
+                from = i;
+                payload = 0;
+            }
+            payload += variantPayload;
+        }
+        if (from < variants.size()) {
+            subBatches.add(variants.subList(from, variants.size()));
+        }
+        return subBatches;
+    }
+
+    private List<VariantAnnotation> annotate(List<Variant> variants) throws VariantAnnotatorException {
+        long start = System.currentTimeMillis();
+        try {
+            List<VariantAnnotation> variantAnnotations = variantAnnotator.annotate(variants);
+            updateBatchSize(variants.size(), System.currentTimeMillis() - start);
+            return variantAnnotations;
+        } catch (VariantAnnotatorException | RuntimeException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            if (variants.size() == 1) {
+                if (failedVariants.incrementAndGet() > maxFailedVariants) {
+                    throw new VariantAnnotatorException("Too many variants failed to annotate. Last failed variant: "
+                            + variants.get(0), e);
+                }
+                logger.warn("Skip annotation for variant " + variants.get(0) + " : " + e.getMessage());
+                return new ArrayList<>();
+            }
+            int size = batchSize.updateAndGet(current -> Math.max(minBatchSize, current / 2));
+            logger.warn("Error annotating batch of {} variants. Retry in two halves. New batch size: {}. Error: {}",
+                    variants.size(), size, e.getMessage());
+            int middle = variants.size() / 2;
+            List<VariantAnnotation> variantAnnotations = new ArrayList<>(variants.size());
+            variantAnnotations.addAll(annotate(variants.subList(0, middle)));
+            variantAnnotations.addAll(annotate(variants.subList(middle, variants.size())));
+            return variantAnnotations;
+        }
+    }
+
+    /**
+     * Move the batch size towards the number of variants that could be annotated within the target latency.
+     * Growth is limited to double the current batch size.
+     *
+     * @param numVariants   Number of variants annotated
+     * @param latency       Observed latency, in milliseconds
+     */
+    private void updateBatchSize(int numVariants, long latency) {
+        if (numVariants < minBatchSize) {
+            // Too small to be significant
+            return;
+        }
+        long expected = latency <= 0 ? Long.MAX_VALUE : numVariants * targetLatency / latency;
+        batchSize.updateAndGet(current -> {
+            long next = (current + Math.min(expected, current * 2L)) / 2;
+            return (int) Math.min(maxBatchSize, Math.max(minBatchSize, next));
+        });
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(inFlight, r -> {
+                Thread thread = new Thread(r, "annotation-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    public int getBatchSize() {
+        return batchSize.get();
+    }
+
+    public int getFailedVariants() {
+        return failedVariants.get();
+    }
+
+    public long getNumVariants() {
+        return numVariants.get();
+    }
+}
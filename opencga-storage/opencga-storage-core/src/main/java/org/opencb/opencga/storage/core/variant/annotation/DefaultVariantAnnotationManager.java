@@ -84,6 +84,8 @@ public class DefaultVariantAnnotationManager extends VariantAnnotationManager {
     public static final String BATCH_SIZE = "batchSize";
     public static final String NUM_WRITERS = "numWriters";
     public static final String NUM_THREADS = "numThreads";
+    // Keep multiple annotation requests in flight per thread. See AsyncVariantAnnotationTask
+    public static final String ASYNC = "annotation.async";
 
     protected VariantDBAdaptor dbAdaptor;
     protected VariantAnnotator variantAnnotator;
@@ -214,14 +216,37 @@ public class DefaultVariantAnnotationManager extends VariantAnnotationManager {
                 variantAnnotationDataWriter = new VariantAnnotationJsonDataWriter(path, gzip);
             }
 
-            ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
-                    .setNumTasks(numThreads)
-                    .setBatchSize(batchSize)
-                    .setAbortOnFail(true)
-                    .setSorted(false).build();
-            ParallelTaskRunner<Variant, VariantAnnotation> parallelTaskRunner =
-                    new ParallelTaskRunner<>(variantDataReader, annotationTask, variantAnnotationDataWriter, config);
-            parallelTaskRunner.run();
+            if (params != null && params.getBoolean(ASYNC, false)) {
+                // Read enough variants to fill all the requests in flight
+                int inFlight = params.getInt(AsyncVariantAnnotationTask.IN_FLIGHT, AsyncVariantAnnotationTask.DEFAULT_IN_FLIGHT);
+                ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                        .setNumTasks(numThreads)
+                        .setBatchSize(batchSize * Math.max(1, inFlight))
+                        .setAbortOnFail(true)
+                        .setSorted(false).build();
+                List<AsyncVariantAnnotationTask> tasks = Collections.synchronizedList(new ArrayList<>(numThreads));
+                final int taskBatchSize = batchSize;
+                ParallelTaskRunner<Variant, VariantAnnotation> parallelTaskRunner =
+                        new ParallelTaskRunner<>(variantDataReader, () -> {
+                            AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(variantAnnotator, taskBatchSize, params)
+                                    .setProgressLogger(progressLogger);
+                            tasks.add(task);
+                            return task;
+                        }, variantAnnotationDataWriter, config);
+                parallelTaskRunner.run();
+                for (AsyncVariantAnnotationTask task : tasks) {
+                    numAnnotationsToLoad.addAndGet(task.getNumVariants());
+                }
+            } else {
+                ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                        .setNumTasks(numThreads)
+                        .setBatchSize(batchSize)
+                        .setAbortOnFail(true)
+                        .setSorted(false).build();
+                ParallelTaskRunner<Variant, VariantAnnotation> parallelTaskRunner =
+                        new ParallelTaskRunner<>(variantDataReader, annotationTask, variantAnnotationDataWriter, config);
+                parallelTaskRunner.run();
+            }
         } catch (ExecutionException e) {
             throw new VariantAnnotatorException("Error creating annotations", e);
         }
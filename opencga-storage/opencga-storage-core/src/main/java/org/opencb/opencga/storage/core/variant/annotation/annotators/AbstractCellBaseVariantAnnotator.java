@@ -29,10 +29,10 @@ import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotatorExcept
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by jacobo on 9/01/15.
@@ -44,7 +44,10 @@ public abstract class AbstractCellBaseVariantAnnotator extends VariantAnnotator
     public static final String ANNOTATOR_CELLBASE_EXCLUDE = "annotator.cellbase.exclude";
     // Imprecise variants supported by cellbase (REST only)
     public static final String ANNOTATOR_CELLBASE_IMPRECISE_VARIANTS = "annotator.cellbase.imprecise_variants";
+    // Directory for a local on-disk annotation cache. See VariantAnnotationCache
+    public static final String ANNOTATOR_CELLBASE_LOCAL_CACHE = "annotator.cellbase.local_cache";
     public static final int CELLBASE_VARIANT_THRESHOLD = 5000;
+    private static final long CACHE_REPORT_INTERVAL = 100000;
 
     public static final String ADDITIONAL_ATTRIBUTES_KEY = "opencga";
     public static final String ADDITIONAL_ATTRIBUTES_VARIANT_ID = "id";
@@ -55,6 +58,9 @@ public abstract class AbstractCellBaseVariantAnnotator extends VariantAnnotator
     protected final String cellbaseVersion;
     protected final QueryOptions queryOptions;
     protected final boolean impreciseVariants;
+    private final String localCacheDirectory;
+    private volatile VariantAnnotationCache localCache;
+    private final AtomicLong nextCacheReport = new AtomicLong(CACHE_REPORT_INTERVAL);
 
     public AbstractCellBaseVariantAnnotator(StorageConfiguration storageConfiguration, ProjectMetadata projectMetadata, ObjectMap params)
             throws VariantAnnotatorException {
@@ -75,6 +81,7 @@ public abstract class AbstractCellBaseVariantAnnotator extends VariantAnnotator
             queryOptions.append("useCache", false);
         }
         impreciseVariants = params.getBoolean(ANNOTATOR_CELLBASE_IMPRECISE_VARIANTS, true);
+        localCacheDirectory = params.getString(ANNOTATOR_CELLBASE_LOCAL_CACHE);
 
         checkNotNull(cellbaseVersion, "cellbase version");
         checkNotNull(species, "species");
@@ -100,7 +107,89 @@ public abstract class AbstractCellBaseVariantAnnotator extends VariantAnnotator
     @Override
     public final List<VariantAnnotation> annotate(List<Variant> variants) throws VariantAnnotatorException {
         List<Variant> nonStructuralVariations = filterStructuralVariants(variants);
-        return getVariantAnnotationList(variants, annotateFiltered(nonStructuralVariations));
+        VariantAnnotationCache cache = getLocalCache();
+        if (cache == null) {
+            return getVariantAnnotationList(variants, annotateFiltered(nonStructuralVariations));
+        }
+
+        // Read through the local cache. Only send the misses to the annotator.
+        Map<String, VariantAnnotation> annotations = new HashMap<>(nonStructuralVariations.size());
+        List<Variant> misses = new ArrayList<>();
+        for (Variant variant : nonStructuralVariations) {
+            VariantAnnotation annotation = cache.get(variant.toString());
+            if (annotation == null) {
+                misses.add(variant);
+            } else {
+                annotations.put(variant.toString(), annotation);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Iterator<VariantAnnotation> iterator = getVariantAnnotationList(misses, annotateFiltered(misses)).iterator();
+            VariantAnnotation annotation = iterator.hasNext() ? iterator.next() : null;
+            for (Variant variant : misses) {
+                // Skipped variants have no annotation
+                if (annotation != null && sameVariant(variant, annotation)) {
+                    cache.put(variant.toString(), annotation);
+                    annotations.put(variant.toString(), annotation);
+                    annotation = iterator.hasNext() ? iterator.next() : null;
+                }
+            }
+        }
+
+        List<VariantAnnotation> variantAnnotationList = new ArrayList<>(annotations.size());
+        for (Variant variant : nonStructuralVariations) {
+            VariantAnnotation annotation = annotations.get(variant.toString());
+            if (annotation != null) {
+                variantAnnotationList.add(annotation);
+            }
+        }
+        reportCache(cache);
+        return variantAnnotationList;
+    }
+
+    /**
+     * Get the local annotation cache, if any. The cache is namespaced by the annotator program, species, assembly and query options,
+     * so annotations from different versions are never mixed.
+     *
+     * @return the local cache, or null if not configured
+     * @throws VariantAnnotatorException if the cache can not be opened
+     */
+    protected VariantAnnotationCache getLocalCache() throws VariantAnnotatorException {
+        if (StringUtils.isEmpty(localCacheDirectory)) {
+            return null;
+        }
+        if (localCache == null) {
+            synchronized (this) {
+                if (localCache == null) {
+                    try {
+                        ProjectMetadata.VariantAnnotatorProgram program = getVariantAnnotatorProgram();
+                        String namespace = String.join("_", species, assembly, program.getName(), program.getVersion(),
+                                program.getCommit(), Integer.toHexString(queryOptions.toJson().hashCode()));
+                        namespace = namespace.replaceAll("[^a-zA-Z0-9._-]", "-");
+                        localCache = VariantAnnotationCache.open(Paths.get(localCacheDirectory, namespace));
+                    } catch (IOException e) {
+                        throw new VariantAnnotatorException("Unable to open annotation cache at " + localCacheDirectory, e);
+                    }
+                }
+            }
+        }
+        return localCache;
+    }
+
+    private void reportCache(VariantAnnotationCache cache) {
+        long requests = cache.getHits() + cache.getMisses();
+        long next = nextCacheReport.get();
+        if (requests >= next && nextCacheReport.compareAndSet(next, requests + CACHE_REPORT_INTERVAL)) {
+            logger.info("Annotation cache. Hit ratio: {}%, hits: {}, misses: {}, saved: {} KB", String.format("%.2f",
+                    cache.getHitRatio() * 100), cache.getHits(), cache.getMisses(), cache.getBytesSaved() / 1024);
+        }
+    }
+
+    private static boolean sameVariant(Variant variant, VariantAnnotation annotation) {
+        return variant.getChromosome().equals(annotation.getChromosome())
+                && variant.getStart().equals(annotation.getStart())
+                && variant.getReference().equals(annotation.getReference())
+                && variant.getAlternate().equals(annotation.getAlternate());
     }
 
     protected abstract List<QueryResult<VariantAnnotation>> annotateFiltered(List<Variant> variants) throws VariantAnnotatorException;
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation.annotators;
+
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumReader;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local on-disk cache of variant annotations, keyed by variant id.
+ *
+ * Annotations are stored in an append-only file as avro binary records. An in-memory index with the position of each
+ * record is built when opening the cache. A truncated record at the end of the file, e.g. from a killed process,
+ * is discarded.
+ *
+ * Instances are shared by path within the JVM. The file must not be written by multiple processes at the same time.
+ *
+ * Created on 17/10/26.
+ */
+public final class VariantAnnotationCache implements Closeable {
+
+    public static final String FILE_NAME = "annotations.bin";
+    private static final Map<Path, VariantAnnotationCache> CACHES = new ConcurrentHashMap<>();
+    private static Logger logger = LoggerFactory.getLogger(VariantAnnotationCache.class);
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Map<String, Long> index = new ConcurrentHashMap<>();
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private VariantAnnotationCache(Path path) throws IOException {
+        this.path = path;
+        Files.createDirectories(path.getParent());
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buildIndex();
+    }
+
+    /**
+     * Get the cache stored at the given directory.
+     *
+     * @param directory Cache directory
+     * @return Cache
+     * @throws IOException if the cache can not be opened
+     */
+    public static VariantAnnotationCache open(Path directory) throws IOException {
+        Path path = directory.resolve(FILE_NAME).toAbsolutePath();
+        try {
+            return CACHES.computeIfAbsent(path, p -> {
+                try {
+                    return new VariantAnnotationCache(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void buildIndex() throws IOException {
+        long fileSize = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 2);
+        while (position + header.capacity() <= fileSize) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            long next = position + header.capacity() + keyLength + valueLength;
+            if (keyLength < 0 || valueLength < 0 || next > fileSize) {
+                break;
+            }
+            ByteBuffer key = ByteBuffer.allocate(keyLength);
+            readFully(key, position + header.capacity());
+            index.put(new String(key.array(), StandardCharsets.UTF_8), position);
+            position = next;
+        }
+        if (position < fileSize) {
+            logger.warn("Discard {} bytes from incomplete record at the end of the annotation cache {}", fileSize - position, path);
+            channel.truncate(position);
+        }
+        size = position;
+        logger.info("Open annotation cache {} with {} annotations", path, index.size());
+    }
+
+    /**
+     * @param id Variant id
+     * @return The annotation, or null if missing
+     */
+    public VariantAnnotation get(String id) {
+        Long position = index.get(id);
+        if (position == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES * 2);
+            readFully(header, position);
+            header.flip();
+            int keyLength = header.getInt();
+            int valueLength = header.getInt();
+            ByteBuffer value = ByteBuffer.allocate(valueLength);
+            readFully(value, position + header.capacity() + keyLength);
+
+            hits.incrementAndGet();
+            bytesRead.addAndGet(valueLength);
+            return new SpecificDatumReader<>(VariantAnnotation.class)
+                    .read(null, DecoderFactory.get().binaryDecoder(value.array(), null));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean contains(String id) {
+        return index.containsKey(id);
+    }
+
+    public void put(String id, VariantAnnotation annotation) {
+        if (index.containsKey(id)) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            BinaryEncoder encoder = EncoderFactory.get().directBinaryEncoder(os, null);
+            new SpecificDatumWriter<>(VariantAnnotation.class).write(annotation, encoder);
+            encoder.flush();
+            byte[] key = id.getBytes(StandardCharsets.UTF_8);
+            byte[] value = os.toByteArray();
+
+            ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + key.length + value.length);
+            record.putInt(key.length).putInt(value.length).put(key).put(value);
+            record.flip();
+            synchronized (this) {
+                if (index.containsKey(id)) {
+                    return;
+                }
+                long position = size;
+                while (record.hasRemaining()) {
+                    channel.write(record, position + record.position());
+                }
+                size += record.limit();
+                index.put(id, position);
+            }
+            bytesWritten.addAndGet(value.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file " + path);
+            }
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Bytes of annotations read from the cache, instead of being fetched from the annotator.
+     */
+    public long getBytesSaved() {
+        return bytesRead.get();
+    }
+
+    public double getHitRatio() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : ((double) hits.get()) / total;
+    }
+
+    public ObjectMap getStats() {
+        return new ObjectMap("annotations", size())
+                .append("hits", getHits())
+                .append("misses", getMisses())
+                .append("hitRatio", getHitRatio())
+                .append("bytesSaved", getBytesSaved())
+                .append("bytesWritten", bytesWritten.get());
+    }
+
+    @Override
+    public void close() throws IOException {
+        CACHES.remove(path);
+        channel.close();
+    }
+}
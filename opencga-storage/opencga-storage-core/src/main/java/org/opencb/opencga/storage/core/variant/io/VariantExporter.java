@@ -18,6 +18,8 @@ package org.opencb.opencga.storage.core.variant.io;
 
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import htsjdk.variant.vcf.VCFHeader;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.metadata.VariantMetadata;
 import org.opencb.commons.ProgressLogger;
@@ -29,8 +31,15 @@ import org.opencb.commons.run.Task;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.metadata.VariantMetadataFactory;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.core.variant.io.VariantWriterFactory.VariantOutputFormat;
 import org.opencb.opencga.storage.core.variant.io.db.VariantDBReader;
+import org.opencb.opencga.storage.core.variant.io.parquet.VariantParquetConverter;
+import org.opencb.opencga.storage.core.variant.io.parquet.VariantParquetDataWriter;
+import org.opencb.opencga.storage.core.variant.io.parquet.VariantToParquetPartTask;
+import org.opencb.opencga.storage.core.variant.io.vcf.VariantToVcfChunkTask;
+import org.opencb.opencga.storage.core.variant.io.vcf.VcfChunk;
+import org.opencb.opencga.storage.core.variant.io.vcf.VcfChunkDataWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,9 +49,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -90,9 +102,21 @@ public class VariantExporter {
         }
         outputFile = VariantWriterFactory.checkOutput(outputFile, outputFormat);
 
-        try (OutputStream os = VariantWriterFactory.getOutputStream(outputFile, outputFormat)) {
-            boolean logProgress = !VariantWriterFactory.isStandardOutput(outputFile);
-            exportData(os, outputFormat, query, queryOptions, logProgress);
+        boolean logProgress = !VariantWriterFactory.isStandardOutput(outputFile);
+        if (outputFormat == VariantOutputFormat.PARQUET) {
+            if (VariantWriterFactory.isStandardOutput(outputFile)) {
+                throw new IllegalArgumentException("Unable to write " + outputFormat + " into the standard output");
+            }
+            exportParquet(Paths.get(outputFile), query, queryOptions, logProgress);
+        } else if (isParallelVcfExport(outputFormat, queryOptions)) {
+            // Compression is done by the export tasks
+            try (OutputStream os = VariantWriterFactory.getOutputStream(outputFile, VariantOutputFormat.VCF)) {
+                exportVcf(os, outputFile, outputFormat, query, queryOptions, logProgress);
+            }
+        } else {
+            try (OutputStream os = VariantWriterFactory.getOutputStream(outputFile, outputFormat)) {
+                exportData(os, outputFormat, query, queryOptions, logProgress);
+            }
         }
         if (metadataFactory != null && !VariantWriterFactory.isStandardOutput(outputFile)) {
             VariantMetadata metadata = metadataFactory.makeVariantMetadata(query, queryOptions);
@@ -111,23 +135,12 @@ public class VariantExporter {
         }
 
         // DataReader
-        VariantDBReader variantDBReader = new VariantDBReader(engine, query, queryOptions);
+        VariantDBReader variantDBReader = newVariantDBReader(query, queryOptions);
 
         // Task<Variant, Variant>
         Task<Variant, Variant> progressTask;
         if (logProgress) {
-            final Query finalQuery = query;
-            final QueryOptions finalQueryOptions = queryOptions;
-            ProgressLogger progressLogger = new ProgressLogger("Export variants", () -> {
-                if (finalQueryOptions.getBoolean(QueryOptions.SKIP_COUNT)) {
-                    return 0L;
-                }
-                Long count = engine.count(finalQuery).first();
-                long limit = finalQueryOptions.getLong(QueryOptions.LIMIT, Long.MAX_VALUE);
-                long skip = finalQueryOptions.getLong(QueryOptions.SKIP, 0);
-                count = Math.min(limit, count - skip);
-                return count;
-            }, 200);
+            ProgressLogger progressLogger = newProgressLogger(query, queryOptions);
             progressTask = batch -> {
                 progressLogger.increment(batch.size(), () -> "up to position " + batch.get(batch.size() - 1).toString());
                 return batch;
@@ -153,6 +166,166 @@ public class VariantExporter {
 
     }
 
+    protected boolean isParallelVcfExport(VariantOutputFormat outputFormat, QueryOptions queryOptions) {
+        return (outputFormat == VariantOutputFormat.VCF || outputFormat == VariantOutputFormat.VCF_GZ)
+                && (queryOptions == null ? VariantStorageEngine.Options.EXPORT_VCF_THREADS.defaultValue()
+                : queryOptions.getInt(VariantStorageEngine.Options.EXPORT_VCF_THREADS.key(),
+                VariantStorageEngine.Options.EXPORT_VCF_THREADS.defaultValue())) > 0;
+    }
+
+    /**
+     * Exports variants in VCF format. Variants are encoded and compressed in BGZF blocks by multiple threads.
+     *
+     * @param outputStream  Output stream. Must not compress the data.
+     * @param outputFile    Output file, used to create the tabix index. Null for standard output.
+     *                      If the index is created, the variants are always sorted.
+     * @param outputFormat  Either VCF or VCF_GZ
+     * @param query         Query with the variants to export
+     * @param queryOptions  Query options
+     * @param logProgress   Log export progress
+     * @throws StorageEngineException  If there is any error exporting variants
+     * @throws IOException  If there is any IO error
+     */
+    protected void exportVcf(OutputStream outputStream, @Nullable String outputFile, VariantOutputFormat outputFormat, Query query,
+                             QueryOptions queryOptions, boolean logProgress)
+            throws StorageEngineException, IOException {
+        if (query == null) {
+            query = new Query();
+        }
+        if (queryOptions == null) {
+            queryOptions = new QueryOptions();
+        }
+        int numTasks = queryOptions.getInt(VariantStorageEngine.Options.EXPORT_VCF_THREADS.key(),
+                VariantStorageEngine.Options.EXPORT_VCF_THREADS.defaultValue());
+        boolean compress = outputFormat.isGzip();
+        boolean index = compress && outputFile != null && queryOptions.getBoolean(VariantStorageEngine.Options.EXPORT_VCF_INDEX.key(),
+                VariantStorageEngine.Options.EXPORT_VCF_INDEX.defaultValue());
+        if (index) {
+            // The tabix index requires the variants sorted by position
+            if (QueryOptions.DESCENDING.equals(queryOptions.getString(QueryOptions.ORDER))) {
+                throw new IllegalArgumentException("Unable to create the tabix index of a VCF sorted in "
+                        + QueryOptions.DESCENDING + " order");
+            }
+            if (!queryOptions.getBoolean(QueryOptions.SORT)) {
+                queryOptions = new QueryOptions(queryOptions);
+                queryOptions.put(QueryOptions.SORT, true);
+            }
+        }
+
+        VariantMetadata metadata = getSingleStudyMetadata(query, queryOptions);
+        String study = metadata.getStudies().get(0).getId();
+        List<String> samples = VcfDataWriter.getSamples(metadata);
+        List<String> annotations = queryOptions.getAsStringList("annotations");
+        VCFHeader header = VcfDataWriter.getVcfHeader(metadata, annotations);
+
+        VariantDBReader variantDBReader = newVariantDBReader(query, queryOptions);
+        ProgressLogger progressLogger = logProgress ? newProgressLogger(query, queryOptions) : null;
+        VcfChunkDataWriter writer = new VcfChunkDataWriter(header, outputStream, compress, index ? Paths.get(outputFile + ".tbi") : null);
+
+        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                .setNumTasks(numTasks)
+                .setBatchSize(1000)
+                .setSorted(true)
+                .build();
+        ParallelTaskRunner<Variant, VcfChunk> ptr = new ParallelTaskRunner<>(variantDBReader,
+                () -> new VariantToVcfChunkTask(header, study, samples, annotations, compress, index).setProgressLogger(progressLogger),
+                writer, config);
+        try {
+            ptr.run();
+        } catch (ExecutionException e) {
+            throw new StorageEngineException("Error exporting variants", e);
+        }
+
+        logger.info("Time fetching data: " + variantDBReader.getTimeFetching(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+        logger.info("Time converting data: " + variantDBReader.getTimeConverting(TimeUnit.MILLISECONDS) / 1000.0 + 's');
+    }
+
+    /**
+     * Exports variants in Parquet format. Each chromosome chunk is encoded into a row group by multiple threads,
+     * and then appended in order to the output file.
+     *
+     * @param outputFile    Output file
+     * @param query         Query with the variants to export
+     * @param queryOptions  Query options
+     * @param logProgress   Log export progress
+     * @throws StorageEngineException  If there is any error exporting variants
+     * @throws IOException  If there is any IO error
+     */
+    protected void exportParquet(Path outputFile, Query query, QueryOptions queryOptions, boolean logProgress)
+            throws StorageEngineException, IOException {
+        if (!VariantOutputFormat.PARQUET.isAvailable()) {
+            throw new StorageEngineException("Unable to export variants in " + VariantOutputFormat.PARQUET + " format. "
+                    + "Missing dependency org.apache.hadoop:hadoop-common");
+        }
+        if (query == null) {
+            query = new Query();
+        }
+        if (queryOptions == null) {
+            queryOptions = new QueryOptions();
+        }
+        int numTasks = queryOptions.getInt(VariantStorageEngine.Options.EXPORT_PARQUET_THREADS.key(),
+                VariantStorageEngine.Options.EXPORT_PARQUET_THREADS.defaultValue());
+        int batchSize = queryOptions.getInt(VariantStorageEngine.Options.EXPORT_PARQUET_BATCH_SIZE.key(),
+                VariantStorageEngine.Options.EXPORT_PARQUET_BATCH_SIZE.defaultValue());
+        CompressionCodecName codec = CompressionCodecName.fromConf(queryOptions.getString(
+                VariantStorageEngine.Options.EXPORT_PARQUET_COMPRESSION.key(),
+                VariantStorageEngine.Options.EXPORT_PARQUET_COMPRESSION.defaultValue()));
+
+        VariantMetadata metadata = getSingleStudyMetadata(query, queryOptions);
+        VariantParquetConverter converter = new VariantParquetConverter(metadata.getStudies().get(0).getId(),
+                VcfDataWriter.getSamples(metadata));
+
+        VariantDBReader variantDBReader = newVariantDBReader(query, queryOptions);
+        ProgressLogger progressLogger = logProgress ? newProgressLogger(query, queryOptions) : null;
+        VariantParquetDataWriter writer = new VariantParquetDataWriter(converter.getSchema(), outputFile);
+        AtomicInteger partCounter = new AtomicInteger();
+
+        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                .setNumTasks(numTasks)
+                .setBatchSize(batchSize)
+                .setSorted(true)
+                .build();
+        ParallelTaskRunner<Variant, Path> ptr = new ParallelTaskRunner<>(variantDBReader,
+                () -> new VariantToParquetPartTask(converter, writer.getPartsDirectory(), partCounter, codec)
+                        .setProgressLogger(progressLogger),
+                writer, config);
+        try {
+            ptr.run();
+        } catch (ExecutionException e) {
+            throw new StorageEngineException("Error exporting variants", e);
+        }
+        logger.info("Written {} row groups to {}", writer.getRowGroups(), outputFile);
+    }
+
+    protected VariantMetadata getSingleStudyMetadata(Query query, QueryOptions queryOptions) throws StorageEngineException {
+        VariantMetadata metadata = metadataFactory == null
+                ? new VariantMetadataFactory(engine.getStudyConfigurationManager()).makeVariantMetadata(query, queryOptions)
+                : metadataFactory.makeVariantMetadata(query, queryOptions);
+        if (metadata.getStudies().isEmpty()) {
+            throw new IllegalArgumentException("No study found named " + query.getAsStringList(VariantQueryParam.INCLUDE_STUDY.key()));
+        }
+        return metadata;
+    }
+
+    protected VariantDBReader newVariantDBReader(Query query, QueryOptions queryOptions) {
+        int numThreads = queryOptions.getInt(VariantStorageEngine.Options.ITERATOR_THREADS.key(),
+                VariantStorageEngine.Options.ITERATOR_THREADS.defaultValue());
+        return new VariantDBReader(engine, query, queryOptions, numThreads);
+    }
+
+    protected ProgressLogger newProgressLogger(Query query, QueryOptions queryOptions) {
+        return new ProgressLogger("Export variants", () -> {
+            if (queryOptions.getBoolean(QueryOptions.SKIP_COUNT)) {
+                return 0L;
+            }
+            Long count = engine.count(query).first();
+            long limit = queryOptions.getLong(QueryOptions.LIMIT, Long.MAX_VALUE);
+            long skip = queryOptions.getLong(QueryOptions.SKIP, 0);
+            count = Math.min(limit, count - skip);
+            return count;
+        }, 200);
+    }
+
     protected void writeMetadata(VariantMetadata metadata, String output) throws IOException {
         ObjectMapper objectMapper = new ObjectMapper().configure(MapperFeature.REQUIRE_SETTERS_FOR_GETTERS, true);
         File file = Paths.get(output).toFile();
@@ -72,7 +72,8 @@ public class VariantWriterFactory {
         STATS("stats.tsv", false),
         STATS_GZ("stats.tsv.gz", false),
         CELLBASE("frequencies.json"),
-        CELLBASE_GZ("frequencies.json.gz");
+        CELLBASE_GZ("frequencies.json.gz"),
+        PARQUET("parquet", false);
 
         private final boolean multiStudy;
         private final String extension;
@@ -103,6 +104,23 @@ public class VariantWriterFactory {
             return extension.endsWith(".snappy");
         }
 
+        /**
+         * Formats with optional dependencies are only available if the dependency is in the classpath.
+         * PARQUET requires hadoop-common, which is an optional dependency of storage-core.
+         *
+         * @return if the format can be written
+         */
+        public boolean isAvailable() {
+            if (this == PARQUET) {
+                try {
+                    Class.forName("org.apache.hadoop.conf.Configuration");
+                } catch (ClassNotFoundException e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
     }
 
     /**
@@ -112,12 +130,17 @@ public class VariantWriterFactory {
      * @param outputFormatStr   Output format as String
      * @param output            Output file
      * @return                  Valid VariantOutputFormat
-     * @throws                  IllegalArgumentException if the outputFormatStr is not valid
+     * @throws                  IllegalArgumentException if the outputFormatStr is not valid, or not available
      */
     public static VariantOutputFormat toOutputFormat(String outputFormatStr, String output) {
         if (!StringUtils.isEmpty(outputFormatStr)) {
             outputFormatStr = outputFormatStr.replace('.', '_');
-            return VariantOutputFormat.valueOf(outputFormatStr.toUpperCase());
+            VariantOutputFormat outputFormat = VariantOutputFormat.valueOf(outputFormatStr.toUpperCase());
+            if (!outputFormat.isAvailable()) {
+                throw new IllegalArgumentException("Output format " + outputFormat + " not available. "
+                        + "Missing dependency org.apache.hadoop:hadoop-common");
+            }
+            return outputFormat;
         } else if (isStandardOutput(output)) {
             return VCF;
         } else {
@@ -71,13 +71,21 @@ public abstract class VcfDataWriter<T> implements DataWriter<T> {
         }
     }
 
+    public static List<String> getSamples(VariantMetadata metadata) {
+        return metadata.getStudies().get(0).getIndividuals().stream()
+                .flatMap(individual -> individual.getSamples().stream()).map(Sample::getId).collect(Collectors.toList());
+    }
+
+    public static VCFHeader getVcfHeader(VariantMetadata metadata, List<String> annotations) {
+        return new VariantStudyMetadataToVCFHeaderConverter().convert(metadata.getStudies().get(0), annotations);
+    }
+
     @Override
     public boolean pre() {
         String study = metadata.getStudies().get(0).getId();
-        List<String> samples = metadata.getStudies().get(0).getIndividuals().stream()
-                .flatMap(individual -> individual.getSamples().stream()).map(Sample::getId).collect(Collectors.toList());
+        List<String> samples = getSamples(metadata);
 
-        VCFHeader vcfHeader = new VariantStudyMetadataToVCFHeaderConverter().convert(metadata.getStudies().get(0), annotations);
+        VCFHeader vcfHeader = getVcfHeader(metadata, annotations);
         variantContextWriter = VcfUtils.createVariantContextWriter(outputStream, vcfHeader.getSequenceDictionary(),
                 Options.ALLOW_MISSING_FIELDS_IN_HEADER);
         variantContextWriter.writeHeader(vcfHeader);
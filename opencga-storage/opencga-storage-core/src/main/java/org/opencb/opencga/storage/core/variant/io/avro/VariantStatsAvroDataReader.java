@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.avro;
+
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+import org.opencb.commons.io.DataReader;
+import org.opencb.commons.io.avro.AvroDataReader;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads {@link VariantStatsWrapper} from a file written by {@link VariantStatsAvroDataWriter}.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantStatsAvroDataReader implements DataReader<VariantStatsWrapper> {
+
+    private final AvroDataReader<VariantAvro> reader;
+
+    public VariantStatsAvroDataReader(File file) {
+        reader = new AvroDataReader<>(file, VariantAvro.class);
+    }
+
+    @Override
+    public boolean open() {
+        return reader.open();
+    }
+
+    @Override
+    public boolean pre() {
+        return reader.pre();
+    }
+
+    @Override
+    public List<VariantStatsWrapper> read(int batchSize) {
+        List<VariantAvro> variants = reader.read(batchSize);
+        List<VariantStatsWrapper> wrappers = new ArrayList<>(variants.size());
+        for (VariantAvro variantAvro : variants) {
+            Variant variant = new Variant(variantAvro);
+            StudyEntry studyEntry = variant.getStudies().get(0);
+            wrappers.add(new VariantStatsWrapper(variant.getChromosome(), variant.getStart(), variant.getEnd(),
+                    studyEntry.getStats(), variant.getSv()));
+        }
+        return wrappers;
+    }
+
+    @Override
+    public boolean post() {
+        return reader.post();
+    }
+
+    @Override
+    public boolean close() {
+        return reader.close();
+    }
+}
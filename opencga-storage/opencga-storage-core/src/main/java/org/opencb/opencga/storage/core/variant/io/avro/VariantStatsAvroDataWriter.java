@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.avro;
+
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.commons.io.avro.AvroDataWriter;
+import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Writes {@link VariantStatsWrapper} in a compact Avro file.
+ *
+ * Each element is stored as a {@link VariantAvro} with one single study, containing only the stats.
+ * Read with {@link VariantStatsAvroDataReader}.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantStatsAvroDataWriter implements DataWriter<VariantStatsWrapper> {
+
+    private final AvroDataWriter<VariantAvro> writer;
+    private final String studyName;
+
+    public VariantStatsAvroDataWriter(Path path, boolean gzip, String studyName) {
+        writer = new AvroDataWriter<>(path, gzip, VariantAvro.getClassSchema());
+        this.studyName = studyName;
+    }
+
+    @Override
+    public boolean open() {
+        return writer.open();
+    }
+
+    @Override
+    public boolean pre() {
+        return writer.pre();
+    }
+
+    @Override
+    public boolean write(List<VariantStatsWrapper> batch) {
+        List<VariantAvro> variants = new ArrayList<>(batch.size());
+        for (VariantStatsWrapper wrapper : batch) {
+            if (wrapper.getCohortStats() != null && !wrapper.getCohortStats().isEmpty()) {
+                variants.add(convert(wrapper));
+            }
+        }
+        return writer.write(variants);
+    }
+
+    @Override
+    public boolean post() {
+        return writer.post();
+    }
+
+    @Override
+    public boolean close() {
+        return writer.close();
+    }
+
+    private VariantAvro convert(VariantStatsWrapper wrapper) {
+        VariantStats stats = wrapper.getCohortStats().values().iterator().next();
+        Variant variant = new Variant(wrapper.getChromosome(), wrapper.getStart(), wrapper.getEnd(),
+                stats.getRefAllele(), stats.getAltAllele());
+        variant.setSv(wrapper.getSv());
+        StudyEntry studyEntry = new StudyEntry(studyName, Collections.emptyList(), Collections.emptyList());
+        studyEntry.setStats(wrapper.getCohortStats());
+        variant.addStudyEntry(studyEntry);
+        return variant.getImpl();
+    }
+}
@@ -41,6 +41,7 @@ public class VariantDBReader implements VariantReader {
     private VariantIterable iterable;
     private Query query;
     private QueryOptions options;
+    private int numThreads = 1;
     private VariantDBIterator iterator;
     private long timeFetching = 0;
     private long timeConverting = 0;
@@ -51,6 +52,11 @@ public class VariantDBReader implements VariantReader {
         this(null, iterable, query, options);
     }
 
+    public VariantDBReader(VariantIterable iterable, Query query, QueryOptions options, int numThreads) {
+        this(null, iterable, query, options);
+        this.numThreads = numThreads;
+    }
+
     public VariantDBReader(VariantDBIterator iterator) {
         this.iterator = iterator;
     }
@@ -85,7 +91,11 @@ public class VariantDBReader implements VariantReader {
             iteratorQueryOptions = new QueryOptions();
         }
 
-        iterator = iterable.iterator(query, iteratorQueryOptions);
+        if (numThreads > 1) {
+            iterator = iterable.parallelIterator(query, iteratorQueryOptions, numThreads);
+        } else {
+            iterator = iterable.iterator(query, iteratorQueryOptions);
+        }
         return iterator != null;
     }
 
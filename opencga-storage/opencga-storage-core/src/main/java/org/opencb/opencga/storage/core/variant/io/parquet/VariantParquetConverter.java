@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.parquet;
+
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.ConsequenceType;
+import org.opencb.biodata.models.variant.avro.PopulationFrequency;
+import org.opencb.biodata.models.variant.avro.SequenceOntologyTerm;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+
+import java.util.*;
+
+/**
+ * Converts variants into flat records, with one column per field.
+ *
+ * Annotation consequence types are flattened into lists of genes, biotypes and consequence types. Population frequencies
+ * are stored as a map from "STUDY:POPULATION" to the alternate allele frequency. Each sample genotype is stored in a
+ * separated column named {@link #GENOTYPE_PREFIX} + sample name, so readers can load only the samples they need.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantParquetConverter {
+
+    public static final String GENOTYPE_PREFIX = "GT_";
+    public static final String CHROMOSOME = "chromosome";
+    public static final String START = "start";
+    public static final String END = "end";
+    public static final String REFERENCE = "reference";
+    public static final String ALTERNATE = "alternate";
+    public static final String ID = "id";
+    public static final String TYPE = "type";
+    public static final String GENES = "genes";
+    public static final String BIOTYPES = "biotypes";
+    public static final String CONSEQUENCE_TYPES = "consequenceTypes";
+    public static final String POPULATION_FREQUENCIES = "populationFrequencies";
+
+    private final String study;
+    private final List<String> samples;
+    private final List<String> genotypeFields;
+    private final Schema schema;
+
+    public VariantParquetConverter(String study, List<String> samples) {
+        this.study = study;
+        this.samples = samples;
+
+        SchemaBuilder.FieldAssembler<Schema> fields = SchemaBuilder.record("VariantParquet")
+                .namespace(getClass().getPackage().getName())
+                .fields()
+                .requiredString(CHROMOSOME)
+                .requiredInt(START)
+                .requiredInt(END)
+                .requiredString(REFERENCE)
+                .requiredString(ALTERNATE)
+                .optionalString(ID)
+                .optionalString(TYPE)
+                .name(GENES).type().array().items().stringType().noDefault()
+                .name(BIOTYPES).type().array().items().stringType().noDefault()
+                .name(CONSEQUENCE_TYPES).type().array().items().stringType().noDefault()
+                .name(POPULATION_FREQUENCIES).type().map().values().floatType().noDefault();
+
+        genotypeFields = new ArrayList<>(samples.size());
+        Set<String> usedNames = new HashSet<>();
+        for (String sample : samples) {
+            String field = GENOTYPE_PREFIX + sample.replaceAll("[^A-Za-z0-9_]", "_");
+            String uniqueField = field;
+            for (int i = 1; !usedNames.add(uniqueField); i++) {
+                uniqueField = field + '_' + i;
+            }
+            genotypeFields.add(uniqueField);
+            fields.optionalString(uniqueField);
+        }
+        schema = fields.endRecord();
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return Name of the column with the genotypes of each sample, in the same order as the samples
+     */
+    public List<String> getGenotypeFields() {
+        return genotypeFields;
+    }
+
+    public GenericRecord convert(Variant variant) {
+        GenericRecord record = new GenericData.Record(schema);
+        record.put(CHROMOSOME, variant.getChromosome());
+        record.put(START, variant.getStart());
+        record.put(END, variant.getEnd());
+        record.put(REFERENCE, variant.getReference());
+        record.put(ALTERNATE, variant.getAlternate());
+        record.put(ID, variant.getId());
+        record.put(TYPE, variant.getType() == null ? null : variant.getType().toString());
+
+        Set<String> genes = new LinkedHashSet<>();
+        Set<String> biotypes = new LinkedHashSet<>();
+        Set<String> consequenceTypes = new LinkedHashSet<>();
+        Map<String, Float> populationFrequencies = new HashMap<>();
+        VariantAnnotation annotation = variant.getAnnotation();
+        if (annotation != null) {
+            if (annotation.getConsequenceTypes() != null) {
+                for (ConsequenceType consequenceType : annotation.getConsequenceTypes()) {
+                    if (consequenceType.getGeneName() != null) {
+                        genes.add(consequenceType.getGeneName());
+                    }
+                    if (consequenceType.getBiotype() != null) {
+                        biotypes.add(consequenceType.getBiotype());
+                    }
+                    if (consequenceType.getSequenceOntologyTerms() != null) {
+                        for (SequenceOntologyTerm term : consequenceType.getSequenceOntologyTerms()) {
+                            consequenceTypes.add(term.getName());
+                        }
+                    }
+                }
+            }
+            if (annotation.getPopulationFrequencies() != null) {
+                for (PopulationFrequency frequency : annotation.getPopulationFrequencies()) {
+                    populationFrequencies.put(frequency.getStudy() + ':' + frequency.getPopulation(), frequency.getAltAlleleFreq());
+                }
+            }
+        }
+        record.put(GENES, new ArrayList<>(genes));
+        record.put(BIOTYPES, new ArrayList<>(biotypes));
+        record.put(CONSEQUENCE_TYPES, new ArrayList<>(consequenceTypes));
+        record.put(POPULATION_FREQUENCIES, populationFrequencies);
+
+        StudyEntry studyEntry = variant.getStudy(study);
+        if (studyEntry != null) {
+            for (int i = 0; i < samples.size(); i++) {
+                record.put(genotypeFields.get(i), studyEntry.getSampleData(samples.get(i), "GT"));
+            }
+        }
+        return record;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.parquet;
+
+import org.apache.avro.Schema;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.parquet.avro.AvroSchemaConverter;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.opencb.commons.io.DataWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Merges in order the temporary Parquet files generated by multiple {@link VariantToParquetPartTask} into a single file.
+ *
+ * Row groups are copied without decoding them again. Temporary files are deleted once merged.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantParquetDataWriter implements DataWriter<Path> {
+
+    // Same key used by parquet-avro to store the avro schema
+    private static final String AVRO_SCHEMA_METADATA_KEY = "parquet.avro.schema";
+
+    private final Schema schema;
+    private final Path output;
+    private final Path partsDirectory;
+    private final Configuration conf = newConfiguration();
+    private ParquetFileWriter writer;
+    private int rowGroups;
+
+    /**
+     * @param schema    Avro schema of the records. See {@link VariantParquetConverter#getSchema()}
+     * @param output    Output file
+     * @throws IOException if the directory for the temporary files can not be created
+     */
+    public VariantParquetDataWriter(Schema schema, Path output) throws IOException {
+        this.schema = schema;
+        this.output = output.toAbsolutePath();
+        partsDirectory = Files.createTempDirectory(this.output.getParent(), '.' + this.output.getFileName().toString() + ".parts");
+    }
+
+    /**
+     * Hadoop configuration to write local files. Uses the raw local file system, so no checksum files are created.
+     *
+     * @return new Configuration
+     */
+    public static Configuration newConfiguration() {
+        Configuration conf = new Configuration();
+        conf.set("fs.file.impl", RawLocalFileSystem.class.getName());
+        conf.setBoolean("fs.file.impl.disable.cache", true);
+        return conf;
+    }
+
+    /**
+     * @return Directory where the {@link VariantToParquetPartTask} should write the temporary files
+     */
+    public Path getPartsDirectory() {
+        return partsDirectory;
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            Files.deleteIfExists(output);
+            writer = new ParquetFileWriter(conf, new AvroSchemaConverter().convert(schema),
+                    new org.apache.hadoop.fs.Path(output.toUri()), ParquetFileWriter.Mode.CREATE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean pre() {
+        try {
+            writer.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean write(List<Path> parts) {
+        try {
+            for (Path part : parts) {
+                writer.appendFile(conf, new org.apache.hadoop.fs.Path(part.toUri()));
+                rowGroups++;
+                Files.delete(part);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        try {
+            writer.end(Collections.singletonMap(AVRO_SCHEMA_METADATA_KEY, schema.toString()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        // Remove any remaining temporary file, in case of error
+        try (Stream<Path> stream = Files.list(partsDirectory)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                Files.delete(path);
+            }
+            Files.delete(partsDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    public int getRowGroups() {
+        return rowGroups;
+    }
+}
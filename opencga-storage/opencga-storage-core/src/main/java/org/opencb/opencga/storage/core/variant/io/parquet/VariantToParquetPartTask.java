@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.parquet;
+
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.ProgressLogger;
+import org.opencb.commons.run.Task;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes each batch of variants into temporary Parquet files, one per chromosome.
+ *
+ * Each file contains a single row group. The files have to be merged in order with a {@link VariantParquetDataWriter}.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantToParquetPartTask implements Task<Variant, Path> {
+
+    private final VariantParquetConverter converter;
+    private final Path partsDirectory;
+    private final AtomicInteger partCounter;
+    private final CompressionCodecName codec;
+    private final Configuration conf;
+    private ProgressLogger progressLogger;
+
+    /**
+     * @param converter         Converter. Shared by all the tasks
+     * @param partsDirectory    Directory for the temporary files. See {@link VariantParquetDataWriter#getPartsDirectory()}
+     * @param partCounter       Counter used to name the temporary files. Shared by all the tasks
+     * @param codec             Compression codec
+     */
+    public VariantToParquetPartTask(VariantParquetConverter converter, Path partsDirectory, AtomicInteger partCounter,
+                                    CompressionCodecName codec) {
+        this.converter = converter;
+        this.partsDirectory = partsDirectory;
+        this.partCounter = partCounter;
+        this.codec = codec;
+        conf = VariantParquetDataWriter.newConfiguration();
+    }
+
+    public VariantToParquetPartTask setProgressLogger(ProgressLogger progressLogger) {
+        this.progressLogger = progressLogger;
+        return this;
+    }
+
+    @Override
+    public List<Path> apply(List<Variant> batch) throws IOException {
+        List<Path> parts = new ArrayList<>();
+        int from = 0;
+        for (int i = 1; i <= batch.size(); i++) {
+            if (i == batch.size() || !batch.get(i).getChromosome().equals(batch.get(from).getChromosome())) {
+                parts.add(writePart(batch.subList(from, i)));
+                from = i;
+            }
+        }
+        if (progressLogger != null && !batch.isEmpty()) {
+            progressLogger.increment(batch.size(), () -> "up to position " + batch.get(batch.size() - 1).toString());
+        }
+        return parts;
+    }
+
+    private Path writePart(List<Variant> variants) throws IOException {
+        Path part = partsDirectory.resolve(String.format("part-%05d.parquet", partCounter.getAndIncrement()));
+        try (ParquetWriter<GenericRecord> writer = AvroParquetWriter.<GenericRecord>builder(
+                new org.apache.hadoop.fs.Path(part.toUri()))
+                .withSchema(converter.getSchema())
+                .withCompressionCodec(codec)
+                .withDictionaryEncoding(true)
+                .withConf(conf)
+                .build()) {
+            for (Variant variant : variants) {
+                writer.write(converter.convert(variant));
+            }
+        }
+        return part;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.vcf;
+
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses data into BGZF blocks.
+ *
+ * Each block is an independent gzip member, so blocks compressed by different threads can be concatenated.
+ * Not thread safe. Use one instance per thread.
+ *
+ * Created on 17/10/26.
+ */
+public class BgzfCompressor {
+
+    // Same as samtools. Leaves room for the block header and footer even if the data is not compressible.
+    public static final int BLOCK_SIZE = 0xff00;
+
+    private final Deflater deflater;
+    private final Deflater noCompressionDeflater = new Deflater(Deflater.NO_COMPRESSION, true);
+    private final CRC32 crc32 = new CRC32();
+    private final byte[] buffer = new byte[BlockCompressedStreamConstants.MAX_COMPRESSED_BLOCK_SIZE];
+
+    public BgzfCompressor() {
+        this(BlockCompressedStreamConstants.DEFAULT_COMPRESSION_LEVEL);
+    }
+
+    public BgzfCompressor(int compressionLevel) {
+        deflater = new Deflater(compressionLevel, true);
+    }
+
+    /**
+     * Compress the data in blocks of {@link #BLOCK_SIZE} bytes.
+     *
+     * @param data      Data to compress
+     * @param length    Length of the data
+     * @param out       Output stream
+     * @return          Compressed address of each block, relative to the initial size of the output stream
+     */
+    public long[] compress(byte[] data, int length, ByteArrayOutputStream out) {
+        int numBlocks = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        long[] blockAddresses = new long[numBlocks];
+        int initialSize = out.size();
+        for (int i = 0; i < numBlocks; i++) {
+            blockAddresses[i] = out.size() - initialSize;
+            int offset = i * BLOCK_SIZE;
+            compressBlock(data, offset, Math.min(BLOCK_SIZE, length - offset), out);
+        }
+        return blockAddresses;
+    }
+
+    /**
+     * Compress a single block.
+     *
+     * @param data      Data to compress
+     * @param offset    Offset of the block
+     * @param length    Length of the block. No more than {@link #BLOCK_SIZE}
+     * @param out       Output stream
+     */
+    public void compressBlock(byte[] data, int offset, int length, ByteArrayOutputStream out) {
+        int compressedSize = deflate(deflater, data, offset, length);
+        if (compressedSize < 0) {
+            // Data not compressible enough to fit in a block
+            compressedSize = deflate(noCompressionDeflater, data, offset, length);
+            if (compressedSize < 0) {
+                throw new IllegalStateException("Unable to compress " + length + " bytes into a BGZF block");
+            }
+        }
+        crc32.reset();
+        crc32.update(data, offset, length);
+
+        int blockSize = compressedSize + BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH
+                + BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+        // Gzip header with the BGZF extra subfield
+        out.write(BlockCompressedStreamConstants.GZIP_ID1);
+        out.write(BlockCompressedStreamConstants.GZIP_ID2);
+        out.write(BlockCompressedStreamConstants.GZIP_CM_DEFLATE);
+        out.write(BlockCompressedStreamConstants.GZIP_FLG);
+        writeInt(out, 0); // Modification time
+        out.write(BlockCompressedStreamConstants.GZIP_XFL);
+        out.write(BlockCompressedStreamConstants.GZIP_OS_UNKNOWN);
+        writeShort(out, BlockCompressedStreamConstants.GZIP_XLEN);
+        out.write(BlockCompressedStreamConstants.BGZF_ID1);
+        out.write(BlockCompressedStreamConstants.BGZF_ID2);
+        writeShort(out, BlockCompressedStreamConstants.BGZF_LEN);
+        writeShort(out, blockSize - 1);
+        out.write(buffer, 0, compressedSize);
+        writeInt(out, (int) crc32.getValue());
+        writeInt(out, length);
+    }
+
+    private int deflate(Deflater deflater, byte[] data, int offset, int length) {
+        int maxSize = buffer.length - BlockCompressedStreamConstants.BLOCK_HEADER_LENGTH
+                - BlockCompressedStreamConstants.BLOCK_FOOTER_LENGTH;
+        deflater.reset();
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        int compressedSize = deflater.deflate(buffer, 0, maxSize);
+        return deflater.finished() ? compressedSize : -1;
+    }
+
+    /**
+     * @return Empty BGZF block used to mark the end of the file.
+     */
+    public static byte[] eofBlock() {
+        return BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK.clone();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        writeShort(out, value);
+        writeShort(out, value >> 16);
+    }
+
+}
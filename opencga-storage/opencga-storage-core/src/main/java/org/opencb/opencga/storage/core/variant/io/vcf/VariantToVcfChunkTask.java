@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.vcf;
+
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.SimpleFeature;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFEncoder;
+import htsjdk.variant.vcf.VCFHeader;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.tools.variant.converters.VariantContextConverter;
+import org.opencb.biodata.tools.variant.converters.avro.VariantAvroToVariantContextConverter;
+import org.opencb.commons.ProgressLogger;
+import org.opencb.commons.run.Task;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Encodes a batch of variants into VCF records, and compresses them in BGZF blocks.
+ *
+ * Each batch generates an independent {@link VcfChunk}, so multiple tasks can run in parallel.
+ * The chunks have to be written in order with a {@link VcfChunkDataWriter}.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantToVcfChunkTask implements Task<Variant, VcfChunk> {
+
+    private final VariantContextConverter<Variant> converter;
+    private final VCFEncoder encoder;
+    private final BgzfCompressor compressor;
+    private final boolean index;
+    private ProgressLogger progressLogger;
+
+    /**
+     * @param header        VCF header. Must be the same header given to the {@link VcfChunkDataWriter}
+     * @param study         Study to export
+     * @param samples       Samples to export
+     * @param annotations   Annotations to export
+     * @param compress      Compress the records in BGZF blocks
+     * @param index         Keep the location of each record, to build a tabix index. Requires compression.
+     */
+    public VariantToVcfChunkTask(VCFHeader header, String study, List<String> samples, List<String> annotations,
+                                 boolean compress, boolean index) {
+        if (index && !compress) {
+            throw new IllegalArgumentException("Unable to index uncompressed VCF files");
+        }
+        converter = new VariantAvroToVariantContextConverter(study, samples, annotations);
+        encoder = new VCFEncoder(header, true, false);
+        compressor = compress ? new BgzfCompressor() : null;
+        this.index = index;
+    }
+
+    public VariantToVcfChunkTask setProgressLogger(ProgressLogger progressLogger) {
+        this.progressLogger = progressLogger;
+        return this;
+    }
+
+    @Override
+    public List<VcfChunk> apply(List<Variant> batch) {
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<VariantContext> contexts = converter.apply(batch);
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream(contexts.size() * 200);
+        int[] recordOffsets = new int[contexts.size()];
+        List<Feature> features = index ? new ArrayList<>(contexts.size()) : null;
+        for (int i = 0; i < contexts.size(); i++) {
+            VariantContext context = contexts.get(i);
+            recordOffsets[i] = text.size();
+            byte[] record = encoder.encode(context).getBytes(StandardCharsets.UTF_8);
+            text.write(record, 0, record.length);
+            text.write('\n');
+            if (index) {
+                features.add(new SimpleFeature(context.getContig(), context.getStart(), context.getEnd()));
+            }
+        }
+
+        VcfChunk chunk;
+        if (compressor == null) {
+            chunk = new VcfChunk(text.toByteArray(), null, null);
+        } else {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(text.size() / 4);
+            long[] blockAddresses = compressor.compress(text.toByteArray(), text.size(), compressed);
+            long[] filePointers = new long[recordOffsets.length];
+            for (int i = 0; i < recordOffsets.length; i++) {
+                int block = recordOffsets[i] / BgzfCompressor.BLOCK_SIZE;
+                filePointers[i] = BlockCompressedFilePointerUtil.makeFilePointer(blockAddresses[block],
+                        recordOffsets[i] % BgzfCompressor.BLOCK_SIZE);
+            }
+            chunk = new VcfChunk(compressed.toByteArray(), filePointers, features);
+        }
+
+        if (progressLogger != null) {
+            progressLogger.increment(batch.size(), () -> "up to position " + batch.get(batch.size() - 1).toString());
+        }
+        return Collections.singletonList(chunk);
+    }
+}
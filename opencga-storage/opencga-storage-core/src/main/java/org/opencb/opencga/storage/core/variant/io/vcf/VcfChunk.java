@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.vcf;
+
+import htsjdk.tribble.Feature;
+
+import java.util.List;
+
+/**
+ * Batch of VCF records, already encoded and optionally compressed in BGZF blocks.
+ *
+ * Created on 17/10/26.
+ */
+public class VcfChunk {
+
+    private final byte[] data;
+    private final long[] filePointers;
+    private final List<Feature> features;
+
+    /**
+     * @param data          Encoded records
+     * @param filePointers  BGZF virtual file pointer of each record, relative to the start of the chunk. Null if not compressed.
+     * @param features      Location of each record, used to build the index. Null if not indexed.
+     */
+    public VcfChunk(byte[] data, long[] filePointers, List<Feature> features) {
+        this.data = data;
+        this.filePointers = filePointers;
+        this.features = features;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public long[] getFilePointers() {
+        return filePointers;
+    }
+
+    public List<Feature> getFeatures() {
+        return features;
+    }
+}
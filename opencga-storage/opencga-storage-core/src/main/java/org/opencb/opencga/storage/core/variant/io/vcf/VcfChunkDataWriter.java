@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.vcf;
+
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFHeader;
+import org.opencb.biodata.formats.variant.vcf4.VcfUtils;
+import org.opencb.commons.io.DataWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Writes in order the {@link VcfChunk} generated by multiple {@link VariantToVcfChunkTask}.
+ *
+ * If compressed, the output is a valid BGZF file. A tabix index can be built on the fly, if the variants are sorted.
+ *
+ * Created on 17/10/26.
+ */
+public class VcfChunkDataWriter implements DataWriter<VcfChunk> {
+
+    private final VCFHeader header;
+    private final OutputStream outputStream;
+    private final boolean compress;
+    private final Path indexFile;
+    private TabixIndexCreator indexCreator;
+    private long position;
+
+    /**
+     * @param header        VCF header
+     * @param outputStream  Output stream. Should not compress the data
+     * @param compress      Compress the header, and write the BGZF end of file block
+     * @param indexFile     Tabix index file to create. Null for no index.
+     */
+    public VcfChunkDataWriter(VCFHeader header, OutputStream outputStream, boolean compress, Path indexFile) {
+        if (indexFile != null && !compress) {
+            throw new IllegalArgumentException("Unable to index uncompressed VCF files");
+        }
+        this.header = header;
+        this.outputStream = outputStream;
+        this.compress = compress;
+        this.indexFile = indexFile;
+    }
+
+    @Override
+    public boolean pre() {
+        ByteArrayOutputStream headerText = new ByteArrayOutputStream();
+        VariantContextWriter writer = VcfUtils.createVariantContextWriter(headerText, header.getSequenceDictionary(),
+                Options.ALLOW_MISSING_FIELDS_IN_HEADER);
+        writer.writeHeader(header);
+        writer.close();
+
+        byte[] data;
+        if (compress) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            new BgzfCompressor().compress(headerText.toByteArray(), headerText.size(), compressed);
+            data = compressed.toByteArray();
+        } else {
+            data = headerText.toByteArray();
+        }
+        write(data);
+        if (indexFile != null) {
+            indexCreator = new TabixIndexCreator(TabixFormat.VCF);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean write(List<VcfChunk> batch) {
+        for (VcfChunk chunk : batch) {
+            if (indexCreator != null) {
+                long chunkPointer = BlockCompressedFilePointerUtil.makeFilePointer(position);
+                long[] filePointers = chunk.getFilePointers();
+                for (int i = 0; i < filePointers.length; i++) {
+                    indexCreator.addFeature(chunk.getFeatures().get(i), chunkPointer + filePointers[i]);
+                }
+            }
+            write(chunk.getData());
+        }
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        if (compress) {
+            if (indexCreator != null) {
+                Index index = indexCreator.finalizeIndex(BlockCompressedFilePointerUtil.makeFilePointer(position));
+                try {
+                    index.write(indexFile.toFile());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            write(BgzfCompressor.eofBlock());
+        }
+        try {
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return true;
+    }
+
+    private void write(byte[] data) {
+        try {
+            outputStream.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position += data.length;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.search;
+
+import org.opencb.commons.datastore.core.ObjectMap;
+
+/**
+ * Execution plan for a variant query. Describes how the query is resolved, and the estimations made to decide it.
+ *
+ * Estimations are only available if the plan was made by the {@link VariantQueryPlanner}.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantQueryPlan {
+
+    public enum Strategy {
+        /** Only the storage engine. */
+        ENGINE,
+        /** Only the search engine. */
+        SEARCH,
+        /** Get variant ids from the search engine, and fetch them from the storage engine. */
+        INTERSECT
+    }
+
+    private final Strategy strategy;
+    private final String reason;
+    private String source;
+    private Long totalVariants;
+    private Long estimatedRows;
+    private Long estimatedSearchRows;
+    private Long estimatedEngineScannedRows;
+    private Double engineCost;
+    private Double intersectCost;
+    private Long actualRows;
+
+    public VariantQueryPlan(Strategy strategy, String reason) {
+        this.strategy = strategy;
+        this.reason = reason;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public VariantQueryPlan setSource(String source) {
+        this.source = source;
+        return this;
+    }
+
+    public Long getTotalVariants() {
+        return totalVariants;
+    }
+
+    public VariantQueryPlan setTotalVariants(Long totalVariants) {
+        this.totalVariants = totalVariants;
+        return this;
+    }
+
+    public Long getEstimatedRows() {
+        return estimatedRows;
+    }
+
+    public VariantQueryPlan setEstimatedRows(Long estimatedRows) {
+        this.estimatedRows = estimatedRows;
+        return this;
+    }
+
+    public Long getEstimatedSearchRows() {
+        return estimatedSearchRows;
+    }
+
+    public VariantQueryPlan setEstimatedSearchRows(Long estimatedSearchRows) {
+        this.estimatedSearchRows = estimatedSearchRows;
+        return this;
+    }
+
+    public Long getEstimatedEngineScannedRows() {
+        return estimatedEngineScannedRows;
+    }
+
+    public VariantQueryPlan setEstimatedEngineScannedRows(Long estimatedEngineScannedRows) {
+        this.estimatedEngineScannedRows = estimatedEngineScannedRows;
+        return this;
+    }
+
+    public Double getEngineCost() {
+        return engineCost;
+    }
+
+    public VariantQueryPlan setEngineCost(Double engineCost) {
+        this.engineCost = engineCost;
+        return this;
+    }
+
+    public Double getIntersectCost() {
+        return intersectCost;
+    }
+
+    public VariantQueryPlan setIntersectCost(Double intersectCost) {
+        this.intersectCost = intersectCost;
+        return this;
+    }
+
+    public Long getActualRows() {
+        return actualRows;
+    }
+
+    public VariantQueryPlan setActualRows(Long actualRows) {
+        this.actualRows = actualRows;
+        return this;
+    }
+
+    public ObjectMap toObjectMap() {
+        ObjectMap map = new ObjectMap();
+        map.put("strategy", strategy.toString());
+        map.put("reason", reason);
+        putNotNull(map, "source", source);
+        putNotNull(map, "totalVariants", totalVariants);
+        putNotNull(map, "estimatedRows", estimatedRows);
+        putNotNull(map, "estimatedSearchRows", estimatedSearchRows);
+        putNotNull(map, "estimatedEngineScannedRows", estimatedEngineScannedRows);
+        putNotNull(map, "engineCost", engineCost);
+        putNotNull(map, "intersectCost", intersectCost);
+        putNotNull(map, "actualRows", actualRows);
+        return map;
+    }
+
+    private static void putNotNull(ObjectMap map, String key, Object value) {
+        if (value != null) {
+            map.put(key, value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VariantQueryPlan" + toObjectMap().toJson();
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.search;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.opencga.storage.core.exceptions.VariantSearchException;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils.QueryOperation;
+import org.opencb.opencga.storage.core.variant.search.VariantQueryPlan.Strategy;
+import org.opencb.opencga.storage.core.variant.search.solr.VariantSearchManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.*;
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils.*;
+import static org.opencb.opencga.storage.core.variant.search.solr.VariantSearchUtils.UNSUPPORTED_MODIFIERS;
+import static org.opencb.opencga.storage.core.variant.search.solr.VariantSearchUtils.UNSUPPORTED_QUERY_PARAMS;
+
+/**
+ * Decides if a query should be resolved only with the storage engine, or intersecting with the search engine.
+ *
+ * Estimates the selectivity of each {@link VariantQueryParam} using the histograms from {@link VariantSearchStats},
+ * assuming independent filters, and compares the cost of both strategies:
+ *
+ *  - Storage engine: Scans all the variants matching the params indexed by the engine.
+ *  - Intersect:      One query to the search engine, plus a lookup by id in the storage engine for each returned variant.
+ *
+ * Histograms are obtained from the search engine with facet queries, and cached by study for a configurable time.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantQueryPlanner {
+
+    /** Return the {@link VariantQueryPlan} in the query result. */
+    public static final String EXPLAIN = "explain";
+
+    public static final Set<VariantQueryParam> DEFAULT_ENGINE_INDEXED_PARAMS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            ID, REGION, GENE, ANNOT_XREF)));
+
+    // Selectivity of a filter without histogram
+    public static final double DEFAULT_SELECTIVITY = 0.5;
+    // Fraction of variants in a gene. Based on ~20k coding genes
+    public static final double GENE_SELECTIVITY = 1.0 / 20000;
+    // Costs relative to scan one variant in the storage engine
+    public static final double ENGINE_SCAN_COST = 1;
+    public static final double SEARCH_ROW_COST = 0.5;
+    public static final double SEARCH_QUERY_COST = 1000;
+
+    private static final String ALL_STUDIES = "";
+
+    private final VariantSearchManager searchManager;
+    private final String collection;
+    private final Set<VariantQueryParam> engineIndexedParams;
+    private final double lookupCost;
+    private final long statsTtl;
+    private final Map<String, VariantSearchStats> statsCache = new ConcurrentHashMap<>();
+    private final Logger logger = LoggerFactory.getLogger(VariantQueryPlanner.class);
+
+    /**
+     * @param searchManager       Search manager to obtain the histograms from. May be null if the stats are always provided
+     * @param collection          Search collection
+     * @param engineIndexedParams Params that the storage engine can resolve without a full scan
+     * @param lookupCost          Cost of fetching one variant by id from the storage engine, relative to a scan
+     * @param statsTtl            Time in milliseconds to keep the histograms in cache
+     */
+    public VariantQueryPlanner(VariantSearchManager searchManager, String collection, Set<VariantQueryParam> engineIndexedParams,
+                               double lookupCost, long statsTtl) {
+        this.searchManager = searchManager;
+        this.collection = collection;
+        this.engineIndexedParams = engineIndexedParams;
+        this.lookupCost = lookupCost;
+        this.statsTtl = statsTtl;
+    }
+
+    /**
+     * Plan the query, obtaining the histograms from the search engine if needed.
+     *
+     * @param query Query
+     * @return      Query plan
+     * @throws IOException              IOException
+     * @throws VariantSearchException   VariantSearchException
+     */
+    public VariantQueryPlan plan(Query query) throws IOException, VariantSearchException {
+        return plan(query, getStats(query));
+    }
+
+    public VariantQueryPlan plan(Query query, VariantSearchStats stats) {
+        long numVariants = stats.getNumVariants();
+        double searchSelectivity = 1;
+        double engineSelectivity = 1;
+        double selectivity = 1;
+
+        for (VariantQueryParam param : validParams(query)) {
+            if (MODIFIER_QUERY_PARAMS.contains(param) || UNSUPPORTED_MODIFIERS.contains(param)) {
+                continue;
+            }
+            double paramSelectivity = selectivity(query, param, stats);
+            selectivity *= paramSelectivity;
+            if (!UNSUPPORTED_QUERY_PARAMS.contains(param)) {
+                searchSelectivity *= paramSelectivity;
+            }
+            if (engineIndexedParams.contains(param)) {
+                engineSelectivity *= paramSelectivity;
+            }
+        }
+
+        long searchRows = Math.round(numVariants * searchSelectivity);
+        long engineScannedRows = Math.round(numVariants * engineSelectivity);
+        double engineCost = engineScannedRows * ENGINE_SCAN_COST;
+        double intersectCost = SEARCH_QUERY_COST + searchRows * (SEARCH_ROW_COST + lookupCost);
+
+        Strategy strategy = intersectCost < engineCost ? Strategy.INTERSECT : Strategy.ENGINE;
+        VariantQueryPlan plan = new VariantQueryPlan(strategy, "Estimated cost");
+        plan.setTotalVariants(numVariants)
+                .setEstimatedRows(Math.round(numVariants * selectivity))
+                .setEstimatedSearchRows(searchRows)
+                .setEstimatedEngineScannedRows(engineScannedRows)
+                .setEngineCost(engineCost)
+                .setIntersectCost(intersectCost);
+        logger.debug("{}", plan);
+        return plan;
+    }
+
+    /**
+     * Get the histograms for the query, from the cache if available.
+     *
+     * The histograms are restricted to the study of the query, if only one. Population frequency histograms are
+     * loaded on demand.
+     *
+     * @param query Query
+     * @return      Histograms
+     * @throws IOException              IOException
+     * @throws VariantSearchException   VariantSearchException
+     */
+    public VariantSearchStats getStats(Query query) throws IOException, VariantSearchException {
+        String study = ALL_STUDIES;
+        if (isValidParam(query, STUDY)) {
+            List<String> studies = splitValue(query.getString(STUDY.key())).getValue();
+            if (studies.size() == 1 && !isNegated(studies.get(0))) {
+                study = studies.get(0);
+            }
+        }
+
+        VariantSearchStats stats = statsCache.get(study);
+        if (stats == null || System.currentTimeMillis() - stats.getTimestamp() > statsTtl) {
+            Query statsQuery = study.equals(ALL_STUDIES) ? new Query() : new Query(STUDY.key(), study);
+            stats = searchManager.stats(collection, statsQuery);
+            logger.debug("Loaded search stats for study '{}' : {}", study, stats);
+            statsCache.put(study, stats);
+        }
+
+        for (VariantQueryParam param : Arrays.asList(ANNOT_POPULATION_ALTERNATE_FREQUENCY, ANNOT_POPULATION_MINOR_ALLELE_FREQUENCY,
+                ANNOT_POPULATION_REFERENCE_FREQUENCY)) {
+            if (isValidParam(query, param)) {
+                for (String value : splitValue(query.getString(param.key())).getValue()) {
+                    String[] split = splitOperator(value);
+                    String[] studyPopulation = splitStudyResource(split[0]);
+                    if (studyPopulation.length == 2 && stats.getPopFreq(studyPopulation[0], studyPopulation[1]) == null) {
+                        Query statsQuery = study.equals(ALL_STUDIES) ? new Query() : new Query(STUDY.key(), study);
+                        stats.putPopFreq(studyPopulation[0], studyPopulation[1],
+                                searchManager.popFreqHistogram(collection, statsQuery, studyPopulation[0], studyPopulation[1]));
+                    }
+                }
+            }
+        }
+        return stats;
+    }
+
+    public void invalidateStats() {
+        statsCache.clear();
+    }
+
+    /**
+     * Estimate the fraction of variants matching the given param.
+     *
+     * @param query Query
+     * @param param Param to estimate
+     * @param stats Histograms
+     * @return      Value between 0 and 1
+     */
+    protected double selectivity(Query query, VariantQueryParam param, VariantSearchStats stats) {
+        long numVariants = stats.getNumVariants();
+        if (numVariants <= 0) {
+            return DEFAULT_SELECTIVITY;
+        }
+        Pair<QueryOperation, List<String>> pair = splitValue(query.getString(param.key()));
+        QueryOperation operation = pair.getKey();
+        List<String> values = pair.getValue();
+
+        if (param == REGION) {
+            double count = 0;
+            for (String value : values) {
+                count += regionCount(Region.parseRegion(value), stats);
+            }
+            return bound(count / numVariants);
+        } else if (param == ID || param == ANNOT_XREF) {
+            // Each identifier matches, at most, a few variants
+            return bound(((double) values.size()) / numVariants);
+        } else if (param == GENE) {
+            return bound(values.size() * GENE_SELECTIVITY);
+        } else if (param == TYPE) {
+            return histogramSelectivity(operation, values, stats.getTypes(), numVariants);
+        } else if (param == STUDY) {
+            return histogramSelectivity(operation, values, stats.getStudies(), numVariants);
+        } else if (param == ANNOT_BIOTYPE) {
+            return histogramSelectivity(operation, values, stats.getBiotypes(), numVariants);
+        } else if (param == ANNOT_CONSEQUENCE_TYPE) {
+            List<String> accessions = new ArrayList<>(values.size());
+            for (String value : values) {
+                accessions.add(String.valueOf(parseConsequenceType(value)));
+            }
+            return histogramSelectivity(operation, accessions, stats.getConsequenceTypes(), numVariants);
+        } else if (param == ANNOT_POPULATION_ALTERNATE_FREQUENCY || param == ANNOT_POPULATION_MINOR_ALLELE_FREQUENCY
+                || param == ANNOT_POPULATION_REFERENCE_FREQUENCY) {
+            double selectivity = operation == QueryOperation.OR ? 0 : 1;
+            for (String value : values) {
+                double s = popFreqSelectivity(value, param == ANNOT_POPULATION_REFERENCE_FREQUENCY, stats);
+                selectivity = operation == QueryOperation.OR ? selectivity + s : selectivity * s;
+            }
+            return bound(selectivity);
+        } else {
+            return DEFAULT_SELECTIVITY;
+        }
+    }
+
+    private double regionCount(Region region, VariantSearchStats stats) {
+        Long count = stats.getChromosomes().get(region.getChromosome());
+        if (count == null) {
+            return 0;
+        }
+        Integer maxStart = stats.getChromosomeMaxStart().get(region.getChromosome());
+        if (maxStart == null || maxStart <= 0 || region.getEnd() == Integer.MAX_VALUE && region.getStart() <= 1) {
+            return count;
+        }
+        // Assume uniform distribution along the chromosome
+        long length = Math.min(region.getEnd(), maxStart) - Math.max(region.getStart(), 1) + 1L;
+        return count * Math.max(0, Math.min(1, ((double) length) / maxStart));
+    }
+
+    private static double histogramSelectivity(QueryOperation operation, List<String> values, Map<String, Long> histogram,
+                                               long numVariants) {
+        if (histogram.isEmpty()) {
+            return DEFAULT_SELECTIVITY;
+        }
+        // Multi valued fields may match more than one value. AND is approximated with the less frequent value.
+        double selectivity = operation == QueryOperation.AND ? 1 : 0;
+        for (String value : values) {
+            double s;
+            if (isNegated(value)) {
+                s = 1 - ((double) histogram.getOrDefault(removeNegation(value), 0L)) / numVariants;
+            } else {
+                s = ((double) histogram.getOrDefault(value, 0L)) / numVariants;
+            }
+            selectivity = operation == QueryOperation.AND ? Math.min(selectivity, s) : selectivity + s;
+        }
+        return bound(selectivity);
+    }
+
+    private double popFreqSelectivity(String value, boolean reference, VariantSearchStats stats) {
+        String[] split = splitOperator(value);
+        String[] studyPopulation = splitStudyResource(split[0]);
+        if (studyPopulation.length != 2) {
+            return DEFAULT_SELECTIVITY;
+        }
+        long[] histogram = stats.getPopFreq(studyPopulation[0], studyPopulation[1]);
+        if (histogram == null) {
+            return DEFAULT_SELECTIVITY;
+        }
+        double freq;
+        try {
+            freq = Double.parseDouble(split[2]);
+        } catch (NumberFormatException e) {
+            return DEFAULT_SELECTIVITY;
+        }
+        String operator = split[1];
+        if (reference) {
+            // Only the alternate frequency is indexed. REF < x  <=>  ALT > 1 - x
+            freq = 1 - freq;
+            operator = operator.replace('<', '#').replace('>', '<').replace('#', '>');
+        }
+
+        // Variants without value for this population are considered as frequency 0
+        long numVariants = stats.getNumVariants();
+        long missing = Math.max(0, numVariants - histogram[histogram.length - 1]);
+        double lowerOrEqual = (missing + cumulativeCount(histogram, freq)) / numVariants;
+        if (operator.startsWith("<")) {
+            return bound(lowerOrEqual);
+        } else if (operator.startsWith(">")) {
+            return bound(1 - lowerOrEqual);
+        } else {
+            return DEFAULT_SELECTIVITY;
+        }
+    }
+
+    /**
+     * Number of variants with a frequency lower or equal than the given one, interpolating between the histogram bins.
+     */
+    private static double cumulativeCount(long[] histogram, double freq) {
+        double[] bins = VariantSearchStats.FREQ_BINS;
+        double prevBin = 0;
+        long prevCount = 0;
+        for (int i = 0; i < bins.length; i++) {
+            if (freq <= bins[i]) {
+                return prevCount + (histogram[i] - prevCount) * (freq - prevBin) / (bins[i] - prevBin);
+            }
+            prevBin = bins[i];
+            prevCount = histogram[i];
+        }
+        return histogram[bins.length - 1];
+    }
+
+    private static double bound(double selectivity) {
+        return Math.max(0, Math.min(1, selectivity));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.search;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Histograms of the variants stored in the search engine, used to estimate the selectivity of a query.
+ *
+ * Population frequency histograms are cumulative. Each position counts the variants with a frequency lower or equal
+ * than the matching value from {@link #FREQ_BINS}. The last position counts the variants with any value for that population.
+ *
+ * Created on 17/10/26.
+ */
+public class VariantSearchStats {
+
+    public static final double[] FREQ_BINS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1};
+
+    private final long numVariants;
+    private final long timestamp;
+    private Map<String, Long> chromosomes = Collections.emptyMap();
+    private Map<String, Integer> chromosomeMaxStart = Collections.emptyMap();
+    private Map<String, Long> types = Collections.emptyMap();
+    private Map<String, Long> consequenceTypes = Collections.emptyMap();
+    private Map<String, Long> biotypes = Collections.emptyMap();
+    private Map<String, Long> studies = Collections.emptyMap();
+    private final Map<String, long[]> popFreqs = new ConcurrentHashMap<>();
+
+    public VariantSearchStats(long numVariants) {
+        this(numVariants, System.currentTimeMillis());
+    }
+
+    public VariantSearchStats(long numVariants, long timestamp) {
+        this.numVariants = numVariants;
+        this.timestamp = timestamp;
+    }
+
+    public long getNumVariants() {
+        return numVariants;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Map<String, Long> getChromosomes() {
+        return chromosomes;
+    }
+
+    public VariantSearchStats setChromosomes(Map<String, Long> chromosomes) {
+        this.chromosomes = new HashMap<>(chromosomes);
+        return this;
+    }
+
+    public Map<String, Integer> getChromosomeMaxStart() {
+        return chromosomeMaxStart;
+    }
+
+    public VariantSearchStats setChromosomeMaxStart(Map<String, Integer> chromosomeMaxStart) {
+        this.chromosomeMaxStart = new HashMap<>(chromosomeMaxStart);
+        return this;
+    }
+
+    public Map<String, Long> getTypes() {
+        return types;
+    }
+
+    public VariantSearchStats setTypes(Map<String, Long> types) {
+        this.types = new HashMap<>(types);
+        return this;
+    }
+
+    /**
+     * @return Number of variants by SO accession number
+     */
+    public Map<String, Long> getConsequenceTypes() {
+        return consequenceTypes;
+    }
+
+    public VariantSearchStats setConsequenceTypes(Map<String, Long> consequenceTypes) {
+        this.consequenceTypes = new HashMap<>(consequenceTypes);
+        return this;
+    }
+
+    public Map<String, Long> getBiotypes() {
+        return biotypes;
+    }
+
+    public VariantSearchStats setBiotypes(Map<String, Long> biotypes) {
+        this.biotypes = new HashMap<>(biotypes);
+        return this;
+    }
+
+    public Map<String, Long> getStudies() {
+        return studies;
+    }
+
+    public VariantSearchStats setStudies(Map<String, Long> studies) {
+        this.studies = new HashMap<>(studies);
+        return this;
+    }
+
+    /**
+     * @param study      Study name
+     * @param population Population name
+     * @return Cumulative histogram, or null if not loaded
+     */
+    public long[] getPopFreq(String study, String population) {
+        return popFreqs.get(popFreqKey(study, population));
+    }
+
+    public VariantSearchStats putPopFreq(String study, String population, long[] histogram) {
+        if (histogram.length != FREQ_BINS.length + 1) {
+            throw new IllegalArgumentException("Expected " + (FREQ_BINS.length + 1) + " values, got " + histogram.length);
+        }
+        popFreqs.put(popFreqKey(study, population), histogram);
+        return this;
+    }
+
+    private static String popFreqKey(String study, String population) {
+        return study + ':' + population;
+    }
+
+    @Override
+    public String toString() {
+        return "VariantSearchStats{"
+                + "numVariants=" + numVariants
+                + ", chromosomes=" + chromosomes
+                + ", types=" + types
+                + ", consequenceTypes=" + consequenceTypes.size()
+                + ", biotypes=" + biotypes.size()
+                + ", studies=" + studies
+                + ", popFreqs=" + popFreqs.keySet()
+                + '}';
+    }
+}
@@ -118,7 +118,11 @@ public class SolrQueryParser {
         }
 
         if (queryOptions.containsKey(QueryOptions.SORT)) {
-            solrQuery.addSort(queryOptions.getString(QueryOptions.SORT), getSortOrder(queryOptions));
+            String sort = queryOptions.getString(QueryOptions.SORT);
+            // "sort=true" asks the storage engine for its natural order. It is not a field of the search engine
+            if (!sort.equalsIgnoreCase("true") && !sort.equalsIgnoreCase("false")) {
+                solrQuery.addSort(sort, getSortOrder(queryOptions));
+            }
         }
 
         //-------------------------------------
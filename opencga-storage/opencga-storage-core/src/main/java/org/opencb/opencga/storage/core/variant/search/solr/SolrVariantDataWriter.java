@@ -0,0 +1,174 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.search.solr;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.opencb.commons.io.DataWriter;
+import org.opencb.opencga.storage.core.exceptions.VariantSearchException;
+import org.opencb.opencga.storage.core.variant.search.VariantSearchModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Sends batches of {@link VariantSearchModel} to Solr, with up to numSenders updates running at the same time.
+ *
+ * Commits are deferred to the end of the load, or issued when commitInterval milliseconds have passed since the last one.
+ * Before each commit, all the pending updates are finished, so, if the input is sorted, every variant up to the last
+ * written one is in the index. The id of this variant is notified to the commit listener after every commit.
+ *
+ * Created on 17/10/26.
+ */
+public class SolrVariantDataWriter implements DataWriter<VariantSearchModel> {
+
+    private final SolrClient solrClient;
+    private final String collection;
+    private final int numSenders;
+    private final long commitInterval;
+    private final Consumer<String> commitListener;
+
+    private ExecutorService executor;
+    private final Semaphore semaphore;
+    private final AtomicReference<Exception> exception = new AtomicReference<>();
+    private long lastCommit;
+    private String lastVariantId;
+    private int numInserted = 0;
+
+    private final Logger logger = LoggerFactory.getLogger(SolrVariantDataWriter.class);
+
+    /**
+     * @param solrClient        Thread safe Solr client
+     * @param collection        Collection name
+     * @param numSenders        Max number of update requests running at the same time
+     * @param commitInterval    Min time in milliseconds between commits. If not positive, only commit at the end
+     * @param commitListener    Listener receiving the id of the last committed variant. May be null
+     */
+    public SolrVariantDataWriter(SolrClient solrClient, String collection, int numSenders, long commitInterval,
+                                 Consumer<String> commitListener) {
+        this.solrClient = solrClient;
+        this.collection = collection;
+        this.numSenders = Math.max(1, numSenders);
+        this.commitInterval = commitInterval;
+        this.commitListener = commitListener;
+        semaphore = new Semaphore(this.numSenders);
+    }
+
+    @Override
+    public boolean pre() {
+        executor = Executors.newFixedThreadPool(numSenders, r -> {
+            Thread thread = new Thread(r, "solr-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastCommit = System.currentTimeMillis();
+        return true;
+    }
+
+    @Override
+    public boolean write(List<VariantSearchModel> batch) {
+        checkException();
+        if (batch.isEmpty()) {
+            return true;
+        }
+        try {
+            semaphore.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        executor.submit(() -> {
+            try {
+                UpdateResponse response = solrClient.addBeans(collection, batch);
+                if (response.getStatus() != 0) {
+                    exception.compareAndSet(null, new VariantSearchException("Error inserting variants in Solr. Status: "
+                            + response.getStatus()));
+                }
+            } catch (IOException | SolrServerException | RuntimeException e) {
+                exception.compareAndSet(null, e);
+            } finally {
+                semaphore.release();
+            }
+        });
+        lastVariantId = batch.get(batch.size() - 1).getId();
+        numInserted += batch.size();
+
+        if (commitInterval > 0 && System.currentTimeMillis() - lastCommit > commitInterval) {
+            commit();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean post() {
+        commit();
+        logger.debug("Variant Search loading done: {} variants indexed", numInserted);
+        return true;
+    }
+
+    @Override
+    public boolean close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        return true;
+    }
+
+    /**
+     * Wait for all the running updates, and commit.
+     */
+    private void commit() {
+        try {
+            semaphore.acquire(numSenders);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        try {
+            checkException();
+            solrClient.commit(collection);
+            lastCommit = System.currentTimeMillis();
+            if (commitListener != null && lastVariantId != null) {
+                commitListener.accept(lastVariantId);
+            }
+            logger.debug("Solr commit. Up to variant {}", lastVariantId);
+        } catch (IOException | SolrServerException e) {
+            throw new IllegalStateException("Error committing variants in Solr", e);
+        } finally {
+            semaphore.release(numSenders);
+        }
+    }
+
+    private void checkException() {
+        Exception e = exception.get();
+        if (e != null) {
+            throw new IllegalStateException("Error inserting variants in Solr", e);
+        }
+    }
+
+    public int getNumInserted() {
+        return numInserted;
+    }
+}
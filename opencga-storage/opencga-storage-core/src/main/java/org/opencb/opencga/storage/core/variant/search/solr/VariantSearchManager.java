@@ -29,10 +29,13 @@ import org.opencb.biodata.formats.variant.io.VariantReader;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.annotation.ConsequenceTypeMappings;
 import org.opencb.commons.ProgressLogger;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.result.FacetedQueryResult;
 import org.opencb.commons.datastore.core.result.FacetedQueryResultItem;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.commons.run.Task;
 import org.opencb.commons.utils.CollectionUtils;
 import org.opencb.commons.utils.FileUtils;
 import org.opencb.opencga.core.results.VariantQueryResult;
@@ -40,9 +43,12 @@ import org.opencb.opencga.storage.core.config.StorageConfiguration;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.exceptions.VariantSearchException;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
 import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
+import org.opencb.opencga.storage.core.variant.io.db.VariantDBReader;
 import org.opencb.opencga.storage.core.variant.search.VariantSearchModel;
+import org.opencb.opencga.storage.core.variant.search.VariantSearchStats;
 import org.opencb.opencga.storage.core.variant.search.VariantSearchToVariantConverter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,7 +58,10 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Created by imedina on 09/11/16.
@@ -174,29 +183,71 @@ public class VariantSearchManager {
      */
     public void load(String collection, VariantDBIterator variantDBIterator, ProgressLogger progressLogger)
             throws IOException, VariantSearchException {
+        load(collection, variantDBIterator, progressLogger, new ObjectMap(), null);
+    }
+
+    /**
+     * Load a Solr core/collection from a variant DB iterator.
+     *
+     * Variants are read by one thread, converted by {@link VariantStorageEngine.Options#SEARCH_LOAD_THREADS} threads, and sent
+     * to Solr with up to {@link VariantStorageEngine.Options#SEARCH_LOAD_SENDERS} concurrent updates. Commits are issued at the end,
+     * and every {@link VariantStorageEngine.Options#SEARCH_LOAD_COMMIT_INTERVAL} milliseconds.
+     *
+     * If the iterator is sorted, the ids received by the commitListener can be used to resume the load, restricting the
+     * iterator to the variants after the last committed one.
+     *
+     * @param collection        Collection name
+     * @param variantDBIterator Iterator to retrieve the variants to load
+     * @param progressLogger    Progress logger
+     * @param options           Load options
+     * @param commitListener    Listener receiving the id of the last committed variant after each commit. May be null
+     * @throws IOException            IOException
+     * @throws VariantSearchException VariantSearchException
+     */
+    public void load(String collection, VariantDBIterator variantDBIterator, ProgressLogger progressLogger, ObjectMap options,
+                     Consumer<String> commitListener)
+            throws IOException, VariantSearchException {
         if (variantDBIterator == null) {
             throw new VariantSearchException("VariantDBIterator parameter is null");
         }
-
-        int count = 0;
-        List<Variant> variantList = new ArrayList<>(insertBatchSize);
-        while (variantDBIterator.hasNext()) {
-            Variant variant = variantDBIterator.next();
-            progressLogger.increment(1, () -> "up to position " + variant.toString());
-            variantList.add(variant);
-            count++;
-            if (count % insertBatchSize == 0) {
-                insert(collection, variantList);
-                variantList.clear();
-            }
+        if (options == null) {
+            options = new ObjectMap();
         }
 
-        // Insert the remaining variants
-        if (CollectionUtils.isNotEmpty(variantList)) {
-            insert(collection, variantList);
+        int numTasks = options.getInt(VariantStorageEngine.Options.SEARCH_LOAD_THREADS.key(),
+                VariantStorageEngine.Options.SEARCH_LOAD_THREADS.defaultValue());
+        int numSenders = options.getInt(VariantStorageEngine.Options.SEARCH_LOAD_SENDERS.key(),
+                VariantStorageEngine.Options.SEARCH_LOAD_SENDERS.defaultValue());
+        int commitInterval = options.getInt(VariantStorageEngine.Options.SEARCH_LOAD_COMMIT_INTERVAL.key(),
+                VariantStorageEngine.Options.SEARCH_LOAD_COMMIT_INTERVAL.defaultValue());
+
+        VariantDBReader reader = new VariantDBReader(variantDBIterator);
+        Supplier<Task<Variant, VariantSearchModel>> taskSupplier = () -> {
+            VariantSearchToVariantConverter converter = new VariantSearchToVariantConverter();
+            return batch -> {
+                if (!batch.isEmpty()) {
+                    progressLogger.increment(batch.size(), () -> "up to position " + batch.get(batch.size() - 1).toString());
+                }
+                return converter.convertListToStorageType(batch);
+            };
+        };
+        SolrVariantDataWriter writer = new SolrVariantDataWriter(solrManager.getSolrClient(), collection, numSenders, commitInterval,
+                commitListener);
+
+        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                .setNumTasks(numTasks)
+                .setBatchSize(insertBatchSize)
+                .setSorted(true)
+                .setAbortOnFail(true)
+                .build();
+        ParallelTaskRunner<Variant, VariantSearchModel> ptr = new ParallelTaskRunner<>(reader, taskSupplier, writer, config);
+        try {
+            ptr.run();
+        } catch (ExecutionException e) {
+            throw new VariantSearchException("Error loading variants in Solr", e);
         }
 
-        logger.debug("Variant Search loading done: {} variants indexed", count);
+        logger.debug("Variant Search loading done: {} variants indexed", writer.getNumInserted());
     }
 
     /**
@@ -314,6 +365,103 @@ public class VariantSearchManager {
     }
 
 
+    /**
+     * Obtain the histograms of the variants matching the query, used to estimate the selectivity of other queries.
+     * Population frequency histograms are not included. See {@link #popFreqHistogram}.
+     *
+     * @param collection   Collection name
+     * @param query        Query
+     * @return Histograms of the collection
+     * @throws IOException            IOException
+     * @throws VariantSearchException VariantSearchException
+     */
+    public VariantSearchStats stats(String collection, Query query) throws IOException, VariantSearchException {
+        SolrQuery solrQuery = solrQueryParser.parse(query, new QueryOptions(QueryOptions.LIMIT, 0));
+        solrQuery.setFacet(true);
+        solrQuery.setFacetLimit(-1);
+        solrQuery.setFacetMinCount(1);
+        solrQuery.addFacetField("type", "soAcc", "biotypes", "studies");
+        // Number of variants and max start by chromosome
+        solrQuery.setGetFieldStatistics("start");
+        solrQuery.addStatsFieldFacets("start", "chromosome");
+        try {
+            QueryResponse response = solrManager.getSolrClient().query(collection, solrQuery);
+
+            Map<String, Long> chromosomes = new HashMap<>();
+            Map<String, Integer> chromosomeMaxStart = new HashMap<>();
+            FieldStatsInfo startStats = response.getFieldStatsInfo() == null ? null : response.getFieldStatsInfo().get("start");
+            if (startStats != null && startStats.getFacets() != null && startStats.getFacets().get("chromosome") != null) {
+                for (FieldStatsInfo chromosomeStats : startStats.getFacets().get("chromosome")) {
+                    chromosomes.put(chromosomeStats.getName(), chromosomeStats.getCount());
+                    if (chromosomeStats.getMax() instanceof Number) {
+                        chromosomeMaxStart.put(chromosomeStats.getName(), ((Number) chromosomeStats.getMax()).intValue());
+                    }
+                }
+            }
+
+            return new VariantSearchStats(response.getResults().getNumFound())
+                    .setChromosomes(chromosomes)
+                    .setChromosomeMaxStart(chromosomeMaxStart)
+                    .setTypes(facetCounts(response, "type"))
+                    .setConsequenceTypes(facetCounts(response, "soAcc"))
+                    .setBiotypes(facetCounts(response, "biotypes"))
+                    .setStudies(facetCounts(response, "studies"));
+        } catch (SolrServerException e) {
+            throw new VariantSearchException("Error fetching stats from Solr", e);
+        }
+    }
+
+    /**
+     * Obtain the cumulative histogram of the alternate allele frequency of a population, for the variants matching the query.
+     * See {@link VariantSearchStats#FREQ_BINS}.
+     *
+     * @param collection   Collection name
+     * @param query        Query
+     * @param study        Population frequency study
+     * @param population   Population
+     * @return Cumulative histogram
+     * @throws IOException            IOException
+     * @throws VariantSearchException VariantSearchException
+     */
+    public long[] popFreqHistogram(String collection, Query query, String study, String population)
+            throws IOException, VariantSearchException {
+        String field = "popFreq__" + study + "__" + population;
+        List<String> facetQueries = new ArrayList<>(VariantSearchStats.FREQ_BINS.length + 1);
+        for (double bin : VariantSearchStats.FREQ_BINS) {
+            facetQueries.add(field + ":[* TO " + bin + "]");
+        }
+        facetQueries.add(field + ":[* TO *]");
+
+        SolrQuery solrQuery = solrQueryParser.parse(query, new QueryOptions(QueryOptions.LIMIT, 0));
+        solrQuery.setFacet(true);
+        for (String facetQuery : facetQueries) {
+            solrQuery.addFacetQuery(facetQuery);
+        }
+        try {
+            QueryResponse response = solrManager.getSolrClient().query(collection, solrQuery);
+            long[] histogram = new long[facetQueries.size()];
+            Map<String, Integer> counts = response.getFacetQuery();
+            for (int i = 0; i < facetQueries.size(); i++) {
+                Integer count = counts == null ? null : counts.get(facetQueries.get(i));
+                histogram[i] = count == null ? 0 : count;
+            }
+            return histogram;
+        } catch (SolrServerException e) {
+            throw new VariantSearchException("Error fetching stats from Solr", e);
+        }
+    }
+
+    private static Map<String, Long> facetCounts(QueryResponse response, String name) {
+        Map<String, Long> counts = new HashMap<>();
+        FacetField facetField = response.getFacetField(name);
+        if (facetField != null && facetField.getValues() != null) {
+            for (FacetField.Count count : facetField.getValues()) {
+                counts.put(count.getName(), count.getCount());
+            }
+        }
+        return counts;
+    }
+
     /**-------------------------------------
      *  P R I V A T E    M E T H O D S
      -------------------------------------*/
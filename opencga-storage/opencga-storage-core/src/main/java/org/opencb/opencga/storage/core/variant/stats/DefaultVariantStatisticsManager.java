@@ -32,6 +32,7 @@ import org.opencb.commons.ProgressLogger;
 import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.io.DataReader;
+import org.opencb.commons.io.DataWriter;
 import org.opencb.commons.run.ParallelTaskRunner;
 import org.opencb.commons.run.Task;
 import org.opencb.opencga.core.common.UriUtils;
@@ -42,6 +43,9 @@ import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.core.variant.io.avro.VariantStatsAvroDataReader;
+import org.opencb.opencga.storage.core.variant.io.avro.VariantStatsAvroDataWriter;
 import org.opencb.opencga.storage.core.variant.io.db.VariantDBReader;
 import org.opencb.opencga.storage.core.variant.io.db.VariantStatsDBWriter;
 import org.opencb.opencga.storage.core.variant.io.json.mixin.GenericRecordAvroJsonMixin;
@@ -71,8 +75,15 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
     public static final String OUTPUT = "output";
     public static final String STATS_LOAD_PARALLEL = "stats.load.parallel";
     public static final boolean DEFAULT_STATS_LOAD_PARALLEL = true;
+    /** Write the calculated stats directly into the database, skipping the intermediate json file. */
+    public static final String STATS_LOAD_DIRECT = "stats.load.direct";
+    public static final boolean DEFAULT_STATS_LOAD_DIRECT = false;
+    /** When loading directly, also write the stats into an avro file, that can be loaded again with {@link #loadStats}. */
+    public static final String STATS_LOAD_DIRECT_SPILL = "stats.load.direct.spill";
+    public static final boolean DEFAULT_STATS_LOAD_DIRECT_SPILL = true;
 
     private static final String VARIANT_STATS_SUFFIX = ".variants.stats.json.gz";
+    private static final String VARIANT_STATS_AVRO_SUFFIX = ".variants.stats.avro";
     private static final String SOURCE_STATS_SUFFIX = ".source.stats.json.gz";
 
     private final JsonFactory jsonFactory;
@@ -92,6 +103,12 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
     @Override
     public void calculateStatistics(String study, List<String> cohorts, QueryOptions options) throws IOException, StorageEngineException {
 
+        if (options.getBoolean(Options.STATS_INCREMENTAL.key(), Options.STATS_INCREMENTAL.defaultValue())
+                && !options.getBoolean(Options.OVERWRITE_STATS.key(), false)
+                && calculateIncrementalStatistics(study, cohorts, options)) {
+            return;
+        }
+
         URI output;
         try {
             output = UriUtils.createUri(options.getString(OUTPUT));
@@ -101,7 +118,9 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
 
         URI stats = createStats(dbAdaptor, output, study, cohorts, options);
 
-        loadStats(dbAdaptor, stats, study, options);
+        if (!options.getBoolean(STATS_LOAD_DIRECT, DEFAULT_STATS_LOAD_DIRECT)) {
+            loadStats(dbAdaptor, stats, study, options);
+        }
     }
 
 
@@ -151,6 +170,7 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
      * * add the cohorts to the studyConfiuration
      * * checks invalidated stats, and set overwrite=true if needed
      * * sets up a ParallelTaskRunner: a reader, a writer and tasks
+     * * if {@link #STATS_LOAD_DIRECT}, the writer loads the stats into the database, and the cohorts are marked as calculated
      * * writes the source stats
      *
      * @param variantDBAdaptor to obtain the Variants
@@ -214,7 +234,6 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
                 .append(QueryOptions.EXCLUDE, VariantField.ANNOTATION);
         logger.info("ReaderQueryOptions: " + readerOptions.toJson());
         VariantDBReader reader = new VariantDBReader(studyConfiguration, variantDBAdaptor, readerQuery, readerOptions);
-        List<Task<Variant, String>> tasks = new ArrayList<>(numTasks);
         boolean skipCount = options.getBoolean(QueryOptions.SKIP_COUNT, false);
         ProgressLogger progressLogger = new ProgressLogger("Calculated stats:",
                 () -> {
@@ -225,16 +244,36 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
                         return numStatsToLoad;
                     }
                 }, 200).setBatchSize(5000);
-        for (int i = 0; i < numTasks; i++) {
-            tasks.add(new VariantStatsWrapperTask(overwrite, cohorts, studyConfiguration, variantSourceStats, tagmap, progressLogger));
-        }
-        Path variantStatsPath = Paths.get(output.getPath() + VARIANT_STATS_SUFFIX);
-        logger.info("will write stats to {}", variantStatsPath);
-        StringDataWriter writer = new StringDataWriter(variantStatsPath, true);
-
-        // runner
+        boolean direct = options.getBoolean(STATS_LOAD_DIRECT, DEFAULT_STATS_LOAD_DIRECT);
         ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder().setNumTasks(numTasks).setBatchSize(batchSize).build();
-        ParallelTaskRunner runner = new ParallelTaskRunner<>(reader, tasks, writer, config);
+        ParallelTaskRunner runner;
+        if (direct) {
+            List<Task<Variant, VariantStatsWrapper>> tasks = new ArrayList<>(numTasks);
+            for (int i = 0; i < numTasks; i++) {
+                tasks.add(new VariantStatsCalculatorTask(overwrite, cohorts, studyConfiguration, variantSourceStats, tagmap,
+                        progressLogger));
+            }
+            List<DataWriter<VariantStatsWrapper>> writers = new ArrayList<>(2);
+            writers.add(newVariantStatisticsDBWriter(variantDBAdaptor, studyConfiguration, options));
+            if (options.getBoolean(STATS_LOAD_DIRECT_SPILL, DEFAULT_STATS_LOAD_DIRECT_SPILL)) {
+                Path variantStatsPath = Paths.get(output.getPath() + VARIANT_STATS_AVRO_SUFFIX);
+                logger.info("will write stats to the database and to {}", variantStatsPath);
+                writers.add(new VariantStatsAvroDataWriter(variantStatsPath, true, studyConfiguration.getStudyName()));
+            } else {
+                logger.info("will write stats to the database");
+            }
+            runner = new ParallelTaskRunner<>(reader, tasks, new VariantStatsMultiWriter(writers), config);
+        } else {
+            List<Task<Variant, String>> tasks = new ArrayList<>(numTasks);
+            for (int i = 0; i < numTasks; i++) {
+                tasks.add(new VariantStatsWrapperTask(overwrite, cohorts, studyConfiguration, variantSourceStats, tagmap,
+                        progressLogger));
+            }
+            Path variantStatsPath = Paths.get(output.getPath() + VARIANT_STATS_SUFFIX);
+            logger.info("will write stats to {}", variantStatsPath);
+            StringDataWriter writer = new StringDataWriter(variantStatsPath, true);
+            runner = new ParallelTaskRunner<>(reader, tasks, writer, config);
+        }
         try {
             logger.info("starting stats creation for cohorts {}", cohorts.keySet());
             long start = System.currentTimeMillis();
@@ -250,6 +289,9 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
             outputSourceStream.write(sourceWriter.writeValueAsBytes(variantSourceStats));
         }
 
+        if (direct) {
+            VariantStatisticsManager.checkAndUpdateCalculatedCohorts(studyConfiguration, cohorts.keySet(), updateStats);
+        }
         variantDBAdaptor.getStudyConfigurationManager().updateStudyConfiguration(studyConfiguration, options);
 
         return output;
@@ -257,52 +299,71 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
 
     class VariantStatsWrapperTask implements ParallelTaskRunner.Task<Variant, String> {
 
-        private boolean overwrite;
+        private final VariantStatsCalculatorTask calculatorTask;
+        private ObjectWriter variantsWriter;
+
+        VariantStatsWrapperTask(boolean overwrite, Map<String, Set<String>> cohorts,
+                                StudyConfiguration studyConfiguration,
+                                VariantSourceStats variantSourceStats, Properties tagmap, ProgressLogger progressLogger) {
+            calculatorTask = new VariantStatsCalculatorTask(overwrite, cohorts, studyConfiguration, variantSourceStats, tagmap,
+                    progressLogger);
+            ObjectMapper jsonObjectMapper = new ObjectMapper(new JsonFactory());
+            jsonObjectMapper.addMixIn(VariantStats.class, VariantStatsJsonMixin.class);
+            jsonObjectMapper.addMixIn(GenericRecord.class, GenericRecordAvroJsonMixin.class);
+            variantsWriter = jsonObjectMapper.writerFor(VariantStatsWrapper.class);
+        }
+
+        @Override
+        public List<String> apply(List<Variant> variants) {
+            List<VariantStatsWrapper> variantStatsWrappers = calculatorTask.apply(variants);
+
+            List<String> strings = new ArrayList<>(variantStatsWrappers.size());
+            for (VariantStatsWrapper variantStatsWrapper : variantStatsWrappers) {
+                try {
+                    strings.add(variantsWriter.writeValueAsString(variantStatsWrapper));
+                } catch (JsonProcessingException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+            return strings;
+        }
+
+        @Override
+        public void post() {
+            calculatorTask.post();
+        }
+    }
+
+    class VariantStatsCalculatorTask implements ParallelTaskRunner.Task<Variant, VariantStatsWrapper> {
+
         private Map<String, Set<String>> cohorts;
         private StudyConfiguration studyConfiguration;
         private final ProgressLogger progressLogger;
-        //        private String fileId;
-        private ObjectMapper jsonObjectMapper;
-        private ObjectWriter variantsWriter;
         private VariantSourceStats variantSourceStats;
-        private Properties tagmap;
         private VariantStatisticsCalculator variantStatisticsCalculator;
 
-        VariantStatsWrapperTask(boolean overwrite, Map<String, Set<String>> cohorts,
-                                StudyConfiguration studyConfiguration,
-                                VariantSourceStats variantSourceStats, Properties tagmap, ProgressLogger progressLogger) {
-            this.overwrite = overwrite;
+        VariantStatsCalculatorTask(boolean overwrite, Map<String, Set<String>> cohorts,
+                                   StudyConfiguration studyConfiguration,
+                                   VariantSourceStats variantSourceStats, Properties tagmap, ProgressLogger progressLogger) {
             this.cohorts = cohorts;
             this.studyConfiguration = studyConfiguration;
             this.progressLogger = progressLogger;
-            jsonObjectMapper = new ObjectMapper(new JsonFactory());
-            jsonObjectMapper.addMixIn(VariantStats.class, VariantStatsJsonMixin.class);
-            jsonObjectMapper.addMixIn(GenericRecord.class, GenericRecordAvroJsonMixin.class);
-            variantsWriter = jsonObjectMapper.writerFor(VariantStatsWrapper.class);
             this.variantSourceStats = variantSourceStats;
-            this.tagmap = tagmap;
             variantStatisticsCalculator = new VariantStatisticsCalculator(overwrite);
             variantStatisticsCalculator.setAggregationType(studyConfiguration.getAggregation(), tagmap);
         }
 
         @Override
-        public List<String> apply(List<Variant> variants) {
-
-            List<String> strings = new ArrayList<>(variants.size());
+        public List<VariantStatsWrapper> apply(List<Variant> variants) {
+            long start = System.currentTimeMillis();
             boolean defaultCohortAbsent = false;
 
             List<VariantStatsWrapper> variantStatsWrappers = variantStatisticsCalculator.calculateBatch(variants,
                     studyConfiguration.getStudyName(), cohorts);
 
-            long start = System.currentTimeMillis();
             for (VariantStatsWrapper variantStatsWrapper : variantStatsWrappers) {
-                try {
-                    strings.add(variantsWriter.writeValueAsString(variantStatsWrapper));
-                    if (variantStatsWrapper.getCohortStats().get(StudyEntry.DEFAULT_COHORT) == null) {
-                        defaultCohortAbsent = true;
-                    }
-                } catch (JsonProcessingException e) {
-                    throw Throwables.propagate(e);
+                if (variantStatsWrapper.getCohortStats().get(StudyEntry.DEFAULT_COHORT) == null) {
+                    defaultCohortAbsent = true;
                 }
             }
 
@@ -314,18 +375,17 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
                     variantSourceStats.updateSampleStats(variants, null);  // TODO test
                 }
             }
-            logger.debug("another batch of {} elements calculated. time: {}ms", strings.size(), System.currentTimeMillis() - start);
+            logger.debug("another batch of {} elements calculated. time: {}ms", variantStatsWrappers.size(),
+                    System.currentTimeMillis() - start);
             if (!variants.isEmpty()) {
                 progressLogger.increment(variants.size(), () -> ", up to position "
                         + variants.get(variants.size() - 1).getChromosome()
                         + ":"
                         + variants.get(variants.size() - 1).getStart());
-//                logger.info("stats created up to position {}:{}", variants.get(variants.size() - 1).getChromosome(),
-//                        variants.get(variants.size() - 1).getStart());
             } else {
                 logger.info("task with empty batch");
             }
-            return strings;
+            return variantStatsWrappers;
         }
 
         @Override
@@ -336,6 +396,333 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
         }
     }
 
+    /**
+     * Writes the same batches into multiple writers. e.g. the database and a spill file.
+     */
+    static class VariantStatsMultiWriter implements DataWriter<VariantStatsWrapper> {
+
+        private final List<DataWriter<VariantStatsWrapper>> writers;
+
+        VariantStatsMultiWriter(List<DataWriter<VariantStatsWrapper>> writers) {
+            this.writers = writers;
+        }
+
+        @Override
+        public boolean open() {
+            writers.forEach(DataWriter::open);
+            return true;
+        }
+
+        @Override
+        public boolean pre() {
+            writers.forEach(DataWriter::pre);
+            return true;
+        }
+
+        @Override
+        public boolean write(List<VariantStatsWrapper> batch) {
+            for (DataWriter<VariantStatsWrapper> writer : writers) {
+                writer.write(batch);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean post() {
+            writers.forEach(DataWriter::post);
+            return true;
+        }
+
+        @Override
+        public boolean close() {
+            writers.forEach(DataWriter::close);
+            return true;
+        }
+    }
+
+    /**
+     * Updates the stats of the given cohorts adding only the contribution of the samples added since the last time
+     * the stats were calculated. All the variants from the study are read, but only the new samples are decoded.
+     *
+     * Variants without previous stats are calculated from scratch.
+     *
+     * @param study     Study
+     * @param cohorts   Cohorts to update
+     * @param options   Other options
+     * @return          false if the stats can not be updated incrementally. e.g. some samples were removed from the cohort.
+     * @throws StorageEngineException If any error occurs
+     */
+    public boolean calculateIncrementalStatistics(String study, List<String> cohorts, QueryOptions options)
+            throws StorageEngineException {
+        StudyConfigurationManager studyConfigurationManager = dbAdaptor.getStudyConfigurationManager();
+        StudyConfiguration studyConfiguration = studyConfigurationManager.getStudyConfiguration(study, options).first();
+        if (studyConfiguration.isAggregated()) {
+            return false;
+        }
+
+        Map<String, Set<String>> cohortSamples = new HashMap<>();
+        Map<String, Set<String>> newSamples = new HashMap<>();
+        for (String cohort : cohorts) {
+            Integer cohortId = studyConfiguration.getCohortIds().get(cohort);
+            Set<Integer> samples = cohortId == null ? null : studyConfiguration.getCohorts().get(cohortId);
+            Set<Integer> statsSamples = cohortId == null ? null : VariantStatisticsManager.getStatsSamples(studyConfiguration, cohortId);
+            if (samples == null || statsSamples == null || !samples.containsAll(statsSamples)) {
+                logger.info("Unable to update stats of cohort \"{}\" incrementally", cohort);
+                return false;
+            }
+            cohortSamples.put(cohort, getSampleNames(studyConfiguration, samples));
+
+            Set<Integer> addedSamples = new HashSet<>(samples);
+            addedSamples.removeAll(statsSamples);
+            if (!addedSamples.isEmpty()) {
+                newSamples.put(cohort, getSampleNames(studyConfiguration, addedSamples));
+            }
+        }
+        if (newSamples.isEmpty()) {
+            return false;
+        }
+
+        for (Map.Entry<String, Set<String>> entry : newSamples.entrySet()) {
+            logger.info("Add {} samples to the stats of cohort \"{}\"", entry.getValue().size(), entry.getKey());
+        }
+        updateStatsIncremental(studyConfiguration, cohortSamples, newSamples, false, options);
+
+        studyConfigurationManager.lockAndUpdate(studyConfiguration.getStudyId(), sc -> {
+            VariantStatisticsManager.checkAndUpdateCalculatedCohorts(sc, cohorts, true);
+            return sc;
+        });
+        return true;
+    }
+
+    /**
+     * Subtracts the contribution of the samples from the given files from the calculated stats.
+     * Must be called before removing the files.
+     *
+     * Stats are not modified if the samples are also in other indexed files, or if the samples used to calculate the
+     * stats are unknown. In that case, the affected cohorts will be invalidated when removing the files.
+     *
+     * @param study     Study
+     * @param fileIds   Files to be removed
+     * @param options   Other options
+     * @throws StorageEngineException If any error occurs
+     */
+    public void subtractFilesStatistics(String study, List<Integer> fileIds, QueryOptions options) throws StorageEngineException {
+        StudyConfigurationManager studyConfigurationManager = dbAdaptor.getStudyConfigurationManager();
+        StudyConfiguration studyConfiguration = studyConfigurationManager.getStudyConfiguration(study, options).first();
+        if (studyConfiguration.isAggregated()) {
+            return;
+        }
+
+        Set<Integer> removedSamples = new HashSet<>();
+        for (Integer fileId : fileIds) {
+            removedSamples.addAll(studyConfiguration.getSamplesInFiles().get(fileId));
+        }
+        for (Integer fileId : studyConfiguration.getIndexedFiles()) {
+            if (!fileIds.contains(fileId)
+                    && !Collections.disjoint(studyConfiguration.getSamplesInFiles().get(fileId), removedSamples)) {
+                logger.info("Samples from removed files are also in file {}. Unable to subtract stats", fileId);
+                return;
+            }
+        }
+
+        Map<String, Set<String>> samplesToSubtract = new HashMap<>();
+        for (Integer cohortId : studyConfiguration.getCalculatedStats()) {
+            Set<Integer> statsSamples = VariantStatisticsManager.getStatsSamples(studyConfiguration, cohortId);
+            if (statsSamples == null || studyConfiguration.getInvalidStats().contains(cohortId)) {
+                continue;
+            }
+            statsSamples.retainAll(removedSamples);
+            if (!statsSamples.isEmpty()) {
+                samplesToSubtract.put(studyConfiguration.getCohortIds().inverse().get(cohortId),
+                        getSampleNames(studyConfiguration, statsSamples));
+            }
+        }
+        if (samplesToSubtract.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<String, Set<String>> entry : samplesToSubtract.entrySet()) {
+            logger.info("Subtract {} samples from the stats of cohort \"{}\"", entry.getValue().size(), entry.getKey());
+        }
+        updateStatsIncremental(studyConfiguration, null, samplesToSubtract, true, options);
+
+        studyConfigurationManager.lockAndUpdate(studyConfiguration.getStudyId(), sc -> {
+            for (String cohort : samplesToSubtract.keySet()) {
+                Integer cohortId = sc.getCohortIds().get(cohort);
+                Set<Integer> statsSamples = VariantStatisticsManager.getStatsSamples(sc, cohortId);
+                if (statsSamples != null) {
+                    statsSamples.removeAll(removedSamples);
+                    VariantStatisticsManager.setStatsSamples(sc, cohortId, statsSamples);
+                }
+            }
+            return sc;
+        });
+    }
+
+    /**
+     * Reads all the variants from the study with the given samples, and adds or subtracts their contribution to the stored stats.
+     *
+     * @param studyConfiguration    StudyConfiguration
+     * @param cohorts               All the samples of each cohort. Used to calculate the stats of variants without previous stats.
+     * @param deltaSamples          Samples to add or subtract from each cohort
+     * @param subtract              Subtract the samples instead of adding them
+     * @param options               Other options
+     * @throws StorageEngineException If any error occurs
+     */
+    private void updateStatsIncremental(StudyConfiguration studyConfiguration, Map<String, Set<String>> cohorts,
+                                        Map<String, Set<String>> deltaSamples, boolean subtract, QueryOptions options)
+            throws StorageEngineException {
+        int batchSize = options.getInt(Options.LOAD_BATCH_SIZE.key(), 100);
+        int numTasks = options.getInt(Options.LOAD_THREADS.key(), 6);
+
+        Set<String> samples = new HashSet<>();
+        deltaSamples.values().forEach(samples::addAll);
+        Query readerQuery = buildSamplesQuery(studyConfiguration, samples);
+        // Read all the variants from the study. Variants not present in the files of the delta samples still have to
+        // count those samples as missing, so the result matches a full recalculation.
+        if (options.containsKey(VariantQueryParam.REGION.key())) {
+            readerQuery.put(VariantQueryParam.REGION.key(), options.get(VariantQueryParam.REGION.key()));
+        }
+        logger.info("ReaderQuery: " + readerQuery.toJson());
+        QueryOptions readerOptions = new QueryOptions(QueryOptions.SORT, true)
+                .append(QueryOptions.EXCLUDE, VariantField.ANNOTATION);
+        VariantDBReader reader = new VariantDBReader(studyConfiguration, dbAdaptor, readerQuery, readerOptions);
+
+        ProgressLogger progressLogger = new ProgressLogger("Updated stats:",
+                () -> dbAdaptor.count(readerQuery).first(), 200).setBatchSize(5000);
+        VariantStatsDBWriter writer = newVariantStatisticsDBWriter(dbAdaptor, studyConfiguration, options);
+        writer.setProgressLogger(progressLogger);
+
+        ParallelTaskRunner<Variant, VariantStatsWrapper> runner = new ParallelTaskRunner<>(reader,
+                () -> new VariantStatsIncrementalTask(studyConfiguration, cohorts, deltaSamples, subtract),
+                writer,
+                ParallelTaskRunner.Config.builder().setAbortOnFail(true).setNumTasks(numTasks).setBatchSize(batchSize).build());
+        try {
+            long start = System.currentTimeMillis();
+            runner.run();
+            logger.info("finishing incremental stats update, time: {}ms", System.currentTimeMillis() - start);
+        } catch (ExecutionException e) {
+            throw new StorageEngineException("Unable to update statistics.", e);
+        }
+    }
+
+    private static Query buildSamplesQuery(StudyConfiguration studyConfiguration, Collection<String> samples) {
+        Set<Integer> sampleIds = new HashSet<>(samples.size());
+        for (String sample : samples) {
+            sampleIds.add(studyConfiguration.getSampleIds().get(sample));
+        }
+        Set<Integer> fileIds = new HashSet<>();
+        for (Map.Entry<Integer, LinkedHashSet<Integer>> entry : studyConfiguration.getSamplesInFiles().entrySet()) {
+            if (studyConfiguration.getIndexedFiles().contains(entry.getKey()) && !Collections.disjoint(entry.getValue(), sampleIds)) {
+                fileIds.add(entry.getKey());
+            }
+        }
+        return new Query(VariantQueryParam.STUDY.key(), studyConfiguration.getStudyId())
+                .append(VariantQueryParam.INCLUDE_STUDY.key(), studyConfiguration.getStudyId())
+                .append(VariantQueryParam.INCLUDE_SAMPLE.key(), new ArrayList<>(sampleIds))
+                .append(VariantQueryParam.INCLUDE_FILE.key(), new ArrayList<>(fileIds))
+                .append(VariantQueryParam.UNKNOWN_GENOTYPE.key(), UNKNOWN_GENOTYPE);
+    }
+
+    private static Set<String> getSampleNames(StudyConfiguration studyConfiguration, Collection<Integer> sampleIds) {
+        Map<Integer, String> idSamples = StudyConfiguration.inverseMap(studyConfiguration.getSampleIds());
+        Set<String> samples = new HashSet<>(sampleIds.size());
+        for (Integer sampleId : sampleIds) {
+            samples.add(idSamples.get(sampleId));
+        }
+        return samples;
+    }
+
+    class VariantStatsIncrementalTask implements ParallelTaskRunner.Task<Variant, VariantStatsWrapper> {
+
+        private final StudyConfiguration studyConfiguration;
+        private final Map<String, Set<String>> cohorts;
+        private final Map<String, Set<String>> deltaSamples;
+        private final boolean subtract;
+        private final VariantStatisticsCalculator calculator;
+
+        VariantStatsIncrementalTask(StudyConfiguration studyConfiguration, Map<String, Set<String>> cohorts,
+                                    Map<String, Set<String>> deltaSamples, boolean subtract) {
+            this.studyConfiguration = studyConfiguration;
+            this.cohorts = cohorts;
+            this.deltaSamples = deltaSamples;
+            this.subtract = subtract;
+            calculator = new VariantStatisticsCalculator(true);
+            calculator.setAggregationType(studyConfiguration.getAggregation(), null);
+        }
+
+        @Override
+        public List<VariantStatsWrapper> apply(List<Variant> variants) {
+            String studyName = studyConfiguration.getStudyName();
+
+            // The calculator removes the stats read from the database. Keep a copy.
+            List<Map<String, VariantStats>> storedStats = new ArrayList<>(variants.size());
+            for (Variant variant : variants) {
+                StudyEntry study = variant.getStudy(studyName);
+                storedStats.add(study == null || study.getStats() == null ? null : new HashMap<>(study.getStats()));
+            }
+            calculator.calculateBatch(variants, studyName, deltaSamples);
+
+            List<VariantStatsWrapper> wrappers = new ArrayList<>(variants.size());
+            List<Variant> variantsWithoutStats = new ArrayList<>();
+            for (int i = 0; i < variants.size(); i++) {
+                Variant variant = variants.get(i);
+                StudyEntry study = variant.getStudy(studyName);
+                if (study == null) {
+                    continue;
+                }
+                Map<String, VariantStats> cohortStats = new HashMap<>(deltaSamples.size());
+                for (String cohort : deltaSamples.keySet()) {
+                    VariantStats stats = storedStats.get(i) == null ? null : storedStats.get(i).get(cohort);
+                    if (stats == null) {
+                        break;
+                    }
+                    stats.setRefAllele(variant.getReference());
+                    stats.setAltAllele(variant.getAlternate());
+                    if (subtract) {
+                        cohortStats.put(cohort, VariantStatsMerger.subtract(stats, study.getStats(cohort)));
+                    } else {
+                        cohortStats.put(cohort, VariantStatsMerger.add(stats, study.getStats(cohort)));
+                    }
+                }
+                if (cohortStats.size() == deltaSamples.size()) {
+                    wrappers.add(new VariantStatsWrapper(variant.getChromosome(), variant.getStart(), variant.getEnd(), cohortStats,
+                            variant.getSv()));
+                } else if (!subtract) {
+                    variantsWithoutStats.add(variant);
+                }
+            }
+
+            if (!variantsWithoutStats.isEmpty()) {
+                wrappers.addAll(calculateStats(variantsWithoutStats));
+            }
+            return wrappers;
+        }
+
+        /**
+         * Calculate the stats from scratch for variants without previous stats, fetching all the samples of the cohorts.
+         *
+         * @param variants  Variants without previous stats
+         * @return          Calculated stats
+         */
+        private List<VariantStatsWrapper> calculateStats(List<Variant> variants) {
+            Map<String, Set<String>> samples = new HashMap<>(deltaSamples.size());
+            Set<String> allSamples = new HashSet<>();
+            for (String cohort : deltaSamples.keySet()) {
+                samples.put(cohort, cohorts.get(cohort));
+                allSamples.addAll(cohorts.get(cohort));
+            }
+            List<String> ids = new ArrayList<>(variants.size());
+            for (Variant variant : variants) {
+                ids.add(variant.toString());
+            }
+            Query query = buildSamplesQuery(studyConfiguration, allSamples).append(VariantQueryParam.ID.key(), ids);
+            List<Variant> fullVariants = dbAdaptor.get(query, new QueryOptions(QueryOptions.EXCLUDE, VariantField.ANNOTATION))
+                    .getResult();
+            return calculator.calculateBatch(fullVariants, studyConfiguration.getStudyName(), samples);
+        }
+    }
+
     public void loadStats(VariantDBAdaptor variantDBAdaptor, URI uri, String study, QueryOptions options) throws
             IOException, StorageEngineException {
         StudyConfigurationManager studyConfigurationManager = variantDBAdaptor.getStudyConfigurationManager();
@@ -348,6 +735,10 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
 
         URI variantStatsUri = Paths.get(uri.getPath() + VARIANT_STATS_SUFFIX).toUri();
         URI sourceStatsUri = Paths.get(uri.getPath() + SOURCE_STATS_SUFFIX).toUri();
+        if (!Paths.get(variantStatsUri).toFile().exists() && Paths.get(uri.getPath() + VARIANT_STATS_AVRO_SUFFIX).toFile().exists()) {
+            // Stats spilled by a direct load
+            variantStatsUri = Paths.get(uri.getPath() + VARIANT_STATS_AVRO_SUFFIX).toUri();
+        }
 
         boolean updateStats = options.getBoolean(Options.UPDATE_STATS.key(), false);
         checkAndUpdateCalculatedCohorts(studyConfiguration, variantStatsUri, updateStats);
@@ -369,14 +760,19 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
 
         /* Open input streams */
         Path variantInput = Paths.get(uri.getPath());
-        InputStream variantInputStream;
-        variantInputStream = new FileInputStream(variantInput.toFile());
-        variantInputStream = new GZIPInputStream(variantInputStream);
+        DataReader<VariantStatsWrapper> dataReader;
+        if (variantInput.toString().endsWith(VARIANT_STATS_AVRO_SUFFIX)) {
+            dataReader = new VariantStatsAvroDataReader(variantInput.toFile());
+        } else {
+            InputStream variantInputStream;
+            variantInputStream = new FileInputStream(variantInput.toFile());
+            variantInputStream = new GZIPInputStream(variantInputStream);
+            dataReader = newVariantStatsWrapperDataReader(variantInputStream);
+        }
 
 
         ProgressLogger progressLogger = new ProgressLogger("Loaded stats:", numStatsToLoad);
         ParallelTaskRunner<VariantStatsWrapper, ?> ptr;
-        DataReader<VariantStatsWrapper> dataReader = newVariantStatsWrapperDataReader(variantInputStream);
         List<VariantStatsDBWriter> writers = new ArrayList<>();
         if (options.getBoolean(STATS_LOAD_PARALLEL, DEFAULT_STATS_LOAD_PARALLEL)) {
             ptr = new ParallelTaskRunner<>(
@@ -599,6 +995,23 @@ public class DefaultVariantStatisticsManager implements VariantStatisticsManager
             throws IOException, StorageEngineException {
         /** Select input path **/
         Path variantInput = Paths.get(uri.getPath());
+        if (variantInput.toString().endsWith(VARIANT_STATS_AVRO_SUFFIX)) {
+            VariantStatsAvroDataReader reader = new VariantStatsAvroDataReader(variantInput.toFile());
+            try {
+                reader.open();
+                reader.pre();
+                List<VariantStatsWrapper> first = reader.read(1);
+                if (first.isEmpty()) {
+                    throw new IOException("File " + uri + " is empty");
+                }
+                Set<String> cohortNames = first.get(0).getCohortStats().keySet();
+                VariantStatisticsManager.checkAndUpdateCalculatedCohorts(studyConfiguration, cohortNames, updateStats);
+            } finally {
+                reader.post();
+                reader.close();
+            }
+            return;
+        }
 
         /** Open input streams and Initialize Json parse **/
         try (InputStream variantInputStream = new GZIPInputStream(new FileInputStream(variantInput.toFile()));
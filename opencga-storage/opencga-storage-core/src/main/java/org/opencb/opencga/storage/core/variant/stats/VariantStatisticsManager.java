@@ -42,6 +42,8 @@ import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils
 public interface VariantStatisticsManager {
 
     String UNKNOWN_GENOTYPE = ".";
+    /** StudyConfiguration attribute prefix with the samples used to calculate the stats of each cohort. */
+    String STATS_SAMPLES_PREFIX = "stats.samples.";
 
     /**
      *
@@ -81,6 +83,30 @@ public interface VariantStatisticsManager {
             } else {
                 studyConfiguration.getCalculatedStats().add(cohortId);
             }
+            setStatsSamples(studyConfiguration, cohortId, studyConfiguration.getCohorts().get(cohortId));
+        }
+    }
+
+    /**
+     * Get the samples used to calculate the stats of a cohort.
+     *
+     * @param studyConfiguration StudyConfiguration
+     * @param cohortId           Cohort id
+     * @return  Samples in the stored stats, or null if unknown
+     */
+    static Set<Integer> getStatsSamples(StudyConfiguration studyConfiguration, int cohortId) {
+        String key = STATS_SAMPLES_PREFIX + cohortId;
+        if (!studyConfiguration.getAttributes().containsKey(key)) {
+            return null;
+        }
+        return new HashSet<>(studyConfiguration.getAttributes().getAsIntegerList(key));
+    }
+
+    static void setStatsSamples(StudyConfiguration studyConfiguration, int cohortId, Collection<Integer> samples) {
+        if (samples == null) {
+            studyConfiguration.getAttributes().remove(STATS_SAMPLES_PREFIX + cohortId);
+        } else {
+            studyConfiguration.getAttributes().put(STATS_SAMPLES_PREFIX + cohortId, new ArrayList<>(samples));
         }
     }
 
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Merges VariantStats calculated over disjoint sets of samples.
+ *
+ * Only the accumulators (genotype counts, missing alleles and missing genotypes) are merged. The rest of the values
+ * (allele counts, allele and genotype frequencies, MAF and MGF) are derived from them.
+ *
+ * Created on 17/10/26.
+ */
+public final class VariantStatsMerger {
+
+    private VariantStatsMerger() {
+    }
+
+    /**
+     * Adds the contribution of a new set of samples.
+     *
+     * @param stats Stats to update
+     * @param delta Stats calculated only with the new samples
+     * @return      The updated stats
+     */
+    public static VariantStats add(VariantStats stats, VariantStats delta) {
+        return merge(stats, delta, 1);
+    }
+
+    /**
+     * Subtracts the contribution of a set of samples.
+     *
+     * @param stats Stats to update
+     * @param delta Stats calculated only with the samples to remove
+     * @return      The updated stats
+     */
+    public static VariantStats subtract(VariantStats stats, VariantStats delta) {
+        return merge(stats, delta, -1);
+    }
+
+    private static VariantStats merge(VariantStats stats, VariantStats delta, int sign) {
+        Map<Genotype, Integer> genotypesCount = new HashMap<>(stats.getGenotypesCount());
+        for (Map.Entry<Genotype, Integer> entry : delta.getGenotypesCount().entrySet()) {
+            int count = genotypesCount.getOrDefault(entry.getKey(), 0) + sign * entry.getValue();
+            if (count < 0) {
+                throw new IllegalArgumentException("Unable to subtract " + entry.getValue() + " genotypes " + entry.getKey()
+                        + ". Only " + genotypesCount.getOrDefault(entry.getKey(), 0) + " found");
+            }
+            genotypesCount.put(entry.getKey(), count);
+        }
+        stats.setGenotypesCount(genotypesCount);
+        stats.setMissingAlleles(Math.max(0, stats.getMissingAlleles() + sign * delta.getMissingAlleles()));
+        stats.setMissingGenotypes(Math.max(0, stats.getMissingGenotypes() + sign * delta.getMissingGenotypes()));
+
+        updateDerivedValues(stats);
+        return stats;
+    }
+
+    /**
+     * Recalculates allele counts, frequencies, MAF and MGF from the genotype counts.
+     *
+     * @param stats Stats to update
+     */
+    public static void updateDerivedValues(VariantStats stats) {
+        int[] alleleCounts = {0, 0};
+        int alleleNumber = 0;
+        int genotypeNumber = 0;
+        for (Map.Entry<Genotype, Integer> entry : stats.getGenotypesCount().entrySet()) {
+            boolean missing = false;
+            for (int allele : entry.getKey().getAllelesIdx()) {
+                if (allele < 0) {
+                    missing = true;
+                } else {
+                    if (allele < 2) {
+                        alleleCounts[allele] += entry.getValue();
+                    }
+                    alleleNumber += entry.getValue();
+                }
+            }
+            if (!missing) {
+                genotypeNumber += entry.getValue();
+            }
+        }
+
+        stats.setRefAlleleCount(alleleCounts[0]);
+        stats.setAltAlleleCount(alleleCounts[1]);
+        if (alleleNumber == 0) {
+            stats.setRefAlleleFreq(0F);
+            stats.setAltAlleleFreq(0F);
+        } else {
+            stats.setRefAlleleFreq(alleleCounts[0] / ((float) alleleNumber));
+            stats.setAltAlleleFreq(alleleCounts[1] / ((float) alleleNumber));
+        }
+        if (stats.getRefAlleleFreq() <= stats.getAltAlleleFreq()) {
+            stats.setMaf(stats.getRefAlleleFreq());
+            stats.setMafAllele(stats.getRefAllele());
+        } else {
+            stats.setMaf(stats.getAltAlleleFreq());
+            stats.setMafAllele(stats.getAltAllele());
+        }
+
+        Map<Genotype, Float> genotypesFreq = new HashMap<>();
+        float mgf = Float.MAX_VALUE;
+        String mgfGenotype = null;
+        for (Map.Entry<Genotype, Integer> entry : stats.getGenotypesCount().entrySet()) {
+            float freq = genotypeNumber == 0 ? 0F : entry.getValue() / ((float) genotypeNumber);
+            genotypesFreq.put(entry.getKey(), freq);
+            if (freq < mgf && !isMissing(entry.getKey())) {
+                mgf = freq;
+                mgfGenotype = entry.getKey().toString();
+            }
+        }
+        stats.setGenotypesFreq(genotypesFreq);
+        if (mgfGenotype != null) {
+            stats.setMgf(mgf);
+            stats.setMgfGenotype(mgfGenotype);
+        }
+    }
+
+    private static boolean isMissing(Genotype genotype) {
+        for (int allele : genotype.getAllelesIdx()) {
+            if (allele < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
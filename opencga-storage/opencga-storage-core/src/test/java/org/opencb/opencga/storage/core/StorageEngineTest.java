@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core;
+
+import org.junit.Test;
+import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.exceptions.StoragePipelineException;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class StorageEngineTest {
+
+    private static final int NUM_FILES = 6;
+    private static final int FAIL_FILE = 3;
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final List<URI> loaded = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void testIndexOverlapped() throws Exception {
+        List<URI> inputFiles = getInputFiles();
+        List<StoragePipelineResult> results = new TestStorageEngine(2, -1)
+                .index(inputFiles, URI.create("file:///tmp/"), false, true, true);
+
+        assertEquals(inputFiles, loaded);
+        assertEquals(NUM_FILES, results.size());
+        for (StoragePipelineResult result : results) {
+            assertTrue(result.isTransformExecuted());
+            assertTrue(result.isLoadExecuted());
+            assertNotNull(result.getPostLoadResult());
+        }
+        assertEquals(opened.get(), closed.get());
+    }
+
+    @Test
+    public void testIndexOverlappedTransformFail() throws Exception {
+        List<URI> inputFiles = getInputFiles();
+        try {
+            new TestStorageEngine(2, FAIL_FILE).index(inputFiles, URI.create("file:///tmp/"), false, true, true);
+            fail("Expected transform error");
+        } catch (StoragePipelineException e) {
+            List<StoragePipelineResult> results = e.getResults();
+            // Files before the failing one are fully loaded. Nothing is loaded after the failure
+            assertEquals(inputFiles.subList(0, FAIL_FILE), loaded);
+            for (int i = 0; i < FAIL_FILE; i++) {
+                assertTrue(results.get(i).isLoadExecuted());
+                assertNotNull(results.get(i).getPostLoadResult());
+                assertNull(results.get(i).getTransformError());
+            }
+            assertNotNull(results.get(FAIL_FILE).getTransformError());
+            assertFalse(results.get(FAIL_FILE).isLoadExecuted());
+            for (int i = FAIL_FILE + 1; i < results.size(); i++) {
+                assertFalse(results.get(i).isLoadExecuted());
+            }
+        }
+        // Pipelines of files transformed ahead, but never loaded, are closed as well
+        assertEquals(opened.get(), closed.get());
+    }
+
+    private static List<URI> getInputFiles() {
+        List<URI> inputFiles = new ArrayList<>(NUM_FILES);
+        for (int i = 0; i < NUM_FILES; i++) {
+            inputFiles.add(URI.create("file:///data/file" + i + ".vcf"));
+        }
+        return inputFiles;
+    }
+
+    private class TestStorageEngine extends StorageEngine<Object> {
+
+        private final int numTransforms;
+        private final int failFile;
+
+        TestStorageEngine(int numTransforms, int failFile) {
+            this.numTransforms = numTransforms;
+            this.failFile = failFile;
+        }
+
+        @Override
+        protected int getIndexOverlappedTransforms() {
+            return numTransforms;
+        }
+
+        @Override
+        public Object getDBAdaptor() {
+            return null;
+        }
+
+        @Override
+        public void testConnection() {
+        }
+
+        @Override
+        public StoragePipeline newStoragePipeline(boolean connected) {
+            opened.incrementAndGet();
+            return new TestStoragePipeline(failFile);
+        }
+    }
+
+    private class TestStoragePipeline implements StoragePipeline {
+
+        private final int failFile;
+        private URI input;
+
+        TestStoragePipeline(int failFile) {
+            this.failFile = failFile;
+        }
+
+        @Override
+        public URI extract(URI input, URI ouput) {
+            return input;
+        }
+
+        @Override
+        public URI preTransform(URI input) {
+            this.input = input;
+            return input;
+        }
+
+        @Override
+        public URI transform(URI input, URI pedigree, URI output) throws Exception {
+            if (input.getPath().endsWith("file" + failFile + ".vcf")) {
+                throw new StorageEngineException("Error transforming " + input);
+            }
+            // Later files transform faster, so they finish before the file being loaded
+            Thread.sleep(10 * (NUM_FILES - getFileNumber(input)));
+            return URI.create(input + ".avro");
+        }
+
+        @Override
+        public URI postTransform(URI input) {
+            return input;
+        }
+
+        @Override
+        public URI preLoad(URI input, URI output) {
+            return input;
+        }
+
+        @Override
+        public URI load(URI input) {
+            loaded.add(this.input);
+            return input;
+        }
+
+        @Override
+        public URI postLoad(URI input, URI output) {
+            return input;
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+
+        private int getFileNumber(URI input) {
+            String path = input.getPath();
+            return Integer.parseInt(path.substring(path.lastIndexOf("file") + 4, path.indexOf(".vcf")));
+        }
+    }
+}
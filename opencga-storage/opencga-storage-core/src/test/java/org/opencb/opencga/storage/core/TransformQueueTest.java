@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.opencga.storage.core;
+
+import org.junit.Test;
+import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class TransformQueueTest {
+
+    @Test
+    public void testOrder() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<URI>> transforms = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int sleep = (10 - i) * 5;
+            URI uri = URI.create("file:///file" + i);
+            transforms.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(sleep);
+                running.decrementAndGet();
+                return uri;
+            });
+        }
+        try (TransformQueue queue = new TransformQueue(transforms, 3)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(queue.hasNext());
+                assertEquals(URI.create("file:///file" + i), queue.next());
+            }
+            assertFalse(queue.hasNext());
+        }
+        assertTrue(maxRunning.get() <= 3);
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        AtomicInteger started = new AtomicInteger();
+        List<Callable<URI>> transforms = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int id = i;
+            transforms.add(() -> {
+                started.incrementAndGet();
+                if (id == 1) {
+                    throw new StorageEngineException("Fail file " + id);
+                }
+                return URI.create("file:///file" + id);
+            });
+        }
+        try (TransformQueue queue = new TransformQueue(transforms, 2)) {
+            assertEquals(URI.create("file:///file0"), queue.next());
+            queue.next();
+            fail();
+        } catch (StorageEngineException e) {
+            assertEquals("Fail file 1", e.getMessage());
+        }
+        // No more transformations started after the failure
+        assertTrue(started.get() <= 4);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.config.CacheConfiguration;
+import org.opencb.opencga.storage.core.config.StorageConfiguration;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class CacheManagerTest {
+
+    private CacheManager cacheManager;
+
+    @Before
+    public void setUp() throws Exception {
+        StorageConfiguration configuration = new StorageConfiguration();
+        configuration.setCache(new CacheConfiguration()
+                .setActive(true)
+                .setType(CacheManager.LOCAL)
+                .setSlowThreshold(10)
+                .setMaxResultSize(100)
+                .setMaxHeapSize(1));
+        cacheManager = new CacheManager(configuration);
+    }
+
+    @Test
+    public void testCreateKey() throws Exception {
+        Query query = new Query("region", "1:1000-2000").append("gene", "BRCA2");
+        String key1 = cacheManager.createKey("_1_", "var", query, new QueryOptions("limit", 10));
+        String key2 = cacheManager.createKey("_1_", "var", new Query("gene", "BRCA2").append("region", "1:1000-2000"),
+                new QueryOptions("limit", 10));
+        String key3 = cacheManager.createKey("_1_", "var", query, new QueryOptions("limit", 20));
+
+        assertEquals(key1, key2);
+        assertNotEquals(key1, key3);
+        assertEquals("_1_2_", CacheManager.studiesKey(Arrays.asList(2, 1)));
+    }
+
+    @Test
+    public void testGetSet() throws Exception {
+        Query query = new Query("region", "1:1000-2000");
+        String key = cacheManager.createKey("_1_", "var", query, new QueryOptions());
+
+        assertNull(cacheManager.getIfPresent(key));
+        assertEquals(0, cacheManager.get(key).getNumResults());
+
+        cacheManager.set(key, query, newQueryResult(50, "a", "b"));
+        QueryResult<String> result = cacheManager.getIfPresent(key);
+
+        assertNotNull(result);
+        assertEquals(Arrays.asList("a", "b"), result.getResult());
+        assertEquals(1L, cacheManager.getStats().getLong(CacheBackend.HITS));
+        assertEquals(2L, cacheManager.getStats().getLong(CacheBackend.MISSES));
+
+        // Returned results are copies
+        result.getResult().clear();
+        assertEquals(Arrays.asList("a", "b"), cacheManager.<String>getIfPresent(key).getResult());
+    }
+
+    @Test
+    public void testSkipFastQueries() throws Exception {
+        Query query = new Query("region", "1:1000-2000");
+        String key = cacheManager.createKey("_1_", "var", query, new QueryOptions());
+
+        cacheManager.set(key, query, newQueryResult(5, "a"));
+
+        assertNull(cacheManager.getIfPresent(key));
+    }
+
+    @Test
+    public void testClearStudy() throws Exception {
+        Query query = new Query("region", "1:1000-2000");
+        String key1 = cacheManager.createKey(CacheManager.studiesKey(Arrays.asList(1, 2)), "var", query, new QueryOptions());
+        String key2 = cacheManager.createKey(CacheManager.studiesKey(Arrays.asList(2, 3)), "var", query, new QueryOptions());
+        String key12 = cacheManager.createKey(CacheManager.studiesKey(Arrays.asList(12)), "var", query, new QueryOptions());
+        cacheManager.set(key1, query, newQueryResult(50, "a"));
+        cacheManager.set(key2, query, newQueryResult(50, "b"));
+        cacheManager.set(key12, query, newQueryResult(50, "c"));
+
+        cacheManager.clear(1, "var");
+
+        assertNull(cacheManager.getIfPresent(key1));
+        assertNotNull(cacheManager.getIfPresent(key2));
+        assertNotNull(cacheManager.getIfPresent(key12));
+
+        cacheManager.clear();
+        assertNull(cacheManager.getIfPresent(key2));
+        assertNull(cacheManager.getIfPresent(key12));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        Query query = new Query();
+        String[] elements = new String[100];
+        Arrays.fill(elements, "a");
+        // Each result weighs ~100KB. Max size is 1MB
+        for (int i = 0; i < 100; i++) {
+            String key = cacheManager.createKey("_1_", "var", query.append("i", i), new QueryOptions());
+            cacheManager.set(key, query, newQueryResult(50, elements));
+        }
+
+        assertTrue(cacheManager.getStats().getLong(CacheBackend.EVICTIONS) > 0);
+        assertTrue(cacheManager.getStats().getLong(CacheBackend.SIZE) < 100);
+    }
+
+    private QueryResult<String> newQueryResult(int dbTime, String... elements) {
+        return new QueryResult<>("", dbTime, elements.length, elements.length, "", "", Arrays.asList(elements));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.io.plain;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class ParallelStringDataReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path gzip;
+    private Path plain;
+    private Path bgzf;
+
+    @Before
+    public void setUp() throws Exception {
+        gzip = Paths.get(VariantStorageBaseTest.getResourceUri("variant-test-file.vcf.gz"));
+        plain = temporaryFolder.getRoot().toPath().resolve("variant-test-file.vcf");
+        bgzf = temporaryFolder.getRoot().toPath().resolve("variant-test-file.bgzf.vcf.gz");
+        try (InputStream is = new GZIPInputStream(new FileInputStream(gzip.toFile()))) {
+            Files.copy(is, plain);
+        }
+        try (OutputStream os = new BlockCompressedOutputStream(bgzf.toFile())) {
+            Files.copy(plain, os);
+        }
+    }
+
+    @Test
+    public void testIsBgzf() throws Exception {
+        assertTrue(ParallelStringDataReader.isBgzf(bgzf));
+        assertFalse(ParallelStringDataReader.isBgzf(gzip));
+        assertFalse(ParallelStringDataReader.isBgzf(plain));
+    }
+
+    @Test
+    public void testReadPlain() throws Exception {
+        checkSameLines(plain);
+    }
+
+    @Test
+    public void testReadGzip() throws Exception {
+        checkSameLines(gzip);
+    }
+
+    @Test
+    public void testReadBgzf() throws Exception {
+        checkSameLines(bgzf);
+    }
+
+    private void checkSameLines(Path path) throws IOException {
+        List<String> expected = readAll(new StringDataReader(path), 100);
+        for (int chunkSize : new int[]{10, 1000, ParallelStringDataReader.DEFAULT_CHUNK_SIZE}) {
+            AtomicLong readBytes = new AtomicLong();
+            ParallelStringDataReader reader = new ParallelStringDataReader(path, 3, chunkSize);
+            reader.setReadBytesListener((total, delta) -> readBytes.addAndGet(delta));
+
+            List<String> actual = readAll(reader, 77);
+
+            assertEquals(expected, actual);
+            assertEquals(Files.size(path), readBytes.get());
+        }
+    }
+
+    private List<String> readAll(StringDataReader reader, int batchSize) {
+        List<String> lines = new ArrayList<>();
+        reader.open();
+        reader.pre();
+        List<String> batch = reader.read(batchSize);
+        while (!batch.isEmpty()) {
+            lines.addAll(batch);
+            batch = reader.read(batchSize);
+        }
+        reader.post();
+        reader.close();
+        return lines;
+    }
+}
@@ -22,13 +22,15 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.opencb.biodata.models.variant.VariantFileMetadata;
 import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
+import org.opencb.opencga.storage.core.variant.dummy.DummyStudyConfigurationAdaptor;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 import static org.opencb.opencga.storage.core.variant.VariantStorageEngine.Options.SAMPLE_IDS;
 
 /**
@@ -222,6 +224,47 @@ public class StudyConfigurationManagerTest {
 
     }
 
+    @Test
+    public void readOnlySnapshotsTest() throws StorageEngineException {
+        DummyStudyConfigurationAdaptor.clear();
+        StudyConfigurationManager scm = new StudyConfigurationManager(null, new DummyStudyConfigurationAdaptor(), null)
+                .setCacheCheckInterval(TimeUnit.MINUTES.toMillis(10));
+        StudyConfiguration studyConfiguration = newStudyConfiguration();
+        studyConfiguration.getSampleIds().put("s0", 0);
+        studyConfiguration.getSampleIds().put("s1", 1);
+        studyConfiguration.getSamplesInFiles().put(1, new LinkedHashSet<>(Arrays.asList(0, 1)));
+        studyConfiguration.getIndexedFiles().add(1);
+        scm.updateStudyConfiguration(studyConfiguration, null);
+
+        QueryOptions readOnly = new QueryOptions(StudyConfigurationManager.READ_ONLY, true);
+        StudyConfiguration sc1 = scm.getStudyConfiguration(1, readOnly).first();
+        StudyConfiguration sc2 = scm.getStudyConfiguration("Study", readOnly).first();
+        StudyConfiguration copy = scm.getStudyConfiguration(1, null).first();
+
+        // Read only readers share the same snapshot
+        assertSame(sc1, sc2);
+        assertTrue(sc1.isSnapshot());
+        assertNotSame(sc1, copy);
+        assertFalse(copy.isSnapshot());
+        assertEquals(sc1, copy);
+        assertSame(StudyConfiguration.getIndexedSamplesPosition(sc1), StudyConfiguration.getIndexedSamplesPosition(sc2));
+        assertEquals(StudyConfiguration.getIndexedSamplesPosition(copy), StudyConfiguration.getIndexedSamplesPosition(sc1));
+
+        // Writers create a new snapshot
+        scm.lockAndUpdate(1, sc -> {
+            sc.getSampleIds().put("s2", 2);
+            sc.getSamplesInFiles().put(2, new LinkedHashSet<>(Collections.singletonList(2)));
+            sc.getIndexedFiles().add(2);
+            return sc;
+        });
+        StudyConfiguration sc3 = scm.getStudyConfiguration(1, readOnly).first();
+        assertNotSame(sc1, sc3);
+        assertEquals(2, sc1.getSampleIds().size());
+        assertEquals(3, sc3.getSampleIds().size());
+        assertEquals(3, StudyConfiguration.getIndexedSamplesPosition(sc3).size());
+        DummyStudyConfigurationAdaptor.clear();
+    }
+
     protected VariantFileMetadata createVariantFileMetadata(StudyConfiguration studyConfiguration, Integer fileId) {
         studyConfiguration.getFileIds().put("fileName", fileId);
         VariantFileMetadata source = new VariantFileMetadata("fileName", fileId.toString());
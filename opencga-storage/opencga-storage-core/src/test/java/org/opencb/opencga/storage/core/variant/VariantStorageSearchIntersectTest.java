@@ -38,6 +38,7 @@ import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.core.variant.search.solr.VariantSearchManager;
 import org.opencb.opencga.storage.core.variant.search.solr.VariantSearchManager.UseSearchIndex;
 import org.opencb.opencga.storage.core.variant.solr.SolrExternalResource;
 import org.opencb.opencga.storage.core.variant.stats.DefaultVariantStatisticsManager;
@@ -191,6 +192,31 @@ public abstract class VariantStorageSearchIntersectTest extends VariantStorageBa
         verify(solrClient, times(1)).query(anyString(), any());
     }
 
+    @Test
+    public void testPaginationFromSearch() throws Exception {
+        Query query = new Query(ANNOT_CONSEQUENCE_TYPE.key(), 1631)
+                .append(ANNOT_CONSERVATION.key(), "gerp>1")
+                .append(ANNOT_PROTEIN_SUBSTITUTION.key(), "sift>0.01")
+                .append(UNKNOWN_GENOTYPE.key(), "./.");
+        Set<String> expected = variantStorageEngine.get(query, new QueryOptions()).getResult()
+                .stream().map(Variant::toString).collect(Collectors.toSet());
+        assertNotEquals(0, expected.size());
+
+        // Pages from the search engine do not follow the order of the storage engine, so they can not be resumed with a cursor
+        int limit = 3;
+        List<String> actual = new ArrayList<>();
+        for (int skip = 0; skip < expected.size(); skip += limit) {
+            VariantQueryResult<Variant> result = variantStorageEngine.get(query, new QueryOptions(QueryOptions.SORT, true)
+                    .append(QueryOptions.LIMIT, limit)
+                    .append(QueryOptions.SKIP, skip));
+            assertEquals(VariantSearchManager.SEARCH_ENGINE_ID, result.getSource());
+            assertNull(result.getCursor());
+            result.getResult().forEach(variant -> actual.add(variant.toString()));
+        }
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, new HashSet<>(actual));
+    }
+
     @Test
     public void testGetNotFromSearch() throws Exception {
         Query query = new Query(ANNOT_SIFT.key(), ">0.1");
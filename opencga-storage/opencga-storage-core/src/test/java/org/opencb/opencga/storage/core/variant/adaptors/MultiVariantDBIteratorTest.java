@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.adaptors;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Created on 17/10/26.
+ */
+public class MultiVariantDBIteratorTest {
+
+    private static final long QUERY_TIME_FETCHING = 1000;
+    private static final long QUERY_TIME_CONVERTING = 10;
+
+    @Test
+    public void testPrefetch() throws Exception {
+        List<String> ids = buildIds(1000);
+        AtomicInteger numQueries = new AtomicInteger();
+        MultiVariantDBIterator iterator = new MultiVariantDBIterator(ids.iterator(), 10, new Query(), new QueryOptions(),
+                factory(numQueries, new ArrayList<>()), 4);
+
+        List<Variant> variants = readAll(iterator);
+        assertEquals(ids, toIds(variants));
+        // Time fetching also includes the time spent by this thread reading the buffered results
+        assertTrue(iterator.getTimeFetching() >= numQueries.get() * QUERY_TIME_FETCHING);
+        assertEquals(numQueries.get() * QUERY_TIME_CONVERTING, iterator.getTimeConverting());
+    }
+
+    @Test
+    public void testPrefetchAdaptiveBatchSize() throws Exception {
+        List<String> ids = buildIds(1000);
+        List<Integer> batchSizes = new ArrayList<>();
+        readAll(new MultiVariantDBIterator(ids.iterator(), 10, new Query(), new QueryOptions(),
+                factory(new AtomicInteger(), batchSizes), 2));
+
+        // Fast queries. Batch size should grow, and never go below the initial value
+        assertTrue(batchSizes.toString(), batchSizes.size() < 100);
+        assertTrue(batchSizes.toString(), Collections.max(batchSizes) > 10);
+    }
+
+    @Test
+    public void testPrefetchLimit() throws Exception {
+        List<String> ids = buildIds(1000);
+        List<Variant> variants = readAll(new MultiVariantDBIterator(ids.iterator(), 10, new Query(),
+                new QueryOptions(QueryOptions.LIMIT, 15).append(QueryOptions.SKIP, 5),
+                factory(new AtomicInteger(), new ArrayList<>()), 4));
+        assertEquals(ids.subList(5, 20), toIds(variants));
+    }
+
+    @Test
+    public void testPrefetchEqualsNoPrefetch() throws Exception {
+        List<String> ids = buildIds(333);
+        List<Variant> expected = readAll(new MultiVariantDBIterator(ids.iterator(), 10, new Query(), new QueryOptions(),
+                factory(new AtomicInteger(), new ArrayList<>())));
+        List<Variant> variants = readAll(new MultiVariantDBIterator(ids.iterator(), 10, new Query(), new QueryOptions(),
+                factory(new AtomicInteger(), new ArrayList<>()), 3));
+        assertEquals(expected, variants);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPrefetchFailingQuery() throws Exception {
+        List<String> ids = buildIds(100);
+        BiFunction<Query, QueryOptions, VariantDBIterator> factory = factory(new AtomicInteger(), new ArrayList<>());
+        readAll(new MultiVariantDBIterator(ids.iterator(), 10, new Query(), new QueryOptions(), (query, options) -> {
+            if (((List<?>) query.get(VariantQueryParam.ID.key())).contains(ids.get(50))) {
+                throw new IllegalStateException("Error");
+            }
+            return factory.apply(query, options);
+        }, 4));
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws Exception {
+        List<String> ids = buildIds(1000);
+        try (MultiVariantDBIterator iterator = new MultiVariantDBIterator(ids.iterator(), 10, new Query(), new QueryOptions(),
+                factory(new AtomicInteger(), new ArrayList<>()), 4)) {
+            for (int i = 0; i < 25; i++) {
+                iterator.next();
+            }
+        }
+    }
+
+    private static List<String> buildIds(int numVariants) {
+        List<String> ids = new ArrayList<>(numVariants);
+        for (int i = 1; i <= numVariants; i++) {
+            ids.add("1:" + i + ":A:C");
+        }
+        return ids;
+    }
+
+    private static List<String> toIds(List<Variant> variants) {
+        List<String> ids = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            ids.add(variant.toString());
+        }
+        return ids;
+    }
+
+    private static BiFunction<Query, QueryOptions, VariantDBIterator> factory(AtomicInteger numQueries, List<Integer> batchSizes) {
+        return (query, options) -> {
+            numQueries.incrementAndGet();
+            List<?> ids = (List<?>) query.get(VariantQueryParam.ID.key());
+            synchronized (batchSizes) {
+                batchSizes.add(ids.size());
+            }
+            int limit = options.getInt(QueryOptions.LIMIT, Integer.MAX_VALUE);
+            Iterator<?> iterator = ids.stream().limit(limit).iterator();
+            VariantDBIterator variantDBIterator = new VariantDBIterator() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Variant next() {
+                    return new Variant(iterator.next().toString());
+                }
+            };
+            variantDBIterator.timeFetching = QUERY_TIME_FETCHING;
+            variantDBIterator.timeConverting = QUERY_TIME_CONVERTING;
+            return variantDBIterator;
+        };
+    }
+
+    private static List<Variant> readAll(VariantDBIterator iterator) throws Exception {
+        List<Variant> variants = new ArrayList<>();
+        try {
+            iterator.forEachRemaining(variants::add);
+        } finally {
+            iterator.close();
+        }
+        return variants;
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.adaptors;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 17/10/26.
+ */
+public class ParallelVariantDBIteratorTest {
+
+    private static final String CHROMOSOME = "chr";
+
+    @Test
+    public void testOrdered() throws Exception {
+        List<Query> queries = buildQueries(20);
+        List<Variant> variants = readAll(new ParallelVariantDBIterator(queries, new QueryOptions(), ParallelVariantDBIteratorTest::iterator,
+                4, true));
+        assertEquals(expected(queries), variants);
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        List<Query> queries = buildQueries(20);
+        List<Variant> variants = readAll(new ParallelVariantDBIterator(queries, new QueryOptions(), ParallelVariantDBIteratorTest::iterator,
+                4, false));
+        assertEquals(expected(queries).size(), variants.size());
+        assertEquals(new HashSet<>(expected(queries)), new HashSet<>(variants));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        assertEquals(Collections.emptyList(), readAll(new ParallelVariantDBIterator(Collections.emptyList(), new QueryOptions(),
+                ParallelVariantDBIteratorTest::iterator, 4, true)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailingPartition() throws Exception {
+        List<Query> queries = buildQueries(10);
+        BiFunction<Query, QueryOptions, VariantDBIterator> factory = (query, options) -> {
+            if (query.getInt("id") == 5) {
+                throw new IllegalStateException("Partition " + query.getInt("id"));
+            }
+            return iterator(query, options);
+        };
+        readAll(new ParallelVariantDBIterator(queries, new QueryOptions(), factory, 3, true));
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws Exception {
+        List<Query> queries = buildQueries(50);
+        try (ParallelVariantDBIterator iterator = new ParallelVariantDBIterator(queries, new QueryOptions(),
+                ParallelVariantDBIteratorTest::iterator, 4, true)) {
+            for (int i = 0; i < 10; i++) {
+                iterator.next();
+            }
+        }
+    }
+
+    private static List<Query> buildQueries(int numQueries) {
+        Random random = new Random(1);
+        List<Query> queries = new ArrayList<>(numQueries);
+        for (int i = 0; i < numQueries; i++) {
+            // Some empty partitions, and some bigger than the internal batch size
+            queries.add(new Query("id", i).append("size", random.nextInt(500)));
+        }
+        return queries;
+    }
+
+    private static List<Variant> expected(List<Query> queries) {
+        List<Variant> variants = new ArrayList<>();
+        for (Query query : queries) {
+            iterator(query, null).forEachRemaining(variants::add);
+        }
+        return variants;
+    }
+
+    private static VariantDBIterator iterator(Query query, QueryOptions options) {
+        int id = query.getInt("id");
+        int size = query.getInt("size");
+        Iterator<Variant> iterator = new Iterator<Variant>() {
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            public Variant next() {
+                i++;
+                return new Variant(CHROMOSOME, id * 1000 + i, "A", "C");
+            }
+        };
+        return new VariantDBIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Variant next() {
+                return iterator.next();
+            }
+        };
+    }
+
+    private static List<Variant> readAll(VariantDBIterator iterator) throws Exception {
+        List<Variant> variants = new ArrayList<>();
+        try {
+            iterator.forEachRemaining(variants::add);
+        } finally {
+            iterator.close();
+        }
+        return variants;
+    }
+}
@@ -251,6 +251,30 @@ public abstract class VariantDBAdaptorTest extends VariantStorageBaseTest {
         assertEquals(variantsToQuery.size(), queryResult.getResult().size());
     }
 
+    @Test
+    public void parallelIterator() throws Exception {
+        List<Variant> variants = new ArrayList<>();
+        try (VariantDBIterator iterator = dbAdaptor.parallelIterator(new Query(), new QueryOptions(QueryOptions.SORT, true), 4)) {
+            iterator.forEachRemaining(variants::add);
+        }
+        assertEquals(allVariants.getResult(), variants);
+
+        variants.clear();
+        try (VariantDBIterator iterator = dbAdaptor.parallelIterator(new Query(), new QueryOptions(), 4)) {
+            iterator.forEachRemaining(variants::add);
+        }
+        assertEquals(new HashSet<>(allVariants.getResult()), new HashSet<>(variants));
+        assertEquals(allVariants.getResult().size(), variants.size());
+
+        Query query = new Query(REGION.key(), "1:1000000-2000000,1:1500000-3000000,22");
+        List<Variant> expected = dbAdaptor.iterator(query, new QueryOptions(QueryOptions.SORT, true)).toQueryResult().getResult();
+        variants.clear();
+        try (VariantDBIterator iterator = dbAdaptor.parallelIterator(query, new QueryOptions(QueryOptions.SORT, true), 3)) {
+            iterator.forEachRemaining(variants::add);
+        }
+        assertEquals(expected, variants);
+    }
+
     @Test
     public void testGetAllVariants() {
         long numResults = count(null);
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.opencga.storage.core.variant.adaptors;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class VariantQueryCursorTest {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        Query query = new Query(VariantQueryParam.REGION.key(), "1:1000-2000").append(VariantQueryParam.STUDY.key(), "s1");
+        String token = new VariantQueryCursor(query, 500, "1:1500:A:C").encode();
+
+        // Order of the params does not matter
+        Query sameQuery = new Query(VariantQueryParam.STUDY.key(), "s1")
+                .append(VariantQueryParam.REGION.key(), "1:1000-2000")
+                .append(VariantQueryParam.GENE.key(), "");
+        VariantQueryCursor cursor = VariantQueryCursor.decode(token, sameQuery);
+        assertEquals(500, cursor.getLimit());
+        assertEquals("1:1500:A:C", cursor.getLastVariant());
+    }
+
+    @Test(expected = VariantQueryException.class)
+    public void testDecodeOtherQuery() throws Exception {
+        Query query = new Query(VariantQueryParam.REGION.key(), "1:1000-2000");
+        String token = new VariantQueryCursor(query, -1, "1:1500:A:C").encode();
+        VariantQueryCursor.decode(token, new Query(VariantQueryParam.REGION.key(), "2:1000-2000"));
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        Query query = new Query(VariantQueryParam.REGION.key(), "1:1000-2000");
+        String token = new VariantQueryCursor(query, 100, "1:1500:A:C").encode();
+        QueryOptions options = new QueryOptions(VariantQueryCursor.CURSOR, token).append(QueryOptions.SKIP, 10);
+
+        QueryOptions resolved = VariantQueryCursor.resolve(query, options);
+        assertFalse(resolved.containsKey(VariantQueryCursor.CURSOR));
+        assertFalse(resolved.containsKey(QueryOptions.SKIP));
+        assertTrue(resolved.getBoolean(QueryOptions.SORT));
+        assertEquals(100, resolved.getInt(QueryOptions.LIMIT));
+        assertEquals(new Variant("1:1500:A:C"), VariantQueryCursor.getResumeAfter(resolved));
+        // Given options are not modified
+        assertTrue(options.containsKey(VariantQueryCursor.CURSOR));
+
+        QueryOptions noCursor = new QueryOptions();
+        assertSame(noCursor, VariantQueryCursor.resolve(query, noCursor));
+        assertNull(VariantQueryCursor.getResumeAfter(noCursor));
+    }
+
+    @Test
+    public void testIsResumable() throws Exception {
+        assertFalse(VariantQueryCursor.isResumable(null));
+        assertFalse(VariantQueryCursor.isResumable(new QueryOptions()));
+        assertTrue(VariantQueryCursor.isResumable(new QueryOptions(QueryOptions.SORT, true)));
+        assertTrue(VariantQueryCursor.isResumable(new QueryOptions(QueryOptions.SORT, true)
+                .append(QueryOptions.ORDER, QueryOptions.ASCENDING)));
+        assertFalse(VariantQueryCursor.isResumable(new QueryOptions(QueryOptions.SORT, true)
+                .append(QueryOptions.ORDER, QueryOptions.DESCENDING)));
+    }
+
+    @Test(expected = VariantQueryException.class)
+    public void testResolveDescending() throws Exception {
+        Query query = new Query(VariantQueryParam.REGION.key(), "1:1000-2000");
+        String token = new VariantQueryCursor(query, 100, "1:1500:A:C").encode();
+        VariantQueryCursor.resolve(query, new QueryOptions(VariantQueryCursor.CURSOR, token)
+                .append(QueryOptions.ORDER, QueryOptions.DESCENDING));
+    }
+
+    @Test(expected = VariantQueryException.class)
+    public void testDecodeMalformed() throws Exception {
+        VariantQueryCursor.decode("not a cursor", new Query());
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation;
+
+import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.opencga.storage.core.metadata.ProjectMetadata;
+import org.opencb.opencga.storage.core.variant.annotation.annotators.VariantAnnotator;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class AsyncVariantAnnotationTaskTest {
+
+    @Test
+    public void testInFlightRequests() throws Exception {
+        LatencyAnnotator annotator = new LatencyAnnotator(size -> 100L);
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(annotator, 100, new ObjectMap()
+                .append(AsyncVariantAnnotationTask.IN_FLIGHT, 4)
+                .append(AsyncVariantAnnotationTask.MAX_BATCH_SIZE, 100));
+
+        List<Variant> variants = variants(800);
+        List<VariantAnnotation> annotations = apply(task, variants);
+
+        assertEquals(800, annotations.size());
+        for (int i = 0; i < variants.size(); i++) {
+            assertEquals(variants.get(i).getStart(), annotations.get(i).getStart());
+        }
+        assertEquals(8, annotator.requests.get());
+        assertEquals(4, annotator.maxConcurrentRequests.get());
+    }
+
+    @Test
+    public void testAdaptBatchSize() throws Exception {
+        // 1ms per variant. Target latency of 50ms -> 50 variants per request
+        LatencyAnnotator annotator = new LatencyAnnotator(size -> (long) size);
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(annotator, 400, new ObjectMap()
+                .append(AsyncVariantAnnotationTask.IN_FLIGHT, 1)
+                .append(AsyncVariantAnnotationTask.TARGET_LATENCY, 50));
+
+        for (int i = 0; i < 10; i++) {
+            apply(task, variants(400));
+        }
+        assertTrue("Batch size " + task.getBatchSize(), task.getBatchSize() < 100);
+        assertTrue("Batch size " + task.getBatchSize(), task.getBatchSize() > 25);
+    }
+
+    @Test
+    public void testMaxPayload() throws Exception {
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(new LatencyAnnotator(size -> 0L), 100, new ObjectMap()
+                // Each variant "1:N:A:C" has an estimated payload of 23 bytes
+                .append(AsyncVariantAnnotationTask.MAX_PAYLOAD, 10 * 23));
+
+        List<List<Variant>> subBatches = task.split(variants(100));
+        assertEquals(10, subBatches.size());
+        for (List<Variant> subBatch : subBatches) {
+            assertEquals(10, subBatch.size());
+        }
+    }
+
+    @Test
+    public void testBisectionRetry() throws Exception {
+        LatencyAnnotator annotator = new LatencyAnnotator(size -> 0L);
+        annotator.fail.add("1:150:A:C");
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(annotator, 100, new ObjectMap());
+
+        List<VariantAnnotation> annotations = apply(task, variants(200));
+
+        assertEquals(199, annotations.size());
+        assertEquals(1, task.getFailedVariants());
+        for (VariantAnnotation annotation : annotations) {
+            assertNotEquals(150, annotation.getStart().intValue());
+        }
+    }
+
+    @Test
+    public void testTransientError() throws Exception {
+        LatencyAnnotator annotator = new LatencyAnnotator(size -> 0L);
+        annotator.transientErrors.set(1);
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(annotator, 100, new ObjectMap());
+
+        assertEquals(100, apply(task, variants(100)).size());
+        assertEquals(0, task.getFailedVariants());
+        assertEquals(3, annotator.requests.get());
+    }
+
+    @Test(expected = VariantAnnotatorException.class)
+    public void testTooManyFailedVariants() throws Exception {
+        LatencyAnnotator annotator = new LatencyAnnotator(size -> 0L);
+        annotator.fail.add("1:110:A:C");
+        annotator.fail.add("1:120:A:C");
+        AsyncVariantAnnotationTask task = new AsyncVariantAnnotationTask(annotator, 100, new ObjectMap()
+                .append(AsyncVariantAnnotationTask.MAX_FAILED_VARIANTS, 1));
+
+        apply(task, variants(100));
+    }
+
+    private static List<VariantAnnotation> apply(AsyncVariantAnnotationTask task, List<Variant> variants) throws Exception {
+        task.pre();
+        try {
+            return task.apply(variants);
+        } finally {
+            task.post();
+        }
+    }
+
+    private static List<Variant> variants(int size) {
+        List<Variant> variants = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            variants.add(new Variant("1", 100 + i, "A", "C"));
+        }
+        return variants;
+    }
+
+    /**
+     * Stand-in for a remote annotator, with a configurable latency.
+     */
+    private static class LatencyAnnotator extends VariantAnnotator {
+
+        private final Function<Integer, Long> latency;
+        private final Set<String> fail = Collections.synchronizedSet(new HashSet<>());
+        private final AtomicInteger transientErrors = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+        private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+        LatencyAnnotator(Function<Integer, Long> latency) throws VariantAnnotatorException {
+            super(null, null, null);
+            this.latency = latency;
+        }
+
+        @Override
+        public List<VariantAnnotation> annotate(List<Variant> variants) throws VariantAnnotatorException {
+            requests.incrementAndGet();
+            int concurrent = concurrentRequests.incrementAndGet();
+            maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+            try {
+                Thread.sleep(latency.apply(variants.size()));
+                if (transientErrors.getAndUpdate(i -> Math.max(0, i - 1)) > 0) {
+                    throw new VariantAnnotatorException("Transient error");
+                }
+                List<VariantAnnotation> annotations = new ArrayList<>(variants.size());
+                for (Variant variant : variants) {
+                    if (fail.contains(variant.toString())) {
+                        throw new VariantAnnotatorException("Unable to annotate " + variant);
+                    }
+                    VariantAnnotation annotation = new VariantAnnotation();
+                    annotation.setChromosome(variant.getChromosome());
+                    annotation.setStart(variant.getStart());
+                    annotation.setReference(variant.getReference());
+                    annotation.setAlternate(variant.getAlternate());
+                    annotations.add(annotation);
+                }
+                return annotations;
+            } catch (InterruptedException e) {
+                throw new VariantAnnotatorException("Interrupted");
+            } finally {
+                concurrentRequests.decrementAndGet();
+            }
+        }
+
+        @Override
+        public ProjectMetadata.VariantAnnotatorProgram getVariantAnnotatorProgram() throws IOException {
+            return new ProjectMetadata.VariantAnnotatorProgram("test", "v1", "");
+        }
+
+        @Override
+        public List<ObjectMap> getVariantAnnotatorSourceVersion() throws IOException {
+            return Collections.emptyList();
+        }
+    }
+}
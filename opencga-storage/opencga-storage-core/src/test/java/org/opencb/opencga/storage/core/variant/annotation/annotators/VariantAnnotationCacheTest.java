@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.annotation.annotators;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.models.variant.avro.VariantAnnotation;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.QueryResult;
+import org.opencb.opencga.storage.core.StorageManager;
+import org.opencb.opencga.storage.core.config.StorageConfiguration;
+import org.opencb.opencga.storage.core.metadata.ProjectMetadata;
+import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotatorException;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class VariantAnnotationCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StorageConfiguration storageConfiguration;
+    private ProjectMetadata projectMetadata;
+
+    @Before
+    public void setUp() throws Exception {
+        storageConfiguration = StorageConfiguration.load(StorageManager.class.getClassLoader().getResourceAsStream("storage-configuration.yml"), "yml");
+        projectMetadata = new ProjectMetadata("hsapiens", "grch38", 1);
+    }
+
+    @Test
+    public void testPutGet() throws Exception {
+        Path dir = temporaryFolder.newFolder().toPath();
+        try (VariantAnnotationCache cache = VariantAnnotationCache.open(dir)) {
+            assertNull(cache.get("1:100:A:C"));
+            cache.put("1:100:A:C", newAnnotation(new Variant("1:100:A:C")));
+            cache.put("1:200:A:C", newAnnotation(new Variant("1:200:A:C")));
+
+            assertEquals(2, cache.size());
+            assertEquals(newAnnotation(new Variant("1:100:A:C")), cache.get("1:100:A:C"));
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getMisses());
+            assertEquals(0.5, cache.getHitRatio(), 0.0001);
+            assertTrue(cache.getBytesSaved() > 0);
+        }
+
+        try (VariantAnnotationCache cache = VariantAnnotationCache.open(dir)) {
+            assertEquals(2, cache.size());
+            assertEquals(newAnnotation(new Variant("1:200:A:C")), cache.get("1:200:A:C"));
+        }
+    }
+
+    @Test
+    public void testDiscardTruncatedRecord() throws Exception {
+        Path dir = temporaryFolder.newFolder().toPath();
+        try (VariantAnnotationCache cache = VariantAnnotationCache.open(dir)) {
+            cache.put("1:100:A:C", newAnnotation(new Variant("1:100:A:C")));
+            cache.put("1:200:A:C", newAnnotation(new Variant("1:200:A:C")));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve(VariantAnnotationCache.FILE_NAME).toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        try (VariantAnnotationCache cache = VariantAnnotationCache.open(dir)) {
+            assertEquals(1, cache.size());
+            assertNotNull(cache.get("1:100:A:C"));
+            assertNull(cache.get("1:200:A:C"));
+            cache.put("1:200:A:C", newAnnotation(new Variant("1:200:A:C")));
+        }
+        try (VariantAnnotationCache cache = VariantAnnotationCache.open(dir)) {
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    public void testAnnotateOnlyMisses() throws Exception {
+        ObjectMap options = new ObjectMap(AbstractCellBaseVariantAnnotator.ANNOTATOR_CELLBASE_LOCAL_CACHE,
+                temporaryFolder.newFolder().getAbsolutePath());
+        TestAnnotator annotator = new TestAnnotator(storageConfiguration, projectMetadata, options);
+
+        List<Variant> variants = Arrays.asList(new Variant("1:100:A:C"), new Variant("1:200:A:C"), new Variant("1:300:A:C"));
+        List<VariantAnnotation> annotations = annotator.annotate(variants.subList(0, 2));
+        assertEquals(2, annotations.size());
+        assertEquals(2, annotator.annotated.size());
+
+        annotator.annotated.clear();
+        annotator.skip.add("1:300:A:C");
+        annotations = annotator.annotate(variants);
+        assertEquals(Collections.singletonList("1:300:A:C"), annotator.annotated);
+        assertEquals(2, annotations.size());
+        assertEquals(100, annotations.get(0).getStart().intValue());
+        assertEquals(200, annotations.get(1).getStart().intValue());
+
+        annotator.annotated.clear();
+        annotator.skip.clear();
+        annotations = annotator.annotate(variants);
+        assertEquals(Collections.singletonList("1:300:A:C"), annotator.annotated);
+        assertEquals(3, annotations.size());
+        assertEquals(300, annotations.get(2).getStart().intValue());
+
+        VariantAnnotationCache cache = annotator.getLocalCache();
+        assertEquals(3, cache.size());
+        assertEquals(4, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        cache.close();
+    }
+
+    private static VariantAnnotation newAnnotation(Variant variant) {
+        VariantAnnotation annotation = new VariantAnnotation();
+        annotation.setChromosome(variant.getChromosome());
+        annotation.setStart(variant.getStart());
+        annotation.setEnd(variant.getEnd());
+        annotation.setReference(variant.getReference());
+        annotation.setAlternate(variant.getAlternate());
+        annotation.setId("rs" + variant.getStart());
+        annotation.setConsequenceTypes(Collections.emptyList());
+        return annotation;
+    }
+
+    public static class TestAnnotator extends AbstractCellBaseVariantAnnotator {
+
+        private final List<String> annotated = new ArrayList<>();
+        private final Set<String> skip = new HashSet<>();
+
+        public TestAnnotator(StorageConfiguration storageConfiguration, ProjectMetadata projectMetadata, ObjectMap params)
+                throws VariantAnnotatorException {
+            super(storageConfiguration, projectMetadata, params);
+        }
+
+        @Override
+        protected List<QueryResult<VariantAnnotation>> annotateFiltered(List<Variant> variants) throws VariantAnnotatorException {
+            List<QueryResult<VariantAnnotation>> queryResults = new ArrayList<>(variants.size());
+            for (Variant variant : variants) {
+                annotated.add(variant.toString());
+                List<VariantAnnotation> result = skip.contains(variant.toString())
+                        ? Collections.emptyList()
+                        : Collections.singletonList(newAnnotation(variant));
+                queryResults.add(new QueryResult<>(variant.toString(), 0, result.size(), result.size(), null, null, result));
+            }
+            return queryResults;
+        }
+
+        @Override
+        public ProjectMetadata.VariantAnnotatorProgram getVariantAnnotatorProgram() throws IOException {
+            return new ProjectMetadata.VariantAnnotatorProgram("test", "v1", "abc");
+        }
+
+        @Override
+        public List<ObjectMap> getVariantAnnotatorSourceVersion() throws IOException {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -16,6 +16,11 @@
 
 package org.opencb.opencga.storage.core.variant.io;
 
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.tribble.readers.TabixReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.hadoop.ParquetReader;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -26,14 +31,25 @@ import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.dummy.DummyStudyConfigurationAdaptor;
 import org.opencb.opencga.storage.core.variant.dummy.DummyVariantStorageTest;
 import org.opencb.opencga.storage.core.variant.io.VariantWriterFactory.VariantOutputFormat;
+import org.opencb.opencga.storage.core.variant.io.parquet.VariantParquetConverter;
+import org.opencb.opencga.storage.core.variant.io.parquet.VariantParquetDataWriter;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -86,4 +102,84 @@ public class VariantExporterTest extends VariantStorageBaseTest implements Dummy
         }
     }
 
+    @Test
+    public void exportStudyParallelVcfGzTest() throws Exception {
+        URI output = newOutputUri().resolve("variant.vcf.gz");
+        // Creating the index must force a sorted export
+        variantStorageEngine.exportData(output, VariantOutputFormat.VCF_GZ, new Query(), new QueryOptions()
+                .append(VariantStorageEngine.Options.ITERATOR_THREADS.key(), 4)
+                .append(VariantStorageEngine.Options.EXPORT_VCF_THREADS.key(), 4)
+                .append(VariantStorageEngine.Options.EXPORT_VCF_INDEX.key(), true));
+        URI expected = newOutputUri().resolve("variant.vcf.gz");
+        variantStorageEngine.exportData(expected, VariantOutputFormat.VCF_GZ, new Query(), new QueryOptions(QueryOptions.SORT, true)
+                .append(VariantStorageEngine.Options.EXPORT_VCF_THREADS.key(), 0));
+
+        try (InputStream is = new BufferedInputStream(new FileInputStream(output.getPath()))) {
+            assertTrue(BlockCompressedInputStream.isValidFile(is));
+        }
+        assertTrue(Paths.get(output.getPath() + ".tbi").toFile().exists());
+        List<String> lines = readLines(expected);
+        assertEquals(lines, readLines(output));
+
+        // Query a region with the index
+        List<String> records = lines.stream().filter(line -> !line.startsWith("#")).collect(Collectors.toList());
+        String[] first = records.get(records.size() / 4).split("\t");
+        String[] last = records.get(records.size() / 2).split("\t");
+        String chromosome = first[0];
+        int start = Integer.parseInt(first[1]);
+        int end = chromosome.equals(last[0]) ? Integer.parseInt(last[1]) : start;
+        List<String> expectedRecords = records.stream().filter(line -> {
+            String[] split = line.split("\t");
+            int pos = Integer.parseInt(split[1]);
+            return split[0].equals(chromosome) && pos <= end && pos + split[3].length() - 1 >= start;
+        }).collect(Collectors.toList());
+
+        TabixReader tabixReader = new TabixReader(output.getPath(), output.getPath() + ".tbi");
+        List<String> indexedRecords = new ArrayList<>();
+        TabixReader.Iterator iterator = tabixReader.query(chromosome + ':' + start + '-' + end);
+        for (String line = iterator.next(); line != null; line = iterator.next()) {
+            indexedRecords.add(line);
+        }
+        tabixReader.close();
+        assertFalse(expectedRecords.isEmpty());
+        assertEquals(expectedRecords, indexedRecords);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void exportStudyParallelVcfGzIndexDescendingTest() throws Exception {
+        URI output = newOutputUri().resolve("variant.vcf.gz");
+        variantStorageEngine.exportData(output, VariantOutputFormat.VCF_GZ, new Query(), new QueryOptions(QueryOptions.SORT, true)
+                .append(QueryOptions.ORDER, QueryOptions.DESCENDING)
+                .append(VariantStorageEngine.Options.EXPORT_VCF_THREADS.key(), 4)
+                .append(VariantStorageEngine.Options.EXPORT_VCF_INDEX.key(), true));
+    }
+
+    @Test
+    public void exportStudyParquetTest() throws Exception {
+        URI output = newOutputUri().resolve("variant.parquet");
+        variantStorageEngine.exportData(output, VariantOutputFormat.PARQUET, new Query(), new QueryOptions()
+                .append(VariantStorageEngine.Options.EXPORT_PARQUET_BATCH_SIZE.key(), 100));
+
+        assertTrue(Paths.get(output).toFile().exists());
+        long numRecords = 0;
+        try (ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(new org.apache.hadoop.fs.Path(output))
+                .withConf(VariantParquetDataWriter.newConfiguration()).build()) {
+            GenericRecord record;
+            while ((record = reader.read()) != null) {
+                assertNotNull(record.get(VariantParquetConverter.CHROMOSOME));
+                assertNotNull(record.get(VariantParquetConverter.GENOTYPE_PREFIX + "HG00096"));
+                numRecords++;
+            }
+        }
+        assertEquals(variantStorageEngine.count(new Query()).first().longValue(), numRecords);
+        // No temporary files left
+        assertEquals(0, Paths.get(output).getParent().toFile().list((dir, name) -> name.startsWith(".")).length);
+    }
+
+    private static List<String> readLines(URI uri) throws IOException {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(uri.getPath()))))) {
+            return br.lines().collect(Collectors.toList());
+        }
+    }
+
 }
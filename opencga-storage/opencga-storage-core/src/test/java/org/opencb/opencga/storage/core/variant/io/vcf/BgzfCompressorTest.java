@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.io.vcf;
+
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.SeekableFileStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class BgzfCompressorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompressChunks() throws Exception {
+        Random random = new Random(1);
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        BgzfCompressor compressor = new BgzfCompressor();
+
+        int recordLine = -1;
+        long recordPointer = 0;
+        for (int chunk = 0; chunk < 5; chunk++) {
+            StringBuilder text = new StringBuilder();
+            int lineOffset = 0;
+            for (int i = 0; i < 5000; i++) {
+                if (chunk == 3 && i == 4000) {
+                    recordLine = expected.length() + text.length();
+                    lineOffset = text.length();
+                }
+                text.append("chr").append(chunk).append('\t').append(i).append('\t').append(random.nextLong()).append('\n');
+            }
+            byte[] data = text.toString().getBytes(StandardCharsets.UTF_8);
+            long chunkAddress = file.size();
+            long[] blockAddresses = compressor.compress(data, data.length, file);
+            assertTrue(blockAddresses.length > 1);
+            if (chunk == 3) {
+                int block = lineOffset / BgzfCompressor.BLOCK_SIZE;
+                recordPointer = BlockCompressedFilePointerUtil.makeFilePointer(chunkAddress + blockAddresses[block],
+                        lineOffset % BgzfCompressor.BLOCK_SIZE);
+            }
+            expected.append(text);
+        }
+        file.write(BgzfCompressor.eofBlock());
+
+        File bgzf = temporaryFolder.newFile("test.txt.gz");
+        try (OutputStream os = new FileOutputStream(bgzf)) {
+            file.writeTo(os);
+        }
+
+        // Read the whole file
+        try (BlockCompressedInputStream is = new BlockCompressedInputStream(bgzf)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            assertEquals(expected.toString(), out.toString(StandardCharsets.UTF_8.name()));
+        }
+
+        // Seek to a record using the virtual file pointer
+        try (BlockCompressedInputStream is = new BlockCompressedInputStream(new SeekableFileStream(bgzf))) {
+            is.seek(recordPointer);
+            String expectedLine = expected.substring(recordLine, expected.indexOf("\n", recordLine));
+            assertEquals(expectedLine, is.readLine());
+            assertTrue(expectedLine.startsWith("chr3\t4000\t"));
+        }
+    }
+
+    @Test
+    public void testIncompressibleData() throws Exception {
+        byte[] data = new byte[BgzfCompressor.BLOCK_SIZE];
+        new Random(1).nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BgzfCompressor().compressBlock(data, 0, data.length, out);
+        out.write(BgzfCompressor.eofBlock());
+
+        try (BlockCompressedInputStream is = new BlockCompressedInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            byte[] read = new byte[data.length];
+            assertEquals(data.length, is.read(read));
+            assertArrayEquals(data, read);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.search;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.opencga.storage.core.variant.search.VariantQueryPlan.Strategy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class VariantQueryPlannerTest {
+
+    private static final long NUM_VARIANTS = 1000000;
+    private VariantQueryPlanner planner;
+    private VariantSearchStats stats;
+
+    @Before
+    public void setUp() throws Exception {
+        planner = new VariantQueryPlanner(null, "collection", VariantQueryPlanner.DEFAULT_ENGINE_INDEXED_PARAMS, 10, 60000);
+
+        Map<String, Long> chromosomes = new HashMap<>();
+        chromosomes.put("1", 500000L);
+        chromosomes.put("2", 500000L);
+        Map<String, Integer> maxStart = new HashMap<>();
+        maxStart.put("1", 250000000);
+        maxStart.put("2", 250000000);
+        Map<String, Long> consequenceTypes = new HashMap<>();
+        consequenceTypes.put("1587", 1000L);    // stop_gained
+        consequenceTypes.put("1583", 20000L);   // missense_variant
+        consequenceTypes.put("1631", 400000L);  // upstream_gene_variant
+        Map<String, Long> biotypes = new HashMap<>();
+        biotypes.put("protein_coding", 600000L);
+        Map<String, Long> types = new HashMap<>();
+        types.put("SNV", 900000L);
+        types.put("INDEL", 100000L);
+
+        stats = new VariantSearchStats(NUM_VARIANTS)
+                .setChromosomes(chromosomes)
+                .setChromosomeMaxStart(maxStart)
+                .setConsequenceTypes(consequenceTypes)
+                .setBiotypes(biotypes)
+                .setTypes(types)
+                .putPopFreq("1kG_phase3", "ALL", new long[]{50000, 100000, 150000, 300000, 400000, 700000, 800000, 800000});
+    }
+
+    @Test
+    public void testEmptyQuery() throws Exception {
+        VariantQueryPlan plan = planner.plan(new Query(), stats);
+        assertEquals(Strategy.ENGINE, plan.getStrategy());
+        assertEquals(NUM_VARIANTS, plan.getEstimatedRows().longValue());
+    }
+
+    @Test
+    public void testSmallRegion() throws Exception {
+        VariantQueryPlan plan = planner.plan(new Query(REGION.key(), "1:1000-2000")
+                .append(ANNOT_CONSEQUENCE_TYPE.key(), "missense_variant")
+                .append(TYPE.key(), "SNV"), stats);
+        assertEquals(Strategy.ENGINE, plan.getStrategy());
+        assertEquals(2, plan.getEstimatedEngineScannedRows().longValue());
+    }
+
+    @Test
+    public void testSelectiveAnnotation() throws Exception {
+        VariantQueryPlan plan = planner.plan(new Query(ANNOT_CONSEQUENCE_TYPE.key(), "stop_gained"), stats);
+        assertEquals(Strategy.INTERSECT, plan.getStrategy());
+        assertEquals(1000, plan.getEstimatedSearchRows().longValue());
+        assertEquals(NUM_VARIANTS, plan.getEstimatedEngineScannedRows().longValue());
+    }
+
+    @Test
+    public void testSelectiveAnnotationInWholeChromosome() throws Exception {
+        VariantQueryPlan plan = planner.plan(new Query(ANNOT_CONSEQUENCE_TYPE.key(), "SO:0001587,SO:0001583")
+                .append(REGION.key(), "2"), stats);
+        assertEquals(Strategy.INTERSECT, plan.getStrategy());
+        assertEquals(10500, plan.getEstimatedSearchRows().longValue());
+        assertEquals(500000, plan.getEstimatedEngineScannedRows().longValue());
+    }
+
+    @Test
+    public void testNotSelectiveAnnotation() throws Exception {
+        VariantQueryPlan plan = planner.plan(new Query(ANNOT_BIOTYPE.key(), "protein_coding")
+                .append(ANNOT_CONSEQUENCE_TYPE.key(), "upstream_gene_variant"), stats);
+        assertEquals(Strategy.ENGINE, plan.getStrategy());
+        assertEquals(240000, plan.getEstimatedSearchRows().longValue());
+    }
+
+    @Test
+    public void testPopulationFrequency() throws Exception {
+        // Variants without frequency are considered as frequency 0
+        VariantQueryPlan plan = planner.plan(new Query(ANNOT_POPULATION_ALTERNATE_FREQUENCY.key(), "1kG_phase3:ALL<0.001"), stats);
+        assertEquals(250000, plan.getEstimatedSearchRows().longValue());
+
+        plan = planner.plan(new Query(ANNOT_POPULATION_ALTERNATE_FREQUENCY.key(), "1kG_phase3:ALL>0.1"), stats);
+        assertEquals(400000, plan.getEstimatedSearchRows().longValue());
+
+        // REF > 0.9  <=>  ALT < 0.1
+        plan = planner.plan(new Query(ANNOT_POPULATION_REFERENCE_FREQUENCY.key(), "1kG_phase3:ALL>0.9"), stats);
+        assertEquals(600000, plan.getEstimatedSearchRows().longValue());
+
+        // Unknown population
+        plan = planner.plan(new Query(ANNOT_POPULATION_ALTERNATE_FREQUENCY.key(), "1kG_phase3:AFR<0.01"), stats);
+        assertEquals(500000, plan.getEstimatedSearchRows().longValue());
+    }
+
+    @Test
+    public void testUncoveredParams() throws Exception {
+        VariantQueryPlan plan = planner.plan(new Query(ANNOT_CONSEQUENCE_TYPE.key(), "stop_gained")
+                .append(GENOTYPE.key(), "S1:0/1"), stats);
+        assertEquals(Strategy.INTERSECT, plan.getStrategy());
+        assertEquals(1000, plan.getEstimatedSearchRows().longValue());
+        assertEquals(500, plan.getEstimatedRows().longValue());
+    }
+
+    @Test
+    public void testExplain() throws Exception {
+        VariantQueryPlan plan = planner.plan(new Query(ANNOT_CONSEQUENCE_TYPE.key(), "stop_gained"), stats)
+                .setSource("solr+mongodb")
+                .setActualRows(900L);
+        ObjectMap explain = plan.toObjectMap();
+        assertEquals("INTERSECT", explain.getString("strategy"));
+        assertEquals("solr+mongodb", explain.getString("source"));
+        assertEquals(1000, explain.getLong("estimatedRows"));
+        assertEquals(900, explain.getLong("actualRows"));
+    }
+}
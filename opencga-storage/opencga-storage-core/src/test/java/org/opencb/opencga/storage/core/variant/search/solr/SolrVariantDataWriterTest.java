@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.search.solr;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.response.UpdateResponse;
+import org.junit.Before;
+import org.junit.Test;
+import org.opencb.opencga.storage.core.variant.search.VariantSearchModel;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class SolrVariantDataWriterTest {
+
+    private static final String COLLECTION = "collection";
+    private SolrClient solrClient;
+    private Set<String> inserted;
+
+    @Before
+    public void setUp() throws Exception {
+        inserted = Collections.synchronizedSet(new HashSet<>());
+        solrClient = mock(SolrClient.class);
+        UpdateResponse response = mock(UpdateResponse.class);
+        when(response.getStatus()).thenReturn(0);
+        when(solrClient.addBeans(eq(COLLECTION), anyCollection())).then(invocation -> {
+            for (Object o : (Collection<?>) invocation.getArguments()[1]) {
+                inserted.add(((VariantSearchModel) o).getId());
+            }
+            return response;
+        });
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        List<String> committed = new ArrayList<>();
+        SolrVariantDataWriter writer = new SolrVariantDataWriter(solrClient, COLLECTION, 3, 0, committed::add);
+
+        writer.open();
+        writer.pre();
+        List<List<VariantSearchModel>> batches = buildBatches(10, 20);
+        for (List<VariantSearchModel> batch : batches) {
+            writer.write(batch);
+        }
+        writer.post();
+        writer.close();
+
+        verify(solrClient, times(10)).addBeans(eq(COLLECTION), anyCollection());
+        verify(solrClient, times(1)).commit(COLLECTION);
+        assertEquals(200, inserted.size());
+        assertEquals(200, writer.getNumInserted());
+        assertEquals(Collections.singletonList("1:9019:A:C"), committed);
+    }
+
+    @Test
+    public void testCommitInterval() throws Exception {
+        List<String> committed = new ArrayList<>();
+        SolrVariantDataWriter writer = new SolrVariantDataWriter(solrClient, COLLECTION, 2, 1, committed::add);
+
+        writer.open();
+        writer.pre();
+        for (List<VariantSearchModel> batch : buildBatches(5, 10)) {
+            Thread.sleep(5);
+            writer.write(batch);
+        }
+        writer.post();
+        writer.close();
+
+        assertEquals(50, inserted.size());
+        assertEquals(Arrays.asList("1:9:A:C", "1:1009:A:C", "1:2009:A:C", "1:3009:A:C", "1:4009:A:C", "1:4009:A:C"), committed);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailingInsert() throws Exception {
+        when(solrClient.addBeans(eq(COLLECTION), anyCollection())).thenThrow(new SolrServerException("Error"));
+        SolrVariantDataWriter writer = new SolrVariantDataWriter(solrClient, COLLECTION, 2, 0, null);
+
+        writer.open();
+        writer.pre();
+        try {
+            for (List<VariantSearchModel> batch : buildBatches(5, 10)) {
+                writer.write(batch);
+            }
+            writer.post();
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<List<VariantSearchModel>> buildBatches(int numBatches, int batchSize) {
+        List<List<VariantSearchModel>> batches = new ArrayList<>(numBatches);
+        for (int i = 0; i < numBatches; i++) {
+            List<VariantSearchModel> batch = new ArrayList<>(batchSize);
+            for (int j = 0; j < batchSize; j++) {
+                VariantSearchModel model = new VariantSearchModel();
+                model.setId("1:" + (i * 1000 + j) + ":A:C");
+                batch.add(model);
+            }
+            batches.add(batch);
+        }
+        return batches;
+    }
+}
@@ -22,6 +22,7 @@ import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.stats.VariantStats;
 import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
@@ -29,6 +30,8 @@ import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngineTest;
 import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 
 import java.io.IOException;
 import java.net.URI;
@@ -40,6 +43,8 @@ import java.util.*;
 import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -165,6 +170,104 @@ public abstract class VariantStatisticsManagerTest extends VariantStorageBaseTes
 
     }
 
+    @Test
+    public void calculateStatsDirectLoadTest() throws Exception {
+        VariantStatisticsManager vsm = variantStorageEngine.newVariantStatisticsManager();
+        Assume.assumeTrue(vsm instanceof DefaultVariantStatisticsManager);
+        DefaultVariantStatisticsManager dvsm = (DefaultVariantStatisticsManager) vsm;
+
+        QueryOptions options = new QueryOptions(DefaultVariantStatisticsManager.STATS_LOAD_DIRECT, true);
+        options.put(VariantStorageEngine.Options.LOAD_BATCH_SIZE.key(), 100);
+        Iterator<String> iterator = studyConfiguration.getSampleIds().keySet().iterator();
+
+        HashSet<String> cohort1 = new HashSet<>();
+        cohort1.add(iterator.next());
+        cohort1.add(iterator.next());
+        Map<String, Set<String>> cohorts = Collections.singletonMap("cohort1", cohort1);
+        Map<String, Integer> cohortIds = Collections.singletonMap("cohort1", 10);
+
+        // Stats are loaded without the intermediate json file
+        URI output = outputUri.resolve("cohort1.direct.stats");
+        dvsm.createStats(dbAdaptor, output, new HashMap<>(cohorts), cohortIds, studyConfiguration, options);
+        assertFalse(Paths.get(output.getPath() + ".variants.stats.json.gz").toFile().exists());
+        assertTrue(Paths.get(output.getPath() + ".variants.stats.avro").toFile().exists());
+
+        studyConfiguration = dbAdaptor.getStudyConfigurationManager()
+                .getStudyConfiguration(studyConfiguration.getStudyId(), null).first();
+        assertTrue(studyConfiguration.getCalculatedStats().contains(10));
+        checkCohorts(dbAdaptor, studyConfiguration);
+
+        // The spilled file can be loaded again
+        dvsm.loadStats(dbAdaptor, output, studyConfiguration,
+                new QueryOptions(VariantStorageEngine.Options.UPDATE_STATS.key(), true));
+        checkCohorts(dbAdaptor, studyConfiguration);
+    }
+
+    @Test
+    public void calculateStatsIncrementalTest() throws Exception {
+        VariantStatisticsManager vsm = variantStorageEngine.newVariantStatisticsManager();
+        Assume.assumeTrue(vsm instanceof DefaultVariantStatisticsManager);
+
+        // Same files in two studies. Stats updated incrementally in the first one, calculated from scratch in the second one
+        StudyConfiguration incremental = new StudyConfiguration(2, "s_incremental");
+        StudyConfiguration full = new StudyConfiguration(3, "s_full");
+        for (int i = 0; i < 2; i++) {
+            URI file = getResourceUri("platinum/1K.end.platinum-genomes-vcf-NA1287" + (7 + i) + "_S1.genome.vcf.gz");
+            runDefaultETL(file, variantStorageEngine, incremental, new ObjectMap(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                    .append(VariantStorageEngine.Options.FILE_ID.key(), i + 1)
+                    .append(VariantStorageEngine.Options.STATS_INCREMENTAL.key(), true));
+            runDefaultETL(file, variantStorageEngine, full, new ObjectMap(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                    .append(VariantStorageEngine.Options.FILE_ID.key(), i + 1)
+                    .append(VariantStorageEngine.Options.STATS_INCREMENTAL.key(), false));
+        }
+        checkIncrementalStats(incremental, full);
+
+        // Remove the last file. Subtract the stats in the first study, recalculate them in the second one
+        variantStorageEngine.getOptions().put(VariantStorageEngine.Options.STATS_INCREMENTAL.key(), true);
+        variantStorageEngine.removeFile(incremental.getStudyName(), 2);
+        variantStorageEngine.getOptions().put(VariantStorageEngine.Options.STATS_INCREMENTAL.key(), false);
+        variantStorageEngine.removeFile(full.getStudyName(), 2);
+        QueryOptions options = new QueryOptions(VariantStorageEngine.Options.OVERWRITE_STATS.key(), true)
+                .append(DefaultVariantStatisticsManager.OUTPUT, outputUri.resolve("s_full.stats").toString());
+        vsm.calculateStatistics(full.getStudyName(), Collections.singletonList(StudyEntry.DEFAULT_COHORT), options);
+        checkIncrementalStats(incremental, full);
+    }
+
+    private void checkIncrementalStats(StudyConfiguration incremental, StudyConfiguration full) {
+        Map<String, VariantStats> incrementalStats = getDefaultCohortStats(incremental.getStudyName());
+        Map<String, VariantStats> fullStats = getDefaultCohortStats(full.getStudyName());
+        assertEquals(fullStats.keySet(), incrementalStats.keySet());
+        assertFalse(fullStats.isEmpty());
+        for (Map.Entry<String, VariantStats> entry : fullStats.entrySet()) {
+            String variant = entry.getKey();
+            VariantStats expected = entry.getValue();
+            VariantStats actual = incrementalStats.get(variant);
+            assertNotNull(variant, expected);
+            assertNotNull(variant, actual);
+            assertEquals(variant, expected.getRefAlleleCount(), actual.getRefAlleleCount());
+            assertEquals(variant, expected.getAltAlleleCount(), actual.getAltAlleleCount());
+            assertEquals(variant, nonZero(expected.getGenotypesCount()), nonZero(actual.getGenotypesCount()));
+            assertEquals(variant, expected.getMissingAlleles(), actual.getMissingAlleles());
+            assertEquals(variant, expected.getMissingGenotypes(), actual.getMissingGenotypes());
+            assertEquals(variant, expected.getMaf(), actual.getMaf(), 0.0001);
+        }
+    }
+
+    private Map<String, VariantStats> getDefaultCohortStats(String study) {
+        Map<String, VariantStats> stats = new HashMap<>();
+        Query query = new Query(VariantQueryParam.STUDY.key(), study).append(VariantQueryParam.INCLUDE_STUDY.key(), study);
+        for (Variant variant : dbAdaptor.get(query, new QueryOptions(QueryOptions.EXCLUDE, VariantField.ANNOTATION)).getResult()) {
+            stats.put(variant.toString(), variant.getStudy(study).getStats(StudyEntry.DEFAULT_COHORT));
+        }
+        return stats;
+    }
+
+    private static <T> Map<T, Integer> nonZero(Map<T, Integer> counts) {
+        return counts.entrySet().stream()
+                .filter(entry -> entry.getValue() != 0)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
     public StudyConfiguration stats(VariantStatisticsManager vsm, QueryOptions options, StudyConfiguration studyConfiguration, Map<String, Set<String>> cohorts, Map<String, Integer> cohortIds, VariantDBAdaptor dbAdaptor, URI resolve) throws IOException, StorageEngineException {
         if (vsm instanceof DefaultVariantStatisticsManager) {
             DefaultVariantStatisticsManager dvsm = (DefaultVariantStatisticsManager) vsm;
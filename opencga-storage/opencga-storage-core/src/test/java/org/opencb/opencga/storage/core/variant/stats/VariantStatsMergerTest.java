@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.core.variant.stats;
+
+import org.junit.Test;
+import org.opencb.biodata.models.feature.Genotype;
+import org.opencb.biodata.models.variant.stats.VariantStats;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Created on 17/10/26.
+ */
+public class VariantStatsMergerTest {
+
+    @Test
+    public void testAdd() throws Exception {
+        VariantStats stats = newStats(80, 15, 5, 0);
+        VariantStats delta = newStats(0, 10, 10, 2);
+
+        VariantStatsMerger.add(stats, delta);
+        VariantStats expected = newStats(80, 25, 15, 2);
+        checkEquals(expected, stats);
+
+        assertEquals(185, (int) stats.getRefAlleleCount());
+        assertEquals(55, (int) stats.getAltAlleleCount());
+        assertEquals(55 / 240F, stats.getMaf(), 0.0001);
+        assertEquals("C", stats.getMafAllele());
+        assertEquals(15 / 120F, stats.getMgf(), 0.0001);
+        assertEquals("1/1", stats.getMgfGenotype());
+    }
+
+    @Test
+    public void testSubtract() throws Exception {
+        VariantStats stats = newStats(80, 25, 15, 2);
+        VariantStats delta = newStats(0, 10, 10, 2);
+
+        VariantStatsMerger.subtract(stats, delta);
+        checkEquals(newStats(80, 15, 5, 0), stats);
+    }
+
+    @Test
+    public void testAddSubtract() throws Exception {
+        VariantStats stats = newStats(10, 20, 30, 1);
+        VariantStatsMerger.add(stats, newStats(5, 5, 5, 5));
+        VariantStatsMerger.subtract(stats, newStats(5, 5, 5, 5));
+        checkEquals(newStats(10, 20, 30, 1), stats);
+        assertEquals("A", stats.getMafAllele());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubtractTooMany() throws Exception {
+        VariantStatsMerger.subtract(newStats(10, 1, 0, 0), newStats(0, 2, 0, 0));
+    }
+
+    private static VariantStats newStats(int homRef, int het, int homAlt, int missing) {
+        VariantStats stats = new VariantStats();
+        stats.setRefAllele("A");
+        stats.setAltAllele("C");
+        stats.addGenotype(new Genotype("0/0"), homRef);
+        stats.addGenotype(new Genotype("0/1"), het);
+        stats.addGenotype(new Genotype("1/1"), homAlt);
+        if (missing > 0) {
+            stats.addGenotype(new Genotype("./."), missing);
+        }
+        stats.setMissingGenotypes(missing);
+        stats.setMissingAlleles(missing * 2);
+        VariantStatsMerger.updateDerivedValues(stats);
+        return stats;
+    }
+
+    private static void checkEquals(VariantStats expected, VariantStats actual) {
+        assertEquals(expected.getGenotypesCount().get(new Genotype("0/0")), actual.getGenotypesCount().get(new Genotype("0/0")));
+        assertEquals(expected.getGenotypesCount().get(new Genotype("0/1")), actual.getGenotypesCount().get(new Genotype("0/1")));
+        assertEquals(expected.getGenotypesCount().get(new Genotype("1/1")), actual.getGenotypesCount().get(new Genotype("1/1")));
+        assertEquals(expected.getMissingGenotypes(), actual.getMissingGenotypes());
+        assertEquals(expected.getMissingAlleles(), actual.getMissingAlleles());
+        assertEquals(expected.getRefAlleleCount(), actual.getRefAlleleCount());
+        assertEquals(expected.getAltAlleleCount(), actual.getAltAlleleCount());
+        assertEquals(expected.getRefAlleleFreq(), actual.getRefAlleleFreq(), 0.0001);
+        assertEquals(expected.getAltAlleleFreq(), actual.getAltAlleleFreq(), 0.0001);
+        assertEquals(expected.getMaf(), actual.getMaf(), 0.0001);
+        assertEquals(expected.getMgf(), actual.getMgf(), 0.0001);
+        assertEquals(expected.getMgfGenotype(), actual.getMgfGenotype());
+    }
+}
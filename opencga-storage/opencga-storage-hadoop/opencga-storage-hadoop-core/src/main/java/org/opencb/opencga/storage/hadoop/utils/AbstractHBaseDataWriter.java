@@ -1,12 +1,15 @@
 package org.opencb.opencga.storage.hadoop.utils;
 
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.BufferedMutator;
 import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
 import org.opencb.commons.io.DataWriter;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
@@ -20,6 +23,9 @@ public abstract class AbstractHBaseDataWriter<T, M extends Mutation> implements
     private final HBaseManager hBaseManager;
     private final String tableName;
     private BufferedMutator mutator;
+    private Path bulkLoadStagingDir;
+    private long bulkLoadBufferSize;
+    private HBaseBulkLoader bulkLoader;
 
     public AbstractHBaseDataWriter(HBaseManager hBaseManager, String tableName) {
         this.hBaseManager = new HBaseManager(hBaseManager);
@@ -28,10 +34,35 @@ public abstract class AbstractHBaseDataWriter<T, M extends Mutation> implements
 
     protected abstract List<M> convert(List<T> batch);
 
+    /**
+     * Mutations still pending to be written at {@link #post()}, e.g. from data aggregated across batches.
+     *
+     * @return List of pending mutations
+     */
+    protected List<M> flush() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Write sorted HFiles instead of sending the mutations to the region servers, and bulk load them on {@link #post()}.
+     * Only Puts are supported.
+     *
+     * @param stagingDir Directory for the HFiles. Must not exist. Removed on close
+     * @param bufferSize Max size in bytes of the cells kept in memory before being written into HFiles
+     */
+    public void setBulkLoad(Path stagingDir, long bufferSize) {
+        this.bulkLoadStagingDir = stagingDir;
+        this.bulkLoadBufferSize = bufferSize;
+    }
+
     @Override
     public boolean open() {
         try {
-            mutator = hBaseManager.getConnection().getBufferedMutator(TableName.valueOf(tableName));
+            if (bulkLoadStagingDir != null) {
+                bulkLoader = new HBaseBulkLoader(hBaseManager, tableName, bulkLoadStagingDir, bulkLoadBufferSize);
+            } else {
+                mutator = hBaseManager.getConnection().getBufferedMutator(TableName.valueOf(tableName));
+            }
         } catch (IOException e) {
             throw new UncheckedIOException("Failed to connect to Hbase", e);
         }
@@ -41,7 +72,7 @@ public abstract class AbstractHBaseDataWriter<T, M extends Mutation> implements
     @Override
     public boolean write(List<T> list) {
         try {
-            mutator.mutate(convert(list));
+            mutate(convert(list));
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -51,16 +82,36 @@ public abstract class AbstractHBaseDataWriter<T, M extends Mutation> implements
     @Override
     public boolean write(T elem) {
         try {
-            mutator.mutate(convert(Collections.singletonList(elem)));
+            mutate(convert(Collections.singletonList(elem)));
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
         return true;
     }
 
+    private void mutate(List<M> mutations) throws IOException {
+        if (bulkLoader == null) {
+            mutator.mutate(mutations);
+        } else {
+            List<Put> puts = new ArrayList<>(mutations.size());
+            for (M mutation : mutations) {
+                if (!(mutation instanceof Put)) {
+                    throw new IllegalStateException("Unable to bulk load " + mutation.getClass().getSimpleName() + " mutations");
+                }
+                puts.add((Put) mutation);
+            }
+            bulkLoader.add(puts);
+        }
+    }
+
     @Override
     public boolean post() {
         try {
+            mutate(flush());
+            if (bulkLoader != null) {
+                bulkLoader.load();
+                return true;
+            }
             mutator.flush();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -71,6 +122,10 @@ public abstract class AbstractHBaseDataWriter<T, M extends Mutation> implements
     @Override
     public boolean close() {
         try {
+            if (bulkLoader != null) {
+                bulkLoader.close();
+                return true;
+            }
             mutator.close();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.hadoop.utils;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.*;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.mapreduce.LoadIncrementalHFiles;
+import org.apache.hadoop.hbase.regionserver.StoreFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Writes Puts into sorted HFiles, partitioned by the regions of the table, and bulk loads them at the end,
+ * skipping the WAL and the memstore of the region servers.
+ *
+ * Cells are buffered in memory, and written into a new set of HFiles every time the buffer is full.
+ * Each set of HFiles is written with a newer timestamp, so later Puts win over previous ones.
+ * All the HFiles of a region are loaded atomically.
+ *
+ * Created on 17/10/26.
+ */
+public class HBaseBulkLoader implements Closeable {
+
+    private static Logger logger = LoggerFactory.getLogger(HBaseBulkLoader.class);
+
+    private final HBaseManager hBaseManager;
+    private final TableName tableName;
+    private final Path stagingDir;
+    private final long bufferSize;
+    private final FileSystem fs;
+    private final CacheConfig cacheConfig;
+    private final byte[][] startKeys;
+    private final Map<byte[], HColumnDescriptor> families = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+
+    private List<KeyValue> buffer = new ArrayList<>();
+    private long bufferedBytes = 0;
+    private long lastTimestamp = 0;
+    private int numFiles = 0;
+    private long numCells = 0;
+
+    /**
+     * @param hBaseManager HBaseManager
+     * @param tableName    Table to load
+     * @param stagingDir   Directory for the HFiles. Must not exist. Removed on close
+     * @param bufferSize   Max size in bytes of the cells kept in memory before being written into HFiles
+     * @throws IOException if the table can not be read, or the staging directory already exists
+     */
+    public HBaseBulkLoader(HBaseManager hBaseManager, String tableName, Path stagingDir, long bufferSize) throws IOException {
+        this.hBaseManager = hBaseManager;
+        this.tableName = TableName.valueOf(tableName);
+        this.stagingDir = stagingDir;
+        this.bufferSize = bufferSize;
+
+        Configuration conf = hBaseManager.getConf();
+        fs = stagingDir.getFileSystem(conf);
+        if (fs.exists(stagingDir)) {
+            throw new IOException("Bulk load staging directory " + stagingDir + " already exists");
+        }
+        // Do not fill the block cache with the blocks written
+        Configuration noCacheConf = new Configuration(conf);
+        noCacheConf.setFloat(HConstants.HFILE_BLOCK_CACHE_SIZE_KEY, 0.0f);
+        cacheConfig = new CacheConfig(noCacheConf);
+
+        Connection connection = hBaseManager.getConnection();
+        try (RegionLocator locator = connection.getRegionLocator(this.tableName);
+             Table table = connection.getTable(this.tableName)) {
+            startKeys = locator.getStartKeys();
+            for (HColumnDescriptor family : table.getTableDescriptor().getColumnFamilies()) {
+                families.put(family.getName(), family);
+            }
+        }
+        Arrays.sort(startKeys, Bytes.BYTES_COMPARATOR);
+    }
+
+    public synchronized void add(List<Put> puts) throws IOException {
+        for (Put put : puts) {
+            for (List<Cell> cells : put.getFamilyCellMap().values()) {
+                for (Cell cell : cells) {
+                    KeyValue kv = KeyValueUtil.ensureKeyValue(cell);
+                    buffer.add(kv);
+                    bufferedBytes += kv.heapSize();
+                }
+            }
+        }
+        if (bufferedBytes >= bufferSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered cells and bulk loads all the HFiles into the table.
+     *
+     * @throws IOException if the HFiles could not be written or loaded
+     */
+    public synchronized void load() throws IOException {
+        flush();
+        if (numFiles == 0) {
+            logger.info("Nothing to bulk load into table {}", tableName);
+            return;
+        }
+        logger.info("Bulk load {} HFiles with {} cells into table {}", numFiles, numCells, tableName);
+        long start = System.currentTimeMillis();
+        Connection connection = hBaseManager.getConnection();
+        try (Admin admin = connection.getAdmin();
+             Table table = connection.getTable(tableName);
+             RegionLocator locator = connection.getRegionLocator(tableName)) {
+            new LoadIncrementalHFiles(hBaseManager.getConf()).doBulkLoad(stagingDir, admin, table, locator);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Error bulk loading " + stagingDir + " into table " + tableName, e);
+        }
+        logger.info("Bulk load into table {} finished in {}s", tableName, (System.currentTimeMillis() - start) / 1000.0);
+        numFiles = 0;
+        numCells = 0;
+    }
+
+    private void flush() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        long timestamp = Math.max(System.currentTimeMillis(), lastTimestamp + 1);
+        lastTimestamp = timestamp;
+        byte[] timestampBytes = Bytes.toBytes(timestamp);
+        for (KeyValue kv : buffer) {
+            kv.updateLatestStamp(timestampBytes);
+        }
+        // Stable sort. Keeps the insertion order of duplicated keys
+        buffer.sort(KeyValue.COMPARATOR);
+
+        Map<byte[], StoreFile.Writer> writers = new TreeMap<>(Bytes.BYTES_COMPARATOR);
+        try {
+            int region = -1;
+            KeyValue previous = null;
+            for (int i = 0; i < buffer.size(); i++) {
+                KeyValue kv = buffer.get(i);
+                if (i + 1 < buffer.size() && KeyValue.COMPARATOR.compare(kv, buffer.get(i + 1)) == 0) {
+                    // Same cell written twice. Keep the last one
+                    continue;
+                }
+                if (previous == null || !CellUtil.matchingRow(previous, kv)) {
+                    int newRegion = getRegion(CellUtil.cloneRow(kv));
+                    if (newRegion != region) {
+                        closeWriters(writers);
+                        region = newRegion;
+                    }
+                }
+                byte[] family = CellUtil.cloneFamily(kv);
+                StoreFile.Writer writer = writers.get(family);
+                if (writer == null) {
+                    writer = newWriter(family);
+                    writers.put(family, writer);
+                }
+                writer.append(kv);
+                numCells++;
+                previous = kv;
+            }
+        } finally {
+            closeWriters(writers);
+            buffer = new ArrayList<>();
+            bufferedBytes = 0;
+        }
+    }
+
+    private int getRegion(byte[] row) {
+        int idx = Arrays.binarySearch(startKeys, row, Bytes.BYTES_COMPARATOR);
+        return idx >= 0 ? idx : -(idx + 1) - 1;
+    }
+
+    private StoreFile.Writer newWriter(byte[] family) throws IOException {
+        HColumnDescriptor descriptor = families.get(family);
+        if (descriptor == null) {
+            throw new IOException("Unknown column family '" + Bytes.toString(family) + "' in table " + tableName);
+        }
+        HFileContext context = new HFileContextBuilder()
+                .withCompression(descriptor.getCompressionType())
+                .withDataBlockEncoding(descriptor.getDataBlockEncoding())
+                .withBlockSize(descriptor.getBlocksize())
+                .build();
+        numFiles++;
+        return new StoreFile.WriterBuilder(hBaseManager.getConf(), cacheConfig, fs)
+                .withOutputDir(new Path(stagingDir, Bytes.toString(family)))
+                .withBloomType(descriptor.getBloomFilterType())
+                .withComparator(KeyValue.COMPARATOR)
+                .withFileContext(context)
+                .build();
+    }
+
+    private void closeWriters(Map<byte[], StoreFile.Writer> writers) throws IOException {
+        for (StoreFile.Writer writer : writers.values()) {
+            writer.appendFileInfo(StoreFile.BULKLOAD_TIME_KEY, Bytes.toBytes(System.currentTimeMillis()));
+            writer.appendTrackedTimestampsToMetadata();
+            writer.close();
+        }
+        writers.clear();
+    }
+
+    /**
+     * Removes the staging directory. Cells not loaded are discarded.
+     *
+     * @throws IOException if the directory could not be removed
+     */
+    @Override
+    public void close() throws IOException {
+        buffer = new ArrayList<>();
+        if (fs.exists(stagingDir)) {
+            fs.delete(stagingDir, true);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.opencga.storage.hadoop.utils;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ResultScanner over a list of scans, running up to N of them at the same time.
+ *
+ * Each scan is read in background into a bounded queue. If sorted, results are returned in the order of the scans,
+ * so the output is the same as reading the scans one after another. Otherwise, results are returned as soon as any
+ * scan produces them.
+ *
+ * Background scans whose results are not consumed for a while are paused. The scanner is closed, releasing the server
+ * side lease, and reopened right after the last returned row once the consumer catches up.
+ *
+ * Created on 17/10/26.
+ */
+public class HBaseParallelScanner implements ResultScanner {
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+    private static Logger logger = LoggerFactory.getLogger(HBaseParallelScanner.class);
+
+    private final Connection connection;
+    private final TableName tableName;
+    private final Iterator<Scan> pendingScans;
+    private final int parallelism;
+    private final int queueSize;
+    private final boolean sorted;
+    private final long pauseTimeout;
+    private final ExecutorService executor;
+    private final LinkedList<ScanTask> running = new LinkedList<>();
+    private final BlockingQueue<Object> sharedQueue;
+    private volatile boolean closed = false;
+
+    public HBaseParallelScanner(Connection connection, TableName tableName, List<Scan> scans, int parallelism, boolean sorted) {
+        this(connection, tableName, scans, parallelism, DEFAULT_QUEUE_SIZE, sorted);
+    }
+
+    public HBaseParallelScanner(Connection connection, TableName tableName, List<Scan> scans, int parallelism, int queueSize,
+                                boolean sorted) {
+        // Pause well before the server side scanner lease expires
+        this(connection, tableName, scans, parallelism, queueSize, sorted,
+                connection.getConfiguration().getLong(HConstants.HBASE_CLIENT_SCANNER_TIMEOUT_PERIOD,
+                        HConstants.DEFAULT_HBASE_CLIENT_SCANNER_TIMEOUT_PERIOD) / 2);
+    }
+
+    /**
+     * @param connection  HBase connection
+     * @param tableName   Table to scan
+     * @param scans       Scans to run
+     * @param parallelism Max number of scans running at the same time
+     * @param queueSize   Max number of results read in advance for each scan
+     * @param sorted      Return the results in the order of the scans
+     * @param pauseTimeout Time in milliseconds to wait for the consumer before pausing a background scan
+     */
+    public HBaseParallelScanner(Connection connection, TableName tableName, List<Scan> scans, int parallelism, int queueSize,
+                                boolean sorted, long pauseTimeout) {
+        this.connection = connection;
+        this.tableName = tableName;
+        this.pendingScans = new ArrayList<>(scans).iterator();
+        this.parallelism = Math.max(1, Math.min(parallelism, scans.size()));
+        this.queueSize = queueSize;
+        this.sorted = sorted;
+        sharedQueue = sorted ? null : new LinkedBlockingQueue<>(queueSize);
+        this.pauseTimeout = pauseTimeout;
+        executor = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread thread = new Thread(r, "hbase-parallel-scanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        startScans();
+    }
+
+    private void startScans() {
+        while (running.size() < parallelism && pendingScans.hasNext()) {
+            ScanTask task = new ScanTask(pendingScans.next(), sorted ? new LinkedBlockingQueue<>(queueSize) : sharedQueue);
+            running.add(task);
+            executor.submit(task);
+        }
+    }
+
+    @Override
+    public Result next() throws IOException {
+        while (!running.isEmpty() && !closed) {
+            BlockingQueue<Object> queue = sorted ? running.getFirst().queue : sharedQueue;
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw (InterruptedIOException) new InterruptedIOException("Interrupted while scanning " + tableName).initCause(e);
+            }
+            if (item instanceof Result) {
+                return (Result) item;
+            }
+            // End of scan
+            ScanTask task = (ScanTask) item;
+            running.remove(task);
+            if (task.error != null) {
+                close();
+                if (task.error instanceof IOException) {
+                    throw (IOException) task.error;
+                } else {
+                    throw new IOException("Error scanning " + tableName, task.error);
+                }
+            }
+            startScans();
+        }
+        close();
+        return null;
+    }
+
+    @Override
+    public Result[] next(int nbRows) throws IOException {
+        List<Result> results = new ArrayList<>(nbRows);
+        for (int i = 0; i < nbRows; i++) {
+            Result result = next();
+            if (result == null) {
+                break;
+            }
+            results.add(result);
+        }
+        return results.toArray(new Result[results.size()]);
+    }
+
+    @Override
+    public Iterator<Result> iterator() {
+        return new Iterator<Result>() {
+            private Result next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = HBaseParallelScanner.this.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Result next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Result result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    // Not part of the ResultScanner interface in all the supported HBase versions
+    public boolean renewLease() {
+        return false;
+    }
+
+    public ScanMetrics getScanMetrics() {
+        return null;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            executor.shutdownNow();
+        }
+    }
+
+    private class ScanTask implements Runnable {
+        private final Scan scan;
+        private final BlockingQueue<Object> queue;
+        private volatile Exception error;
+
+        ScanTask(Scan scan, BlockingQueue<Object> queue) {
+            this.scan = scan;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try (Table table = connection.getTable(tableName)) {
+                Scan currentScan = scan;
+                while (currentScan != null && !closed) {
+                    currentScan = read(table, currentScan);
+                }
+            } catch (InterruptedException e) {
+                // Closed
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                error = e;
+            }
+            // Mark the end of the scan
+            try {
+                queue.put(this);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Read the scan until the end, or until the results are not consumed in time.
+         *
+         * @param table Table
+         * @param scan  Scan to read
+         * @return      Scan to resume after a pause, or null if the scan is over
+         * @throws IOException          on error reading from HBase
+         * @throws InterruptedException if closed while waiting
+         */
+        private Scan read(Table table, Scan scan) throws IOException, InterruptedException {
+            Result pending = null;
+            try (ResultScanner scanner = table.getScanner(scan)) {
+                for (Result result = scanner.next(); result != null && !closed; result = scanner.next()) {
+                    if (!queue.offer(result, pauseTimeout, TimeUnit.MILLISECONDS)) {
+                        if (isResumable(scan)) {
+                            pending = result;
+                            break;
+                        }
+                        // Can not resume in the middle of a row. Keep the scanner open
+                        queue.put(result);
+                    }
+                }
+            }
+            if (pending == null) {
+                return null;
+            }
+            // Scanner closed. Wait for the consumer without holding the server side lease
+            logger.debug("Pause scan over table {} at row {}", tableName, Bytes.toStringBinary(pending.getRow()));
+            queue.put(pending);
+            Scan resume = new Scan(scan);
+            resume.setStartRow(Bytes.add(pending.getRow(), new byte[]{0}));
+            return resume;
+        }
+
+        private boolean isResumable(Scan scan) {
+            return !scan.isReversed() && scan.getBatch() <= 0 && !scan.getAllowPartialResults();
+        }
+    }
+}
@@ -34,10 +34,13 @@ import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
 import org.opencb.opencga.storage.hadoop.auth.HBaseCredentials;
+import org.opencb.opencga.storage.hadoop.utils.AbstractHBaseDataWriter;
 import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHadoopDBAdaptor;
 import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveTableHelper;
 import org.opencb.opencga.storage.hadoop.variant.archive.VariantHBaseArchiveDataWriter;
 import org.opencb.opencga.storage.hadoop.variant.index.VariantHadoopDBWriter;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexDBAdaptor;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexDBLoader;
 import org.opencb.opencga.storage.hadoop.variant.transform.VariantSliceReader;
 import org.opencb.opencga.storage.hadoop.variant.transform.VariantToVcfSliceConverterTask;
 import org.slf4j.Logger;
@@ -58,7 +61,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.GZIPInputStream;
 
 import static org.opencb.biodata.models.variant.protobuf.VcfSliceProtos.VcfSlice;
-import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine.STORAGE_ENGINE_ID;
+import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine.*;
 
 /**
  * Created on 06/06/17.
@@ -172,6 +175,10 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
         VariantHBaseArchiveDataWriter archiveWriter = new VariantHBaseArchiveDataWriter(helper, table, dbAdaptor.getHBaseManager());
         VcfSliceToVariantListConverter converter = new VcfSliceToVariantListConverter(helper.getStudyMetadata());
         VariantHadoopDBWriter variantsWriter = newVariantHadoopDBWriter();
+        int fileId = Integer.valueOf(helper.getFileMetadata().getId());
+        configureBulkLoad(archiveWriter, table, fileId);
+        configureBulkLoad(variantsWriter, dbAdaptor.getCredentials().getTable(), fileId);
+        SampleIndexDBLoader sampleIndexLoader = newSampleIndexDBLoader(fileId);
 
 //        ((Task<VcfSlice, VcfSlice>) t -> t)
 //                .then(archiveWriter)
@@ -186,6 +193,10 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
             archiveWriter.pre();
             variantsWriter.open();
             variantsWriter.pre();
+            if (sampleIndexLoader != null) {
+                sampleIndexLoader.open();
+                sampleIndexLoader.pre();
+            }
             VcfSlice slice = VcfSlice.parseDelimitedFrom(in);
             while (null != slice) {
                 ++counter;
@@ -193,17 +204,26 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
 
                 List<Variant> variants = converter.convert(slice);
                 variantsWriter.write(variants);
+                if (sampleIndexLoader != null) {
+                    sampleIndexLoader.write(variants);
+                }
 
                 progressLogger.increment(slice.getRecordsCount());
                 slice = VcfSlice.parseDelimitedFrom(in);
             }
             archiveWriter.post();
             variantsWriter.post();
+            if (sampleIndexLoader != null) {
+                sampleIndexLoader.post();
+            }
         } catch (IOException e) {
             throw new StorageEngineException("Problems reading " + input, e);
         } finally {
             archiveWriter.close();
             variantsWriter.close();
+            if (sampleIndexLoader != null) {
+                sampleIndexLoader.close();
+            }
         }
         logger.info("Read {} slices", counter);
     }
@@ -222,7 +242,9 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
 
         VariantHBaseArchiveDataWriter archiveWriter = new VariantHBaseArchiveDataWriter(helper, table, dbAdaptor.getHBaseManager());
         VariantHadoopDBWriter hadoopDBWriter = newVariantHadoopDBWriter();
-        GroupedVariantsTask task = new GroupedVariantsTask(archiveWriter, hadoopDBWriter, null);
+        configureBulkLoad(archiveWriter, table, fileId);
+        configureBulkLoad(hadoopDBWriter, dbAdaptor.getCredentials().getTable(), fileId);
+        GroupedVariantsTask task = new GroupedVariantsTask(archiveWriter, hadoopDBWriter, newSampleIndexDBLoader(fileId), null);
 
         ParallelTaskRunner<ImmutablePair<Long, List<Variant>>, VcfSlice> ptr =
                 new ParallelTaskRunner<>(sliceReader, task, null, config);
@@ -237,6 +259,30 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
     public void securePostLoad(List<Integer> fileIds, StudyConfiguration studyConfiguration) throws StorageEngineException {
         super.securePostLoad(fileIds, studyConfiguration);
         StudyConfigurationManager.setStatus(studyConfiguration, BatchFileOperation.Status.READY, OPERATION_NAME, fileIds);
+        if (options.getBoolean(HADOOP_LOAD_SAMPLE_INDEX, DEFAULT_HADOOP_LOAD_SAMPLE_INDEX)) {
+            SampleIndexDBAdaptor.addIndexedFiles(studyConfiguration, fileIds);
+        }
+    }
+
+    private void configureBulkLoad(AbstractHBaseDataWriter<?, ?> writer, String table, int fileId) {
+        if (options.getBoolean(HADOOP_LOAD_BULK, false)) {
+            String stagingDir = options.getString(HADOOP_LOAD_BULK_STAGING_DIR, DEFAULT_HADOOP_LOAD_BULK_STAGING_DIR);
+            long bufferSize = options.getLong(HADOOP_LOAD_BULK_BUFFER_SIZE, DEFAULT_HADOOP_LOAD_BULK_BUFFER_SIZE);
+            // One directory per table and file, as files may be loaded concurrently
+            String dirName = table.replace(':', '_') + '_' + fileId + '_' + System.currentTimeMillis();
+            writer.setBulkLoad(new org.apache.hadoop.fs.Path(stagingDir, dirName), bufferSize);
+        }
+    }
+
+    private SampleIndexDBLoader newSampleIndexDBLoader(int fileId) throws StorageEngineException {
+        if (!options.getBoolean(HADOOP_LOAD_SAMPLE_INDEX, DEFAULT_HADOOP_LOAD_SAMPLE_INDEX)) {
+            return null;
+        }
+        String table = dbAdaptor.getTableNameGenerator().getSampleIndexTableName();
+        SampleIndexDBLoader loader = new SampleIndexDBLoader(dbAdaptor.getGenomeHelper(), dbAdaptor.getHBaseManager(), table,
+                getStudyConfiguration(), fileId);
+        configureBulkLoad(loader, table, fileId);
+        return loader;
     }
 
     private VariantHadoopDBWriter newVariantHadoopDBWriter() throws StorageEngineException {
@@ -253,12 +299,19 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
         private final VariantToVcfSliceConverterTask converterTask;
         private final VariantHBaseArchiveDataWriter archiveWriter;
         private final VariantHadoopDBWriter hadoopDBWriter;
+        private final SampleIndexDBLoader sampleIndexLoader;
 
         GroupedVariantsTask(VariantHBaseArchiveDataWriter archiveWriter, VariantHadoopDBWriter hadoopDBWriter,
                             ProgressLogger progressLogger) {
+            this(archiveWriter, hadoopDBWriter, null, progressLogger);
+        }
+
+        GroupedVariantsTask(VariantHBaseArchiveDataWriter archiveWriter, VariantHadoopDBWriter hadoopDBWriter,
+                            SampleIndexDBLoader sampleIndexLoader, ProgressLogger progressLogger) {
             this.converterTask = new VariantToVcfSliceConverterTask(progressLogger);
             this.archiveWriter = Objects.requireNonNull(archiveWriter);
             this.hadoopDBWriter = Objects.requireNonNull(hadoopDBWriter);
+            this.sampleIndexLoader = sampleIndexLoader;
         }
 
         @Override
@@ -269,6 +322,11 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
             hadoopDBWriter.open();
             hadoopDBWriter.pre();
 
+            if (sampleIndexLoader != null) {
+                sampleIndexLoader.open();
+                sampleIndexLoader.pre();
+            }
+
             converterTask.pre();
         }
 
@@ -276,6 +334,9 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
         public List<VcfSlice> apply(List<ImmutablePair<Long, List<Variant>>> batch) {
             for (ImmutablePair<Long, List<Variant>> pair : batch) {
                 hadoopDBWriter.write(pair.getRight());
+                if (sampleIndexLoader != null) {
+                    sampleIndexLoader.write(pair.getRight());
+                }
             }
             List<VcfSlice> slices = converterTask.apply(batch);
             archiveWriter.write(slices);
@@ -290,6 +351,11 @@ public class HadoopLocalLoadVariantStoragePipeline extends HadoopVariantStorageP
             hadoopDBWriter.post();
             hadoopDBWriter.close();
 
+            if (sampleIndexLoader != null) {
+                sampleIndexLoader.post();
+                sampleIndexLoader.close();
+            }
+
             converterTask.post();
         }
     }
@@ -47,6 +47,7 @@ import org.opencb.opencga.storage.core.utils.CellBaseUtils;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.VariantStoragePipeline;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryCursor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManager;
@@ -63,9 +64,11 @@ import org.opencb.opencga.storage.hadoop.variant.executors.ExternalMRExecutor;
 import org.opencb.opencga.storage.hadoop.variant.executors.MRExecutor;
 import org.opencb.opencga.storage.hadoop.variant.gaps.FillGapsDriver;
 import org.opencb.opencga.storage.hadoop.variant.gaps.FillGapsFromArchiveMapper;
+import org.opencb.opencga.storage.hadoop.variant.gaps.FillGapsLocalExecutor;
 import org.opencb.opencga.storage.hadoop.variant.gaps.PrepareFillMissingDriver;
 import org.opencb.opencga.storage.hadoop.variant.gaps.write.FillMissingHBaseWriterDriver;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixHelper;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexDBAdaptor;
 import org.opencb.opencga.storage.hadoop.variant.metadata.HBaseVariantStorageMetadataDBAdaptorFactory;
 import org.opencb.opencga.storage.hadoop.variant.stats.HadoopDefaultVariantStatisticsManager;
 import org.opencb.opencga.storage.hadoop.variant.stats.HadoopMRVariantStatisticsManager;
@@ -123,6 +126,17 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
 
     public static final String HADOOP_LOAD_ARCHIVE_BATCH_SIZE = "hadoop.load.archive.batch.size";
     public static final String HADOOP_LOAD_VARIANT_BATCH_SIZE = "hadoop.load.variant.batch.size";
+    // Write sorted HFiles and bulk load them into the archive and variants tables, instead of sending Puts to the region servers
+    public static final String HADOOP_LOAD_BULK = "hadoop.load.bulk";
+    public static final String HADOOP_LOAD_BULK_STAGING_DIR = "hadoop.load.bulk.staging.dir";
+    public static final String DEFAULT_HADOOP_LOAD_BULK_STAGING_DIR = "/tmp/opencga_bulkload";
+    // Max size in bytes of the cells kept in memory before writing a new set of HFiles
+    public static final String HADOOP_LOAD_BULK_BUFFER_SIZE = "hadoop.load.bulk.buffer.size";
+    public static final long DEFAULT_HADOOP_LOAD_BULK_BUFFER_SIZE = 128L * 1024 * 1024;
+    // Build the sample genotype index while loading. Only read by the queries with DBADAPTOR_SAMPLE_INDEX_NATIVE, so both
+    // options should be enabled together
+    public static final String HADOOP_LOAD_SAMPLE_INDEX = "hadoop.load.sample.index";
+    public static final boolean DEFAULT_HADOOP_LOAD_SAMPLE_INDEX = false;
     @Deprecated public static final String HADOOP_LOAD_DIRECT = "hadoop.load.direct";
     @Deprecated public static final boolean HADOOP_LOAD_DIRECT_DEFAULT = true;
 
@@ -163,8 +177,24 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
     public static final String STATS_LOCAL = "stats.local";
 
     public static final String DBADAPTOR_PHOENIX_FETCH_SIZE = "dbadaptor.phoenix.fetch_size";
+    // Max number of HBase scans run at the same time by multi-region queries. 1 to scan sequentially
+    public static final String DBADAPTOR_HBASE_SCAN_PARALLELISM = "dbadaptor.hbase.scan.parallelism";
+    public static final int DEFAULT_DBADAPTOR_HBASE_SCAN_PARALLELISM = 4;
+    // Return the results of parallel scans as soon as they are read, in any order. Only for queries without skip or limit
+    public static final String DBADAPTOR_HBASE_SCAN_UNORDERED = "dbadaptor.hbase.scan.unordered";
+    // Serve the genotype queries resolved with the sample index from HBase, unless "native" is explicitly set
+    public static final String DBADAPTOR_SAMPLE_INDEX_NATIVE = "dbadaptor.sample.index.native";
+    public static final boolean DEFAULT_DBADAPTOR_SAMPLE_INDEX_NATIVE = false;
     public static final String MISSING_GENOTYPES_UPDATED = "missing_genotypes_updated";
+    // StudyConfiguration attribute with the files included in the sample genotype index
+    public static final String SAMPLE_INDEX_FILES = "sample_index_files";
     public static final int FILL_GAPS_MAX_SAMPLES = 100;
+    // Run fill gaps and fill missing in the local process, without MapReduce. If not defined, the local mode is
+    // chosen when the archive table data to read is smaller than FILL_GAPS_LOCAL_MAX_SIZE
+    public static final String FILL_GAPS_LOCAL = "fill_gaps.local";
+    public static final String FILL_GAPS_LOCAL_MAX_SIZE = "fill_gaps.local.max_size";
+    public static final long DEFAULT_FILL_GAPS_LOCAL_MAX_SIZE = 512L * 1024 * 1024;
+    public static final String FILL_GAPS_LOCAL_THREADS = "fill_gaps.local.threads";
 
     public static final EnumSet<VariantType> TARGET_VARIANT_TYPE_SET = EnumSet.of(
             VariantType.SNV, VariantType.SNP,
@@ -415,26 +445,33 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
                     (v) -> fillGaps || v.getOperationName().equals(FILL_GAPS_OPERATION_NAME));
 
             options.put(AbstractAnalysisTableDriver.TIMESTAMP, operation.getTimestamp());
+            // Genotypes filled from the archive are not added to the sample index
+            SampleIndexDBAdaptor.removeIndexedFiles(sc, fileIdsList);
             return sc;
         });
 
-        if (!fillGaps) {
-            URI directory = URI.create(options.getString(INTERMEDIATE_HDFS_DIRECTORY));
-            if (directory.getScheme() != null && !directory.getScheme().equals("hdfs")) {
-                throw new StorageEngineException("Output must be in HDFS");
-            }
-            String regionStr = options.getString(VariantQueryParam.REGION.key());
-            String outputPath = directory.resolve(dbName + "_fill_missing_study_" + studyId
-                    + (StringUtils.isNotEmpty(regionStr) ? '_' + regionStr.replace(':', '_').replace('-', '_') : "") + ".bin").toString();
-            logger.info("Using intermediate file = " + outputPath);
-            options.put(FILL_MISSING_INTERMEDIATE_FILE, outputPath);
-        }
-
         Thread hook = scm.buildShutdownHook(jobOperationName, studyId, fileIdsList);
         Exception exception = null;
         try {
             Runtime.getRuntime().addShutdownHook(hook);
 
+            // Inside the try, so the operation is marked as ERROR if the size of the archive table can not be read
+            FillGapsLocalExecutor localExecutor = getFillGapsLocalExecutor(studyConfiguration, fileIdsList, fillGaps, options);
+            boolean skipPrepareFillMissing = options.getBoolean("skipPrepareFillMissing", false);
+
+            if (!fillGaps && localExecutor == null) {
+                URI directory = URI.create(options.getString(INTERMEDIATE_HDFS_DIRECTORY));
+                if (directory.getScheme() != null && !directory.getScheme().equals("hdfs")) {
+                    throw new StorageEngineException("Output must be in HDFS");
+                }
+                String regionStr = options.getString(VariantQueryParam.REGION.key());
+                String outputPath = directory.resolve(dbName + "_fill_missing_study_" + studyId
+                        + (StringUtils.isNotEmpty(regionStr) ? '_' + regionStr.replace(':', '_').replace('-', '_') : "")
+                        + ".bin").toString();
+                logger.info("Using intermediate file = " + outputPath);
+                options.put(FILL_MISSING_INTERMEDIATE_FILE, outputPath);
+            }
+
             options.put(FillGapsFromArchiveMapper.SAMPLES, sampleIds);
             options.put(FillGapsFromArchiveMapper.FILL_GAPS, fillGaps);
             options.put(FillGapsFromArchiveMapper.OVERWRITE, overwrite);
@@ -446,9 +483,19 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
 
             // TODO: Save progress in StudyConfiguration
 
+            if (localExecutor != null) {
+                logger.info("Run " + jobOperationName + " locally");
+                if (fillGaps) {
+                    localExecutor.fillGaps(fileIdsList, sampleIds);
+                } else {
+                    localExecutor.fillMissing(fileIdsList, overwrite, skipPrepareFillMissing);
+                }
+                return;
+            }
+
             // Prepare fill missing
             if (!fillGaps) {
-                if (options.getBoolean("skipPrepareFillMissing", false)) {
+                if (skipPrepareFillMissing) {
                     logger.info("=================================================");
                     logger.info("SKIP prepare archive table for " + FILL_MISSING_OPERATION_NAME);
                     logger.info("=================================================");
@@ -469,7 +516,7 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
                 getMRExecutor(options).run(FillMissingHBaseWriterDriver.class, args, options, description);
             }
 
-        } catch (RuntimeException e) {
+        } catch (RuntimeException | IOException | ExecutionException e) {
             exception = e;
             throw new StorageEngineException("Error " + jobOperationName + " for samples " + sampleIds, e);
         } catch (StorageEngineException e) {
@@ -491,6 +538,38 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
 
     }
 
+    /**
+     * Get the executor to run fill gaps or fill missing in the local process, or null if it should run with MapReduce.
+     *
+     * @param studyConfiguration StudyConfiguration
+     * @param fileIds            Files to process
+     * @param fillGaps           Fill gaps or fill missing
+     * @param options            Options, with the timestamp of the operation
+     * @return                   The local executor, or null
+     * @throws StorageEngineException if the size of the archive table can not be read
+     */
+    private FillGapsLocalExecutor getFillGapsLocalExecutor(StudyConfiguration studyConfiguration, List<Integer> fileIds,
+                                                           boolean fillGaps, ObjectMap options) throws StorageEngineException {
+        if (options.containsKey(FILL_GAPS_LOCAL) && !options.getBoolean(FILL_GAPS_LOCAL)) {
+            return null;
+        }
+        int studyId = studyConfiguration.getStudyId();
+        FillGapsLocalExecutor executor = new FillGapsLocalExecutor(getDBAdaptor().getHBaseManager(),
+                getHadoopConfiguration(options), studyConfiguration, getArchiveTableName(studyId), getVariantTableName(),
+                options.getInt(FILL_GAPS_LOCAL_THREADS, Runtime.getRuntime().availableProcessors()));
+        if (options.getBoolean(FILL_GAPS_LOCAL, false)) {
+            return executor;
+        }
+        long maxSize = options.getLong(FILL_GAPS_LOCAL_MAX_SIZE, DEFAULT_FILL_GAPS_LOCAL_MAX_SIZE);
+        try {
+            long size = executor.estimateSize(fileIds, fillGaps);
+            logger.info("Archive table data to read: " + size + " bytes. Max size for local execution: " + maxSize + " bytes");
+            return size <= maxSize ? executor : null;
+        } catch (IOException e) {
+            throw new StorageEngineException("Error reading size of table " + getArchiveTableName(studyId), e);
+        }
+    }
+
     public HadoopVariantStoragePipeline newStoragePipeline(boolean connected, Map<? extends String, ?> extraOptions)
             throws StorageEngineException {
         ObjectMap options = getMergedOptions(extraOptions);
@@ -553,6 +632,11 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
         StudyConfigurationManager scm = dbAdaptor.getStudyConfigurationManager();
         List<Integer> fileIds = preRemoveFiles(study, files);
         final int studyId = scm.getStudyId(study, null);
+        // The sample index may still contain the columns of these files. Do not use it for their samples
+        scm.lockAndUpdate(studyId, sc -> {
+            SampleIndexDBAdaptor.removeIndexedFiles(sc, fileIds);
+            return sc;
+        });
 
 //        // Pre delete
 //        scm.lockAndUpdate(studyId, sc -> {
@@ -628,6 +712,13 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
                 throw new StorageEngineException("Error removing files " + fileIds + " from tables ");
             }
 
+            Map<Integer, LinkedHashSet<Integer>> samplesInFiles = new HashMap<>();
+            for (Integer fileId : fileIds) {
+                samplesInFiles.put(fileId, sc.getSamplesInFiles().get(fileId));
+            }
+            new SampleIndexDBAdaptor(dbAdaptor.getHBaseManager(), getTableNameGenerator().getSampleIndexTableName(),
+                    dbAdaptor.getGenomeHelper().getColumnFamily()).deleteFiles(studyId, samplesInFiles);
+
 //            // Post Delete
 //            // If everything went fine, remove file column from Archive table and from studyconfig
 //            scm.lockAndUpdate(studyId, sc -> {
@@ -702,6 +793,23 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
         return dbAdaptor.get();
     }
 
+    /**
+     * Params resolved with the variants table row key, or with one of the phoenix indexes created
+     * at {@link VariantPhoenixHelper#createVariantIndexes}.
+     *
+     * @return Indexed params
+     */
+    @Override
+    protected Set<VariantQueryParam> getEngineIndexedParams() {
+        if (getOptions().getBoolean(VARIANT_TABLE_INDEXES_SKIP, false)) {
+            return super.getEngineIndexedParams();
+        }
+        Set<VariantQueryParam> params = new HashSet<>(super.getEngineIndexedParams());
+        params.addAll(Arrays.asList(VariantQueryParam.TYPE, ANNOT_CONSERVATION, ANNOT_FUNCTIONAL_SCORE,
+                ANNOT_PROTEIN_SUBSTITUTION, ANNOT_POLYPHEN, ANNOT_SIFT));
+        return Collections.unmodifiableSet(params);
+    }
+
     private synchronized HBaseManager getHBaseManager(Configuration configuration) {
         if (hBaseManager == null) {
             hBaseManager = new HBaseManager(configuration);
@@ -844,6 +952,8 @@ public class HadoopVariantStorageEngine extends VariantStorageEngine {
         Query scanQuery = new Query();
         QueryOptions scanOptions = new QueryOptions(VariantHadoopDBAdaptor.NATIVE, true)
                 .append(QueryOptions.INCLUDE, Arrays.asList(CHROMOSOME, START, END, REFERENCE, ALTERNATE));
+        // The scan is sorted by row key, so it can resume directly after the last variant
+        scanOptions.putIfNotNull(VariantQueryCursor.RESUME_AFTER, options.get(VariantQueryCursor.RESUME_AFTER));
 
         scanQuery.putIfNotNull(STUDY.key(), query.get(STUDY.key()));
         if (isValidParam(query, SAMPLE)) {
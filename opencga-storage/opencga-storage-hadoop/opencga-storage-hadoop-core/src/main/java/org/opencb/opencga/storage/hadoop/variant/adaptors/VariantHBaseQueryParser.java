@@ -30,6 +30,7 @@ import org.opencb.commons.datastore.core.QueryParam;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryCursor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils;
@@ -39,6 +40,9 @@ import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveRowKeyFactory;
 import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveTableHelper;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixHelper;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixKeyFactory;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexConverter;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexDBAdaptor;
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,6 +66,7 @@ public class VariantHBaseQueryParser {
 
     private final GenomeHelper genomeHelper;
     private final StudyConfigurationManager studyConfigurationManager;
+    private final SampleIndexDBAdaptor sampleIndexDBAdaptor;
 
     public static final Set<VariantQueryParam> SUPPORTED_QUERY_PARAMS = Collections.unmodifiableSet(Sets.newHashSet(
 //            STUDIES, // Not fully supported
@@ -74,8 +79,14 @@ public class VariantHBaseQueryParser {
             UNKNOWN_GENOTYPE));
 
     public VariantHBaseQueryParser(GenomeHelper genomeHelper, StudyConfigurationManager studyConfigurationManager) {
+        this(genomeHelper, studyConfigurationManager, null);
+    }
+
+    public VariantHBaseQueryParser(GenomeHelper genomeHelper, StudyConfigurationManager studyConfigurationManager,
+                                   SampleIndexDBAdaptor sampleIndexDBAdaptor) {
         this.genomeHelper = genomeHelper;
         this.studyConfigurationManager = studyConfigurationManager;
+        this.sampleIndexDBAdaptor = sampleIndexDBAdaptor;
     }
 
     public static boolean isSupportedQueryParam(Query query, QueryParam param) {
@@ -227,7 +238,124 @@ public class VariantHBaseQueryParser {
             }
         }
 
-        return scans;
+        scans = addSampleIndexFilter(scans, query, regions);
+        return addResumeFilter(scans, options);
+    }
+
+    /**
+     * Check if the genotype filter of the query can be resolved with the sample index.
+     * With AND, at least one sample must be indexed. With OR, all of them.
+     *
+     * @param query Query
+     * @return      If the sample index can be used
+     */
+    public boolean useSampleIndex(Query query) {
+        return parseSampleIndexQuery(query) != null;
+    }
+
+    private SampleIndexQuery parseSampleIndexQuery(Query query) {
+        if (sampleIndexDBAdaptor == null || !isValidParam(query, GENOTYPE)) {
+            return null;
+        }
+        StudyConfiguration sc = getDefaultStudyConfiguration(query, null, studyConfigurationManager);
+        if (sc == null) {
+            return null;
+        }
+        HashMap<Object, List<String>> genotypesMap = new HashMap<>();
+        QueryOperation operation = parseGenotypeFilter(query.getString(GENOTYPE.key()), genotypesMap);
+        SampleIndexQuery sampleIndexQuery = new SampleIndexQuery(sc.getStudyId(), operation != QueryOperation.OR,
+                SampleIndexDBAdaptor.getIndexedFiles(sc));
+        for (Map.Entry<Object, List<String>> entry : genotypesMap.entrySet()) {
+            int sampleId = studyConfigurationManager.getSampleId(entry.getKey(), sc);
+            if (SampleIndexDBAdaptor.isIndexed(sc, sampleId)
+                    && entry.getValue().stream().allMatch(SampleIndexConverter::isIndexedGenotype)) {
+                sampleIndexQuery.samples.put(sampleId, entry.getValue());
+            } else if (!sampleIndexQuery.and) {
+                // Any variant may match this sample
+                return null;
+            }
+        }
+        return sampleIndexQuery.samples.isEmpty() ? null : sampleIndexQuery;
+    }
+
+    /**
+     * Restrict the scans to the variants matching the genotype filter, using the sample index.
+     *
+     * @param scans   Scans to filter
+     * @param query   Query
+     * @param regions Regions from the query
+     * @return        Filtered scans
+     */
+    private List<Scan> addSampleIndexFilter(List<Scan> scans, Query query, List<Region> regions) {
+        SampleIndexQuery sampleIndexQuery = parseSampleIndexQuery(query);
+        if (sampleIndexQuery == null) {
+            return scans;
+        }
+        try {
+            Map<String, RoaringBitmap> positions = null;
+            for (Map.Entry<Integer, List<String>> entry : sampleIndexQuery.samples.entrySet()) {
+                Map<String, RoaringBitmap> samplePositions = sampleIndexDBAdaptor.get(sampleIndexQuery.studyId, entry.getKey(),
+                        entry.getValue(), regions, sampleIndexQuery.indexedFiles);
+                positions = positions == null
+                        ? samplePositions
+                        : SampleIndexDBAdaptor.merge(positions, samplePositions, sampleIndexQuery.and);
+            }
+            logger.debug("Sample index: {} variants from samples {}",
+                    positions.values().stream().mapToLong(RoaringBitmap::getLongCardinality).sum(), sampleIndexQuery.samples.keySet());
+            return SampleIndexDBAdaptor.filterScans(scans, positions);
+        } catch (IOException e) {
+            throw VariantQueryException.internalException(e);
+        }
+    }
+
+    private static final class SampleIndexQuery {
+        private final int studyId;
+        private final boolean and;
+        private final List<Integer> indexedFiles;
+        private final Map<Integer, List<String>> samples = new LinkedHashMap<>();
+
+        private SampleIndexQuery(int studyId, boolean and, List<Integer> indexedFiles) {
+            this.studyId = studyId;
+            this.and = and;
+            this.indexedFiles = indexedFiles;
+        }
+    }
+
+    /**
+     * Keyset pagination. Moves the start row of each scan right after the variant from {@link VariantQueryCursor#RESUME_AFTER},
+     * discarding the scans that end before it. Scans are sorted by start row, so the results follow the row key order.
+     *
+     * @param scans   Scans to resume
+     * @param options QueryOptions
+     * @return        Resumed scans
+     */
+    static List<Scan> addResumeFilter(List<Scan> scans, QueryOptions options) {
+        Variant resumeAfter = VariantQueryCursor.getResumeAfter(options);
+        if (resumeAfter == null) {
+            return scans;
+        }
+        // Smallest row key greater than the last variant
+        byte[] resumeRow = Bytes.add(VariantPhoenixKeyFactory.generateVariantRowKey(resumeAfter), new byte[]{0});
+
+        List<Scan> sortedScans = new ArrayList<>(scans);
+        sortedScans.sort((s1, s2) -> Bytes.compareTo(s1.getStartRow(), s2.getStartRow()));
+        List<Scan> resumedScans = new ArrayList<>(sortedScans.size());
+        for (Scan scan : sortedScans) {
+            byte[] startRow = scan.getStartRow();
+            byte[] stopRow = scan.getStopRow();
+            if (startRow.length > 0 && Bytes.equals(startRow, stopRow)) {
+                // Single variant scan
+                if (Bytes.compareTo(startRow, resumeRow) >= 0) {
+                    resumedScans.add(scan);
+                }
+            } else if (stopRow.length == 0 || Bytes.compareTo(stopRow, resumeRow) > 0) {
+                if (Bytes.compareTo(startRow, resumeRow) < 0) {
+                    scan.setStartRow(resumeRow);
+                }
+                resumedScans.add(scan);
+            }
+        }
+        return resumedScans;
     }
 
     public Scan parseQuery(Query query, QueryOptions options) {
@@ -39,6 +39,7 @@ import org.opencb.opencga.storage.core.metadata.ProjectMetadata;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.utils.CellBaseUtils;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBIterator;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryException;
@@ -47,6 +48,7 @@ import org.opencb.opencga.storage.core.variant.annotation.VariantAnnotationManag
 import org.opencb.opencga.storage.core.variant.stats.VariantStatsWrapper;
 import org.opencb.opencga.storage.hadoop.auth.HBaseCredentials;
 import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
+import org.opencb.opencga.storage.hadoop.utils.HBaseParallelScanner;
 import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
 import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine;
 import org.opencb.opencga.storage.hadoop.variant.annotation.phoenix.VariantAnnotationPhoenixDBWriter;
@@ -61,6 +63,7 @@ import org.opencb.opencga.storage.hadoop.variant.index.VariantHBaseScanIterator;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.PhoenixHelper;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixHelper;
 import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantSqlQueryParser;
+import org.opencb.opencga.storage.hadoop.variant.index.sample.SampleIndexDBAdaptor;
 import org.opencb.opencga.storage.hadoop.variant.metadata.HBaseVariantFileMetadataDBAdaptor;
 import org.opencb.opencga.storage.hadoop.variant.metadata.HBaseVariantStorageMetadataDBAdaptorFactory;
 import org.opencb.opencga.storage.hadoop.variant.utils.HBaseVariantTableNameGenerator;
@@ -100,6 +103,8 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
     private final VariantHBaseQueryParser hbaseQueryParser;
     private final HBaseVariantFileMetadataDBAdaptor variantFileMetadataDBAdaptor;
     private final int phoenixFetchSize;
+    private final int scanParallelism;
+    private final boolean sampleIndexNative;
     private boolean clientSideSkip;
     private HBaseManager hBaseManager;
 
@@ -120,7 +125,9 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
         ObjectMap options = configuration.getStorageEngine(HadoopVariantStorageEngine.STORAGE_ENGINE_ID).getVariant().getOptions();
         HBaseVariantStorageMetadataDBAdaptorFactory factory = new HBaseVariantStorageMetadataDBAdaptorFactory(
                 hBaseManager, tableNameGenerator.getMetaTableName(), conf);
-        this.studyConfigurationManager.set(new StudyConfigurationManager(factory));
+        this.studyConfigurationManager.set(new StudyConfigurationManager(factory)
+                .setCacheCheckInterval(options.getInt(VariantStorageEngine.Options.STUDY_CONFIGURATION_CACHE_CHECK_INTERVAL.key(),
+                        VariantStorageEngine.Options.STUDY_CONFIGURATION_CACHE_CHECK_INTERVAL.defaultValue())));
         this.variantFileMetadataDBAdaptor = factory.buildVariantFileMetadataDBAdaptor();
 
         clientSideSkip = !options.getBoolean(PhoenixHelper.PHOENIX_SERVER_OFFSET_AVAILABLE, true);
@@ -128,10 +135,15 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
                 studyConfigurationManager.get(), cellBaseUtils, clientSideSkip);
 
         phoenixFetchSize = options.getInt(HadoopVariantStorageEngine.DBADAPTOR_PHOENIX_FETCH_SIZE, -1);
+        scanParallelism = options.getInt(HadoopVariantStorageEngine.DBADAPTOR_HBASE_SCAN_PARALLELISM,
+                HadoopVariantStorageEngine.DEFAULT_DBADAPTOR_HBASE_SCAN_PARALLELISM);
+        sampleIndexNative = options.getBoolean(HadoopVariantStorageEngine.DBADAPTOR_SAMPLE_INDEX_NATIVE,
+                HadoopVariantStorageEngine.DEFAULT_DBADAPTOR_SAMPLE_INDEX_NATIVE);
 
         phoenixHelper = new VariantPhoenixHelper(genomeHelper);
 
-        hbaseQueryParser = new VariantHBaseQueryParser(genomeHelper, studyConfigurationManager.get());
+        hbaseQueryParser = new VariantHBaseQueryParser(genomeHelper, studyConfigurationManager.get(), new SampleIndexDBAdaptor(
+                this.hBaseManager, tableNameGenerator.getSampleIndexTableName(), genomeHelper.getColumnFamily()));
     }
 
     public java.sql.Connection getJdbcConnection() {
@@ -312,14 +324,7 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
         List<Scan> scans = hbaseQueryParser.parseQueryMultiRegion(selectElements, query, options);
 
         try {
-            Table table = getConnection().getTable(TableName.valueOf(variantTable));
-            Iterator<Iterator<Result>> iterators = scans.stream().map(scan -> {
-                try {
-                    return table.getScanner(scan).iterator();
-                } catch (IOException e) {
-                    throw VariantQueryException.internalException(e);
-                }
-            }).iterator();
+            Iterator<Iterator<Result>> iterators = Iterators.transform(getResultScanners(scans, options), ResultScanner::iterator);
             HBaseToVariantAnnotationConverter converter = new HBaseToVariantAnnotationConverter(genomeHelper)
                     .setIncludeFields(selectElements.getFields());
             converter.setAnnotationColumn(annotationColumn);
@@ -338,6 +343,38 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
         }
     }
 
+    /**
+     * Multi-region queries run up to {@link HadoopVariantStorageEngine#DBADAPTOR_HBASE_SCAN_PARALLELISM} scans at the same time.
+     * Results keep the order of the scans, unless the caller accepts unordered results with
+     * {@link HadoopVariantStorageEngine#DBADAPTOR_HBASE_SCAN_UNORDERED}. Paginated queries are always ordered.
+     *
+     * @param scans   Scans to run
+     * @param options Query options
+     * @return        ResultScanners to be read in order
+     * @throws IOException if the table can not be read
+     */
+    private Iterator<ResultScanner> getResultScanners(List<Scan> scans, QueryOptions options) throws IOException {
+        int parallelism = options.getInt(HadoopVariantStorageEngine.DBADAPTOR_HBASE_SCAN_PARALLELISM, scanParallelism);
+        if (scans.size() > 1 && parallelism > 1) {
+            boolean unordered = options.getBoolean(HadoopVariantStorageEngine.DBADAPTOR_HBASE_SCAN_UNORDERED, false)
+                    && !options.getBoolean(QueryOptions.SORT)
+                    && options.getInt(QueryOptions.SKIP, 0) <= 0
+                    && options.getInt(QueryOptions.LIMIT, 0) <= 0;
+            logger.debug("Run {} scans with parallelism {}. Unordered: {}", scans.size(), parallelism, unordered);
+            ResultScanner scanner = new HBaseParallelScanner(getConnection(), TableName.valueOf(variantTable), scans, parallelism,
+                    !unordered);
+            return Collections.singletonList(scanner).iterator();
+        }
+        Table table = getConnection().getTable(TableName.valueOf(variantTable));
+        return scans.stream().map(scan -> {
+            try {
+                return table.getScanner(scan);
+            } catch (IOException e) {
+                throw VariantQueryException.internalException(e);
+            }
+        }).iterator();
+    }
+
     @Override
     public QueryResult<Long> count(Query query) {
         if (query == null) {
@@ -375,8 +412,12 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
         }
 
         boolean archiveIterator = options.getBoolean("archive", false);
-        boolean hbaseIterator = options.getBoolean(NATIVE, false);
-        // || VariantHBaseQueryParser.fullySupportedQuery(query);
+        // Optionally, queries by genotype resolved with the sample index read directly from HBase, unless native is explicitly set
+        boolean hbaseIterator = options.getBoolean(NATIVE, false)
+                || !options.containsKey(NATIVE)
+                && options.getBoolean(HadoopVariantStorageEngine.DBADAPTOR_SAMPLE_INDEX_NATIVE, sampleIndexNative)
+                && hbaseQueryParser.useSampleIndex(query)
+                && VariantHBaseQueryParser.isSupportedQuery(query);
 
         if (archiveIterator) {
             String study = query.getString(STUDY.key());
@@ -442,19 +483,12 @@ public class VariantHadoopDBAdaptor implements VariantDBAdaptor {
             SelectVariantElements selectElements = VariantQueryUtils.parseSelectElements(query, options, studyConfigurationManager.get());
             List<Scan> scans = hbaseQueryParser.parseQueryMultiRegion(selectElements, query, options);
             try {
-                Table table = getConnection().getTable(TableName.valueOf(variantTable));
                 String unknownGenotype = null;
                 if (isValidParam(query, UNKNOWN_GENOTYPE)) {
                     unknownGenotype = query.getString(UNKNOWN_GENOTYPE.key());
                 }
                 List<String> formats = getIncludeFormats(query);
-                Iterator<ResultScanner> resScans = scans.stream().map(scan -> {
-                    try {
-                        return table.getScanner(scan);
-                    } catch (IOException e) {
-                        throw VariantQueryException.internalException(e);
-                    }
-                }).iterator();
+                Iterator<ResultScanner> resScans = getResultScanners(scans, options);
 
                 VariantHBaseScanIterator iterator = new VariantHBaseScanIterator(
                         resScans, genomeHelper, studyConfigurationManager.get(), options, unknownGenotype, formats, selectElements);
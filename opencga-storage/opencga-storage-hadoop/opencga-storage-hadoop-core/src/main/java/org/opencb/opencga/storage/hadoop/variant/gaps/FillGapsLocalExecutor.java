@@ -0,0 +1,279 @@
+package org.opencb.opencga.storage.hadoop.variant.gaps;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.*;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.RegionSizeCalculator;
+import org.opencb.commons.io.DataReader;
+import org.opencb.commons.run.ParallelTaskRunner;
+import org.opencb.commons.run.Task;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.hadoop.utils.HBaseDataWriter;
+import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
+import org.opencb.opencga.storage.hadoop.variant.AbstractAnalysisTableDriver;
+import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Executes fill gaps and fill missing in the local process, without MapReduce.
+ *
+ * The scans are split by the regions of the input table. Each region partition is processed by one of the threads of a
+ * {@link ParallelTaskRunner}, with its own task, and the puts are written with a shared BufferedMutator.
+ * Intended for small studies or regions, where the startup time of the MapReduce jobs dominates.
+ *
+ * Created on 17/10/26.
+ */
+public class FillGapsLocalExecutor {
+
+    private static final int SCAN_BATCH_SIZE = 50;
+    private final Logger logger = LoggerFactory.getLogger(FillGapsLocalExecutor.class);
+
+    private final HBaseManager hBaseManager;
+    private final Configuration conf;
+    private final GenomeHelper helper;
+    private final StudyConfiguration studyConfiguration;
+    private final String archiveTableName;
+    private final String variantsTableName;
+    private final int numThreads;
+
+    /**
+     * @param hBaseManager       HBaseManager
+     * @param conf               Configuration, with the {@link AbstractAnalysisTableDriver#TIMESTAMP} of the operation
+     * @param studyConfiguration StudyConfiguration
+     * @param archiveTableName   Archive table of the study
+     * @param variantsTableName  Variants table
+     * @param numThreads         Number of region partitions processed at the same time
+     */
+    public FillGapsLocalExecutor(HBaseManager hBaseManager, Configuration conf, StudyConfiguration studyConfiguration,
+                                 String archiveTableName, String variantsTableName, int numThreads) {
+        this.hBaseManager = hBaseManager;
+        this.conf = conf;
+        GenomeHelper.setStudyId(conf, studyConfiguration.getStudyId());
+        this.helper = new GenomeHelper(conf);
+        this.studyConfiguration = studyConfiguration;
+        this.archiveTableName = archiveTableName;
+        this.variantsTableName = variantsTableName;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Estimate the size of the archive table data to be read by the operation.
+     *
+     * @param fileIds  Files to process
+     * @param fillGaps Fill gaps or fill missing
+     * @return Size in bytes of the store files of the archive table regions to be read
+     * @throws IOException on error reading from HBase
+     */
+    public long estimateSize(Collection<Integer> fileIds, boolean fillGaps) throws IOException {
+        List<Scan> scans = buildArchiveScans(fileIds, fillGaps);
+        TableName tableName = TableName.valueOf(archiveTableName);
+        try (RegionLocator locator = hBaseManager.getConnection().getRegionLocator(tableName);
+             Admin admin = hBaseManager.getConnection().getAdmin()) {
+            RegionSizeCalculator sizeCalculator = new RegionSizeCalculator(locator, admin);
+            long size = 0;
+            for (HRegionLocation location : locator.getAllRegionLocations()) {
+                byte[] regionStart = location.getRegionInfo().getStartKey();
+                byte[] regionEnd = location.getRegionInfo().getEndKey();
+                if (scans.stream().anyMatch(scan -> overlaps(scan, regionStart, regionEnd))) {
+                    size += sizeCalculator.getRegionSize(location.getRegionInfo().getRegionName());
+                }
+            }
+            return size;
+        }
+    }
+
+    public void fillGaps(Collection<Integer> fileIds, Collection<Integer> samples) throws IOException, ExecutionException {
+        long timestamp = getTimestamp();
+        run(archiveTableName, buildArchiveScans(fileIds, true), variantsTableName, () -> {
+            AbstractFillFromArchiveTask task = new FillGapsFromArchiveTask(hBaseManager, archiveTableName, studyConfiguration, helper,
+                    samples);
+            task.setTimestamp(timestamp);
+            task.setQuiet(true);
+            return task;
+        });
+    }
+
+    public void fillMissing(Collection<Integer> fileIds, boolean overwrite, boolean skipPrepare) throws IOException, ExecutionException {
+        long timestamp = getTimestamp();
+        List<Integer> indexedFiles = new ArrayList<>(studyConfiguration.getIndexedFiles());
+
+        // Prepare the archive table with the variants to fill
+        if (skipPrepare) {
+            logger.info("Skip prepare archive table");
+        } else {
+            Scan scan = PrepareFillMissingTask.buildScan(helper, studyConfiguration.getStudyId(), conf.get(VariantQueryParam.REGION.key()));
+            run(variantsTableName, Collections.singletonList(scan), archiveTableName,
+                    () -> new PrepareFillMissingTask(helper, studyConfiguration.getStudyId(), indexedFiles, timestamp, overwrite));
+        }
+
+        // Fill missing, writing directly into the variants table
+        run(archiveTableName, buildArchiveScans(fileIds, false), variantsTableName, () -> {
+            AbstractFillFromArchiveTask task = new FillMissingFromArchiveTask(studyConfiguration, helper, overwrite);
+            task.setQuiet(true);
+            return task;
+        });
+    }
+
+    private List<Scan> buildArchiveScans(Collection<Integer> fileIds, boolean fillGaps) {
+        String regionStr = conf.get(VariantQueryParam.REGION.key());
+        if (fillGaps) {
+            return Collections.singletonList(FillGapsFromArchiveTask.buildScan(fileIds, regionStr, conf));
+        } else {
+            return FillMissingFromArchiveTask.buildScan(fileIds, regionStr, conf);
+        }
+    }
+
+    private long getTimestamp() {
+        long timestamp = conf.getLong(AbstractAnalysisTableDriver.TIMESTAMP, 0);
+        if (timestamp <= 0) {
+            throw new IllegalArgumentException(AbstractAnalysisTableDriver.TIMESTAMP + " not defined!");
+        }
+        return timestamp;
+    }
+
+    private void run(String inputTable, List<Scan> scans, String outputTable, Supplier<Task<Result, Put>> taskSupplier)
+            throws IOException, ExecutionException {
+        List<Scan> partitions;
+        try (RegionLocator locator = hBaseManager.getConnection().getRegionLocator(TableName.valueOf(inputTable))) {
+            partitions = splitByRegion(scans, locator.getStartKeys(), locator.getEndKeys());
+        }
+        logger.info("Read table {} with {} region partitions, and write into table {} using {} threads",
+                inputTable, partitions.size(), outputTable, numThreads);
+
+        Iterator<Scan> iterator = partitions.iterator();
+        DataReader<Scan> reader = new DataReader<Scan>() {
+            @Override
+            public List<Scan> read() {
+                return read(1);
+            }
+
+            @Override
+            public List<Scan> read(int batchSize) {
+                List<Scan> batch = new ArrayList<>(batchSize);
+                while (batch.size() < batchSize && iterator.hasNext()) {
+                    batch.add(iterator.next());
+                }
+                return batch;
+            }
+        };
+
+        AtomicLong results = new AtomicLong();
+        AtomicLong puts = new AtomicLong();
+        HBaseDataWriter<Put> writer = new HBaseDataWriter<>(hBaseManager, outputTable);
+        ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
+                .setNumTasks(numThreads)
+                .setBatchSize(1)
+                .setCapacity(1)
+                .setSorted(false)
+                .setAbortOnFail(true)
+                .build();
+        ParallelTaskRunner<Scan, Object> ptr = new ParallelTaskRunner<>(reader,
+                () -> new PartitionTask(inputTable, taskSupplier.get(), writer, results, puts), null, config);
+
+        writer.open();
+        writer.pre();
+        try {
+            ptr.run();
+            writer.post();
+        } finally {
+            writer.close();
+        }
+        logger.info("Read {} rows from table {}. Write {} puts into table {}", results.get(), inputTable, puts.get(), outputTable);
+    }
+
+    /**
+     * Split the scans by the regions of the table. Scans without start or stop row are unbounded.
+     *
+     * @param scans     Scans to split
+     * @param startKeys Start keys of the regions of the table
+     * @param endKeys   End keys of the regions of the table
+     * @return One scan for each region overlapping with each input scan
+     * @throws IOException if the scans can not be copied
+     */
+    static List<Scan> splitByRegion(List<Scan> scans, byte[][] startKeys, byte[][] endKeys) throws IOException {
+        List<Scan> partitions = new ArrayList<>();
+        for (Scan scan : scans) {
+            for (int i = 0; i < startKeys.length; i++) {
+                if (!overlaps(scan, startKeys[i], endKeys[i])) {
+                    continue;
+                }
+                Scan partition = new Scan(scan);
+                if (scan.getStartRow().length == 0 || Bytes.compareTo(startKeys[i], scan.getStartRow()) > 0) {
+                    partition.setStartRow(startKeys[i]);
+                }
+                if (scan.getStopRow().length == 0 || endKeys[i].length > 0 && Bytes.compareTo(endKeys[i], scan.getStopRow()) < 0) {
+                    partition.setStopRow(endKeys[i]);
+                }
+                partitions.add(partition);
+            }
+        }
+        return partitions;
+    }
+
+    private static boolean overlaps(Scan scan, byte[] regionStart, byte[] regionEnd) {
+        byte[] start = scan.getStartRow();
+        byte[] stop = scan.getStopRow();
+        return (stop.length == 0 || regionStart.length == 0 || Bytes.compareTo(regionStart, stop) < 0)
+                && (regionEnd.length == 0 || Bytes.compareTo(start, regionEnd) < 0);
+    }
+
+    private class PartitionTask implements Task<Scan, Object> {
+        private final String tableName;
+        private final Task<Result, Put> task;
+        private final HBaseDataWriter<Put> writer;
+        private final AtomicLong results;
+        private final AtomicLong puts;
+        private Table table;
+
+        PartitionTask(String tableName, Task<Result, Put> task, HBaseDataWriter<Put> writer, AtomicLong results, AtomicLong puts) {
+            this.tableName = tableName;
+            this.task = task;
+            this.writer = writer;
+            this.results = results;
+            this.puts = puts;
+        }
+
+        @Override
+        public void pre() throws Exception {
+            table = hBaseManager.getConnection().getTable(TableName.valueOf(tableName));
+            task.pre();
+        }
+
+        @Override
+        public List<Object> apply(List<Scan> partitions) throws Exception {
+            for (Scan partition : partitions) {
+                partition.setCaching(SCAN_BATCH_SIZE);
+                try (ResultScanner scanner = table.getScanner(partition)) {
+                    Result[] batch = scanner.next(SCAN_BATCH_SIZE);
+                    while (batch.length > 0) {
+                        List<Put> batchPuts = task.apply(Arrays.asList(batch));
+                        writer.write(batchPuts);
+                        results.addAndGet(batch.length);
+                        puts.addAndGet(batchPuts.size());
+                        batch = scanner.next(SCAN_BATCH_SIZE);
+                    }
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void post() throws Exception {
+            try {
+                task.post();
+            } finally {
+                table.close();
+            }
+        }
+    }
+}
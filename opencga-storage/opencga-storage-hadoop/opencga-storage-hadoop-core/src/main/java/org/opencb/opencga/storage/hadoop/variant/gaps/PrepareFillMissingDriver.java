@@ -5,13 +5,10 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.util.ToolRunner;
-import org.opencb.biodata.models.core.Region;
 import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.hadoop.variant.AbstractAnalysisTableDriver;
-import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHBaseQueryParser;
-import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixHelper;
 import org.opencb.opencga.storage.hadoop.variant.mr.VariantMapReduceUtil;
 import org.opencb.opencga.storage.hadoop.variant.stats.VariantStatsDriver;
 import org.slf4j.Logger;
@@ -54,14 +51,7 @@ public class PrepareFillMissingDriver extends AbstractAnalysisTableDriver {
         StudyConfiguration sc = readStudyConfiguration();
         setIndexedFiles(job.getConfiguration(), sc.getIndexedFiles());
 
-        Scan scan = new Scan();
-        String region = getConf().get(VariantQueryParam.REGION.key());
-        if (StringUtils.isNotEmpty(region)) {
-            VariantHBaseQueryParser.addRegionFilter(scan, new Region(region));
-        }
-        scan.setCacheBlocks(false);
-        scan.addColumn(getHelper().getColumnFamily(), VariantPhoenixHelper.getStudyColumn(getStudyId()).bytes());
-        scan.addColumn(getHelper().getColumnFamily(), VariantPhoenixHelper.getFillMissingColumn(getStudyId()).bytes());
+        Scan scan = PrepareFillMissingTask.buildScan(getHelper(), getStudyId(), getConf().get(VariantQueryParam.REGION.key()));
 
         LOG.info(scan.toString());
 
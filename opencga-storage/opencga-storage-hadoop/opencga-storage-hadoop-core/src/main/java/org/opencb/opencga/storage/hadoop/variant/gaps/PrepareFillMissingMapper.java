@@ -5,18 +5,9 @@ import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.io.ImmutableBytesWritable;
 import org.apache.hadoop.hbase.mapreduce.TableMapper;
-import org.apache.hadoop.hbase.util.Bytes;
-import org.apache.phoenix.schema.types.PInteger;
-import org.opencb.biodata.models.variant.Variant;
 import org.opencb.opencga.storage.hadoop.variant.AbstractAnalysisTableDriver;
 import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
-import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveRowKeyFactory;
-import org.opencb.opencga.storage.hadoop.variant.index.phoenix.PhoenixHelper;
-import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixHelper;
-import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixKeyFactory;
 import org.opencb.opencga.storage.hadoop.variant.mr.AnalysisTableMapReduceHelper;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.*;
@@ -31,79 +22,28 @@ public class PrepareFillMissingMapper extends TableMapper<ImmutableBytesWritable
 
     public static final byte[] EMPTY_VALUE = new byte[0];
     public static final ImmutableBytesWritable EMPTY_IMMUTABLE_BYTES = new ImmutableBytesWritable(EMPTY_VALUE);
-    private ArchiveRowKeyFactory rowKeyFactory;
-    private Set<Integer> allFileBatches;
-    private Map<Integer, Collection<Integer>> fileBatchesMap = new HashMap<>();
-    private byte[] family;
-    private PhoenixHelper.Column fillMissingColumn;
-    private List<Integer> indexedFiles;
-    private long timestamp;
-    private boolean fillAllFiles;
+    private PrepareFillMissingTask task;
 
     @Override
     protected void setup(Context context) throws IOException, InterruptedException {
         GenomeHelper helper = new GenomeHelper(context.getConfiguration());
-        family = helper.getColumnFamily();
-        rowKeyFactory = new ArchiveRowKeyFactory(context.getConfiguration());
-        indexedFiles = getIndexedFiles(context.getConfiguration());
-        allFileBatches = indexedFiles.stream().map(rowKeyFactory::getFileBatch).collect(Collectors.toSet());
-        fillMissingColumn = VariantPhoenixHelper.getFillMissingColumn(helper.getStudyId());
-        timestamp = context.getConfiguration().getLong(AbstractAnalysisTableDriver.TIMESTAMP, 0);
+        long timestamp = context.getConfiguration().getLong(AbstractAnalysisTableDriver.TIMESTAMP, 0);
         if (timestamp <= 0) {
             throw new IllegalArgumentException(AbstractAnalysisTableDriver.TIMESTAMP + " not defined!");
         }
-        fillAllFiles = FillGapsFromArchiveMapper.isOverwrite(context.getConfiguration());
+        boolean fillAllFiles = FillGapsFromArchiveMapper.isOverwrite(context.getConfiguration());
+        task = new PrepareFillMissingTask(helper, helper.getStudyId(), getIndexedFiles(context.getConfiguration()), timestamp,
+                fillAllFiles);
     }
-    private final Logger logger = LoggerFactory.getLogger(PrepareFillMissingMapper.class);
 
     @Override
     protected void map(ImmutableBytesWritable key, Result value, Context context) throws IOException, InterruptedException {
-        Variant variant = VariantPhoenixKeyFactory.extractVariantFromVariantRowKey(value.getRow());
-        byte[] column = FillMissingFromArchiveTask.getArchiveVariantColumn(variant);
-        long sliceId = rowKeyFactory.getSliceId(variant.getStart());
-        String chromosome = variant.getChromosome();
-        byte[] lastFileBytes = value.getValue(family, fillMissingColumn.bytes());
-        Collection<Integer> fileBatches;
-        boolean newVariant;
-        if (lastFileBytes == null || lastFileBytes.length == 0 || fillAllFiles) {
-            fileBatches = this.allFileBatches;
-            newVariant = true;
-//            logger.info("FILL ALL for variant " + variant + " -> " + fileBatches);
-        } else {
-            Integer lastFile = (Integer) PInteger.INSTANCE.toObject(lastFileBytes);
-            fileBatches = fileBatchesMap.computeIfAbsent(lastFile, this::buildFileBatches);
-            newVariant = false;
-//            logger.info("FILL some for variant " + variant + " -> " + fileBatches);
-        }
-        for (Integer fileBatch : fileBatches) {
-            Put put = new Put(Bytes.toBytes(rowKeyFactory.generateBlockIdFromSliceAndBatch(fileBatch, chromosome, sliceId)), timestamp);
-            put.addColumn(family, column, lastFileBytes);
+        for (Put put : task.apply(Collections.singletonList(value))) {
             context.write(EMPTY_IMMUTABLE_BYTES, put);
-            if (!newVariant) {
-                context.getCounter(AnalysisTableMapReduceHelper.COUNTER_GROUP_NAME, "UPDATE_VARIANT_BATCH_" + fileBatch).increment(1);
-            }
-        }
-        context.getCounter(AnalysisTableMapReduceHelper.COUNTER_GROUP_NAME, "PUT").increment(fileBatches.size());
-        if (newVariant) {
-            context.getCounter(AnalysisTableMapReduceHelper.COUNTER_GROUP_NAME, "NEW_VARIANT").increment(1);
-        } else {
-            context.getCounter(AnalysisTableMapReduceHelper.COUNTER_GROUP_NAME, "UPDATE_VARIANT").increment(1);
-        }
-        context.getCounter(AnalysisTableMapReduceHelper.COUNTER_GROUP_NAME, "VARIANTS").increment(1);
-    }
-
-    private Collection<Integer> buildFileBatches(Integer lastFile) {
-        Set<Integer> batches = new HashSet<>();
-        // Add only file batches from files beyond the last file
-        int indexOf = indexedFiles.indexOf(lastFile);
-        if (indexOf == -1) {
-            logger.warn("Last file updated '" + lastFile + "' is not indexed!");
         }
-        for (int i = indexOf + 1; i < indexedFiles.size(); i++) {
-            Integer indexedFile = indexedFiles.get(i);
-            batches.add(rowKeyFactory.getFileBatch(indexedFile));
+        for (Map.Entry<String, Long> entry : task.takeStats().entrySet()) {
+            context.getCounter(AnalysisTableMapReduceHelper.COUNTER_GROUP_NAME, entry.getKey()).increment(entry.getValue());
         }
-        return batches;
     }
 
     public static List<Integer> getIndexedFiles(Configuration configuration) {
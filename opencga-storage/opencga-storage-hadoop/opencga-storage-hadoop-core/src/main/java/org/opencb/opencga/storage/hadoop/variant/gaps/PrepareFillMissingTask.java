@@ -0,0 +1,121 @@
+package org.opencb.opencga.storage.hadoop.variant.gaps;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.phoenix.schema.types.PInteger;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.run.Task;
+import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
+import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHBaseQueryParser;
+import org.opencb.opencga.storage.hadoop.variant.archive.ArchiveRowKeyFactory;
+import org.opencb.opencga.storage.hadoop.variant.index.phoenix.PhoenixHelper;
+import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixHelper;
+import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixKeyFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Reads variants from the variants table, and marks in the archive table the variants to be filled by
+ * {@link FillMissingFromArchiveTask}, in every file batch with files not processed yet.
+ *
+ * Created on 17/10/26.
+ */
+public class PrepareFillMissingTask implements Task<Result, Put> {
+
+    private final Logger logger = LoggerFactory.getLogger(PrepareFillMissingTask.class);
+    private final ArchiveRowKeyFactory rowKeyFactory;
+    private final Set<Integer> allFileBatches;
+    private final Map<Integer, Collection<Integer>> fileBatchesMap = new HashMap<>();
+    private final byte[] family;
+    private final PhoenixHelper.Column fillMissingColumn;
+    private final List<Integer> indexedFiles;
+    private final long timestamp;
+    private final boolean fillAllFiles;
+    private final Map<String, Long> stats = new HashMap<>();
+
+    public PrepareFillMissingTask(GenomeHelper helper, int studyId, List<Integer> indexedFiles, long timestamp, boolean fillAllFiles) {
+        family = helper.getColumnFamily();
+        rowKeyFactory = new ArchiveRowKeyFactory(helper.getConf());
+        this.indexedFiles = indexedFiles;
+        allFileBatches = indexedFiles.stream().map(rowKeyFactory::getFileBatch).collect(Collectors.toSet());
+        fillMissingColumn = VariantPhoenixHelper.getFillMissingColumn(studyId);
+        this.timestamp = timestamp;
+        this.fillAllFiles = fillAllFiles;
+    }
+
+    public static Scan buildScan(GenomeHelper helper, int studyId, String region) {
+        Scan scan = new Scan();
+        if (StringUtils.isNotEmpty(region)) {
+            VariantHBaseQueryParser.addRegionFilter(scan, new Region(region));
+        }
+        scan.setCacheBlocks(false);
+        scan.addColumn(helper.getColumnFamily(), VariantPhoenixHelper.getStudyColumn(studyId).bytes());
+        scan.addColumn(helper.getColumnFamily(), VariantPhoenixHelper.getFillMissingColumn(studyId).bytes());
+        return scan;
+    }
+
+    @Override
+    public List<Put> apply(List<Result> list) {
+        List<Put> puts = new ArrayList<>(list.size() * allFileBatches.size());
+        for (Result value : list) {
+            Variant variant = VariantPhoenixKeyFactory.extractVariantFromVariantRowKey(value.getRow());
+            byte[] column = FillMissingFromArchiveTask.getArchiveVariantColumn(variant);
+            long sliceId = rowKeyFactory.getSliceId(variant.getStart());
+            String chromosome = variant.getChromosome();
+            byte[] lastFileBytes = value.getValue(family, fillMissingColumn.bytes());
+            Collection<Integer> fileBatches;
+            boolean newVariant;
+            if (lastFileBytes == null || lastFileBytes.length == 0 || fillAllFiles) {
+                fileBatches = this.allFileBatches;
+                newVariant = true;
+            } else {
+                Integer lastFile = (Integer) PInteger.INSTANCE.toObject(lastFileBytes);
+                fileBatches = fileBatchesMap.computeIfAbsent(lastFile, this::buildFileBatches);
+                newVariant = false;
+            }
+            for (Integer fileBatch : fileBatches) {
+                Put put = new Put(Bytes.toBytes(rowKeyFactory.generateBlockIdFromSliceAndBatch(fileBatch, chromosome, sliceId)), timestamp);
+                put.addColumn(family, column, lastFileBytes);
+                puts.add(put);
+                if (!newVariant) {
+                    increment("UPDATE_VARIANT_BATCH_" + fileBatch, 1);
+                }
+            }
+            increment("PUT", fileBatches.size());
+            increment(newVariant ? "NEW_VARIANT" : "UPDATE_VARIANT", 1);
+            increment("VARIANTS", 1);
+        }
+        return puts;
+    }
+
+    private Collection<Integer> buildFileBatches(Integer lastFile) {
+        Set<Integer> batches = new HashSet<>();
+        // Add only file batches from files beyond the last file
+        int indexOf = indexedFiles.indexOf(lastFile);
+        if (indexOf == -1) {
+            logger.warn("Last file updated '" + lastFile + "' is not indexed!");
+        }
+        for (int i = indexOf + 1; i < indexedFiles.size(); i++) {
+            Integer indexedFile = indexedFiles.get(i);
+            batches.add(rowKeyFactory.getFileBatch(indexedFile));
+        }
+        return batches;
+    }
+
+    public Map<String, Long> takeStats() {
+        HashMap<String, Long> copy = new HashMap<>(stats);
+        stats.clear();
+        return copy;
+    }
+
+    private void increment(String name, long delta) {
+        stats.merge(name, delta, Long::sum);
+    }
+}
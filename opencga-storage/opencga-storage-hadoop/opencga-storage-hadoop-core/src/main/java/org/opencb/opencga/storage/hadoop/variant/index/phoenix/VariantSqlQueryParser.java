@@ -130,6 +130,11 @@ public class VariantSqlQueryParser {
                 sb.append("/*+ ").append(hints.stream().map(Object::toString).collect(Collectors.joining(","))).append(" */ ");
             }
 
+            Variant resumeAfter = VariantQueryCursor.getResumeAfter(options);
+            if (resumeAfter != null) {
+                filters.add(getResumeFilter(resumeAfter));
+            }
+
             appendProjectedColumns(sb, query, options, phoenixSQLQuery);
             appendFromStatement(sb, dynamicColumns);
             appendWhereStatement(sb, regionFilters, filters);
@@ -139,7 +144,14 @@ public class VariantSqlQueryParser {
             throw e;
         }
 
-        if (options.getBoolean(QueryOptions.SORT)) {
+        if (options.containsKey(VariantQueryCursor.RESUME_AFTER)) {
+            // Resumed queries are sorted by the whole primary key, which is the natural order of the table
+            sb.append(" ORDER BY ").append(VariantColumn.CHROMOSOME.column())
+                    .append(',').append(VariantColumn.POSITION.column())
+                    .append(',').append(VariantColumn.REFERENCE.column())
+                    .append(',').append(VariantColumn.ALTERNATE.column())
+                    .append(" ASC ");
+        } else if (options.getBoolean(QueryOptions.SORT)) {
             sb.append(" ORDER BY ").append(VariantColumn.CHROMOSOME.column()).append(',').append(VariantColumn.POSITION.column());
 
             String order = options.getString(QueryOptions.ORDER, QueryOptions.ASCENDING);
@@ -203,7 +215,8 @@ public class VariantSqlQueryParser {
 
             if (returnedFields.contains(VariantField.STUDIES)) {
                 for (Integer studyId : studyIds) {
-                    StudyConfiguration studyConfiguration = studyConfigurationManager.getStudyConfiguration(studyId, null).first();
+                    StudyConfiguration studyConfiguration = studyConfigurationManager.getStudyConfiguration(studyId,
+                            new QueryOptions(StudyConfigurationManager.READ_ONLY, true)).first();
                     Column studyColumn = VariantPhoenixHelper.getStudyColumn(studyId);
                     sb.append(",\"").append(studyColumn.column()).append('"');
                     sb.append(",\"").append(VariantPhoenixHelper.getFillMissingColumn(studyId).column()).append('"');
@@ -376,6 +389,24 @@ public class VariantSqlQueryParser {
         return sb.toString();
     }
 
+    /**
+     * Keyset pagination filter. Row value constructors over the primary key are resolved by Phoenix as a range scan
+     * starting right after the given variant.
+     *
+     * @param resumeAfter Last variant returned
+     * @return            SQL filter
+     */
+    private String getResumeFilter(Variant resumeAfter) {
+        return "(" + VariantColumn.CHROMOSOME + ", "
+                + VariantColumn.POSITION + ", "
+                + VariantColumn.REFERENCE + ", "
+                + VariantColumn.ALTERNATE + ") > ("
+                + '\'' + checkStringValue(resumeAfter.getChromosome()) + "', "
+                + resumeAfter.getStart() + ", "
+                + '\'' + checkStringValue(resumeAfter.getReference()) + "', "
+                + '\'' + checkStringValue(resumeAfter.getAlternate()) + "')";
+    }
+
 //    private String getRegionFilter(Region region) {
 //        if (region.getStart() == region.getEnd()) {
 //            return String.format("(%s,%s) = ('%s',%s)",
@@ -687,7 +718,8 @@ public class VariantSqlQueryParser {
                 String[] studyCohort = splitStudyResource(cohort);
                 StudyConfiguration studyConfiguration;
                 if (studyCohort.length == 2) {
-                    studyConfiguration = studyConfigurationManager.getStudyConfiguration(studyCohort[0], defaultStudyConfiguration, null);
+                    studyConfiguration = studyConfigurationManager.getStudyConfiguration(studyCohort[0], defaultStudyConfiguration,
+                            new QueryOptions(StudyConfigurationManager.READ_ONLY, true));
                     cohort = studyCohort[1];
                 } else if (studyCohort.length == 1) {
                     studyConfiguration = defaultStudyConfiguration;
@@ -995,7 +1027,8 @@ public class VariantSqlQueryParser {
             if (split.length == 2) {
                 String study = split[0];
                 cohort = split[1];
-                sc = studyConfigurationManager.getStudyConfiguration(study, defaultStudyConfiguration, null);
+                sc = studyConfigurationManager.getStudyConfiguration(study, defaultStudyConfiguration,
+                        new QueryOptions(StudyConfigurationManager.READ_ONLY, true));
             } else {
                 cohort = key;
                 sc = defaultStudyConfiguration;
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.opencb.biodata.models.core.Region;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Row keys and values of the sample genotype index table.
+ *
+ * Each row contains, for one sample and one chunk of a chromosome, a column per genotype and file with a bitmap of the
+ * start positions of the variants where the sample has that genotype. The bitmaps of all the columns of a genotype
+ * have to be merged when reading, as a sample may be split in multiple files.
+ *
+ * RowKey: {STUDY_ID}{SAMPLE_ID}{CHROMOSOME}0x00{CHUNK}
+ * Column: {GENOTYPE}_{FILE_ID}[_{PART}]
+ *
+ * Created on 17/10/26.
+ */
+public final class SampleIndexConverter {
+
+    public static final int CHUNK_SIZE = 1_000_000;
+    private static final byte SEPARATOR = 0;
+    private static final char COLUMN_SEPARATOR = '_';
+
+    private SampleIndexConverter() {
+    }
+
+    public static byte[] toRowKey(int studyId, int sampleId) {
+        return Bytes.add(Bytes.toBytes(studyId), Bytes.toBytes(sampleId));
+    }
+
+    public static byte[] toRowKey(int studyId, int sampleId, String chromosome, int chunk) {
+        return Bytes.add(toRowKey(studyId, sampleId), Bytes.toBytes(Region.normalizeChromosome(chromosome)),
+                Bytes.add(new byte[]{SEPARATOR}, Bytes.toBytes(chunk)));
+    }
+
+    public static String getChromosome(byte[] rowKey) {
+        int offset = Bytes.SIZEOF_INT * 2;
+        return Bytes.toString(rowKey, offset, rowKey.length - offset - 1 - Bytes.SIZEOF_INT);
+    }
+
+    public static int getChunk(int position) {
+        return position / CHUNK_SIZE;
+    }
+
+    /**
+     * Column of a genotype from one file. The same chunk may be written more than once while loading a file
+     * if the input is not sorted. Each write goes to a different part, so previous bitmaps are not replaced.
+     *
+     * @param genotype Genotype
+     * @param fileId   File
+     * @param part     Number of previous writes of the same chunk from this file
+     * @return column qualifier
+     */
+    public static byte[] toGenotypeColumn(String genotype, int fileId, int part) {
+        String column = getGenotypeColumnPrefix(genotype) + fileId;
+        return Bytes.toBytes(part == 0 ? column : column + COLUMN_SEPARATOR + part);
+    }
+
+    public static String getGenotypeColumnPrefix(String genotype) {
+        return genotype + COLUMN_SEPARATOR;
+    }
+
+    public static int getFileId(byte[] column, int offset, int length) {
+        String qualifier = Bytes.toString(column, offset, length);
+        int start = qualifier.indexOf(COLUMN_SEPARATOR) + 1;
+        int end = qualifier.indexOf(COLUMN_SEPARATOR, start);
+        return Integer.parseInt(end < 0 ? qualifier.substring(start) : qualifier.substring(start, end));
+    }
+
+    /**
+     * Only genotypes with at least one alternate allele are indexed.
+     * Negated, missing and reference genotypes are not indexed.
+     *
+     * @param gt Genotype
+     * @return if the genotype is indexed
+     */
+    public static boolean isIndexedGenotype(String gt) {
+        if (gt == null || gt.isEmpty() || gt.charAt(0) == '!') {
+            return false;
+        }
+        boolean alternate = false;
+        for (int i = 0; i < gt.length(); i++) {
+            char c = gt.charAt(i);
+            if (c >= '1' && c <= '9') {
+                alternate = true;
+            } else if (c != '0' && c != '/' && c != '|' && c != '.') {
+                return false;
+            }
+        }
+        return alternate;
+    }
+
+    public static byte[] serialize(RoaringBitmap bitmap) {
+        bitmap.runOptimize();
+        ByteArrayOutputStream os = new ByteArrayOutputStream(bitmap.serializedSizeInBytes());
+        try (DataOutputStream out = new DataOutputStream(os)) {
+            bitmap.serialize(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return os.toByteArray();
+    }
+
+    public static RoaringBitmap deserialize(byte[] bytes, int offset, int length) {
+        RoaringBitmap bitmap = new RoaringBitmap();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            bitmap.deserialize(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter;
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter.RowRange;
+import org.apache.hadoop.hbase.filter.MultipleColumnPrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
+import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixKeyFactory;
+import org.roaringbitmap.IntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.util.*;
+
+import static org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine.SAMPLE_INDEX_FILES;
+
+/**
+ * Reads the sample genotype index, and uses it to restrict the scans over the variants table to the rows of the
+ * variants matching the genotype filter.
+ *
+ * The index only narrows the candidates. The genotype filters over the variants table are still required.
+ *
+ * Created on 17/10/26.
+ */
+public class SampleIndexDBAdaptor {
+
+    /**
+     * Max number of row ranges to add to a single scan. Above this, scanning the whole region is usually faster.
+     */
+    public static final int MAX_RANGES = 50000;
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final HBaseManager hBaseManager;
+    private final String tableName;
+    private final byte[] family;
+
+    public SampleIndexDBAdaptor(HBaseManager hBaseManager, String tableName, byte[] family) {
+        this.hBaseManager = hBaseManager;
+        this.tableName = tableName;
+        this.family = family;
+    }
+
+    /**
+     * A sample is indexed if all its files were loaded with the sample index.
+     *
+     * @param sc       StudyConfiguration
+     * @param sampleId Sample
+     * @return if the sample is indexed
+     */
+    public static boolean isIndexed(StudyConfiguration sc, int sampleId) {
+        List<Integer> indexedFiles = getIndexedFiles(sc);
+        if (indexedFiles.isEmpty()) {
+            return false;
+        }
+        boolean found = false;
+        for (Map.Entry<Integer, LinkedHashSet<Integer>> entry : sc.getSamplesInFiles().entrySet()) {
+            if (entry.getValue().contains(sampleId)) {
+                if (!indexedFiles.contains(entry.getKey())) {
+                    return false;
+                }
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    public static void addIndexedFiles(StudyConfiguration sc, Collection<Integer> fileIds) {
+        Set<Integer> indexedFiles = new LinkedHashSet<>(sc.getAttributes().getAsIntegerList(SAMPLE_INDEX_FILES));
+        indexedFiles.addAll(fileIds);
+        sc.getAttributes().put(SAMPLE_INDEX_FILES, new ArrayList<>(indexedFiles));
+    }
+
+    public static void removeIndexedFiles(StudyConfiguration sc, Collection<Integer> fileIds) {
+        List<Integer> indexedFiles = new ArrayList<>(sc.getAttributes().getAsIntegerList(SAMPLE_INDEX_FILES));
+        indexedFiles.removeAll(fileIds);
+        sc.getAttributes().put(SAMPLE_INDEX_FILES, indexedFiles);
+    }
+
+    public static List<Integer> getIndexedFiles(StudyConfiguration sc) {
+        return sc.getAttributes().getAsIntegerList(SAMPLE_INDEX_FILES);
+    }
+
+    /**
+     * Get the positions of the variants where the sample has any of the given genotypes.
+     * The bitmaps from all the indexed files of the sample are merged. Columns from other files are ignored.
+     *
+     * @param studyId      Study
+     * @param sampleId     Sample
+     * @param genotypes    Genotypes. Must be indexed genotypes
+     * @param regions      Regions to read. Read all the index if empty
+     * @param indexedFiles Files included in the index
+     * @return Positions by chromosome. May contain positions outside the regions
+     * @throws IOException on error reading from HBase
+     */
+    public Map<String, RoaringBitmap> get(int studyId, int sampleId, List<String> genotypes, List<Region> regions,
+                                          Collection<Integer> indexedFiles)
+            throws IOException {
+        List<Scan> scans = new ArrayList<>();
+        if (regions == null || regions.isEmpty()) {
+            Scan scan = new Scan();
+            scan.setRowPrefixFilter(SampleIndexConverter.toRowKey(studyId, sampleId));
+            scans.add(scan);
+        } else {
+            for (Region region : regions) {
+                Scan scan = new Scan();
+                scan.setStartRow(SampleIndexConverter.toRowKey(studyId, sampleId, region.getChromosome(),
+                        SampleIndexConverter.getChunk(region.getStart())));
+                scan.setStopRow(SampleIndexConverter.toRowKey(studyId, sampleId, region.getChromosome(),
+                        SampleIndexConverter.getChunk(region.getEnd()) + 1));
+                scans.add(scan);
+            }
+        }
+
+        byte[][] prefixes = new byte[genotypes.size()][];
+        for (int i = 0; i < genotypes.size(); i++) {
+            prefixes[i] = Bytes.toBytes(SampleIndexConverter.getGenotypeColumnPrefix(genotypes.get(i)));
+        }
+        Set<Integer> files = new HashSet<>(indexedFiles);
+
+        Map<String, RoaringBitmap> positions = new HashMap<>();
+        try (Table table = hBaseManager.getConnection().getTable(TableName.valueOf(tableName))) {
+            for (Scan scan : scans) {
+                scan.addFamily(family);
+                scan.setFilter(new MultipleColumnPrefixFilter(prefixes));
+                try (ResultScanner scanner = table.getScanner(scan)) {
+                    for (Result result : scanner) {
+                        RoaringBitmap bitmap = positions.computeIfAbsent(SampleIndexConverter.getChromosome(result.getRow()),
+                                k -> new RoaringBitmap());
+                        for (Cell cell : result.rawCells()) {
+                            int fileId = SampleIndexConverter.getFileId(cell.getQualifierArray(), cell.getQualifierOffset(),
+                                    cell.getQualifierLength());
+                            if (!files.contains(fileId)) {
+                                // Removed file, or file not indexed anymore
+                                continue;
+                            }
+                            bitmap.or(SampleIndexConverter.deserialize(cell.getValueArray(), cell.getValueOffset(),
+                                    cell.getValueLength()));
+                        }
+                    }
+                }
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Delete the columns of the given files from the index of their samples.
+     * Columns from other files of the same samples are not modified.
+     *
+     * @param studyId        Study
+     * @param samplesInFiles Samples of each file to delete
+     * @throws IOException on error deleting from HBase
+     */
+    public void deleteFiles(int studyId, Map<Integer, ? extends Collection<Integer>> samplesInFiles) throws IOException {
+        if (!hBaseManager.tableExists(tableName)) {
+            return;
+        }
+        Map<Integer, Set<Integer>> filesInSamples = new TreeMap<>();
+        for (Map.Entry<Integer, ? extends Collection<Integer>> entry : samplesInFiles.entrySet()) {
+            for (Integer sampleId : entry.getValue()) {
+                filesInSamples.computeIfAbsent(sampleId, k -> new HashSet<>()).add(entry.getKey());
+            }
+        }
+        try (Table table = hBaseManager.getConnection().getTable(TableName.valueOf(tableName))) {
+            for (Map.Entry<Integer, Set<Integer>> entry : filesInSamples.entrySet()) {
+                Set<Integer> files = entry.getValue();
+                Scan scan = new Scan();
+                scan.setRowPrefixFilter(SampleIndexConverter.toRowKey(studyId, entry.getKey()));
+                scan.addFamily(family);
+                scan.setFilter(new KeyOnlyFilter());
+                List<Delete> deletes = new ArrayList<>();
+                try (ResultScanner scanner = table.getScanner(scan)) {
+                    for (Result result : scanner) {
+                        Delete delete = new Delete(result.getRow());
+                        for (Cell cell : result.rawCells()) {
+                            int fileId = SampleIndexConverter.getFileId(cell.getQualifierArray(), cell.getQualifierOffset(),
+                                    cell.getQualifierLength());
+                            if (files.contains(fileId)) {
+                                delete.addColumns(family, CellUtil.cloneQualifier(cell));
+                            }
+                        }
+                        if (!delete.isEmpty()) {
+                            deletes.add(delete);
+                        }
+                        if (deletes.size() >= DELETE_BATCH_SIZE) {
+                            table.delete(deletes);
+                            deletes = new ArrayList<>();
+                        }
+                    }
+                }
+                if (!deletes.isEmpty()) {
+                    table.delete(deletes);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the positions from two samples.
+     *
+     * @param positions      Positions to update
+     * @param otherPositions Positions from other sample
+     * @param and            Intersect if true, union otherwise
+     * @return Merged positions
+     */
+    public static Map<String, RoaringBitmap> merge(Map<String, RoaringBitmap> positions, Map<String, RoaringBitmap> otherPositions,
+                                                   boolean and) {
+        Map<String, RoaringBitmap> merged = new HashMap<>();
+        for (Map.Entry<String, RoaringBitmap> entry : positions.entrySet()) {
+            RoaringBitmap other = otherPositions.get(entry.getKey());
+            if (other != null) {
+                merged.put(entry.getKey(), and ? RoaringBitmap.and(entry.getValue(), other) : RoaringBitmap.or(entry.getValue(), other));
+            } else if (!and) {
+                merged.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (!and) {
+            for (Map.Entry<String, RoaringBitmap> entry : otherPositions.entrySet()) {
+                merged.putIfAbsent(entry.getKey(), entry.getValue());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Build the row ranges of the variants table with the given positions. Consecutive positions are merged.
+     *
+     * @param positions Positions by chromosome
+     * @return Sorted list of row ranges
+     */
+    public static List<RowRange> toRowRanges(Map<String, RoaringBitmap> positions) {
+        List<RowRange> ranges = new ArrayList<>();
+        for (Map.Entry<String, RoaringBitmap> entry : positions.entrySet()) {
+            String chromosome = entry.getKey();
+            IntIterator iterator = entry.getValue().getIntIterator();
+            boolean open = false;
+            int start = 0;
+            int end = 0;
+            while (iterator.hasNext()) {
+                int position = iterator.next();
+                if (open && position == end + 1) {
+                    end = position;
+                } else {
+                    if (open) {
+                        ranges.add(toRowRange(chromosome, start, end));
+                    }
+                    open = true;
+                    start = position;
+                    end = position;
+                }
+            }
+            if (open) {
+                ranges.add(toRowRange(chromosome, start, end));
+            }
+        }
+        ranges.sort((r1, r2) -> Bytes.compareTo(r1.getStartRow(), r2.getStartRow()));
+        return ranges;
+    }
+
+    private static RowRange toRowRange(String chromosome, int start, int end) {
+        return new RowRange(VariantPhoenixKeyFactory.generateVariantRowKey(chromosome, start), true,
+                VariantPhoenixKeyFactory.generateVariantRowKey(chromosome, end + 1), false);
+    }
+
+    /**
+     * Restrict the scans to the rows of the variants at the given positions, with a {@link MultiRowRangeFilter}.
+     * Scans without any matching position are discarded. Scans over a single variant are not modified.
+     *
+     * @param scans     Scans over the variants table
+     * @param positions Positions by chromosome
+     * @return Filtered scans
+     * @throws IOException if the filter can not be created
+     */
+    public static List<Scan> filterScans(List<Scan> scans, Map<String, RoaringBitmap> positions) throws IOException {
+        List<RowRange> ranges = toRowRanges(positions);
+        List<Scan> filteredScans = new ArrayList<>(scans.size());
+        for (Scan scan : scans) {
+            byte[] start = scan.getStartRow();
+            byte[] stop = scan.getStopRow();
+            if (start.length > 0 && Bytes.equals(start, stop)) {
+                filteredScans.add(scan);
+                continue;
+            }
+            List<RowRange> scanRanges = new ArrayList<>();
+            for (RowRange range : ranges) {
+                if (stop.length > 0 && Bytes.compareTo(range.getStartRow(), stop) >= 0) {
+                    break;
+                }
+                if (Bytes.compareTo(range.getStopRow(), start) <= 0) {
+                    continue;
+                }
+                byte[] rangeStart = Bytes.compareTo(range.getStartRow(), start) < 0 ? start : range.getStartRow();
+                byte[] rangeStop = stop.length > 0 && Bytes.compareTo(range.getStopRow(), stop) > 0 ? stop : range.getStopRow();
+                scanRanges.add(new RowRange(rangeStart, true, rangeStop, false));
+            }
+            if (scanRanges.isEmpty()) {
+                continue;
+            }
+            if (scanRanges.size() > MAX_RANGES) {
+                filteredScans.add(scan);
+                continue;
+            }
+            scan.setStartRow(scanRanges.get(0).getStartRow());
+            scan.setStopRow(scanRanges.get(scanRanges.size() - 1).getStopRow());
+            Filter filter = new MultiRowRangeFilter(scanRanges);
+            if (scan.getFilter() != null) {
+                filter = new FilterList(FilterList.Operator.MUST_PASS_ALL, filter, scan.getFilter());
+            }
+            scan.setFilter(filter);
+            filteredScans.add(scan);
+        }
+        return filteredScans;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.opencb.biodata.models.variant.StudyEntry;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.biodata.tools.variant.merge.VariantMerger;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.hadoop.utils.AbstractHBaseDataWriter;
+import org.opencb.opencga.storage.hadoop.utils.HBaseManager;
+import org.opencb.opencga.storage.hadoop.variant.GenomeHelper;
+import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Builds the sample genotype index while loading a file.
+ *
+ * Variants are expected to be sorted by chromosome and position. The bitmaps of each chunk are written when the
+ * first variant of the next chunk arrives, in columns of this file. Other files from the same samples are never
+ * replaced. If a chunk is written again, it goes to a new set of columns.
+ *
+ * Created on 17/10/26.
+ */
+public class SampleIndexDBLoader extends AbstractHBaseDataWriter<Variant, Put> {
+
+    private final HBaseManager hBaseManager;
+    private final String tableName;
+    private final byte[] family;
+    private final StudyConfiguration studyConfiguration;
+    private final Compression.Algorithm compression;
+    private final int fileId;
+    private final Map<String, Integer> writtenChunks = new HashMap<>();
+    private List<Integer> sampleIds;
+    private List<Map<String, RoaringBitmap>> genotypes;
+    private String chromosome;
+    private int chunk;
+
+    public SampleIndexDBLoader(GenomeHelper helper, HBaseManager hBaseManager, String tableName, StudyConfiguration sc,
+                               int fileId) {
+        super(hBaseManager, tableName);
+        this.hBaseManager = hBaseManager;
+        this.tableName = tableName;
+        this.family = helper.getColumnFamily();
+        this.studyConfiguration = sc;
+        this.fileId = fileId;
+        this.compression = Compression.getCompressionAlgorithmByName(helper.getConf().get(
+                HadoopVariantStorageEngine.VARIANT_TABLE_COMPRESSION, Compression.Algorithm.SNAPPY.getName()));
+    }
+
+    @Override
+    public boolean open() {
+        try {
+            hBaseManager.createTableIfNeeded(tableName, family, compression);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error creating table " + tableName, e);
+        }
+        return super.open();
+    }
+
+    @Override
+    protected List<Put> convert(List<Variant> list) {
+        List<Put> puts = new ArrayList<>();
+        for (Variant variant : list) {
+            if (!HadoopVariantStorageEngine.TARGET_VARIANT_TYPE_SET.contains(variant.getType())) {
+                continue;
+            }
+            StudyEntry study = variant.getStudies().get(0);
+            Integer gtIdx = study.getFormatPositions().get(VariantMerger.GT_KEY);
+            if (gtIdx == null) {
+                continue;
+            }
+            if (sampleIds == null) {
+                init(study);
+            }
+            int variantChunk = SampleIndexConverter.getChunk(variant.getStart());
+            if (!variant.getChromosome().equals(chromosome) || variantChunk != chunk) {
+                puts.addAll(flush());
+                chromosome = variant.getChromosome();
+                chunk = variantChunk;
+            }
+            List<List<String>> samplesData = study.getSamplesData();
+            for (int i = 0; i < samplesData.size(); i++) {
+                String gt = samplesData.get(i).get(gtIdx);
+                if (SampleIndexConverter.isIndexedGenotype(gt)) {
+                    genotypes.get(i).computeIfAbsent(gt, k -> new RoaringBitmap()).add(variant.getStart());
+                }
+            }
+        }
+        return puts;
+    }
+
+    private void init(StudyEntry study) {
+        sampleIds = new ArrayList<>();
+        genotypes = new ArrayList<>();
+        for (String sampleName : study.getOrderedSamplesName()) {
+            sampleIds.add(studyConfiguration.getSampleIds().get(sampleName));
+            genotypes.add(new HashMap<>());
+        }
+    }
+
+    @Override
+    protected List<Put> flush() {
+        List<Put> puts = new ArrayList<>();
+        if (chromosome == null) {
+            return puts;
+        }
+        int part = writtenChunks.merge(chromosome + ':' + chunk, 1, Integer::sum) - 1;
+        for (int i = 0; i < sampleIds.size(); i++) {
+            Map<String, RoaringBitmap> sampleGenotypes = genotypes.get(i);
+            if (sampleGenotypes.isEmpty()) {
+                continue;
+            }
+            Put put = new Put(SampleIndexConverter.toRowKey(studyConfiguration.getStudyId(), sampleIds.get(i), chromosome, chunk));
+            for (Map.Entry<String, RoaringBitmap> entry : sampleGenotypes.entrySet()) {
+                put.addColumn(family, SampleIndexConverter.toGenotypeColumn(entry.getKey(), fileId, part),
+                        SampleIndexConverter.serialize(entry.getValue()));
+            }
+            puts.add(put);
+            sampleGenotypes.clear();
+        }
+        chromosome = null;
+        return puts;
+    }
+}
@@ -15,6 +15,7 @@ public class HBaseVariantTableNameGenerator {
 
     private static final String VARIANTS_SUFIX = "_variants";
     private static final String META_SUFIX = "_meta";
+    private static final String SAMPLE_INDEX_SUFIX = "_sample_index";
     private static final String ARCHIVE_SUFIX = "_archive_";
     private static final int MINIMUM_DB_NAME_SIZE = 1;
 
@@ -22,6 +23,7 @@ public class HBaseVariantTableNameGenerator {
     private final String dbName;
     private final String variantTableName;
     private final String metaTableName;
+    private final String sampleIndexTableName;
 
 
     public HBaseVariantTableNameGenerator(String dbName, ObjectMap options) {
@@ -32,6 +34,7 @@ public class HBaseVariantTableNameGenerator {
         namespace = options.getString(HadoopVariantStorageEngine.HBASE_NAMESPACE, "");
         variantTableName = getVariantTableName(this.dbName, options);
         metaTableName = getMetaTableName(this.dbName, options);
+        sampleIndexTableName = buildTableName(namespace, "", this.dbName + SAMPLE_INDEX_SUFIX);
     }
 
     public HBaseVariantTableNameGenerator(String dbName, Configuration conf) {
@@ -42,6 +45,7 @@ public class HBaseVariantTableNameGenerator {
         namespace = conf.get(HadoopVariantStorageEngine.HBASE_NAMESPACE, "");
         variantTableName = getVariantTableName(this.dbName, conf);
         metaTableName = getMetaTableName(this.dbName, conf);
+        sampleIndexTableName = buildTableName(namespace, "", this.dbName + SAMPLE_INDEX_SUFIX);
     }
 
     public String getVariantTableName() {
@@ -56,6 +60,10 @@ public class HBaseVariantTableNameGenerator {
         return metaTableName;
     }
 
+    public String getSampleIndexTableName() {
+        return sampleIndexTableName;
+    }
+
     public static String getDBNameFromArchiveTableName(String archiveTableName) {
         int endIndex = checkValidArchiveTableNameGetEndIndex(archiveTableName);
         return archiveTableName.substring(0, endIndex);
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.opencb.opencga.storage.hadoop.utils;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
+import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageTest;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Created on 17/10/26.
+ */
+public class HBaseParallelScannerTest extends VariantStorageBaseTest implements HadoopVariantStorageTest {
+
+    @ClassRule
+    public static ExternalResource externalResource = new HadoopExternalResource();
+
+    private static final byte[] FAMILY = Bytes.toBytes("0");
+    private HBaseManager hbaseManager;
+    private List<Scan> scans;
+    private List<String> expected;
+
+    @Before
+    public void setUp() throws Exception {
+        clearDB(DB_NAME);
+        hbaseManager = new HBaseManager(configuration.get());
+        hbaseManager.createTableIfNeeded(DB_NAME, FAMILY, Compression.Algorithm.NONE);
+        hbaseManager.act(DB_NAME, table -> {
+            List<Put> puts = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                puts.add(new Put(Bytes.toBytes(getRow(i))).addColumn(FAMILY, Bytes.toBytes("c"), Bytes.toBytes(i)));
+            }
+            table.put(puts);
+        });
+
+        // Scans not in order
+        scans = new ArrayList<>();
+        expected = new ArrayList<>();
+        for (int start : Arrays.asList(500, 0, 900, 100, 300, 200, 800, 400, 700, 600)) {
+            scans.add(new Scan(Bytes.toBytes(getRow(start)), Bytes.toBytes(getRow(start + 100))));
+            for (int i = start; i < start + 100; i++) {
+                expected.add(getRow(i));
+            }
+        }
+    }
+
+    private static String getRow(int i) {
+        return String.format("r%04d", i);
+    }
+
+    @Test
+    public void testSorted() throws Exception {
+        try (HBaseParallelScanner scanner = newScanner(true)) {
+            assertEquals(expected, readRows(scanner));
+            assertNull(scanner.next());
+        }
+    }
+
+    @Test
+    public void testUnsorted() throws Exception {
+        try (HBaseParallelScanner scanner = newScanner(false)) {
+            List<String> rows = readRows(scanner);
+            assertEquals(expected.size(), rows.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(rows));
+        }
+    }
+
+    @Test
+    public void testCloseBeforeEnd() throws Exception {
+        HBaseParallelScanner scanner = newScanner(true);
+        Result[] results = scanner.next(10);
+        assertEquals(10, results.length);
+        for (int i = 0; i < results.length; i++) {
+            assertEquals(expected.get(i), Bytes.toString(results[i].getRow()));
+        }
+        scanner.close();
+        assertNull(scanner.next());
+    }
+
+    @Test
+    public void testSlowConsumer() throws Exception {
+        // Background scans are paused after 50ms without space in their queues, and resumed once the consumer reads them
+        try (HBaseParallelScanner scanner = new HBaseParallelScanner(hbaseManager.getConnection(), TableName.valueOf(DB_NAME),
+                scans, 3, 5, true, 50)) {
+            List<String> rows = new ArrayList<>();
+            for (Result result : scanner) {
+                rows.add(Bytes.toString(result.getRow()));
+                if (rows.size() % 100 == 1) {
+                    Thread.sleep(200);
+                }
+            }
+            assertEquals(expected, rows);
+        }
+    }
+
+    private HBaseParallelScanner newScanner(boolean sorted) {
+        // Small queues, to block the background scans
+        return new HBaseParallelScanner(hbaseManager.getConnection(), TableName.valueOf(DB_NAME), scans, 3, 5, sorted);
+    }
+
+    private static List<String> readRows(HBaseParallelScanner scanner) {
+        List<String> rows = new ArrayList<>();
+        for (Result result : scanner) {
+            rows.add(Bytes.toString(result.getRow()));
+        }
+        return rows;
+    }
+}
@@ -17,6 +17,7 @@
 package org.opencb.opencga.storage.hadoop.variant;
 
 import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
@@ -124,6 +125,15 @@ public class VariantHadoopDBWriterTest extends VariantStorageBaseTest implements
 
     @Test
     public void testBasicMerge() throws Exception {
+        testBasicMerge(false);
+    }
+
+    @Test
+    public void testBasicMergeBulkLoad() throws Exception {
+        testBasicMerge(true);
+    }
+
+    private void testBasicMerge(boolean bulkLoad) throws Exception {
 
         sc1.getAttributes()
                 .append(VariantStorageEngine.Options.EXTRA_GENOTYPE_FIELDS.key(), VariantMerger.GENOTYPE_FILTER_KEY + ",DP,GQX,AD")
@@ -134,13 +144,13 @@ public class VariantHadoopDBWriterTest extends VariantStorageBaseTest implements
         variants1.addAll(newVariants("1", 1000, 1000, "A", asList("C", "T"), fileId1, studyId));
         variants1.addAll(newVariants("1", 1002, 1002, "A", asList("C", "G"), fileId1, studyId));
 
-        loadVariantsBasic(sc1, fileId1, variants1);
+        loadVariantsBasic(sc1, fileId1, variants1, bulkLoad);
 
         List<Variant> variants2 = new LinkedList<>();
         variants2.addAll(newVariants("1", 1000, 1000, "A", asList("C", "G"), fileId2, studyId));
         variants2.addAll(newVariants("1", 1002, 1002, "A", asList("C", "G", "T"), fileId2, studyId));
 
-        loadVariantsBasic(sc1, fileId2, variants2);
+        loadVariantsBasic(sc1, fileId2, variants2, bulkLoad);
         VariantHbaseTestUtils.printVariants(sc1, getVariantStorageEngine().getDBAdaptor(), newOutputUri());
 
         VariantMerger merger = new VariantMerger(false);
@@ -202,7 +212,7 @@ public class VariantHadoopDBWriterTest extends VariantStorageBaseTest implements
 
     }
 
-    private void loadVariantsBasic(StudyConfiguration sc, int fileId, List<Variant> variants) throws Exception {
+    private void loadVariantsBasic(StudyConfiguration sc, int fileId, List<Variant> variants, boolean bulkLoad) throws Exception {
         String archiveTableName = engine.getArchiveTableName(sc.getStudyId());
         sc.getAttributes().append(VariantStorageEngine.Options.MERGE_MODE.key(), VariantStorageEngine.MergeMode.BASIC);
         dbAdaptor.getStudyConfigurationManager().updateStudyConfiguration(sc, new QueryOptions());
@@ -223,6 +233,11 @@ public class VariantHadoopDBWriterTest extends VariantStorageBaseTest implements
         // Writers
         VariantHBaseArchiveDataWriter archiveWriter = new VariantHBaseArchiveDataWriter(helper, archiveTableName, dbAdaptor.getHBaseManager());
         VariantHadoopDBWriter hadoopDBWriter = new VariantHadoopDBWriter(helper, dbAdaptor.getVariantTable(), dbAdaptor.getStudyConfigurationManager().getProjectMetadata().first(), sc, dbAdaptor.getHBaseManager());
+        if (bulkLoad) {
+            // Small buffer to write multiple sets of HFiles
+            archiveWriter.setBulkLoad(new Path("/tmp/bulkload/archive_" + fileId + "_" + System.nanoTime()), 1024);
+            hadoopDBWriter.setBulkLoad(new Path("/tmp/bulkload/variants_" + fileId + "_" + System.nanoTime()), 1024);
+        }
 
         // Task
         HadoopLocalLoadVariantStoragePipeline.GroupedVariantsTask task = new HadoopLocalLoadVariantStoragePipeline.GroupedVariantsTask(archiveWriter, hadoopDBWriter, null);
@@ -56,13 +56,17 @@ public class FillGapsTaskTest extends VariantStorageBaseTest implements HadoopVa
 
     public static void fillGaps(HadoopVariantStorageEngine variantStorageEngine, StudyConfiguration studyConfiguration,
                                 Collection<Integer> sampleIds) throws Exception {
+        fillGaps(variantStorageEngine, studyConfiguration, sampleIds, false);
+    }
+
+    public static void fillGaps(HadoopVariantStorageEngine variantStorageEngine, StudyConfiguration studyConfiguration,
+                                Collection<Integer> sampleIds, boolean local) throws Exception {
 //        fillGapsMR(variantStorageEngine, studyConfiguration, sampleIds, true);
 //        fillGapsMR(variantStorageEngine, studyConfiguration, sampleIds, false);
 //        fillGapsLocal(variantStorageEngine, studyConfiguration, sampleIds);
 //        fillLocalMRDriver(variantStorageEngine, studyConfiguration, sampleIds);
 //        fillGapsLocalFromArchive(variantStorageEngine, studyConfiguration, sampleIds, false);
-        variantStorageEngine.fillGaps(studyConfiguration.getStudyName(), sampleIds.stream().map(Object::toString).collect(Collectors.toList()), new ObjectMap("local", false));
-//        variantStorageEngine.fillGaps(studyConfiguration.getStudyName(), sampleIds.stream().map(Object::toString).collect(Collectors.toList()), new ObjectMap("local", true));
+        variantStorageEngine.fillGaps(studyConfiguration.getStudyName(), sampleIds.stream().map(Object::toString).collect(Collectors.toList()), new ObjectMap(HadoopVariantStorageEngine.FILL_GAPS_LOCAL, local));
     }
 
     protected static void fillLocalMRDriver(HadoopVariantStorageEngine variantStorageEngine, StudyConfiguration studyConfiguration, Collection<Integer> sampleIds) throws Exception {
@@ -111,7 +115,16 @@ public class FillGapsTaskTest extends VariantStorageBaseTest implements HadoopVa
         testFillGapsPlatinumFiles(new ObjectMap(HadoopVariantStorageEngine.ARCHIVE_FILE_BATCH_SIZE, 2));
     }
 
+    @Test
+    public void testFillGapsPlatinumFilesLocal() throws Exception {
+        testFillGapsPlatinumFiles(new ObjectMap(HadoopVariantStorageEngine.ARCHIVE_FILE_BATCH_SIZE, 2), true);
+    }
+
     public void testFillGapsPlatinumFiles(ObjectMap options) throws Exception {
+        testFillGapsPlatinumFiles(options, false);
+    }
+
+    public void testFillGapsPlatinumFiles(ObjectMap options, boolean local) throws Exception {
         StudyConfiguration studyConfiguration = loadPlatinum(options
                         .append(VariantStorageEngine.Options.MERGE_MODE.key(), VariantStorageEngine.MergeMode.BASIC), 4);
 
@@ -123,19 +136,19 @@ public class FillGapsTaskTest extends VariantStorageBaseTest implements HadoopVa
 
         List<Integer> subSamples = sampleIds.subList(0, sampleIds.size() / 2);
         System.out.println("subSamples = " + subSamples);
-        fillGaps(variantStorageEngine, studyConfiguration, subSamples);
+        fillGaps(variantStorageEngine, studyConfiguration, subSamples, local);
         printVariants(dbAdaptor.getStudyConfigurationManager().getStudyConfiguration(studyConfiguration.getStudyId(), null).first(), dbAdaptor, newOutputUri());
         checkFillGaps(studyConfiguration, dbAdaptor, subSamples);
 
         subSamples = sampleIds.subList(sampleIds.size() / 2, sampleIds.size());
         System.out.println("subSamples = " + subSamples);
-        fillGaps(variantStorageEngine, studyConfiguration, subSamples);
+        fillGaps(variantStorageEngine, studyConfiguration, subSamples, local);
         printVariants(dbAdaptor.getStudyConfigurationManager().getStudyConfiguration(studyConfiguration.getStudyId(), null).first(), dbAdaptor, newOutputUri());
         checkFillGaps(studyConfiguration, dbAdaptor, subSamples);
 
         subSamples = sampleIds;
         System.out.println("subSamples = " + subSamples);
-        fillGaps(variantStorageEngine, studyConfiguration, subSamples);
+        fillGaps(variantStorageEngine, studyConfiguration, subSamples, local);
         printVariants(dbAdaptor.getStudyConfigurationManager().getStudyConfiguration(studyConfiguration.getStudyId(), null).first(), dbAdaptor, newOutputUri());
         checkFillGaps(studyConfiguration, dbAdaptor, subSamples);
 
@@ -146,9 +159,19 @@ public class FillGapsTaskTest extends VariantStorageBaseTest implements HadoopVa
 
     @Test
     public void testFillMissingPlatinumFiles() throws Exception {
+        testFillMissingPlatinumFiles(false);
+    }
+
+    @Test
+    public void testFillMissingPlatinumFilesLocal() throws Exception {
+        testFillMissingPlatinumFiles(true);
+    }
+
+    public void testFillMissingPlatinumFiles(boolean local) throws Exception {
         ObjectMap options = new ObjectMap()
                 .append(VariantStorageEngine.Options.MERGE_MODE.key(), VariantStorageEngine.MergeMode.BASIC)
-                .append(HadoopVariantStorageEngine.ARCHIVE_FILE_BATCH_SIZE, 2);
+                .append(HadoopVariantStorageEngine.ARCHIVE_FILE_BATCH_SIZE, 2)
+                .append(HadoopVariantStorageEngine.FILL_GAPS_LOCAL, local);
 
         // Load files 1277 , 1278
         StudyConfiguration studyConfiguration = loadPlatinum(options, 12877, 12878);
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter;
+import org.apache.hadoop.hbase.filter.MultiRowRangeFilter.RowRange;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+import org.opencb.biodata.models.core.Region;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHBaseQueryParser;
+import org.opencb.opencga.storage.hadoop.variant.index.phoenix.VariantPhoenixKeyFactory;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class SampleIndexDBAdaptorTest {
+
+    @Test
+    public void testRowKey() {
+        byte[] rowKey = SampleIndexConverter.toRowKey(1, 20, "chr22", 16);
+        assertEquals("22", SampleIndexConverter.getChromosome(rowKey));
+        assertTrue(Bytes.startsWith(rowKey, SampleIndexConverter.toRowKey(1, 20)));
+        assertFalse(Bytes.startsWith(rowKey, SampleIndexConverter.toRowKey(1, 2)));
+        assertEquals(16, SampleIndexConverter.getChunk(16_123_456));
+    }
+
+    @Test
+    public void testGenotypeColumn() {
+        byte[] column = SampleIndexConverter.toGenotypeColumn("0/1", 12, 0);
+        assertEquals("0/1_12", Bytes.toString(column));
+        assertEquals(12, SampleIndexConverter.getFileId(column, 0, column.length));
+        assertTrue(Bytes.startsWith(column, Bytes.toBytes(SampleIndexConverter.getGenotypeColumnPrefix("0/1"))));
+        assertFalse(Bytes.startsWith(column, Bytes.toBytes(SampleIndexConverter.getGenotypeColumnPrefix("0/11"))));
+
+        column = SampleIndexConverter.toGenotypeColumn("1|1", 3, 2);
+        assertEquals("1|1_3_2", Bytes.toString(column));
+        assertEquals(3, SampleIndexConverter.getFileId(column, 0, column.length));
+    }
+
+    @Test
+    public void testIsIndexedGenotype() {
+        assertTrue(SampleIndexConverter.isIndexedGenotype("0/1"));
+        assertTrue(SampleIndexConverter.isIndexedGenotype("1|1"));
+        assertTrue(SampleIndexConverter.isIndexedGenotype("./2"));
+        assertFalse(SampleIndexConverter.isIndexedGenotype("0/0"));
+        assertFalse(SampleIndexConverter.isIndexedGenotype("./."));
+        assertFalse(SampleIndexConverter.isIndexedGenotype("!0/1"));
+        assertFalse(SampleIndexConverter.isIndexedGenotype("?"));
+    }
+
+    @Test
+    public void testSerialize() {
+        RoaringBitmap bitmap = RoaringBitmap.bitmapOf(10, 11, 12, 1000, 999_999);
+        byte[] bytes = SampleIndexConverter.serialize(bitmap);
+        assertEquals(bitmap, SampleIndexConverter.deserialize(bytes, 0, bytes.length));
+    }
+
+    @Test
+    public void testMerge() {
+        Map<String, RoaringBitmap> positions = new HashMap<>();
+        positions.put("1", RoaringBitmap.bitmapOf(1, 2, 3));
+        positions.put("2", RoaringBitmap.bitmapOf(5));
+        Map<String, RoaringBitmap> otherPositions = new HashMap<>();
+        otherPositions.put("1", RoaringBitmap.bitmapOf(2, 3, 4));
+        otherPositions.put("3", RoaringBitmap.bitmapOf(7));
+
+        Map<String, RoaringBitmap> and = SampleIndexDBAdaptor.merge(positions, otherPositions, true);
+        assertEquals(Collections.singleton("1"), and.keySet());
+        assertEquals(RoaringBitmap.bitmapOf(2, 3), and.get("1"));
+
+        Map<String, RoaringBitmap> or = SampleIndexDBAdaptor.merge(positions, otherPositions, false);
+        assertEquals(new HashSet<>(Arrays.asList("1", "2", "3")), or.keySet());
+        assertEquals(RoaringBitmap.bitmapOf(1, 2, 3, 4), or.get("1"));
+    }
+
+    @Test
+    public void testToRowRanges() {
+        List<RowRange> ranges = SampleIndexDBAdaptor.toRowRanges(Collections.singletonMap("1", RoaringBitmap.bitmapOf(10, 11, 12, 20)));
+        assertEquals(2, ranges.size());
+        checkRange(ranges.get(0), "1", 10, 13);
+        checkRange(ranges.get(1), "1", 20, 21);
+    }
+
+    @Test
+    public void testFilterScans() throws Exception {
+        Map<String, RoaringBitmap> positions = new HashMap<>();
+        positions.put("1", RoaringBitmap.bitmapOf(100, 101, 500));
+        positions.put("2", RoaringBitmap.bitmapOf(300));
+
+        Scan region1 = new Scan();
+        region1.setFilter(new PageFilter(10));
+        VariantHBaseQueryParser.addRegionFilter(region1, new Region("1", 101, 1000));
+        Scan region2 = new Scan();
+        VariantHBaseQueryParser.addRegionFilter(region2, new Region("2", 400, 1000));
+        Scan variant = new Scan();
+        VariantHBaseQueryParser.addVariantIdFilter(variant, new Variant("3:10:A:T"));
+
+        List<Scan> scans = SampleIndexDBAdaptor.filterScans(Arrays.asList(region1, region2, variant), positions);
+        assertEquals(2, scans.size());
+
+        // Region 1 clipped to the positions 101 and 500
+        Scan scan = scans.get(0);
+        assertArrayEquals(VariantPhoenixKeyFactory.generateVariantRowKey("1", 101), scan.getStartRow());
+        assertArrayEquals(VariantPhoenixKeyFactory.generateVariantRowKey("1", 501), scan.getStopRow());
+        assertTrue(scan.getFilter() instanceof FilterList);
+        List<RowRange> ranges = ((MultiRowRangeFilter) ((FilterList) scan.getFilter()).getFilters().get(0)).getRowRanges();
+        assertEquals(2, ranges.size());
+        checkRange(ranges.get(0), "1", 101, 102);
+        checkRange(ranges.get(1), "1", 500, 501);
+
+        // Region 2 discarded. Single variant scan not modified
+        assertSame(variant, scans.get(1));
+    }
+
+    private void checkRange(RowRange range, String chromosome, int start, int end) {
+        assertArrayEquals(VariantPhoenixKeyFactory.generateVariantRowKey(chromosome, start), range.getStartRow());
+        assertArrayEquals(VariantPhoenixKeyFactory.generateVariantRowKey(chromosome, end), range.getStopRow());
+    }
+}
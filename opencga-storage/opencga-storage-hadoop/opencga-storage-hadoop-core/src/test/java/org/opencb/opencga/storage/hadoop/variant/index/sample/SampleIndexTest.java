@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.hadoop.variant.index.sample;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.ExternalResource;
+import org.opencb.biodata.models.variant.Variant;
+import org.opencb.commons.datastore.core.ObjectMap;
+import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
+import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
+import org.opencb.opencga.storage.core.variant.VariantStorageBaseTest;
+import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantField;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageEngine;
+import org.opencb.opencga.storage.hadoop.variant.HadoopVariantStorageTest;
+import org.opencb.opencga.storage.hadoop.variant.VariantHbaseTestUtils;
+import org.opencb.opencga.storage.hadoop.variant.adaptors.VariantHadoopDBAdaptor;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the genotype queries resolved with the sample index against the Phoenix path.
+ *
+ * Created on 17/10/26.
+ */
+public class SampleIndexTest extends VariantStorageBaseTest implements HadoopVariantStorageTest {
+
+    @ClassRule
+    public static ExternalResource externalResource = new HadoopExternalResource();
+
+    private static final String PLATINUM = "platinum/1K.end.platinum-genomes-vcf-NA1287%d_S1.genome.vcf.gz";
+
+    private StudyConfiguration studyConfiguration;
+    private VariantHadoopDBAdaptor dbAdaptor;
+
+    @Override
+    public Map<String, ?> getOtherStorageConfigurationOptions() {
+        return new ObjectMap(HadoopVariantStorageEngine.VARIANT_TABLE_INDEXES_SKIP, true)
+                .append(VariantStorageEngine.Options.ANNOTATE.key(), false);
+    }
+
+    @Before
+    public void before() throws Exception {
+        HadoopVariantStorageEngine engine = getVariantStorageEngine();
+        clearDB(engine.getVariantTableName());
+        clearDB(engine.getArchiveTableName(STUDY_ID));
+        clearDB(engine.getDBAdaptor().getTableNameGenerator().getSampleIndexTableName());
+        studyConfiguration = new StudyConfiguration(STUDY_ID, STUDY_NAME);
+        dbAdaptor = engine.getDBAdaptor();
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        load(getResourceUri(String.format(PLATINUM, 7)), 1, false);
+        load(getResourceUri(String.format(PLATINUM, 8)), 2, false);
+
+        checkQueries();
+    }
+
+    @Test
+    public void testQuerySplitData() throws Exception {
+        // Interleave the variants of NA12877 in two files, so both files write the same chunks of the index
+        List<URI> parts = split(getResourceUri(String.format(PLATINUM, 7)), 2);
+        load(parts.get(0), 1, false);
+        load(parts.get(1), 3, true);
+        load(getResourceUri(String.format(PLATINUM, 8)), 2, false);
+
+        assertEquals(studyConfiguration.getSamplesInFiles().get(1), studyConfiguration.getSamplesInFiles().get(3));
+        checkQueries();
+    }
+
+    @Test
+    public void testRemoveFile() throws Exception {
+        load(getResourceUri(String.format(PLATINUM, 7)), 1, false);
+        load(getResourceUri(String.format(PLATINUM, 8)), 2, false);
+        assertEquals(Arrays.asList(1, 2), getFilesInIndex());
+
+        VariantHbaseTestUtils.removeFile(getVariantStorageEngine(), DB_NAME, 2, studyConfiguration, null);
+
+        assertEquals(Collections.singletonList(1), getFilesInIndex());
+        assertFalse(SampleIndexDBAdaptor.getIndexedFiles(studyConfiguration).contains(2));
+        checkQuery("NA12877:0/1", true);
+    }
+
+    /**
+     * Files with any column in the sample index table.
+     *
+     * @return Sorted list of files
+     * @throws IOException on error reading from HBase
+     */
+    private List<Integer> getFilesInIndex() throws IOException {
+        String tableName = dbAdaptor.getTableNameGenerator().getSampleIndexTableName();
+        Set<Integer> files = new TreeSet<>();
+        try (Table table = dbAdaptor.getHBaseManager().getConnection().getTable(TableName.valueOf(tableName));
+             ResultScanner scanner = table.getScanner(new Scan())) {
+            for (Result result : scanner) {
+                for (Cell cell : result.rawCells()) {
+                    files.add(SampleIndexConverter.getFileId(cell.getQualifierArray(), cell.getQualifierOffset(),
+                            cell.getQualifierLength()));
+                }
+            }
+        }
+        return new ArrayList<>(files);
+    }
+
+    private void checkQueries() {
+        int sampleId = studyConfiguration.getSampleIds().get("NA12877");
+        assertTrue(SampleIndexDBAdaptor.isIndexed(studyConfiguration, sampleId));
+
+        checkQuery("NA12877:0/1", true);
+        checkQuery("NA12877:1/1", true);
+        checkQuery("NA12877:0/1,1/1,1/2", true);
+        checkQuery("NA12878:0/1", true);
+        checkQuery("NA12877:0/1;NA12878:0/1", false);
+        checkQuery("NA12877:1/1;NA12878:0/1,1/1", false);
+    }
+
+    private void checkQuery(String genotype, boolean expectResults) {
+        Query query = new Query(VariantQueryParam.STUDY.key(), STUDY_NAME)
+                .append(VariantQueryParam.GENOTYPE.key(), genotype);
+        QueryOptions options = new QueryOptions(QueryOptions.EXCLUDE, VariantField.ANNOTATION)
+                .append(QueryOptions.SORT, true);
+
+        List<String> expected = getIds(query, new QueryOptions(options).append(VariantHadoopDBAdaptor.NATIVE, false));
+        List<String> actual = getIds(query, new QueryOptions(options).append(VariantHadoopDBAdaptor.NATIVE, true));
+
+        assertEquals(genotype, expected, actual);
+        if (expectResults) {
+            assertFalse(genotype, expected.isEmpty());
+        }
+    }
+
+    private List<String> getIds(Query query, QueryOptions options) {
+        return dbAdaptor.get(new Query(query), options).getResult().stream()
+                .map(Variant::toString)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    private void load(URI input, int fileId, boolean splitData) throws Exception {
+        ObjectMap params = new ObjectMap()
+                .append(VariantStorageEngine.Options.FILE_ID.key(), fileId)
+                .append(VariantStorageEngine.Options.ANNOTATE.key(), false)
+                .append(VariantStorageEngine.Options.CALCULATE_STATS.key(), false)
+                .append(VariantStorageEngine.Options.LOAD_SPLIT_DATA.key(), splitData)
+                .append(HadoopVariantStorageEngine.HADOOP_LOAD_SAMPLE_INDEX, true);
+        runDefaultETL(input, getVariantStorageEngine(), studyConfiguration, params);
+    }
+
+    /**
+     * Split the variants of a VCF file in multiple files, in round robin.
+     *
+     * @param input Input VCF file
+     * @param n     Number of files
+     * @return      Split files
+     * @throws IOException on error reading or writing the files
+     */
+    private static List<URI> split(URI input, int n) throws IOException {
+        Path dir = getTmpRootDir();
+        String fileName = new File(input.getPath()).getName().replace(".vcf.gz", "");
+        URI[] outputs = new URI[n];
+        PrintStream[] writers = new PrintStream[n];
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(input.getPath()))))) {
+            for (int i = 0; i < n; i++) {
+                Path output = dir.resolve(fileName + ".part" + (i + 1) + ".vcf.gz");
+                outputs[i] = output.toUri();
+                writers[i] = new PrintStream(new GZIPOutputStream(new FileOutputStream(output.toFile())));
+            }
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    for (PrintStream writer : writers) {
+                        writer.println(line);
+                    }
+                } else {
+                    writers[count++ % n].println(line);
+                }
+            }
+        } finally {
+            for (PrintStream writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+        return Arrays.asList(outputs);
+    }
+}
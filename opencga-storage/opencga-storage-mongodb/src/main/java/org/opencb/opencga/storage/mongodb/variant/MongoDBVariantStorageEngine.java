@@ -30,6 +30,7 @@ import org.opencb.opencga.core.auth.IllegalOpenCGACredentialsException;
 import org.opencb.opencga.core.common.MemoryUsageMonitor;
 import org.opencb.opencga.storage.core.StoragePipeline;
 import org.opencb.opencga.storage.core.StoragePipelineResult;
+import org.opencb.opencga.storage.core.TransformQueue;
 import org.opencb.opencga.storage.core.config.DatabaseCredentials;
 import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.exceptions.StoragePipelineException;
@@ -56,11 +57,13 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.opencb.opencga.storage.core.variant.VariantStorageEngine.Options.DB_NAME;
 import static org.opencb.opencga.storage.core.variant.VariantStorageEngine.Options.RESUME;
+import static org.opencb.opencga.storage.core.variant.VariantStorageEngine.Options.STUDY_CONFIGURATION_CACHE_CHECK_INTERVAL;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.*;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils.*;
 import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.*;
@@ -75,12 +78,49 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
      */
     public static final String STORAGE_ENGINE_ID = "mongodb";
 
+    private static final Set<VariantQueryParam> ENGINE_INDEXED_PARAMS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            // Variant indexes : _at.chunkIds, chr+start+end, ids
+            ID, REGION,
+            // Study indexes : studies.sid + studies.files.fid
+            STUDY, FILE,
+            // Stats indexes
+            STATS_MAF, STATS_MGF,
+            // XRefs. Genes, clinvar and cosmic are translated into xrefs
+            GENE, ANNOT_XREF, ANNOT_CLINVAR, ANNOT_COSMIC,
+            // ConsequenceType.so and _gn_so
+            ANNOT_CONSEQUENCE_TYPE,
+            // Population frequency : study + population + altFreq
+            ANNOT_POPULATION_ALTERNATE_FREQUENCY,
+            // Conservation, functional and protein substitution scores
+            ANNOT_CONSERVATION, ANNOT_FUNCTIONAL_SCORE, ANNOT_PROTEIN_SUBSTITUTION, ANNOT_POLYPHEN, ANNOT_SIFT,
+            // Drugs, protein keywords and transcript flags
+            ANNOT_DRUG, ANNOT_PROTEIN_KEYWORD, ANNOT_TRANSCRIPTION_FLAG)));
+
     // Connection to MongoDB.
     private MongoDataStoreManager mongoDataStoreManager = null;
     private final AtomicReference<VariantMongoDBAdaptor> dbAdaptor = new AtomicReference<>();
     private Logger logger = LoggerFactory.getLogger(MongoDBVariantStorageEngine.class);
     private StudyConfigurationManager studyConfigurationManager;
 
+    /**
+     * Format of the genotypes in the variants collection.
+     */
+    public enum GenotypesEncoding {
+        /** Arrays of sampleIds for each genotype. {"gt" : {"0/1" : [ 3, 5 ], "1/1" : [ 7 ] }}. */
+        ARRAY,
+        /**
+         * List of bitmaps for each genotype, indexed by sampleId. One new element for each merge.
+         * {"gtb" : [ {"0/1" : BinData(0, "KA=="), "1/1" : BinData(0, "gA==") } ]}
+         */
+        BITMAP;
+
+        public static GenotypesEncoding from(ObjectMap options) {
+            String encoding = options.getString(MongoDBVariantOptions.GENOTYPES_ENCODING.key(),
+                    MongoDBVariantOptions.GENOTYPES_ENCODING.defaultValue().toString());
+            return GenotypesEncoding.valueOf(encoding.toUpperCase());
+        }
+    }
+
     public enum MongoDBVariantOptions {
         COLLECTION_VARIANTS("collection.variants", "variants"),
         COLLECTION_FILES("collection.files", "files"),
@@ -92,6 +132,7 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
         DEFAULT_GENOTYPE("defaultGenotype", Arrays.asList("0/0", "0|0")),
         ALREADY_LOADED_VARIANTS("alreadyLoadedVariants", 0),
         LOADED_GENOTYPES("loadedGenotypes", null),
+        GENOTYPES_ENCODING("genotypes.encoding", GenotypesEncoding.ARRAY), //Selected at the first load of each study. See GenotypesEncoding
 
         PARALLEL_WRITE("parallel.write", false),
 
@@ -108,6 +149,9 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
         MERGE_RESUME("merge.resume", false),
         MERGE_IGNORE_OVERLAPPING_VARIANTS("merge.ignore-overlapping-variants", false),   //Do not look for overlapping variants
         MERGE_PARALLEL_WRITE("merge.parallel.write", false),
+        MERGE_WRITE_IN_FLIGHT("merge.write.inFlight", 1),              //Max number of bulk writes running at the same time. Opt-in
+        MERGE_WRITE_TARGET_LATENCY("merge.write.targetLatency", 1000), //Target time in milliseconds for each bulk write
+        MERGE_WRITE_MAX_BATCH_SIZE("merge.write.maxBatchSize", 5000),  //Max number of operations in each bulk write
         MERGE_BATCH_SIZE("merge.batch.size", 10);          //Number of files to merge directly from first to second collection
 
         private final String key;
@@ -175,7 +219,7 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
 
     @Override
     protected VariantImporter newVariantImporter() throws StorageEngineException {
-        return new MongoVariantImporter(getDBAdaptor());
+        return new MongoVariantImporter(getDBAdaptor(), getOptions());
     }
 
     @Override
@@ -265,6 +309,7 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
         MemoryUsageMonitor monitor = new MemoryUsageMonitor();
         monitor.setDelay(5000);
 //        monitor.start();
+        TransformQueue transformQueue = null;
         try {
             for (URI inputFile : inputFiles) {
                 StoragePipelineResult storagePipelineResult = new StoragePipelineResult(inputFile);
@@ -283,7 +328,19 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                 }
             }
 
-            if (doTransform) {
+            int overlappedTransforms = doLoad ? getIndexOverlappedTransforms() : 0;
+            if (doTransform && overlappedTransforms > 0 && storageResultMap.size() > 1) {
+                // Transform in background. Each file is loaded as soon as its transformation finishes
+                logger.info("Transforming up to {} files while loading", overlappedTransforms);
+                List<Callable<URI>> transforms = new ArrayList<>(storageResultMap.size());
+                for (Map.Entry<URI, MongoDBVariantStoragePipeline> entry : storageResultMap.entrySet()) {
+                    StoragePipelineResult result = resultsMap.get(entry.getKey());
+                    URI input = result.getExtractResult() == null ? entry.getKey() : result.getExtractResult();
+                    MongoDBVariantStoragePipeline storagePipeline = entry.getValue();
+                    transforms.add(() -> transformFile(storagePipeline, result, results, input, outdirUri));
+                }
+                transformQueue = new TransformQueue(transforms, overlappedTransforms);
+            } else if (doTransform) {
                 for (Map.Entry<URI, MongoDBVariantStoragePipeline> entry : storageResultMap.entrySet()) {
                     StoragePipelineResult result = resultsMap.get(entry.getKey());
                     URI input = result.getExtractResult() == null ? entry.getKey() : result.getExtractResult();
@@ -304,10 +361,32 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                 List<Integer> filesToMerge = new ArrayList<>(batchLoad);
                 List<StoragePipelineResult> resultsToMerge = new ArrayList<>(batchLoad);
                 List<Integer> mergedFiles = new ArrayList<>();
+                // Last staged file waiting for the merge
+                MongoDBVariantStoragePipeline stagedPipeline = null;
+                URI stagedInput = null;
 
                 Iterator<Map.Entry<URI, MongoDBVariantStoragePipeline>> iterator = storageResultMap.entrySet().iterator();
                 while (iterator.hasNext()) {
                     Map.Entry<URI, MongoDBVariantStoragePipeline> entry = iterator.next();
+                    if (transformQueue != null) {
+                        // Wait for the transformation of this file
+                        try {
+                            transformQueue.next();
+                        } catch (StorageEngineException | RuntimeException e) {
+                            if (!filesToMerge.isEmpty()) {
+                                // Do not leave the files of this batch staged and not merged
+                                logger.info("Load - Merge staged files {} before failing", filesToMerge);
+                                try {
+                                    stagedPipeline.getOptions().put(MERGE.key(), true);
+                                    mergeFiles(stagedPipeline, filesToMerge, resultsToMerge, mergedFiles, results);
+                                    stagedPipeline.postLoad(stagedInput, outdirUri);
+                                } catch (Exception mergeException) {
+                                    e.addSuppressed(mergeException);
+                                }
+                            }
+                            throw e;
+                        }
+                    }
                     StoragePipelineResult result = resultsMap.get(entry.getKey());
                     URI input = result.getPostTransformResult() == null ? entry.getKey() : result.getPostTransformResult();
                     MongoDBVariantStoragePipeline storagePipeline = entry.getValue();
@@ -353,31 +432,14 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                                 resultsToMerge.add(result);
 
                                 if (filesToMerge.size() == batchLoad || !iterator.hasNext()) {
-                                    StopWatch mergeWatch = StopWatch.createStarted();
-                                    try {
-                                        storagePipeline.merge(new ArrayList<>(filesToMerge));
-                                    } catch (Exception e) {
-                                        for (StoragePipelineResult storagePipelineResult : resultsToMerge) {
-                                            storagePipelineResult.setLoadError(e);
-                                        }
-                                        throw new StoragePipelineException("Exception executing merge.", e, results);
-                                    } finally {
-                                        long mergeTime = mergeWatch.getTime(TimeUnit.MILLISECONDS);
-                                        for (StoragePipelineResult storagePipelineResult : resultsToMerge) {
-                                            storagePipelineResult.setLoadTimeMillis(storagePipelineResult.getLoadTimeMillis() + mergeTime);
-                                            for (Map.Entry<String, Object> statsEntry : storagePipeline.getLoadStats().entrySet()) {
-                                                storagePipelineResult.getLoadStats()
-                                                        .putIfAbsent(statsEntry.getKey(), statsEntry.getValue());
-                                            }
-                                            storagePipelineResult.setLoadExecuted(true);
-                                        }
-                                        mergedFiles.addAll(filesToMerge);
-                                        filesToMerge.clear();
-                                        resultsToMerge.clear();
-                                    }
+                                    mergeFiles(storagePipeline, filesToMerge, resultsToMerge, mergedFiles, results);
+                                    stagedPipeline = null;
+                                    stagedInput = null;
                                 } else {
                                     // We don't execute merge for this file
                                     storagePipeline.getOptions().put(MERGE.key(), false);
+                                    stagedPipeline = storagePipeline;
+                                    stagedInput = input;
                                 }
                             }
                         }
@@ -413,6 +475,13 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
 
         } finally {
 //            monitor.interrupt();
+            if (transformQueue != null) {
+                try {
+                    transformQueue.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
             for (StoragePipeline storagePipeline : storageResultMap.values()) {
                 storagePipeline.close();
             }
@@ -421,6 +490,43 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
         return results;
     }
 
+    /**
+     * Merge the staged files of a batch, and update their results.
+     *
+     * @param storagePipeline Pipeline of the last staged file
+     * @param filesToMerge    Staged files to merge. Cleared after the merge
+     * @param resultsToMerge  Results of the staged files. Cleared after the merge
+     * @param mergedFiles     List of merged files to update
+     * @param results         Results of all the files
+     * @throws StoragePipelineException if the merge fails
+     */
+    private void mergeFiles(MongoDBVariantStoragePipeline storagePipeline, List<Integer> filesToMerge,
+                            List<StoragePipelineResult> resultsToMerge, List<Integer> mergedFiles, List<StoragePipelineResult> results)
+            throws StoragePipelineException {
+        StopWatch mergeWatch = StopWatch.createStarted();
+        try {
+            storagePipeline.merge(new ArrayList<>(filesToMerge));
+        } catch (Exception e) {
+            for (StoragePipelineResult storagePipelineResult : resultsToMerge) {
+                storagePipelineResult.setLoadError(e);
+            }
+            throw new StoragePipelineException("Exception executing merge.", e, results);
+        } finally {
+            long mergeTime = mergeWatch.getTime(TimeUnit.MILLISECONDS);
+            for (StoragePipelineResult storagePipelineResult : resultsToMerge) {
+                storagePipelineResult.setLoadTimeMillis(storagePipelineResult.getLoadTimeMillis() + mergeTime);
+                for (Map.Entry<String, Object> statsEntry : storagePipeline.getLoadStats().entrySet()) {
+                    storagePipelineResult.getLoadStats()
+                            .putIfAbsent(statsEntry.getKey(), statsEntry.getValue());
+                }
+                storagePipelineResult.setLoadExecuted(true);
+            }
+            mergedFiles.addAll(filesToMerge);
+            filesToMerge.clear();
+            resultsToMerge.clear();
+        }
+    }
+
     @Override
     public VariantMongoDBAdaptor getDBAdaptor() throws StorageEngineException {
         // Lazy initialization of dbAdaptor
@@ -466,6 +572,16 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
         }
     }
 
+    /**
+     * Params backed by one of the indexes created at {@link VariantMongoDBAdaptor#createIndexes(QueryOptions)}.
+     *
+     * @return Indexed params
+     */
+    @Override
+    protected Set<VariantQueryParam> getEngineIndexedParams() {
+        return ENGINE_INDEXED_PARAMS;
+    }
+
     private VariantMongoDBAdaptor newDBAdaptor() throws StorageEngineException {
         MongoCredentials credentials = getMongoCredentials();
         VariantMongoDBAdaptor variantMongoDBAdaptor;
@@ -515,6 +631,8 @@ public class MongoDBVariantStorageEngine extends VariantStorageEngine {
                     getMongoCredentials().getMongoDbName(),
                     getMongoCredentials().getMongoDBConfiguration());
             studyConfigurationManager = new StudyConfigurationManager(new MongoDBVariantStorageMetadataDBAdaptorFactory(db, options));
+            studyConfigurationManager.setCacheCheckInterval(options.getInt(STUDY_CONFIGURATION_CACHE_CHECK_INTERVAL.key(),
+                    STUDY_CONFIGURATION_CACHE_CHECK_INTERVAL.defaultValue()));
             return studyConfigurationManager;
         }
     }
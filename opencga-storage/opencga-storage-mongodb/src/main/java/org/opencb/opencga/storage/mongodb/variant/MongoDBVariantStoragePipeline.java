@@ -48,6 +48,7 @@ import org.opencb.opencga.storage.core.variant.adaptors.GenotypeClass;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
 import org.opencb.opencga.storage.core.variant.io.VariantReaderUtils;
 import org.opencb.opencga.storage.core.variant.transform.RemapVariantIdsTask;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.GenotypesEncoding;
 import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBAdaptor;
 import org.opencb.opencga.storage.mongodb.variant.exceptions.MongoVariantStorageEngineException;
 import org.opencb.opencga.storage.mongodb.variant.load.MongoDBVariantWriteResult;
@@ -175,6 +176,15 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             }
             studyConfiguration.getAttributes().put(DEFAULT_GENOTYPE.key(), defaultGenotype);
         }
+        if (studyConfiguration.getAttributes().containsKey(GENOTYPES_ENCODING.key())) {
+            logger.debug("Using genotypes encoding from study configuration: {}",
+                    studyConfiguration.getAttributes().getString(GENOTYPES_ENCODING.key()));
+        } else if (!studyConfiguration.getIndexedFiles().isEmpty()) {
+            // Studies loaded before the encoding was configurable
+            studyConfiguration.getAttributes().put(GENOTYPES_ENCODING.key(), GenotypesEncoding.ARRAY);
+        } else {
+            studyConfiguration.getAttributes().put(GENOTYPES_ENCODING.key(), GenotypesEncoding.from(options));
+        }
 
         boolean loadSplitData = options.getBoolean(Options.LOAD_SPLIT_DATA.key(), Options.LOAD_SPLIT_DATA.defaultValue());
         boolean newSampleBatch = checkCanLoadSampleBatch(studyConfiguration, fileId, loadSplitData);
@@ -420,7 +430,9 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             });
             try {
                 Runtime.getRuntime().addShutdownHook(hook);
+                StopWatch stopWatch = StopWatch.createStarted();
                 ptr.run();
+                logThroughput("Stage", numRecords, stopWatch.getNanoTime());
                 stageSuccess(fileMetadata);
             } finally {
                 Runtime.getRuntime().removeShutdownHook(hook);
@@ -715,9 +727,15 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
         int release = options.getInt(Options.RELEASE.key(), Options.RELEASE.defaultValue());
         MongoDBVariantMerger variantMerger = new MongoDBVariantMerger(dbAdaptor, studyConfiguration, fileIds, indexedFiles, resume,
                 ignoreOverlapping, release);
+        // Each merge task writes its own operations when using parallel write. No need to pipeline the writes.
+        int writeInFlight = isMergeParallelWrite(options)
+                ? 1
+                : options.getInt(MERGE_WRITE_IN_FLIGHT.key(), MERGE_WRITE_IN_FLIGHT.defaultValue());
         MongoDBVariantMergeLoader variantLoader = new MongoDBVariantMergeLoader(
                 dbAdaptor.getVariantsCollection(), stageCollection, dbAdaptor.getStudiesCollection(),
-                studyConfiguration, fileIds, resume, cleanWhileLoading, progressLogger);
+                studyConfiguration, fileIds, resume, cleanWhileLoading, progressLogger, writeInFlight,
+                options.getInt(MERGE_WRITE_TARGET_LATENCY.key(), MERGE_WRITE_TARGET_LATENCY.defaultValue()),
+                options.getInt(MERGE_WRITE_MAX_BATCH_SIZE.key(), MERGE_WRITE_MAX_BATCH_SIZE.defaultValue()));
 
         ParallelTaskRunner<Document, MongoDBOperations> ptrMerge;
         ParallelTaskRunner.Config config = ParallelTaskRunner.Config.builder()
@@ -747,7 +765,25 @@ public class MongoDBVariantStoragePipeline extends VariantStoragePipeline {
             logger.info("Write result: {}", variantLoader.getResult());
             throw new StorageEngineException("Error while executing LoadVariants in ParallelTaskRunner", e);
         }
-        return variantLoader.getResult();
+        MongoDBVariantWriteResult writeResult = variantLoader.getResult();
+        long numVariants = writeResult.getNewVariants() + writeResult.getUpdatedVariants() + writeResult.getUpdatedMissingVariants();
+        logThroughput("Merge", numVariants, writeResult.getMergeNanoTime());
+        logThroughput("Write", numVariants, variantLoader.getWriteNanoTime());
+        return writeResult;
+    }
+
+    /**
+     * Log the throughput of one step of the load.
+     * The given time may be accumulated from several threads, giving the throughput per thread.
+     *
+     * @param step        Step name
+     * @param numVariants Number of variants processed
+     * @param nanoTime    Time in nanoseconds
+     */
+    private void logThroughput(String step, long numVariants, long nanoTime) {
+        double seconds = nanoTime / 1000000000.0;
+        logger.info("{} throughput: {} variants in {}s ({} variants/s)", step, numVariants, seconds,
+                seconds > 0 ? String.format("%.2f", numVariants / seconds) : "-");
     }
 
     @Override
@@ -22,6 +22,7 @@ import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
 import com.mongodb.client.result.UpdateResult;
 import htsjdk.variant.vcf.VCFConstants;
 import org.apache.commons.lang3.time.StopWatch;
@@ -29,6 +30,7 @@ import org.bson.Document;
 import org.bson.conversions.Bson;
 import org.bson.json.JsonMode;
 import org.bson.json.JsonWriterSettings;
+import org.bson.types.Binary;
 import org.opencb.biodata.models.core.Region;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
@@ -212,7 +214,6 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             // If we are deleting all the files in the study, delete the whole study
             return removeStudy(study, new QueryOptions("purge", true));
         }
-
         // Remove all the study entries that does not contain any of the other indexed files.
         // This include studies only with the files to remove and with negated fileIds (overlapped files)
         Bson studiesToRemoveQuery = elemMatch(DocumentToVariantConverter.STUDIES_FIELD,
@@ -300,14 +301,23 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             );
         }
 
+        boolean genotypeBitmaps = MongoDBVariantStorageEngine.GenotypesEncoding.from(sc.getAttributes())
+                == MongoDBVariantStorageEngine.GenotypesEncoding.BITMAP;
+        if (genotypeBitmaps) {
+            // Genotype bitmaps can not be modified with an update operator. Must be rewritten before removing the files.
+            removeSamplesFromGenotypeBitmaps(query, studyId, sampleIds);
+        }
+
         List<Bson> updates = new ArrayList<>();
         updates.add(
                 pull(DocumentToVariantConverter.STUDIES_FIELD + ".$." + FILES_FIELD,
                         in(FILEID_FIELD, fileIds)));
-        for (String gt : sc.getAttributes().getAsStringList(LOADED_GENOTYPES.key())) {
-            updates.add(
-                    pullByFilter(
-                            in(DocumentToVariantConverter.STUDIES_FIELD + ".$." + GENOTYPES_FIELD + '.' + gt, sampleIds)));
+        if (!genotypeBitmaps) {
+            for (String gt : sc.getAttributes().getAsStringList(LOADED_GENOTYPES.key())) {
+                updates.add(
+                        pullByFilter(
+                                in(DocumentToVariantConverter.STUDIES_FIELD + ".$." + GENOTYPES_FIELD + '.' + gt, sampleIds)));
+            }
         }
 
         Bson update = combine(updates);
@@ -327,6 +337,70 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         return result2;
     }
 
+    /**
+     * Clear the given samples from the genotype bitmaps of the study.
+     * Genotypes and merge elements left empty are removed.
+     *
+     * @param query     Query to select the variants to update
+     * @param studyId   Study
+     * @param sampleIds Samples to remove
+     */
+    private void removeSamplesFromGenotypeBitmaps(Bson query, int studyId, Set<Integer> sampleIds) {
+        int batchSize = 500;
+        FindIterable<Document> findIterable = getVariantsCollection()
+                .nativeQuery()
+                .find(query, Projections.elemMatch(DocumentToVariantConverter.STUDIES_FIELD, eq(STUDYID_FIELD, studyId)),
+                        new QueryOptions())
+                .batchSize(batchSize);
+
+        logger.info("Remove files from variants collection - clear genotype bitmaps");
+        List<Bson> queries = new ArrayList<>(batchSize);
+        List<Bson> updates = new ArrayList<>(batchSize);
+        long updatedDocuments = 0;
+        try (MongoCursor<Document> cursor = findIterable.iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                List<Document> studies = document.get(DocumentToVariantConverter.STUDIES_FIELD, List.class);
+                if (studies == null || studies.isEmpty()) {
+                    continue;
+                }
+                List<Document> genotypeBitmapsList = studies.get(0).get(GENOTYPE_BITMAPS_FIELD, List.class);
+                if (genotypeBitmapsList == null) {
+                    continue;
+                }
+                boolean modified = false;
+                List<Document> newGenotypeBitmapsList = new ArrayList<>(genotypeBitmapsList.size());
+                for (Document genotypeBitmaps : genotypeBitmapsList) {
+                    Document newGenotypeBitmaps = new Document();
+                    for (Map.Entry<String, Object> entry : genotypeBitmaps.entrySet()) {
+                        byte[] bitmap = ((Binary) entry.getValue()).getData();
+                        byte[] newBitmap = SampleBitmapUtils.remove(bitmap, sampleIds);
+                        if (newBitmap != bitmap) {
+                            modified = true;
+                        }
+                        if (newBitmap.length > 0) {
+                            newGenotypeBitmaps.append(entry.getKey(), new Binary(newBitmap));
+                        }
+                    }
+                    if (!newGenotypeBitmaps.isEmpty()) {
+                        newGenotypeBitmapsList.add(newGenotypeBitmaps);
+                    }
+                }
+                if (modified) {
+                    queries.add(and(eq("_id", document.get("_id")),
+                            eq(DocumentToVariantConverter.STUDIES_FIELD + '.' + STUDYID_FIELD, studyId)));
+                    updates.add(set(DocumentToVariantConverter.STUDIES_FIELD + ".$." + GENOTYPE_BITMAPS_FIELD, newGenotypeBitmapsList));
+                }
+                if (!queries.isEmpty() && (queries.size() == batchSize || !cursor.hasNext())) {
+                    updatedDocuments += getVariantsCollection().update(queries, updates, new QueryOptions()).first().getModifiedCount();
+                    queries.clear();
+                    updates.clear();
+                }
+            }
+        }
+        logger.info("Updated genotype bitmaps from " + updatedDocuments + " documents from variants");
+    }
+
     /**
      * Remove the given study from the database.
      *
@@ -398,7 +472,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             options = new QueryOptions();
         }
 
-        Document mongoQuery = queryParser.parseQuery(query);
+        Document mongoQuery = queryParser.addResumeFilter(queryParser.parseQuery(query), options);
         Document projection = queryParser.createProjection(query, options);
         options.putIfAbsent(QueryOptions.SKIP_COUNT, true);
 
@@ -554,7 +628,7 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
             options = new QueryOptions();
         }
 
-        Document mongoQuery = queryParser.parseQuery(query);
+        Document mongoQuery = queryParser.addResumeFilter(queryParser.parseQuery(query), options);
         Document projection = queryParser.createProjection(query, options);
         DocumentToVariantConverter converter = getDocumentToVariantConverter(query, options);
         options.putIfAbsent(MongoDBCollection.BATCH_SIZE, 100);
@@ -574,6 +648,107 @@ public class VariantMongoDBAdaptor implements VariantDBAdaptor {
         }
     }
 
+    /**
+     * Split the query in disjoint ranges of variant ids, and read each range with a different thread.
+     *
+     * The ranges are obtained from the regions in the query, or from the whole genome if none. Queries that can not be
+     * split by region (genes, xrefs or ids, which are joined with the regions with an OR), or with limit or skip,
+     * are read with one single iterator.
+     *
+     * @param query      Query
+     * @param options    QueryOptions. If {@link QueryOptions#SORT} is given, the output is sorted.
+     * @param numThreads Number of threads
+     * @return Variant iterator
+     */
+    @Override
+    public VariantDBIterator parallelIterator(Query query, QueryOptions options, int numThreads) {
+        if (query == null) {
+            query = new Query();
+        }
+        if (options == null) {
+            options = new QueryOptions();
+        }
+        VariantQueryXref xrefs = parseXrefs(query);
+        if (numThreads <= 1
+                || options.getInt(QueryOptions.LIMIT, 0) > 0
+                || options.getInt(QueryOptions.SKIP, 0) > 0
+                || options.containsKey(VariantQueryCursor.RESUME_AFTER)
+                || !xrefs.getGenes().isEmpty()
+                || !xrefs.getVariants().isEmpty()
+                || !xrefs.getIds().isEmpty()
+                || !xrefs.getOtherXrefs().isEmpty()) {
+            return iterator(query, options);
+        }
+
+        List<Region> regions;
+        if (isValidParam(query, REGION)) {
+            // Merge overlapping regions, so the split ranges are disjoint
+            regions = new ArrayList<>(mergeRegions(Region.parseRegions(query.getString(REGION.key()), true)));
+        } else {
+            regions = getChromosomeRegions();
+        }
+        // Sort as the variant ids
+        regions.sort(Comparator.comparing(region -> VariantStringIdConverter.buildId(region.getChromosome(), region.getStart())));
+        List<Region> partitions = splitRegions(regions, numThreads);
+        if (partitions.size() <= 1) {
+            return iterator(query, options);
+        }
+
+        List<Query> queries = new ArrayList<>(partitions.size());
+        for (Region partition : partitions) {
+            queries.add(new Query(query).append(REGION.key(), partition.toString()));
+        }
+        boolean ordered = options.getBoolean(QueryOptions.SORT, false);
+        logger.debug("Parallel iterator with {} threads over {} partitions. Ordered: {}", numThreads, partitions.size(), ordered);
+        return new ParallelVariantDBIterator(queries, options, this::iterator, numThreads, ordered);
+    }
+
+    /**
+     * @return One region for each chromosome, from the first position to the start of the last variant.
+     */
+    private List<Region> getChromosomeRegions() {
+        List<Region> regions = new ArrayList<>();
+        for (Object chromosome : variantsCollection.distinct(DocumentToVariantConverter.CHROMOSOME_FIELD, new Document()).getResult()) {
+            String chr = chromosome.toString();
+            Document last = variantsCollection.nativeQuery()
+                    .find(and(gte("_id", VariantStringIdConverter.buildId(chr, 0)),
+                            lte("_id", VariantStringIdConverter.buildId(chr, Integer.MAX_VALUE))),
+                            Projections.include(DocumentToVariantConverter.START_FIELD), new QueryOptions())
+                    .sort(Sorts.descending("_id"))
+                    .limit(1)
+                    .first();
+            if (last != null) {
+                regions.add(new Region(chr, 1, last.getInteger(DocumentToVariantConverter.START_FIELD)));
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Split a list of sorted regions in ranges of approximately totalSize / numPartitions. Regions are never joined.
+     *
+     * @param regions       Sorted regions
+     * @param numPartitions Min number of partitions
+     * @return Sorted partitions
+     */
+    static List<Region> splitRegions(List<Region> regions, int numPartitions) {
+        long totalSize = 0;
+        for (Region region : regions) {
+            totalSize += region.getEnd() - region.getStart() + 1L;
+        }
+        long chunkSize = Math.max(1, (totalSize + numPartitions - 1) / numPartitions);
+        List<Region> partitions = new ArrayList<>();
+        for (Region region : regions) {
+            long start = region.getStart();
+            while (start <= region.getEnd()) {
+                long end = Math.min(region.getEnd(), start + chunkSize - 1);
+                partitions.add(new Region(region.getChromosome(), (int) start, (int) end));
+                start = end + 1;
+            }
+        }
+        return partitions;
+    }
+
     @Override
     public QueryResult getFrequency(Query query, Region region, int regionIntervalSize) {
         // db.variants.aggregate( { $match: { $and: [ {chr: "1"}, {start: {$gt: 251391, $lt: 2701391}} ] }},
@@ -36,6 +36,7 @@ import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.adaptors.*;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.GenotypesEncoding;
 import org.opencb.opencga.storage.mongodb.variant.converters.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +51,7 @@ import java.util.stream.Collectors;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.*;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils.*;
 import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.DEFAULT_GENOTYPE;
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.GENOTYPES_ENCODING;
 import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.LOADED_GENOTYPES;
 
 /**
@@ -202,6 +204,30 @@ public class VariantMongoDBQueryParser {
         return mongoQuery;
     }
 
+    /**
+     * Restricts the query to the variants after {@link VariantQueryCursor#RESUME_AFTER}, if any.
+     * Resumed queries are sorted by ascending _id, so the next page starts right after the last returned variant using the index,
+     * instead of skipping all the previous results.
+     *
+     * @param mongoQuery Parsed query
+     * @param options    QueryOptions. The sort is modified if resuming the query
+     * @return           Query with the resume filter
+     */
+    protected Document addResumeFilter(Document mongoQuery, QueryOptions options) {
+        Variant resumeAfter = VariantQueryCursor.getResumeAfter(options);
+        if (resumeAfter == null) {
+            return mongoQuery;
+        }
+        options.put(QueryOptions.SORT, true);
+        options.put(QueryOptions.ORDER, QueryOptions.ASCENDING);
+        Document resumeFilter = new Document("_id", new Document("$gt", STRING_ID_CONVERTER.buildId(resumeAfter)));
+        if (mongoQuery.isEmpty()) {
+            return resumeFilter;
+        } else {
+            return new Document("$and", Arrays.asList(mongoQuery, resumeFilter));
+        }
+    }
+
     private void parseAnnotationQueryParams(Query query, QueryBuilder builder) {
         if (query != null) {
             if (isValidParam(query, ANNOTATION_EXISTS)) {
@@ -626,10 +652,13 @@ public class VariantMongoDBQueryParser {
 
                 List<String> defaultGenotypes;
                 List<String> otherGenotypes;
+                GenotypesEncoding genotypesEncoding;
                 if (defaultStudyConfiguration != null) {
                     defaultGenotypes = defaultStudyConfiguration.getAttributes().getAsStringList(DEFAULT_GENOTYPE.key());
                     otherGenotypes = defaultStudyConfiguration.getAttributes().getAsStringList(LOADED_GENOTYPES.key());
+                    genotypesEncoding = GenotypesEncoding.from(defaultStudyConfiguration.getAttributes());
                 } else {
+                    genotypesEncoding = GENOTYPES_ENCODING.defaultValue();
                     defaultGenotypes = DEFAULT_GENOTYPE.defaultValue();
                     otherGenotypes = Arrays.asList(
                             "0/0", "0|0",
@@ -704,10 +733,8 @@ public class VariantMongoDBQueryParser {
                                     if (defaultGenotypes.contains(otherGenotype)) {
                                         continue;
                                     }
-                                    String key = studyQueryPrefix
-                                            + DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD
-                                            + '.' + otherGenotype;
-                                    genotypesBuilder.or(new BasicDBObject(key, sampleId));
+                                    genotypesBuilder.or(buildGenotypeFilter(studyQueryPrefix, otherGenotype, sampleId, false,
+                                            genotypesEncoding));
                                 }
                             } else {
                                 QueryBuilder andBuilder = QueryBuilder.start();
@@ -715,25 +742,22 @@ public class VariantMongoDBQueryParser {
                                     if (defaultGenotypes.contains(otherGenotype)) {
                                         continue;
                                     }
-                                    String key = studyQueryPrefix
-                                            + DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD
-                                            + '.' + otherGenotype;
-                                    andBuilder.and(new BasicDBObject(key,
-                                            new Document("$ne", sampleId)));
+                                    andBuilder.and(buildGenotypeFilter(studyQueryPrefix, otherGenotype, sampleId, true,
+                                            genotypesEncoding));
                                 }
                                 genotypesBuilder.or(andBuilder.get());
                             }
                         } else {
-                            String s = studyQueryPrefix
-                                    + DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD
-                                    + '.' + DocumentToSamplesConverter.genotypeToStorageType(genotype);
+                            String storageGenotype = DocumentToSamplesConverter.genotypeToStorageType(genotype);
                             if (negated) {
                                 //and [ {"gt.0|1" : { $ne : <sampleId> } } ]
-                                genotypesBuilder.and(new BasicDBObject(s, new BasicDBObject("$ne", sampleId)));
+                                genotypesBuilder.and(buildGenotypeFilter(studyQueryPrefix, storageGenotype, sampleId, true,
+                                        genotypesEncoding));
 
                             } else {
                                 //or [ {"gt.0|1" : <sampleId> } ]
-                                genotypesBuilder.or(new BasicDBObject(s, sampleId));
+                                genotypesBuilder.or(buildGenotypeFilter(studyQueryPrefix, storageGenotype, sampleId, false,
+                                        genotypesEncoding));
                             }
                         }
                     }
@@ -764,6 +788,40 @@ public class VariantMongoDBQueryParser {
         }
     }
 
+    /**
+     * Build a filter to check if a sample has, or has not, a given genotype.
+     *
+     * @param studyQueryPrefix  Prefix of the study fields
+     * @param genotype          Genotype, in storage format
+     * @param sampleId          SampleId
+     * @param negated           Sample must not have this genotype
+     * @param genotypesEncoding Encoding of the genotypes in the study
+     * @return Filter
+     */
+    private static DBObject buildGenotypeFilter(String studyQueryPrefix, String genotype, int sampleId, boolean negated,
+                                                GenotypesEncoding genotypesEncoding) {
+        if (genotypesEncoding == GenotypesEncoding.BITMAP) {
+            // Use $elemMatch, as the genotype may be a number (e.g. haploid "1"), and be confused with an array index.
+            //   {"gtb" : { $elemMatch : { "0|1" : { $bitsAnySet : [ <sampleId> ] } } } }
+            //   {"gtb" : { $not : { $elemMatch : { "0|1" : { $bitsAnySet : [ <sampleId> ] } } } } }
+            Document elemMatch = new Document("$elemMatch",
+                    new Document(genotype, new Document("$bitsAnySet", Collections.singletonList(sampleId))));
+            String key = studyQueryPrefix + DocumentToStudyVariantEntryConverter.GENOTYPE_BITMAPS_FIELD;
+            if (negated) {
+                return new BasicDBObject(key, new Document("$not", elemMatch));
+            } else {
+                return new BasicDBObject(key, elemMatch);
+            }
+        } else {
+            String key = studyQueryPrefix + DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD + '.' + genotype;
+            if (negated) {
+                return new BasicDBObject(key, new Document("$ne", sampleId));
+            } else {
+                return new BasicDBObject(key, sampleId);
+            }
+        }
+    }
+
     private DBObject[] getFileFilterDBObjects(String key, List<String> filterValues) {
         DBObject[] regexList = new DBObject[filterValues.size()];
         for (int i = 0; i < filterValues.size(); i++) {
@@ -817,7 +875,8 @@ public class VariantMongoDBQueryParser {
                                         study = split[0];
                                         cohort = split[1];
                                         StudyConfiguration studyConfiguration =
-                                                studyConfigurationManager.getStudyConfiguration(study, defaultStudyConfiguration, null);
+                                                studyConfigurationManager.getStudyConfiguration(study, defaultStudyConfiguration,
+                                                        new QueryOptions(StudyConfigurationManager.READ_ONLY, true));
                                         cohortId = studyConfigurationManager.getCohortId(cohort, studyConfiguration);
                                     }
                                     return cohortId;
@@ -920,6 +979,8 @@ public class VariantMongoDBQueryParser {
                     if (format.equals(GT)) {
                         projection.put(DocumentToVariantConverter.STUDIES_FIELD + '.'
                                 + DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD, 1);
+                        projection.put(DocumentToVariantConverter.STUDIES_FIELD + '.'
+                                + DocumentToStudyVariantEntryConverter.GENOTYPE_BITMAPS_FIELD, 1);
                     } else {
                         projection.put(DocumentToVariantConverter.STUDIES_FIELD + '.'
                                 + DocumentToStudyVariantEntryConverter.FILES_FIELD + '.'
@@ -1387,7 +1448,8 @@ public class VariantMongoDBQueryParser {
                 valueStr = cohortOpValue[2];
 
                 StudyConfiguration studyConfiguration =
-                        studyConfigurationManager.getStudyConfiguration(study, defaultStudyConfiguration, null);
+                        studyConfigurationManager.getStudyConfiguration(study, defaultStudyConfiguration,
+                                new QueryOptions(StudyConfigurationManager.READ_ONLY, true));
                 cohortId = studyConfigurationManager.getCohortId(cohort, studyConfiguration);
                 studyId = studyConfiguration.getStudyId();
             } else {
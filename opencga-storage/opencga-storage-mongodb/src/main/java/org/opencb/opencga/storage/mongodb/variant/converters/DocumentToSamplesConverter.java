@@ -24,12 +24,14 @@ import org.bson.Document;
 import org.bson.types.Binary;
 import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.commons.datastore.core.ComplexTypeConverter;
+import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.commons.utils.CompressionUtils;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.VariantStorageEngine.Options;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.GenotypesEncoding;
 import org.opencb.opencga.storage.mongodb.variant.protobuf.VariantMongoDBProto;
 import org.slf4j.LoggerFactory;
 
@@ -174,7 +176,8 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
 
         if (!studyConfigurations.containsKey(studyId) && studyConfigurationManager != null) { // Samples not set as constructor argument,
             // need to query
-            QueryResult<StudyConfiguration> queryResult = studyConfigurationManager.getStudyConfiguration(studyId, null);
+            QueryResult<StudyConfiguration> queryResult = studyConfigurationManager.getStudyConfiguration(studyId,
+                    new QueryOptions(StudyConfigurationManager.READ_ONLY, true));
             if (queryResult.first() == null) {
                 logger.warn("DocumentToSamplesConverter.convertToDataModelType StudyConfiguration {studyId: {}} not found! Looking for "
                         + "VariantSource", studyId);
@@ -203,6 +206,7 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         final LinkedHashMap<String, Integer> samplesPositionToReturn = getSamplesPosition(studyConfiguration);
 
         boolean excludeGenotypes = !object.containsKey(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD)
+                && !object.containsKey(DocumentToStudyVariantEntryConverter.GENOTYPE_BITMAPS_FIELD)
                 || studyConfiguration.getAttributes().getBoolean(Options.EXCLUDE_GENOTYPES.key(), Options.EXCLUDE_GENOTYPES.defaultValue());
         boolean compressExtraParams = studyConfiguration.getAttributes()
                 .getBoolean(Options.EXTRA_GENOTYPE_FIELDS_COMPRESS.key(),
@@ -269,21 +273,41 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         // "0|1" : [ 41, 311, 342, 358, 881, 898, 903 ]
         // genotypes[41], genotypes[311], etc, will be set to "0|1"
         Map<Integer, String> idSamples = getIndexedSamplesIdMap(studyId).inverse();
-        if (!excludeGenotypes) {
-            Document mongoGenotypes = (Document) object.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD);
-            for (Map.Entry<String, Object> dbo : mongoGenotypes.entrySet()) {
-                final String genotype;
-                if (dbo.getKey().equals(UNKNOWN_GENOTYPE)) {
-                    if (unknownGenotype == null) {
+        if (!excludeGenotypes && object.containsKey(DocumentToStudyVariantEntryConverter.GENOTYPE_BITMAPS_FIELD)) {
+            // Same as before, but with a list of bitmaps for each genotype, from each merge:
+            // [ { "0|1" : BinData(...), "1|0" : BinData(...) }, { "0|1" : BinData(...) } ]
+            List<Document> genotypeBitmapsList = getList(object, DocumentToStudyVariantEntryConverter.GENOTYPE_BITMAPS_FIELD);
+            for (Document genotypeBitmaps : genotypeBitmapsList) {
+                for (Map.Entry<String, Object> dbo : genotypeBitmaps.entrySet()) {
+                    final String genotype = genotypeToDataModelType(dbo.getKey(), defaultGenotypes);
+                    if (genotype == null) {
                         continue;
                     }
-                    if (defaultGenotypes.contains(unknownGenotype)) {
-                        continue;
+                    byte[] bitmap = ((Binary) dbo.getValue()).getData();
+                    if (bitmap.length < idSamples.size()) {
+                        // Small bitmap. Iterate over the samples in the bitmap
+                        SampleBitmapUtils.forEach(bitmap, sampleId -> {
+                            String sampleName = idSamples.get(sampleId);
+                            if (sampleName != null) {
+                                samplesData.get(samplesPositionToReturn.get(sampleName)).set(0, genotype);
+                            }
+                        });
                     } else {
-                        genotype = unknownGenotype;
+                        // Only check the returned samples
+                        for (Map.Entry<Integer, String> entry : idSamples.entrySet()) {
+                            if (SampleBitmapUtils.contains(bitmap, entry.getKey())) {
+                                samplesData.get(samplesPositionToReturn.get(entry.getValue())).set(0, genotype);
+                            }
+                        }
                     }
-                } else {
-                    genotype = genotypeToDataModelType(dbo.getKey());
+                }
+            }
+        } else if (!excludeGenotypes) {
+            Document mongoGenotypes = (Document) object.get(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD);
+            for (Map.Entry<String, Object> dbo : mongoGenotypes.entrySet()) {
+                final String genotype = genotypeToDataModelType(dbo.getKey(), defaultGenotypes);
+                if (genotype == null) {
+                    continue;
                 }
                 for (Integer sampleId : (List<Integer>) dbo.getValue()) {
                     if (idSamples.containsKey(sampleId)) {
@@ -403,6 +427,25 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         return samplesData;
     }
 
+    /**
+     * Get the genotype to return from a stored genotype.
+     *
+     * @param genotype          Stored genotype
+     * @param defaultGenotypes  Default genotypes of the study
+     * @return  Genotype to return, or null if the samples with this genotype should be skipped
+     */
+    private String genotypeToDataModelType(String genotype, Set<String> defaultGenotypes) {
+        if (genotype.equals(UNKNOWN_GENOTYPE)) {
+            if (unknownGenotype == null || defaultGenotypes.contains(unknownGenotype)) {
+                return null;
+            } else {
+                return unknownGenotype;
+            }
+        } else {
+            return genotypeToDataModelType(genotype);
+        }
+    }
+
     public List<String> getExtraFormatFields(Set<Integer> filesWithSamplesData, Map<Integer, Document> files) {
         final List<String> extraFields;
         if (format != null) {
@@ -515,7 +558,17 @@ public class DocumentToSamplesConverter extends AbstractDocumentConverter {
         }
 
         if (!excludeGenotypes) {
-            mongoSamples.append(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD, mongoGenotypes);
+            if (GenotypesEncoding.from(studyConfiguration.getAttributes()) == GenotypesEncoding.BITMAP) {
+                Document genotypeBitmaps = new Document();
+                for (Map.Entry<String, Object> entry : mongoGenotypes.entrySet()) {
+                    genotypeBitmaps.append(entry.getKey(), new Binary(SampleBitmapUtils.toBitmap((List<Integer>) entry.getValue())));
+                }
+                // Same format as the merge. One single element, as all the genotypes are written at once
+                mongoSamples.append(DocumentToStudyVariantEntryConverter.GENOTYPE_BITMAPS_FIELD,
+                        Collections.singletonList(genotypeBitmaps));
+            } else {
+                mongoSamples.append(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD, mongoGenotypes);
+            }
         }
 
 
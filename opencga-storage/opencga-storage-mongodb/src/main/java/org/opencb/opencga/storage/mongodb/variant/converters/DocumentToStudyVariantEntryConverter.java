@@ -22,6 +22,7 @@ import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.AlternateCoordinate;
 import org.opencb.biodata.models.variant.avro.FileEntry;
 import org.opencb.biodata.models.variant.avro.VariantType;
+import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.core.QueryResult;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
@@ -39,6 +40,8 @@ public class DocumentToStudyVariantEntryConverter {
     public static final String STUDYID_FIELD = "sid";
     //    public static final String FORMAT_FIELD = "fm";
     public static final String GENOTYPES_FIELD = "gt";
+    /** List of documents with genotype bitmaps. Used instead of {@link #GENOTYPES_FIELD} with the BITMAP genotypes encoding. */
+    public static final String GENOTYPE_BITMAPS_FIELD = "gtb";
 
     public static final String FILES_FIELD = "files";
     public static final String FILEID_FIELD = "fid";
@@ -228,7 +231,8 @@ public class DocumentToStudyVariantEntryConverter {
             if (studyConfigurationManager == null) {
                 studyIds.put(studyId, Integer.toString(studyId));
             } else {
-                QueryResult<StudyConfiguration> queryResult = studyConfigurationManager.getStudyConfiguration(studyId, null);
+                QueryResult<StudyConfiguration> queryResult = studyConfigurationManager.getStudyConfiguration(studyId,
+                        new QueryOptions(StudyConfigurationManager.READ_ONLY, true));
                 if (queryResult.getResult().isEmpty()) {
                     studyIds.put(studyId, Integer.toString(studyId));
                 } else {
@@ -107,6 +107,7 @@ public class DocumentToVariantConverter extends AbstractDocumentConverter implem
         map.put(VariantField.STUDIES, Arrays.asList(STUDIES_FIELD, STATS_FIELD));
         map.put(VariantField.STUDIES_SAMPLES_DATA, Arrays.asList(
                 STUDIES_FIELD + '.' + GENOTYPES_FIELD,
+                STUDIES_FIELD + '.' + GENOTYPE_BITMAPS_FIELD,
                 STUDIES_FIELD + '.' + FILES_FIELD + '.' + FILEID_FIELD,
                 STUDIES_FIELD + '.' + FILES_FIELD + '.' + SAMPLE_DATA_FIELD
         ));
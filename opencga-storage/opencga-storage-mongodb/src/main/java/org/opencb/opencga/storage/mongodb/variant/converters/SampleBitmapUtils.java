@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.converters;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+/**
+ * Created on 17/10/26.
+ *
+ * Bit-packed sets of sampleIds, used to store the genotypes with {@link
+ * org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.GenotypesEncoding#BITMAP}.
+ *
+ * The bit N of the bitmap is set if the sample with id N is in the set.
+ * Bits are numbered from the least significant bit of the first byte, as expected by the
+ * MongoDB bitwise query operators ($bitsAnySet, $bitsAllClear, ...).
+ * Trailing zeros are never stored.
+ */
+public final class SampleBitmapUtils {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private SampleBitmapUtils() {
+    }
+
+    public static byte[] toBitmap(Collection<Integer> sampleIds) {
+        int max = -1;
+        for (Integer sampleId : sampleIds) {
+            if (sampleId < 0) {
+                throw new IllegalArgumentException("Unable to put negative sampleId " + sampleId + " in a bitmap");
+            }
+            max = Math.max(max, sampleId);
+        }
+        if (max < 0) {
+            return EMPTY;
+        }
+        byte[] bitmap = new byte[max / 8 + 1];
+        for (Integer sampleId : sampleIds) {
+            bitmap[sampleId >> 3] |= 1 << (sampleId & 7);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Clear the given sampleIds from the bitmap.
+     *
+     * @param bitmap    Bitmap
+     * @param sampleIds SampleIds to remove
+     * @return          New bitmap without the given samples, or the same bitmap if none of them was in the set
+     */
+    public static byte[] remove(byte[] bitmap, Collection<Integer> sampleIds) {
+        byte[] newBitmap = null;
+        for (Integer sampleId : sampleIds) {
+            if (contains(bitmap, sampleId)) {
+                if (newBitmap == null) {
+                    newBitmap = bitmap.clone();
+                }
+                newBitmap[sampleId >> 3] &= ~(1 << (sampleId & 7));
+            }
+        }
+        if (newBitmap == null) {
+            return bitmap;
+        }
+        // Remove trailing zeros
+        int length = newBitmap.length;
+        while (length > 0 && newBitmap[length - 1] == 0) {
+            length--;
+        }
+        return length == newBitmap.length ? newBitmap : Arrays.copyOf(newBitmap, length);
+    }
+
+    public static boolean contains(byte[] bitmap, int sampleId) {
+        int idx = sampleId >> 3;
+        return sampleId >= 0 && idx < bitmap.length && (bitmap[idx] & (1 << (sampleId & 7))) != 0;
+    }
+
+    public static int count(byte[] bitmap) {
+        int count = 0;
+        for (byte b : bitmap) {
+            count += Integer.bitCount(b & 0xFF);
+        }
+        return count;
+    }
+
+    /**
+     * Iterate over all the sampleIds in the bitmap, in ascending order.
+     *
+     * @param bitmap    Bitmap
+     * @param consumer  SampleIds consumer
+     */
+    public static void forEach(byte[] bitmap, IntConsumer consumer) {
+        for (int i = 0; i < bitmap.length; i++) {
+            int b = bitmap[i] & 0xFF;
+            while (b != 0) {
+                int bit = Integer.numberOfTrailingZeros(b);
+                consumer.accept((i << 3) + bit);
+                b &= b - 1;
+            }
+        }
+    }
+
+}
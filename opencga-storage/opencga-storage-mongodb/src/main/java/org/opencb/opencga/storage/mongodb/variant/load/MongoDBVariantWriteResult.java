@@ -66,12 +66,19 @@ public class MongoDBVariantWriteResult {
     /** Non inserted variants, due to duplicated or overlapped variants in the same file. */
     private long nonInsertedVariants;
 
+    /** Already loaded variants read from the database to merge overlapping regions. */
+    private long fetchedVariants;
+    /** Queries to the database avoided reading the already loaded variants of each batch at once. */
+    private long savedFetchRoundTrips;
+
     /** Time in nanoseconds into inserting the new variants. */
     private long newVariantsNanoTime;
     /** Time in nanoseconds into updating the existing variants. */
     private long existingVariantsNanoTime;
     /** Time in nanoseconds into updating the missing variants. */
     private long fillGapsNanoTime;
+    /** Time in nanoseconds into merging the variants from the stage collection. */
+    private long mergeNanoTime;
 
     /** List of Genotypes seen in all loaded variants. */
     private Set<String> genotypes;
@@ -119,6 +126,9 @@ public class MongoDBVariantWriteResult {
             newVariantsNanoTime += other.newVariantsNanoTime;
             existingVariantsNanoTime += other.existingVariantsNanoTime;
             fillGapsNanoTime += other.fillGapsNanoTime;
+            mergeNanoTime += other.mergeNanoTime;
+            fetchedVariants += other.fetchedVariants;
+            savedFetchRoundTrips += other.savedFetchRoundTrips;
             genotypes.addAll(other.genotypes);
         }
     }
@@ -204,6 +214,33 @@ public class MongoDBVariantWriteResult {
         return this;
     }
 
+    public long getMergeNanoTime() {
+        return mergeNanoTime;
+    }
+
+    public MongoDBVariantWriteResult setMergeNanoTime(long mergeNanoTime) {
+        this.mergeNanoTime = mergeNanoTime;
+        return this;
+    }
+
+    public long getFetchedVariants() {
+        return fetchedVariants;
+    }
+
+    public MongoDBVariantWriteResult setFetchedVariants(long fetchedVariants) {
+        this.fetchedVariants = fetchedVariants;
+        return this;
+    }
+
+    public long getSavedFetchRoundTrips() {
+        return savedFetchRoundTrips;
+    }
+
+    public MongoDBVariantWriteResult setSavedFetchRoundTrips(long savedFetchRoundTrips) {
+        this.savedFetchRoundTrips = savedFetchRoundTrips;
+        return this;
+    }
+
     public Set<String> getGenotypes() {
         return genotypes;
     }
@@ -231,6 +268,9 @@ public class MongoDBVariantWriteResult {
                 && newVariantsNanoTime == that.newVariantsNanoTime
                 && existingVariantsNanoTime == that.existingVariantsNanoTime
                 && fillGapsNanoTime == that.fillGapsNanoTime
+                && mergeNanoTime == that.mergeNanoTime
+                && fetchedVariants == that.fetchedVariants
+                && savedFetchRoundTrips == that.savedFetchRoundTrips
                 && Objects.equals(genotypes, that.genotypes);
     }
 
@@ -246,6 +286,9 @@ public class MongoDBVariantWriteResult {
                 newVariantsNanoTime,
                 existingVariantsNanoTime,
                 fillGapsNanoTime,
+                mergeNanoTime,
+                fetchedVariants,
+                savedFetchRoundTrips,
                 genotypes);
     }
 
@@ -261,6 +304,9 @@ public class MongoDBVariantWriteResult {
                 + ", newVariantsTime=" + newVariantsNanoTime / 1000000000.0 + "s"
                 + ", existingVariantsTime=" + existingVariantsNanoTime / 1000000000.0 + "s"
                 + ", fillGapsTime=" + fillGapsNanoTime / 1000000000.0 + "s"
+                + ", mergeTime=" + mergeNanoTime / 1000000000.0 + "s"
+                + ", fetchedVariants:" + fetchedVariants
+                + ", savedFetchRoundTrips:" + savedFetchRoundTrips
                 + '}';
     }
 
@@ -275,7 +321,10 @@ public class MongoDBVariantWriteResult {
                 + "\tnonInsertedVariants:" + nonInsertedVariants + ",\n"
                 + "\tnewVariantsTime:" + newVariantsNanoTime / 1000000000.0 + ",\n"
                 + "\texistingVariantsTime:" + existingVariantsNanoTime / 1000000000.0 + ",\n"
-                + "\tfillGapsTime:" + fillGapsNanoTime / 1000000000.0 + "\n"
+                + "\tfillGapsTime:" + fillGapsNanoTime / 1000000000.0 + ",\n"
+                + "\tmergeTime:" + mergeNanoTime / 1000000000.0 + ",\n"
+                + "\tfetchedVariants:" + fetchedVariants + ",\n"
+                + "\tsavedFetchRoundTrips:" + savedFetchRoundTrips + "\n"
                 + '}';
     }
 
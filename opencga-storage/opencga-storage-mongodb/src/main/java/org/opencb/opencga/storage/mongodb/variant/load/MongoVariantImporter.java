@@ -27,6 +27,7 @@ import org.opencb.biodata.models.variant.metadata.VariantMetadata;
 import org.opencb.biodata.models.variant.metadata.VariantStudyMetadata;
 import org.opencb.biodata.tools.variant.metadata.VariantMetadataManager;
 import org.opencb.commons.ProgressLogger;
+import org.opencb.commons.datastore.core.ObjectMap;
 import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.commons.datastore.mongodb.MongoDBCollection;
 import org.opencb.commons.io.DataWriter;
@@ -35,6 +36,7 @@ import org.opencb.opencga.storage.core.exceptions.StorageEngineException;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.variant.io.VariantImporter;
 import org.opencb.opencga.storage.core.variant.io.avro.VariantAvroReader;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.GenotypesEncoding;
 import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBAdaptor;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToSamplesConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter;
@@ -49,6 +51,8 @@ import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
+import static org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions.GENOTYPES_ENCODING;
+
 /**
  * Created on 07/12/16.
  *
@@ -57,10 +61,12 @@ import java.util.stream.Collectors;
 public class MongoVariantImporter extends VariantImporter {
 
     private final MongoDBCollection variantsCollection;
+    private final ObjectMap options;
 
-    public MongoVariantImporter(VariantMongoDBAdaptor dbAdaptor) {
+    public MongoVariantImporter(VariantMongoDBAdaptor dbAdaptor, ObjectMap options) {
         super(dbAdaptor);
         this.variantsCollection = dbAdaptor.getVariantsCollection();
+        this.options = options;
     }
 
 
@@ -70,6 +76,19 @@ public class MongoVariantImporter extends VariantImporter {
 
         Path input = Paths.get(inputUri.getPath());
 
+        for (StudyConfiguration sc : studyConfigurations) {
+            // Same criteria as the load. The encoding is selected for the study the first time, and never changes.
+            GenotypesEncoding genotypesEncoding = GenotypesEncoding.from(options);
+            StudyConfiguration storedStudyConfiguration = dbAdaptor.getStudyConfigurationManager()
+                    .lockAndUpdate(sc.getStudyId(), storedSc -> {
+                        if (!storedSc.getAttributes().containsKey(GENOTYPES_ENCODING.key())) {
+                            storedSc.getAttributes().put(GENOTYPES_ENCODING.key(), genotypesEncoding);
+                        }
+                        return storedSc;
+                    });
+            sc.getAttributes().put(GENOTYPES_ENCODING.key(), GenotypesEncoding.from(storedStudyConfiguration.getAttributes()));
+        }
+
         Map<String, LinkedHashMap<String, Integer>> samplesPositions = new HashMap<>();
         for (StudyConfiguration sc : studyConfigurations) {
             LinkedHashMap<String, Integer> map = StudyConfiguration.getSortedIndexedSamplesPosition(sc);
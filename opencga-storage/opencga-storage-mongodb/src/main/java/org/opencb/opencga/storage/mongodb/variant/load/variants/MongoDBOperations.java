@@ -53,9 +53,67 @@ public class MongoDBOperations {
     /** Missing variants. See A3) . No fill gaps needed*/
     private long missingVariantsNoFillGaps = 0;
 
+    /** Already loaded variants read from the database to merge overlapping regions. */
+    private int fetchedVariants = 0;
+    /** Queries to the database avoided reading all the already loaded variants of the batch at once. */
+    private int savedFetchRoundTrips = 0;
+
+    /** Time in nanoseconds merging the variants from the stage collection. */
+    private long mergeNanoTime = 0;
+
     public MongoDBOperations() {
     }
 
+    /**
+     * Add all the operations from other MongoDBOperations, to be executed in the same bulk writes.
+     *
+     * @param other Other operations
+     * @return this
+     */
+    MongoDBOperations addAll(MongoDBOperations other) {
+        newStudy.ids.addAll(other.newStudy.ids);
+        newStudy.queries.addAll(other.newStudy.queries);
+        newStudy.updates.addAll(other.newStudy.updates);
+        newStudy.variants.addAll(other.newStudy.variants);
+        existingStudy.ids.addAll(other.existingStudy.ids);
+        existingStudy.queries.addAll(other.existingStudy.queries);
+        existingStudy.updates.addAll(other.existingStudy.updates);
+        secondaryAlternates.ids.addAll(other.secondaryAlternates.ids);
+        secondaryAlternates.queries.addAll(other.secondaryAlternates.queries);
+        secondaryAlternates.updates.addAll(other.secondaryAlternates.updates);
+        genotypes.addAll(other.genotypes);
+        documentsToCleanStudies.addAll(other.documentsToCleanStudies);
+        documentsToCleanFiles.addAll(other.documentsToCleanFiles);
+        skipped += other.skipped;
+        nonInserted += other.nonInserted;
+        overlappedVariants += other.overlappedVariants;
+        missingVariants += other.missingVariants;
+        missingVariantsNoFillGaps += other.missingVariantsNoFillGaps;
+        fetchedVariants += other.fetchedVariants;
+        savedFetchRoundTrips += other.savedFetchRoundTrips;
+        mergeNanoTime += other.mergeNanoTime;
+        return this;
+    }
+
+    /**
+     * @return Number of write operations to execute.
+     */
+    int size() {
+        return newStudy.queries.size() + existingStudy.queries.size() + secondaryAlternates.queries.size();
+    }
+
+    /**
+     * @return Ids of all the documents modified by this operations, in any collection.
+     */
+    Set<String> getIds() {
+        Set<String> ids = new HashSet<>(newStudy.ids);
+        ids.addAll(existingStudy.ids);
+        ids.addAll(secondaryAlternates.ids);
+        ids.addAll(documentsToCleanStudies);
+        ids.addAll(documentsToCleanFiles);
+        return ids;
+    }
+
     NewStudy getNewStudy() {
         return newStudy;
     }
@@ -117,6 +175,33 @@ public class MongoDBOperations {
         return this;
     }
 
+    int getFetchedVariants() {
+        return fetchedVariants;
+    }
+
+    MongoDBOperations setFetchedVariants(int fetchedVariants) {
+        this.fetchedVariants = fetchedVariants;
+        return this;
+    }
+
+    int getSavedFetchRoundTrips() {
+        return savedFetchRoundTrips;
+    }
+
+    MongoDBOperations setSavedFetchRoundTrips(int savedFetchRoundTrips) {
+        this.savedFetchRoundTrips = savedFetchRoundTrips;
+        return this;
+    }
+
+    long getMergeNanoTime() {
+        return mergeNanoTime;
+    }
+
+    MongoDBOperations setMergeNanoTime(long mergeNanoTime) {
+        this.mergeNanoTime = mergeNanoTime;
+        return this;
+    }
+
     public Set<String> getGenotypes() {
         return genotypes;
     }
@@ -36,6 +36,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.mongodb.client.model.Filters.*;
 import static com.mongodb.client.model.Updates.*;
@@ -58,6 +64,10 @@ import static org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVaria
  *   Sets {studyId}.{fileId} fields to NULL.
  *   Do NOT remove ($unset) the field. See {@link MongoDBVariantMerger#alreadyProcessedStageDocument}
  *
+ * If more than one write in flight is allowed, consecutive batches are coalesced in bigger bulk writes, sized
+ * from the observed write latency, and executed asynchronously. Two bulk writes running at the same time never
+ * modify the same document.
+ *
  * @author Jacobo Coll &lt;jacobo167@gmail.com&gt;
  */
 public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations> {
@@ -86,9 +96,49 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
     private final Bson cleanStageDuplicated;
     private final Bson cleanStage;
 
+    /** Max number of bulk writes running at the same time. If 1, the operations are written synchronously. */
+    private final int maxInFlight;
+    private final long targetLatencyNanos;
+    private final int maxBatchSize;
+    private ExecutorService writeExecutor;
+    private Semaphore writePermits;
+    /** Ids of the documents being modified by the bulk writes in flight. */
+    private final Set<String> inFlightIds = new HashSet<>();
+    private final AtomicReference<RuntimeException> writeFailure = new AtomicReference<>();
+    private final AtomicLong writeNanoTime = new AtomicLong();
+    /** Operations waiting to be written, and the ids of the documents they modify. */
+    private MongoDBOperations pendingOps;
+    private Set<String> pendingIds;
+    /** Number of operations to put in the next bulk write. 0 until the first write finishes. */
+    private volatile int targetBatchSize = 0;
+
     public MongoDBVariantMergeLoader(MongoDBCollection variantsCollection, MongoDBCollection stageCollection,
                                      MongoDBCollection studiesCollection, StudyConfiguration studyConfiguration, List<Integer> fileIds,
                                      boolean resume, boolean cleanWhileLoading, ProgressLogger progressLogger) {
+        this(variantsCollection, stageCollection, studiesCollection, studyConfiguration, fileIds, resume, cleanWhileLoading,
+                progressLogger, 1, 0, 0);
+    }
+
+    /**
+     * @param variantsCollection Variants collection
+     * @param stageCollection    Stage collection
+     * @param studiesCollection  Studies collection
+     * @param studyConfiguration StudyConfiguration
+     * @param fileIds            Files to be loaded
+     * @param resume             Resume a failed load
+     * @param cleanWhileLoading  Clean the stage collection while loading
+     * @param progressLogger     Progress logger. May be null
+     * @param maxInFlight        Max number of bulk writes running at the same time
+     * @param targetLatency      Target time in milliseconds for each bulk write
+     * @param maxBatchSize       Max number of operations in each bulk write
+     */
+    public MongoDBVariantMergeLoader(MongoDBCollection variantsCollection, MongoDBCollection stageCollection,
+                                     MongoDBCollection studiesCollection, StudyConfiguration studyConfiguration, List<Integer> fileIds,
+                                     boolean resume, boolean cleanWhileLoading, ProgressLogger progressLogger,
+                                     int maxInFlight, long targetLatency, int maxBatchSize) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(targetLatency);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
         this.progressLogger = progressLogger;
         this.variantsCollection = variantsCollection;
         this.stageCollection = stageCollection;
@@ -121,17 +171,144 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
     }
 
     @Override
-    public boolean write(List<MongoDBOperations> batch) {
+    public synchronized boolean write(List<MongoDBOperations> batch) {
+        checkWriteFailure();
         for (MongoDBOperations mongoDBOperations : batch) {
-            executeMongoDBOperations(mongoDBOperations);
+            if (maxInFlight == 1) {
+                long start = System.nanoTime();
+                executeMongoDBOperations(mongoDBOperations);
+                writeNanoTime.addAndGet(System.nanoTime() - start);
+            } else {
+                Set<String> ids = mongoDBOperations.getIds();
+                if (pendingOps != null && !Collections.disjoint(pendingIds, ids)) {
+                    // Do not mix two operations over the same document in one bulk write
+                    flush();
+                }
+                if (pendingOps == null) {
+                    pendingOps = mongoDBOperations;
+                    pendingIds = ids;
+                } else {
+                    pendingOps.addAll(mongoDBOperations);
+                    pendingIds.addAll(ids);
+                }
+                if (pendingOps.size() >= targetBatchSize) {
+                    flush();
+                }
+            }
         }
         return true;
     }
 
+    /**
+     * Submit the pending operations to be written asynchronously.
+     * Blocks while there are too many writes in flight, or while any in flight write is modifying the same documents.
+     */
+    private void flush() {
+        if (pendingOps == null) {
+            return;
+        }
+        MongoDBOperations mongoDBOps = pendingOps;
+        Set<String> ids = pendingIds;
+        pendingOps = null;
+        pendingIds = null;
+
+        if (writeExecutor == null) {
+            writeExecutor = Executors.newFixedThreadPool(maxInFlight, r -> {
+                Thread thread = new Thread(r, "merge-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            writePermits = new Semaphore(maxInFlight);
+        }
+        try {
+            writePermits.acquire();
+            synchronized (inFlightIds) {
+                while (!Collections.disjoint(inFlightIds, ids)) {
+                    inFlightIds.wait();
+                }
+                inFlightIds.addAll(ids);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        writeExecutor.submit(() -> {
+            try {
+                // Skip remaining writes after the first failure
+                if (writeFailure.get() == null) {
+                    long start = System.nanoTime();
+                    executeMongoDBOperations(mongoDBOps);
+                    long nanoTime = System.nanoTime() - start;
+                    writeNanoTime.addAndGet(nanoTime);
+                    updateTargetBatchSize(mongoDBOps.size(), nanoTime);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Error writing variants", e);
+                writeFailure.compareAndSet(null, e);
+            } catch (Error e) {
+                writeFailure.compareAndSet(null, new RuntimeException(e));
+                throw e;
+            } finally {
+                synchronized (inFlightIds) {
+                    inFlightIds.removeAll(ids);
+                    inFlightIds.notifyAll();
+                }
+                writePermits.release();
+            }
+        });
+    }
+
+    /**
+     * Adjust the size of the next bulk writes to the rate observed in the last one.
+     * The size of the documents is not measured, but bigger documents are reflected in a higher latency.
+     *
+     * @param numOperations Number of operations written
+     * @param nanoTime      Time spent writing the operations
+     */
+    private void updateTargetBatchSize(int numOperations, long nanoTime) {
+        if (numOperations == 0 || nanoTime <= 0) {
+            return;
+        }
+        // Number of operations that could have been written within the target latency
+        long expected = numOperations * targetLatencyNanos / nanoTime;
+        int newTarget = (int) Math.max(1, Math.min(maxBatchSize, expected));
+        int currentTarget = targetBatchSize;
+        // Smooth the changes with the previous target
+        targetBatchSize = currentTarget == 0 ? newTarget : (currentTarget + newTarget) / 2;
+        logger.debug("Bulk write of {} operations in {}ms. New target batch size: {}", numOperations,
+                TimeUnit.NANOSECONDS.toMillis(nanoTime), targetBatchSize);
+    }
+
+    /**
+     * Wait for all the writes in flight to finish.
+     */
+    private synchronized void drain() {
+        if (writeExecutor != null) {
+            flush();
+            writePermits.acquireUninterruptibly(maxInFlight);
+            writePermits.release(maxInFlight);
+        }
+        checkWriteFailure();
+    }
+
+    private void checkWriteFailure() {
+        RuntimeException e = writeFailure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+
     public MongoDBVariantWriteResult getResult() {
         return result;
     }
 
+    /**
+     * @return Time in nanoseconds writing operations in the database. Concurrent writes add up.
+     */
+    public long getWriteNanoTime() {
+        return writeNanoTime.get();
+    }
+
     /**
      * Execute the set of mongoDB operations.
      *
@@ -163,7 +340,9 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
         MongoDBVariantWriteResult writeResult = new MongoDBVariantWriteResult(newVariants,
                 updatesNewStudyExistingVariant + updatesWithDataExistingStudy, mongoDBOps.getMissingVariants(),
                 mongoDBOps.getOverlappedVariants(), mongoDBOps.getSkipped(), mongoDBOps.getNonInserted(), newVariantsTime,
-                existingVariants.getNanoTime(), fillGapsVariants.getNanoTime(), mongoDBOps.getGenotypes());
+                existingVariants.getNanoTime(), fillGapsVariants.getNanoTime(), mongoDBOps.getGenotypes())
+                .setFetchedVariants(mongoDBOps.getFetchedVariants())
+                .setSavedFetchRoundTrips(mongoDBOps.getSavedFetchRoundTrips());
 
         boolean updateGenotypes;
         synchronized (result) {
@@ -348,9 +527,18 @@ public class MongoDBVariantMergeLoader implements DataWriter<MongoDBOperations>
 
     @Override
     public boolean post() {
+        drain();
         VariantMongoDBAdaptor.createIndexes(new QueryOptions(), variantsCollection);
         return true;
     }
+
+    @Override
+    public boolean close() {
+        if (writeExecutor != null) {
+            writeExecutor.shutdown();
+        }
+        return true;
+    }
 //    protected void onInsertError(MongoDBOperations mongoDBOps, BulkWriteResult writeResult) {
 //        logger.error("(Inserts = " + mongoDBOps.inserts.size() + ") "
 //                + "!= (InsertedCount = " + writeResult.getInsertedCount() + ")");
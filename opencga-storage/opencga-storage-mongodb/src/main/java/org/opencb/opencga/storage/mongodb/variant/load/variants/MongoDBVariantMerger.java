@@ -26,6 +26,7 @@ import org.opencb.biodata.models.variant.StudyEntry;
 import org.opencb.biodata.models.variant.Variant;
 import org.opencb.biodata.models.variant.avro.AlternateCoordinate;
 import org.opencb.biodata.models.variant.avro.FileEntry;
+import org.opencb.biodata.models.variant.avro.VariantAvro;
 import org.opencb.biodata.models.variant.avro.VariantType;
 import org.opencb.biodata.tools.variant.VariantNormalizer;
 import org.opencb.biodata.tools.variant.merge.VariantMerger;
@@ -38,10 +39,12 @@ import org.opencb.opencga.storage.core.variant.VariantStorageEngine;
 import org.opencb.opencga.storage.core.variant.adaptors.GenotypeClass;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam;
+import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.GenotypesEncoding;
 import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStoragePipeline;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToSamplesConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToStudyVariantEntryConverter;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.SampleBitmapUtils;
 import org.opencb.opencga.storage.mongodb.variant.converters.stage.StageDocumentToVariantConverter;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader;
 import org.slf4j.Logger;
@@ -239,6 +242,7 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
     private final DocumentToStudyVariantEntryConverter studyConverter;
     private final StudyConfiguration studyConfiguration;
     private final boolean excludeGenotypes;
+    private final GenotypesEncoding genotypesEncoding;
     private final boolean addUnknownGenotypes;
 
     // Variables that must be aware of concurrent modification
@@ -252,6 +256,8 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
     private boolean resume;
 
     private final int release;
+    /** Already loaded variants read for the batch being merged by each thread. */
+    private final ThreadLocal<LoadedVariants> loadedVariants = new ThreadLocal<>();
 
     public MongoDBVariantMerger(VariantDBAdaptor dbAdaptor, StudyConfiguration studyConfiguration, List<Integer> fileIds,
                                 Set<Integer> indexedFiles, boolean resume, boolean ignoreOverlapping, int release) {
@@ -261,6 +267,7 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
         this.indexedFiles = Objects.requireNonNull(indexedFiles);
 
         excludeGenotypes = getExcludeGenotypes(studyConfiguration);
+        genotypesEncoding = GenotypesEncoding.from(studyConfiguration.getAttributes());
         format = buildFormat(studyConfiguration);
         indexedSamples = Collections.unmodifiableList(buildIndexedSamplesList(fileIds));
         studyId = studyConfiguration.getStudyId();
@@ -295,9 +302,18 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
     }
 
     public MongoDBOperations merge(List<Document> variants) {
+        long start = System.nanoTime();
+        MongoDBOperations mongoDBOps = mergeVariants(variants);
+        return mongoDBOps.setMergeNanoTime(System.nanoTime() - start);
+    }
+
+    private MongoDBOperations mergeVariants(List<Document> variants) {
 
         // Set of operations to be executed in the Database
         MongoDBOperations mongoDBOps = new MongoDBOperations();
+        // Variants and overlapping regions to process. Do not process until all the batch is read, so the
+        // already loaded variants required to merge the overlapping regions can be read with one single query.
+        List<PendingVariants> pendingVariants = new ArrayList<>(variants.size());
 
         Variant previousVariant = null;
         Document previousDocument = null;
@@ -315,7 +331,7 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                 if (variant.isSV()) {
                     // Directly process all Structural Variants
                     // Do never check if a SV overlaps with any other variant
-                    processVariants(null, document, variant, mongoDBOps);
+                    pendingVariants.add(new PendingVariants(null, document, variant));
                 } else {
                     previousDocument = document;
                     previousVariant = variant;
@@ -337,7 +353,7 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                 if (variant.isSV()) {
                     // Directly process all Structural Variants
                     // Do never check if a SV overlaps with any other variant
-                    processVariants(null, document, variant, mongoDBOps);
+                    pendingVariants.add(new PendingVariants(null, document, variant));
                     continue;
                 }
 
@@ -355,7 +371,7 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                     end = Math.max(end, getEnd(variant));
                 } else {
                     // If the current variant does not overlap with the previous variant, we can load the previous variant (or region)
-                    processVariants(overlappedVariants, previousDocument, previousVariant, mongoDBOps);
+                    pendingVariants.add(new PendingVariants(overlappedVariants, previousDocument, previousVariant));
                     overlappedVariants = null;
 
                     // Reset region
@@ -371,7 +387,19 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
         }
 
         // Process remaining variants
-        processVariants(overlappedVariants, previousDocument, previousVariant, mongoDBOps);
+        pendingVariants.add(new PendingVariants(overlappedVariants, previousDocument, previousVariant));
+
+        LoadedVariants loadedVariants = fetchLoadedVariants(pendingVariants);
+        this.loadedVariants.set(loadedVariants);
+        try {
+            for (PendingVariants pending : pendingVariants) {
+                processVariants(pending.overlappedVariants, pending.document, pending.variant, mongoDBOps);
+            }
+        } finally {
+            this.loadedVariants.remove();
+        }
+        mongoDBOps.setFetchedVariants(loadedVariants.lookups);
+        mongoDBOps.setSavedFetchRoundTrips(loadedVariants.getSavedRoundTrips());
 
 //        // Execute MongoDB Operations
 //        return executeMongoDBOperations(mongoDBOps);
@@ -379,6 +407,70 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
         return mongoDBOps;
     }
 
+    /**
+     * Read from the database, in one single query, all the already loaded variants required to merge
+     * the overlapping regions of the batch. See {@link #mergeOverlappedVariants}.
+     *
+     * @param pendingVariants   Variants and overlapping regions of the batch
+     * @return                  Already loaded variants, by variant id
+     */
+    private LoadedVariants fetchLoadedVariants(List<PendingVariants> pendingVariants) {
+        LoadedVariants loadedVariants = new LoadedVariants();
+        if (!checkOverlappings || indexedFiles.isEmpty()) {
+            return loadedVariants;
+        }
+        Set<String> ids = new LinkedHashSet<>();
+        for (PendingVariants pending : pendingVariants) {
+            List<Document> overlappedVariants = pending.overlappedVariants;
+            if (overlappedVariants == null || overlappedVariants.stream().anyMatch(this::alreadyProcessedStageDocument)) {
+                continue;
+            }
+            for (Document mainDocument : overlappedVariants) {
+                Document study = mainDocument.get(studyIdStr, Document.class);
+                if (isNewStudy(study) && !hasValidData(study)) {
+                    // Nothing to merge. See processOverlappedVariants
+                    continue;
+                }
+                Variant variant = getVariantToFetch(STAGE_TO_VARIANT_CONVERTER.convertToDataModelType(mainDocument), overlappedVariants);
+                if (variant != null) {
+                    ids.add(variant.toString());
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            loadedVariants.queries++;
+            for (Variant variant : fetchVariants(ids).getResult()) {
+                loadedVariants.variants.put(variant.toString(), variant);
+            }
+        }
+        return loadedVariants;
+    }
+
+    /**
+     * Get the already loaded variant needed to merge the main variant with its overlapping variants, if any.
+     * Must match the criteria used at {@link #mergeOverlappedVariants}.
+     *
+     * @param mainVariant           Main variant
+     * @param overlappedVariants    Overlapping documents from Stage collection.
+     * @return                      First variant not new in the study, if the overlapping region is partially new. Else, null.
+     */
+    private Variant getVariantToFetch(Variant mainVariant, List<Document> overlappedVariants) {
+        boolean newOverlappingRegion = false;
+        Variant variantToFetch = null;
+        for (Document document : overlappedVariants) {
+            Variant variant = STAGE_TO_VARIANT_CONVERTER.convertToDataModelType(document);
+            if (!mainVariant.overlapWith(variant, true)) {
+                continue;
+            }
+            if (isNewStudy(document.get(studyIdStr, Document.class))) {
+                newOverlappingRegion = true;
+            } else if (variantToFetch == null) {
+                variantToFetch = variant;
+            }
+        }
+        return newOverlappingRegion ? variantToFetch : null;
+    }
+
     public void processVariants(List<Document> overlappedVariants, Document document, Variant variant,
                                 MongoDBOperations mongoDBOps) {
         try {
@@ -743,22 +835,27 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
             if (!mainVariant.overlapWith(STAGE_TO_VARIANT_CONVERTER.convertToDataModelType(document), true)) {
                 continue;
             }
-            Document study = document.get(studyIdStr, Document.class);
-            boolean existingFiles = false;
-            for (Integer fileId : fileIds) {
-                List<Binary> files = getListFromDocument(study, fileId.toString());
-                if (files != null && files.size() == 1) {
-                    existingFiles = true;
-                    break;
-                }
-            }
-            if (existingFiles) {
+            if (hasValidData(document.get(studyIdStr, Document.class))) {
                 variantsWithValidData++;
             }
         }
         return variantsWithValidData;
     }
 
+    /**
+     * @param study Study document from the stage collection
+     * @return      If there is at least one file not duplicated with information
+     */
+    private boolean hasValidData(Document study) {
+        for (Integer fileId : fileIds) {
+            List<Binary> files = getListFromDocument(study, fileId.toString());
+            if (files != null && files.size() == 1) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Given a list of overlapped documents from the stage collection, merge resolving the overlapping positions.
      *
@@ -1006,21 +1103,43 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
 
     /**
      * Reads the given variant from the 'variants' collection.
+     * Variants already read for the current batch are copied instead of read again.
+     *
+     * @param variant Variant to read
+     * @return  Query result of the query
+     */
+    private QueryResult<Variant> fetchVariant(Variant variant) {
+        String id = variant.toString();
+        LoadedVariants loadedVariants = this.loadedVariants.get();
+        if (loadedVariants != null) {
+            loadedVariants.lookups++;
+            Variant loadedVariant = loadedVariants.variants.get(id);
+            if (loadedVariant != null) {
+                // The VariantMerger may modify the variant. Return a copy.
+                return new QueryResult<>(id, 0, 1, 1, "", "", Collections.singletonList(copyVariant(loadedVariant)));
+            }
+            loadedVariants.queries++;
+        }
+        return fetchVariants(Collections.singletonList(id));
+    }
+
+    /**
+     * Reads the given variants from the 'variants' collection.
      *
      * It may happen that, 3s of default timeout, is not enough if there is a
      * lot of writes at the same time in the "variants" collection. Also add a
      * retry, just in case.
-     * @param variant Variant to read
+     * @param ids Variants to read
      * @return  Query result of the query
      */
-    private QueryResult<Variant> fetchVariant(Variant variant) {
+    private QueryResult<Variant> fetchVariants(Collection<String> ids) {
         QueryResult<Variant> queryResult = null;
         int maxNumFails = 2;
         int fails = 0;
         while (queryResult == null) {
             try {
                 queryResult = dbAdaptor.get(new Query()
-                                .append(VariantQueryParam.ID.key(), variant.toString())
+                                .append(VariantQueryParam.ID.key(), new ArrayList<>(ids))
                                 .append(VariantQueryParam.UNKNOWN_GENOTYPE.key(), ".")
                                 .append(VariantQueryParam.INCLUDE_STUDY.key(), studyId),
                         new QueryOptions(QueryOptions.TIMEOUT, 30_000));
@@ -1036,6 +1155,30 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
         return queryResult;
     }
 
+    /**
+     * Encode the lists of sampleIds for each genotype as bitmaps.
+     *
+     * @param gts   Map from genotype to list of sampleIds
+     * @return      Map from genotype to bitmap of sampleIds
+     * @see SampleBitmapUtils
+     */
+    @SuppressWarnings("unchecked")
+    private static Document toGenotypeBitmaps(Document gts) {
+        Document genotypeBitmaps = new Document();
+        for (Map.Entry<String, Object> entry : gts.entrySet()) {
+            genotypeBitmaps.append(entry.getKey(), new Binary(SampleBitmapUtils.toBitmap((Collection<Integer>) entry.getValue())));
+        }
+        return genotypeBitmaps;
+    }
+
+    private static Variant copyVariant(Variant variant) {
+        Variant copy = new Variant(VariantAvro.newBuilder(variant.getImpl()).build());
+        for (int i = 0; i < variant.getStudies().size(); i++) {
+            copy.getStudies().get(i).setSamplesPosition(variant.getStudies().get(i).getSamplesPosition());
+        }
+        return copy;
+    }
+
     /**
      * Transform the set of genotypes and file objects into a set of mongodb operations.
      *
@@ -1067,7 +1210,11 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                         .append(FILES_FIELD, fileDocuments);
 
                 if (!excludeGenotypes) {
-                    studyDocument.append(GENOTYPES_FIELD, gts);
+                    if (genotypesEncoding == GenotypesEncoding.BITMAP) {
+                        studyDocument.append(GENOTYPE_BITMAPS_FIELD, Collections.singletonList(toGenotypeBitmaps(gts)));
+                    } else {
+                        studyDocument.append(GENOTYPES_FIELD, gts);
+                    }
                 }
 
                 if (secondaryAlternates != null && !secondaryAlternates.isEmpty()) {
@@ -1109,7 +1256,16 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
                 mergeUpdates.add(addEachToSet(IDS_FIELD, ids));
             }
 
-            if (!excludeGenotypes) {
+            if (!excludeGenotypes && genotypesEncoding == GenotypesEncoding.BITMAP) {
+                if (!gts.isEmpty()) {
+                    Document genotypeBitmaps = toGenotypeBitmaps(gts);
+                    if (resume) {
+                        mergeUpdates.add(addToSet(STUDIES_FIELD + ".$." + GENOTYPE_BITMAPS_FIELD, genotypeBitmaps));
+                    } else {
+                        mergeUpdates.add(push(STUDIES_FIELD + ".$." + GENOTYPE_BITMAPS_FIELD, genotypeBitmaps));
+                    }
+                }
+            } else if (!excludeGenotypes) {
                 for (String gt : gts.keySet()) {
                     List sampleIds = getListFromDocument(gts, gt);
                     if (resume) {
@@ -1322,4 +1478,34 @@ public class MongoDBVariantMerger implements ParallelTaskRunner.Task<Document, M
         return studyConfiguration.getAttributes().getBoolean(VariantStorageEngine.Options.EXCLUDE_GENOTYPES.key(),
                 VariantStorageEngine.Options.EXCLUDE_GENOTYPES.defaultValue());
     }
+
+    private static final class PendingVariants {
+        private final List<Document> overlappedVariants;
+        private final Document document;
+        private final Variant variant;
+
+        private PendingVariants(List<Document> overlappedVariants, Document document, Variant variant) {
+            this.overlappedVariants = overlappedVariants;
+            this.document = document;
+            this.variant = variant;
+        }
+    }
+
+    private static final class LoadedVariants {
+        private final Map<String, Variant> variants = new HashMap<>();
+        /** Number of variants requested. Each one used to be a query to the database. */
+        private int lookups = 0;
+        /** Number of queries executed. */
+        private int queries = 0;
+
+        /**
+         * Queries saved by reading all the variants of the batch at once. The batch query may not
+         * be used at all (e.g. all the lookups were overlapping regions already processed).
+         *
+         * @return number of saved round trips, never negative
+         */
+        private int getSavedRoundTrips() {
+            return Math.max(0, lookups - queries);
+        }
+    }
 }
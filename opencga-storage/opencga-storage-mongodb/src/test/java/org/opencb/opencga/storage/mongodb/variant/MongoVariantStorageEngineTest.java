@@ -46,6 +46,7 @@ import org.opencb.opencga.storage.core.variant.adaptors.VariantDBAdaptor;
 import org.opencb.opencga.storage.mongodb.variant.MongoDBVariantStorageEngine.MongoDBVariantOptions;
 import org.opencb.opencga.storage.mongodb.variant.adaptors.VariantMongoDBAdaptor;
 import org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVariantConverter;
+import org.opencb.opencga.storage.mongodb.variant.converters.SampleBitmapUtils;
 import org.opencb.opencga.storage.mongodb.variant.exceptions.MongoVariantStorageEngineException;
 import org.opencb.opencga.storage.mongodb.variant.load.stage.MongoDBVariantStageLoader;
 import org.opencb.opencga.storage.mongodb.variant.protobuf.VariantMongoDBProto;
@@ -1129,6 +1130,43 @@ public class MongoVariantStorageEngineTest extends VariantStorageEngineTest impl
         removeFileTest(new QueryOptions(VariantStorageEngine.Options.MERGE_MODE.key(), VariantStorageEngine.MergeMode.BASIC));
     }
 
+    @Test
+    public void removeFileGenotypeBitmapsTest() throws Exception {
+        StudyConfiguration studyConfiguration = new StudyConfiguration(1, "Study1");
+        ObjectMap options = new ObjectMap(MongoDBVariantOptions.GENOTYPES_ENCODING.key(), MongoDBVariantStorageEngine.GenotypesEncoding.BITMAP)
+                .append(VariantStorageEngine.Options.STUDY_TYPE.key(), SampleSetType.CONTROL_SET)
+                .append(VariantStorageEngine.Options.CALCULATE_STATS.key(), false)
+                .append(VariantStorageEngine.Options.ANNOTATE.key(), false);
+        runDefaultETL(getResourceUri("1000g_batches/1-500.filtered.10k.chr22.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz"),
+                variantStorageEngine, studyConfiguration, options.append(VariantStorageEngine.Options.FILE_ID.key(), 1));
+        runDefaultETL(getResourceUri("1000g_batches/501-1000.filtered.10k.chr22.phase3_shapeit2_mvncall_integrated_v5.20130502.genotypes.vcf.gz"),
+                variantStorageEngine, studyConfiguration, options.append(VariantStorageEngine.Options.FILE_ID.key(), 2));
+        Set<Integer> removedSamples = studyConfiguration.getSamplesInFiles().get(2);
+        Set<Integer> otherSamples = studyConfiguration.getSamplesInFiles().get(1);
+
+        variantStorageEngine.removeFile(studyConfiguration.getStudyName(), 2);
+
+        int variantsWithGenotypes = 0;
+        for (Document document : getVariantStorageEngine().getDBAdaptor().getVariantsCollection().find(new Document(), new QueryOptions()).getResult()) {
+            for (Document study : (List<Document>) document.get(DocumentToVariantConverter.STUDIES_FIELD, List.class)) {
+                assertNull(study.get(GENOTYPES_FIELD));
+                for (Document genotypeBitmaps : (List<Document>) study.get(GENOTYPE_BITMAPS_FIELD, List.class)) {
+                    assertFalse(genotypeBitmaps.isEmpty());
+                    for (Object bitmap : genotypeBitmaps.values()) {
+                        byte[] data = ((Binary) bitmap).getData();
+                        assertNotEquals(0, data.length);
+                        SampleBitmapUtils.forEach(data, sampleId -> {
+                            assertThat(removedSamples, not(hasItem(sampleId)));
+                            assertThat(otherSamples, hasItem(sampleId));
+                        });
+                    }
+                    variantsWithGenotypes++;
+                }
+            }
+        }
+        assertNotEquals(0, variantsWithGenotypes);
+    }
+
     @Override
     public void removeFileTest(QueryOptions params) throws Exception {
         MongoDBVariantStorageEngine variantStorageEngineExpected = getVariantStorageEngine("_expected");
@@ -93,7 +93,9 @@ public class VariantMongoDBWriterTest implements MongoDBVariantStorageTest {
         for (boolean cleanWhileLoading : new boolean[]{true, false}) {
             for (String defaultGenotype : Arrays.asList(UNKNOWN_GENOTYPE, "0/0")) {
                 for (boolean ignoreOverlapping : new boolean[]{true, false}) {
-                    parameters.add(new Object[]{cleanWhileLoading, defaultGenotype, ignoreOverlapping});
+                    for (int writeInFlight : new int[]{1, 3}) {
+                        parameters.add(new Object[]{cleanWhileLoading, defaultGenotype, ignoreOverlapping, writeInFlight});
+                    }
                 }
             }
         }
@@ -109,6 +111,9 @@ public class VariantMongoDBWriterTest implements MongoDBVariantStorageTest {
     @Parameter(2)
     public boolean ignoreOverlappingVariants;
 
+    @Parameter(3)
+    public int writeInFlight;
+
     @Before
     public void setUp() throws Exception {
         System.out.println("====================================================");
@@ -117,6 +122,7 @@ public class VariantMongoDBWriterTest implements MongoDBVariantStorageTest {
         System.out.println(" # defaultGenotype = " + defaultGenotype);
         System.out.println(" # overlappingVariants = " + !ignoreOverlappingVariants);
         System.out.println(" #     (ignoreOverlapping = " + ignoreOverlappingVariants + ')');
+        System.out.println(" # writeInFlight = " + writeInFlight);
         System.out.println("====================================================");
         ConsoleAppender stderr = (ConsoleAppender) LogManager.getRootLogger().getAppender("stderr");
         stderr.setThreshold(Level.toLevel("debug"));
@@ -208,6 +214,38 @@ public class VariantMongoDBWriterTest implements MongoDBVariantStorageTest {
 
     }
 
+    @Test
+    public void testFetchLoadedVariantsCounters() throws StorageEngineException {
+        assertEqualsResult(new MongoDBVariantWriteResult(3, 0, 0, 0, 0, 0), loadFile1());
+        MongoDBVariantWriteResult result = loadFile2();
+        assertEquals(0, result.getFetchedVariants());
+        assertEquals(0, result.getSavedFetchRoundTrips());
+
+        // Deletion overlapping with the variant 1000, already loaded in the study 2 from the file 2
+        List<Variant> file3Variants = createFile3Variants();
+        file3Variants.add(Variant.newBuilder("X", 1000, 1002, "AAA", "")
+                .setStudyId(metadata3.getId())
+                .setFileId(fileId3.toString())
+                .setFormat("GT", "DP", "GQX")
+                .addSample("NA00001.X", "0/1", "5", "0.7")
+                .addSample("NA00002.X", "0/0", "6", "0.7")
+                .addSample("NA00003.X", "1/0", "7", "0.7")
+                .addSample("NA00004.X", "0/0", "8", "0.7")
+                .build());
+        result = loadFile(studyConfiguration2, file3Variants, fileId3);
+
+        if (ignoreOverlappingVariants) {
+            assertEquals(0, result.getFetchedVariants());
+            assertEquals(0, result.getSavedFetchRoundTrips());
+        } else {
+            // Both the variant X:1000 and the new deletion need the loaded variant X:1000 to be merged.
+            // It is read only once, in the batch query, so one of the two lookups saves a round trip.
+            assertEquals(2, result.getFetchedVariants());
+            assertEquals(1, result.getSavedFetchRoundTrips());
+        }
+        assertEquals(6, dbAdaptor.get(query, QUERY_OPTIONS).getResult().size());
+    }
+
     @Test
     public void testInsertMultiFilesMultiMerge() throws StorageEngineException {
         List<Variant> allVariants;
@@ -499,10 +537,13 @@ public class VariantMongoDBWriterTest implements MongoDBVariantStorageTest {
                 studyConfiguration.getIndexedFiles(), false, ignoreOverlappingVariants, 1);
         boolean resume = false;
         MongoDBVariantMergeLoader variantLoader = new MongoDBVariantMergeLoader(variantsCollection, dbAdaptor.getStageCollection(studyConfiguration.getStudyId()),
-                dbAdaptor.getStudiesCollection(), studyConfiguration, fileIds, resume, cleanWhileLoading, null);
+                dbAdaptor.getStudiesCollection(), studyConfiguration, fileIds, resume, cleanWhileLoading, null,
+                writeInFlight, 10, 2);
 
         reader.open();
         reader.pre();
+        variantLoader.open();
+        variantLoader.pre();
 
         List<Document> batch = reader.read(100);
         while (batch != null && !batch.isEmpty()) {
@@ -513,6 +554,8 @@ public class VariantMongoDBWriterTest implements MongoDBVariantStorageTest {
 
         reader.post();
         reader.close();
+        variantLoader.post();
+        variantLoader.close();
 
         long cleanedDocuments = MongoDBVariantStageLoader.cleanStageCollection(stage, studyConfiguration.getStudyId(), fileIds, null, null);
         if (cleanWhileLoading) {
@@ -768,7 +811,8 @@ public class VariantMongoDBWriterTest implements MongoDBVariantStorageTest {
     }
 
     public void assertEqualsResult(MongoDBVariantWriteResult expected, MongoDBVariantWriteResult result) {
-        result.setExistingVariantsNanoTime(0).setFillGapsNanoTime(0).setNewVariantsNanoTime(0).setGenotypes(Collections.emptySet());
+        result.setExistingVariantsNanoTime(0).setFillGapsNanoTime(0).setNewVariantsNanoTime(0).setGenotypes(Collections.emptySet())
+                .setFetchedVariants(0).setSavedFetchRoundTrips(0).setMergeNanoTime(0);
 
         if (defaultGenotype.equals(UNKNOWN_GENOTYPE)) {
             // If defaultGenotype is the unknown, overlapping missing variants won't not be updated
@@ -4,10 +4,13 @@ import org.bson.Document;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.opencb.biodata.models.variant.Variant;
 import org.opencb.commons.datastore.core.Query;
+import org.opencb.commons.datastore.core.QueryOptions;
 import org.opencb.opencga.storage.core.metadata.StudyConfiguration;
 import org.opencb.opencga.storage.core.metadata.StudyConfigurationManager;
 import org.opencb.opencga.storage.core.variant.adaptors.GenotypeClass;
+import org.opencb.opencga.storage.core.variant.adaptors.VariantQueryCursor;
 import org.opencb.opencga.storage.core.variant.dummy.DummyProjectMetadataAdaptor;
 import org.opencb.opencga.storage.core.variant.dummy.DummyStudyConfigurationAdaptor;
 import org.opencb.opencga.storage.core.variant.dummy.DummyVariantFileMetadataDBAdaptor;
@@ -18,6 +21,8 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryParam.*;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils.IS;
 import static org.opencb.opencga.storage.core.variant.adaptors.VariantQueryUtils.NOT;
@@ -35,11 +40,12 @@ import static org.opencb.opencga.storage.mongodb.variant.converters.DocumentToVa
 public class VariantMongoDBQueryParserTest {
 
     private VariantMongoDBQueryParser parser;
+    private StudyConfigurationManager scm;
 
     @Before
     public void setUp() throws Exception {
         DummyStudyConfigurationAdaptor.clear();
-        StudyConfigurationManager scm = new StudyConfigurationManager(new DummyProjectMetadataAdaptor(), new DummyStudyConfigurationAdaptor(), new DummyVariantFileMetadataDBAdaptor());
+        scm = new StudyConfigurationManager(new DummyProjectMetadataAdaptor(), new DummyStudyConfigurationAdaptor(), new DummyVariantFileMetadataDBAdaptor());
         parser = new VariantMongoDBQueryParser(scm);
         scm.updateStudyConfiguration(newStudyConfiguration(1, Arrays.asList(1, 2, 3), false), null);
         scm.updateStudyConfiguration(newStudyConfiguration(2, Arrays.asList(1, 2, 3), true), null);
@@ -188,6 +194,27 @@ public class VariantMongoDBQueryParserTest {
         checkEqualDocuments(expected, mongoQuery);
     }
 
+    @Test
+    public void testQueryGenotypesBitmapEncoding() {
+        StudyConfiguration sc = newStudyConfiguration(3, Arrays.asList(1, 2, 3), false);
+        sc.getAttributes().put(MongoDBVariantStorageEngine.MongoDBVariantOptions.GENOTYPES_ENCODING.key(),
+                MongoDBVariantStorageEngine.GenotypesEncoding.BITMAP);
+        scm.updateStudyConfiguration(sc, null);
+
+        Document mongoQuery = parser.parseQuery(new Query().append(STUDY.key(), "study_3").append(GENOTYPE.key(), "sample_30101" + IS + "0/1"));
+
+        Document expected = new Document(STUDIES_FIELD,
+                new Document("$elemMatch", new Document()
+                        .append(STUDYID_FIELD, 3)
+                        .append("$and", Collections.singletonList(
+                                new Document("$or", Collections.singletonList(
+                                        new Document(GENOTYPE_BITMAPS_FIELD, new Document("$elemMatch",
+                                                new Document("0/1", new Document("$bitsAnySet", Collections.singletonList(30101)))))))))
+                        .append(FILES_FIELD + '.' + FILEID_FIELD, 1)));
+
+        checkEqualDocuments(expected, mongoQuery);
+    }
+
     @Test
     public void testQueryDefaultGenotypesNotAddFiles() {
         // FILES filter should not be used when the genotype filter is the default genotype
@@ -240,4 +267,18 @@ public class VariantMongoDBQueryParserTest {
         checkEqualDocuments(expected, mongoQuery);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testResumeFilter() {
+        Document mongoQuery = parser.parseQuery(new Query().append(STUDY.key(), "study_2").append(SAMPLE.key(), "sample_20001"));
+        QueryOptions options = new QueryOptions(VariantQueryCursor.RESUME_AFTER, "1:1000:A:C");
+
+        Document resumed = parser.addResumeFilter(mongoQuery, options);
+
+        Document expected = new Document("$and", Arrays.asList(mongoQuery,
+                new Document("_id", new Document("$gt", VariantMongoDBQueryParser.STRING_ID_CONVERTER.buildId(new Variant("1:1000:A:C"))))));
+        checkEqualDocuments(expected, resumed);
+        assertTrue(options.getBoolean(QueryOptions.SORT));
+        assertSame(mongoQuery, parser.addResumeFilter(mongoQuery, new QueryOptions()));
+    }
+
+}
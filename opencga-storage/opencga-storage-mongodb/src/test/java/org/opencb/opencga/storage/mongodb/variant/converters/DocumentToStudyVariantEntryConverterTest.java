@@ -18,6 +18,7 @@ package org.opencb.opencga.storage.mongodb.variant.converters;
 
 import com.google.common.collect.Lists;
 import org.bson.Document;
+import org.bson.types.Binary;
 import org.junit.Before;
 import org.junit.Test;
 import org.opencb.biodata.models.variant.StudyEntry;
@@ -250,4 +251,46 @@ public class DocumentToStudyVariantEntryConverterTest {
 
     }
 
+    @Test
+    public void testConvertToDataTypeWithGenotypeBitmaps() {
+        studyConfiguration.getAttributes().put(MongoDBVariantStorageEngine.MongoDBVariantOptions.GENOTYPES_ENCODING.key(),
+                MongoDBVariantStorageEngine.GenotypesEncoding.BITMAP);
+        Document mongoStudyWithBitmaps = new Document(mongoFileWithIds);
+        mongoStudyWithBitmaps.remove(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD);
+        // One element for each merge
+        mongoStudyWithBitmaps.put(DocumentToStudyVariantEntryConverter.GENOTYPE_BITMAPS_FIELD, Arrays.asList(
+                new Document("0/1", new Binary(SampleBitmapUtils.toBitmap(Collections.singletonList(25)))),
+                new Document("1/1", new Binary(SampleBitmapUtils.toBitmap(Collections.singletonList(35))))));
+
+        DocumentToSamplesConverter samplesConverter = new DocumentToSamplesConverter(studyConfiguration);
+        DocumentToStudyVariantEntryConverter converter = new DocumentToStudyVariantEntryConverter(true, studyId, fileId,
+                samplesConverter);
+        assertEquals(studyEntry, converter.convertToDataModelType(mongoStudyWithBitmaps));
+
+        // Include only one sample
+        samplesConverter = new DocumentToSamplesConverter(studyConfiguration);
+        samplesConverter.setIncludeSamples(Collections.singletonMap(studyId, Collections.singletonList(35)));
+        converter = new DocumentToStudyVariantEntryConverter(true, studyId, fileId, samplesConverter);
+        StudyEntry converted = converter.convertToDataModelType(mongoStudyWithBitmaps);
+        assertEquals(Collections.singletonList("NA003"), converted.getOrderedSamplesName());
+        assertEquals("1/1", converted.getSampleData("NA003", "GT"));
+    }
+
+    @Test
+    public void testConvertToStorageTypeWithGenotypeBitmaps() {
+        studyConfiguration.getAttributes().put(MongoDBVariantStorageEngine.MongoDBVariantOptions.GENOTYPES_ENCODING.key(),
+                MongoDBVariantStorageEngine.GenotypesEncoding.BITMAP);
+        Document mongoStudyWithBitmaps = new Document(mongoFileWithIds);
+        mongoStudyWithBitmaps.remove(DocumentToStudyVariantEntryConverter.GENOTYPES_FIELD);
+        mongoStudyWithBitmaps.put(DocumentToStudyVariantEntryConverter.GENOTYPE_BITMAPS_FIELD, Collections.singletonList(
+                new Document("0/1", new Binary(SampleBitmapUtils.toBitmap(Collections.singletonList(25))))
+                        .append("1/1", new Binary(SampleBitmapUtils.toBitmap(Collections.singletonList(35))))));
+
+        DocumentToStudyVariantEntryConverter converter = new DocumentToStudyVariantEntryConverter(true, studyId, fileId,
+                new DocumentToSamplesConverter(studyConfiguration));
+        Document convertedMongo = converter.convertToStorageType(variant, studyEntry);
+        assertEquals(mongoStudyWithBitmaps, convertedMongo);
+        assertEquals(studyEntry, converter.convertToDataModelType(convertedMongo));
+    }
+
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2017 OpenCB
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.opencb.opencga.storage.mongodb.variant.converters;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Created on 17/10/26.
+ */
+public class SampleBitmapUtilsTest {
+
+    @Test
+    public void testToBitmap() {
+        assertArrayEquals(new byte[0], SampleBitmapUtils.toBitmap(Collections.emptyList()));
+        assertArrayEquals(new byte[]{1}, SampleBitmapUtils.toBitmap(Collections.singletonList(0)));
+        assertArrayEquals(new byte[]{0x28}, SampleBitmapUtils.toBitmap(Arrays.asList(3, 5)));
+        assertArrayEquals(new byte[]{(byte) 0x80}, SampleBitmapUtils.toBitmap(Collections.singletonList(7)));
+        assertArrayEquals(new byte[]{0, 1}, SampleBitmapUtils.toBitmap(Collections.singletonList(8)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSampleId() {
+        SampleBitmapUtils.toBitmap(Arrays.asList(3, -1));
+    }
+
+    @Test
+    public void testRemove() {
+        byte[] bitmap = SampleBitmapUtils.toBitmap(Arrays.asList(3, 5, 12));
+        assertSame(bitmap, SampleBitmapUtils.remove(bitmap, Arrays.asList(4, 20)));
+        assertArrayEquals(new byte[]{0x28}, SampleBitmapUtils.remove(bitmap, Collections.singletonList(12)));
+        assertArrayEquals(new byte[]{0x08, 0x10}, SampleBitmapUtils.remove(bitmap, Collections.singletonList(5)));
+        assertArrayEquals(new byte[0], SampleBitmapUtils.remove(bitmap, Arrays.asList(3, 5, 12)));
+        // The input bitmap is not modified
+        assertArrayEquals(SampleBitmapUtils.toBitmap(Arrays.asList(3, 5, 12)), bitmap);
+    }
+
+    @Test
+    public void testRandomSampleIds() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            Set<Integer> sampleIds = new TreeSet<>();
+            int numSamples = random.nextInt(200);
+            for (int j = 0; j < numSamples; j++) {
+                sampleIds.add(random.nextInt(5000));
+            }
+            byte[] bitmap = SampleBitmapUtils.toBitmap(sampleIds);
+
+            assertEquals(sampleIds.size(), SampleBitmapUtils.count(bitmap));
+            for (int sampleId = 0; sampleId < 5010; sampleId++) {
+                assertEquals(sampleIds.contains(sampleId), SampleBitmapUtils.contains(bitmap, sampleId));
+            }
+            List<Integer> actual = new ArrayList<>();
+            SampleBitmapUtils.forEach(bitmap, actual::add);
+            assertEquals(new ArrayList<>(sampleIds), actual);
+        }
+    }
+}